@@ -0,0 +1,285 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.jdevelopers.ipv4info.utils.Ipv4Utils;
+
+/**
+ * Immutable form of an Ipv4PrefixTrie, that can be shared across threads (see Ipv4PrefixTrie.toImmutable()).
+ *
+ * The prefixes are compiled into the sorted start addresses of the intervals of the address space, that are covered by
+ * the same longest prefix. A longest-prefix-match is a binary search over these intervals, which is narrowed down by
+ * an index over the upper 16 bits of the address, so a lookup needs only a few steps over two int arrays.
+ *
+ * @param <V> Type of the values.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public final class ImmutableIpv4PrefixTrie<V> {
+
+    /**
+     * Number of address bits used by the index.
+     */
+    private static final int INDEX_BITS = 16;
+
+    /**
+     * Number of addresses of the complete address space (2^32).
+     */
+    private static final long ADDRESS_SPACE = 1L << Ipv4Utils.ADDRESS_BITS;
+
+    /**
+     * Bitmask for an unsigned int value.
+     */
+    private static final long INT_MASK = 0xFFFFFFFFL;
+
+    /**
+     * Network addresses of the entries (sorted).
+     */
+    private final int[] networks;
+
+    /**
+     * Prefixes of the entries.
+     */
+    private final byte[] prefixes;
+
+    /**
+     * Values of the entries.
+     */
+    private final Object[] values;
+
+    /**
+     * Next shorter entry, that contains an entry (-1 if there's none).
+     */
+    private final int[] parents;
+
+    /**
+     * Start addresses of the intervals (xor Integer.MIN_VALUE, so they can be compared signed).
+     */
+    private final int[] starts;
+
+    /**
+     * Entry of the longest prefix for each interval (-1 if there's none).
+     */
+    private final int[] owners;
+
+    /**
+     * Interval, that contains the first address of each index slot (plus the last interval at the end).
+     */
+    private final int[] index;
+
+    /**
+     * Constructor.
+     *
+     * @param networks Network addresses of the entries (sorted by network address and prefix, without duplicates).
+     * @param prefixes Prefixes of the entries.
+     * @param values Values of the entries.
+     */
+    ImmutableIpv4PrefixTrie(final int[] networks, final byte[] prefixes, final Object[] values) {
+        this.networks = networks;
+        this.prefixes = prefixes;
+        this.values = values;
+        this.parents = new int[networks.length];
+        final int[] intervalStarts = new int[networks.length * Ipv4Utils.CONST_2 + 1];
+        final int[] intervalOwners = new int[intervalStarts.length];
+        int intervals = 0;
+        // Sweep over the sorted entries with a stack of the entries, that contain the current position.
+        final int[] stack = new int[Ipv4Utils.ADDRESS_BITS + 1];
+        int stackSize = 0;
+        long position = 0;
+        for (int entry = 0; entry <= networks.length; ++entry) {
+            final long start = entry < networks.length ? networks[entry] & INT_MASK : ADDRESS_SPACE;
+            while (stackSize > 0 && getEnd(stack[stackSize - 1]) <= start) {
+                final long end = getEnd(stack[stackSize - 1]);
+                if (position < end) {
+                    intervals = addInterval(intervalStarts, intervalOwners, intervals, position, stack[stackSize - 1]);
+                    position = end;
+                }
+                --stackSize;
+            }
+            if (position < start) {
+                intervals = addInterval(intervalStarts, intervalOwners, intervals, position, stackSize > 0 ? stack[stackSize - 1] : -1);
+                position = start;
+            }
+            if (entry < networks.length) {
+                parents[entry] = stackSize > 0 ? stack[stackSize - 1] : -1;
+                stack[stackSize++] = entry;
+            }
+        }
+        this.starts = Arrays.copyOf(intervalStarts, intervals);
+        this.owners = Arrays.copyOf(intervalOwners, intervals);
+        this.index = new int[(1 << INDEX_BITS) + 1];
+        int interval = 0;
+        for (int slot = 0; slot < 1 << INDEX_BITS; ++slot) {
+            final int key = (slot << INDEX_BITS) ^ Integer.MIN_VALUE;
+            while (interval + 1 < intervals && starts[interval + 1] <= key) {
+                ++interval;
+            }
+            index[slot] = interval;
+        }
+        index[1 << INDEX_BITS] = intervals - 1;
+    }
+
+    /**
+     * Returns the value of the longest prefix, that contains an IP-Address.
+     *
+     * @param address IP-Address as int value.
+     * @return Value of the longest matching prefix or {@code NULL}, if no prefix contains the IP-Address.
+     */
+    @SuppressWarnings("unchecked")
+    public V getLongestMatch(final int address) {
+        final int entry = findLongestMatch(address);
+        return entry < 0 ? null : (V) values[entry];
+    }
+
+    /**
+     * Returns the value of the longest prefix, that contains an IP-Address.
+     *
+     * @param ip IP-Address.
+     * @return Value of the longest matching prefix or {@code NULL}, if no prefix contains the IP-Address (or it's invalid).
+     */
+    public V getLongestMatch(final String ip) {
+        final long address = ip == null ? -1 : Ipv4Utils.parseIp(ip, 0, ip.length());
+        return address < 0 ? null : getLongestMatch((int) address);
+    }
+
+    /**
+     * Returns the longest prefix, that contains an IP-Address.
+     *
+     * @param address IP-Address as int value.
+     * @return Prefix (bits 32 - 39) and network address (bits 0 - 31) like Ipv4Utils.parseCidr() or -1, if no prefix
+     *         contains the IP-Address.
+     */
+    public long getLongestMatchPrefix(final int address) {
+        final int entry = findLongestMatch(address);
+        return entry < 0 ? -1 : Ipv4PrefixTrie.pack(networks[entry], prefixes[entry]);
+    }
+
+    /**
+     * Tests if any prefix contains an IP-Address.
+     *
+     * @param address IP-Address as int value.
+     * @return {@code TRUE} if a prefix contains the IP-Address, otherwise {@code FALSE}.
+     */
+    public boolean contains(final int address) {
+        return findLongestMatch(address) >= 0;
+    }
+
+    /**
+     * Returns the values of all prefixes, that contain an IP-Address.
+     *
+     * @param address IP-Address as int value.
+     * @return Values from the shortest to the longest prefix.
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> getCoveringValues(final int address) {
+        final List<V> result = new ArrayList<V>();
+        for (int entry = findLongestMatch(address); entry >= 0; entry = parents[entry]) {
+            result.add((V) values[entry]);
+        }
+        for (int i = 0, j = result.size() - 1; i < j; ++i, --j) {
+            result.set(j, result.set(i, result.get(j)));
+        }
+        return result;
+    }
+
+    /**
+     * Returns all prefixes, that contain an IP-Address.
+     *
+     * @param address IP-Address as int value.
+     * @return Prefixes (like Ipv4Utils.parseCidr()) from the shortest to the longest one.
+     */
+    public long[] getCoveringPrefixes(final int address) {
+        final int longest = findLongestMatch(address);
+        int count = 0;
+        for (int entry = longest; entry >= 0; entry = parents[entry]) {
+            ++count;
+        }
+        final long[] result = new long[count];
+        for (int entry = longest; entry >= 0; entry = parents[entry]) {
+            result[--count] = Ipv4PrefixTrie.pack(networks[entry], prefixes[entry]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of prefixes.
+     *
+     * @return Number of prefixes.
+     */
+    public int size() {
+        return networks.length;
+    }
+
+    /**
+     * Returns the entry of the longest prefix, that contains an IP-Address.
+     *
+     * @param address IP-Address as int value.
+     * @return Entry or -1.
+     */
+    private int findLongestMatch(final int address) {
+        final int key = address ^ Integer.MIN_VALUE;
+        final int slot = address >>> (Ipv4Utils.ADDRESS_BITS - INDEX_BITS);
+        int low = index[slot];
+        int high = index[slot + 1];
+        // Last interval, that starts at or before the address.
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (starts[middle] <= key) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return owners[low];
+    }
+
+    /**
+     * Returns the end of an entry (exclusive).
+     *
+     * @param entry Entry.
+     * @return End address as unsigned value.
+     */
+    private long getEnd(final int entry) {
+        return (networks[entry] & INT_MASK) + (1L << (Ipv4Utils.ADDRESS_BITS - prefixes[entry]));
+    }
+
+    /**
+     * Adds an interval, if it has another owner than the previous interval.
+     *
+     * @param intervalStarts Start addresses of the intervals.
+     * @param intervalOwners Owners of the intervals.
+     * @param intervals Number of intervals.
+     * @param start Start address of the interval.
+     * @param owner Owner of the interval.
+     * @return New number of intervals.
+     */
+    private static int addInterval(final int[] intervalStarts, final int[] intervalOwners, final int intervals, final long start,
+            final int owner) {
+        if (intervals > 0 && intervalOwners[intervals - 1] == owner) {
+            return intervals;
+        }
+        intervalStarts[intervals] = (int) start ^ Integer.MIN_VALUE;
+        intervalOwners[intervals] = owner;
+        return intervals + 1;
+    }
+
+}
@@ -0,0 +1,907 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import de.jdevelopers.ipv4info.objects.BasicInfo;
+import de.jdevelopers.ipv4info.utils.Ipv4Utils;
+
+/**
+ * Compressed bitmap over the IPv4 address space (Roaring-style), e.g. for blocklists with millions of IP-Addresses.
+ *
+ * The addresses (int values, see Ipv4Utils.ipToInt()) are split into chunks of 65536 addresses by their upper 16 bits.
+ * Each chunk is stored as a sorted array of the lower 16 bits (up to 4096 addresses), as a bitmap of 8 KB or, if it's
+ * complete, as a shared full bitmap. So ranges, subnets and CIDR-Notations are added without expanding them.
+ *
+ * The set can be written to a file, which can be read again or memory-mapped and queried directly (see map() and
+ * contains(ByteBuffer, int)). All numbers are stored in big endian order:
+ * <pre>
+ * Header:      int magic ("IP4B"), int version, int number of chunks, int reserved
+ * Directory:   int upper 16 bits, int type (0 = array, 1 = bitmap, 2 = full), int number of addresses, int offset
+ * Data:        array (unsigned shorts, padded to 8 bytes) or bitmap (1024 longs) of each chunk at it's offset
+ * </pre>
+ *
+ * This class is NOT thread-safe, but and(), or() and andNot() return new sets and don't modify their operands.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public final class Ipv4AddressBitmap {
+
+    /**
+     * Magic number of a bitmap file ("IP4B").
+     */
+    public static final int MAGIC = 0x49503442;
+
+    /**
+     * Version of the file format.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Number of address bits of a chunk.
+     */
+    private static final int CHUNK_BITS = Ipv4Utils.ADDRESS_BITS / Ipv4Utils.CONST_2;
+
+    /**
+     * Number of addresses of a chunk.
+     */
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    /**
+     * Bitmask for the lower 16 bits of an address.
+     */
+    private static final int LOW_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * Number of longs of a bitmap chunk.
+     */
+    private static final int BITMAP_WORDS = CHUNK_SIZE / Long.SIZE;
+
+    /**
+     * Shift from a bit to the long of a bitmap, that contains it.
+     */
+    private static final int WORD_SHIFT = Ipv4Utils.CONST_3 * Ipv4Utils.CONST_2;
+
+    /**
+     * Maximum number of addresses of an array chunk (up to this size an array is smaller than a bitmap).
+     */
+    private static final int MAX_ARRAY_SIZE = BITMAP_WORDS * Ipv4Utils.CONST_4;
+
+    /**
+     * Bitmap of a complete chunk (shared and never modified).
+     */
+    private static final long[] FULL = new long[BITMAP_WORDS];
+
+    /**
+     * Type of an array chunk in a file.
+     */
+    private static final int TYPE_ARRAY = 0;
+
+    /**
+     * Type of a bitmap chunk in a file.
+     */
+    private static final int TYPE_BITMAP = 1;
+
+    /**
+     * Type of a complete chunk in a file.
+     */
+    private static final int TYPE_FULL = 2;
+
+    /**
+     * Size of the header and of a directory entry in bytes.
+     */
+    private static final int ENTRY_SIZE = Ipv4Utils.CONST_4 * Ipv4Utils.CONST_4;
+
+    /**
+     * Bitmask for an unsigned int value.
+     */
+    private static final long INT_MASK = 0xFFFFFFFFL;
+
+    /**
+     * Initial number of chunks.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Upper 16 bits of the chunks (sorted).
+     */
+    private char[] keys = new char[INITIAL_CAPACITY];
+
+    /**
+     * Chunks (char[] for arrays, long[] for bitmaps).
+     */
+    private Object[] chunks = new Object[INITIAL_CAPACITY];
+
+    /**
+     * Number of addresses of the chunks.
+     */
+    private int[] cardinalities = new int[INITIAL_CAPACITY];
+
+    /**
+     * Number of chunks.
+     */
+    private int size;
+
+    static {
+        Arrays.fill(FULL, -1L);
+    }
+
+    /**
+     * Adds an IP-Address.
+     *
+     * @param address IP-Address as int value.
+     * @return {@code TRUE} if the IP-Address was added, {@code FALSE} if it was already contained.
+     */
+    public boolean add(final int address) {
+        final int low = address & LOW_MASK;
+        int index = find(address >>> CHUNK_BITS);
+        if (index < 0) {
+            index = -index - 1;
+            insertChunk(index, (char) (address >>> CHUNK_BITS), new char[] {(char) low}, 1);
+            return true;
+        }
+        final Object chunk = chunks[index];
+        final int cardinality = cardinalities[index];
+        if (chunk instanceof char[]) {
+            char[] array = (char[]) chunk;
+            final int position = Arrays.binarySearch(array, 0, cardinality, (char) low);
+            if (position >= 0) {
+                return false;
+            }
+            if (cardinality == MAX_ARRAY_SIZE) {
+                final long[] bitmap = toBitmap(array, cardinality);
+                bitmap[low >>> WORD_SHIFT] |= 1L << low;
+                chunks[index] = bitmap;
+            } else {
+                final int insert = -position - 1;
+                if (cardinality == array.length) {
+                    array = Arrays.copyOf(array, Math.min(cardinality * Ipv4Utils.CONST_2, MAX_ARRAY_SIZE));
+                    chunks[index] = array;
+                }
+                System.arraycopy(array, insert, array, insert + 1, cardinality - insert);
+                array[insert] = (char) low;
+            }
+        } else {
+            final long[] bitmap = (long[]) chunk;
+            final long bit = 1L << low;
+            if ((bitmap[low >>> WORD_SHIFT] & bit) != 0) {
+                return false;
+            }
+            bitmap[low >>> WORD_SHIFT] |= bit;
+            if (cardinality + 1 == CHUNK_SIZE) {
+                chunks[index] = FULL;
+            }
+        }
+        ++cardinalities[index];
+        return true;
+    }
+
+    /**
+     * Adds a range of IP-Addresses.
+     *
+     * @param first First IP-Address as int value.
+     * @param last Last IP-Address as int value (inclusive, not lower than first as unsigned value).
+     */
+    public void addRange(final int first, final int last) {
+        if ((first & INT_MASK) > (last & INT_MASK)) {
+            throw new IllegalArgumentException("Invalid range: " + Ipv4Utils.intToIp(first) + " - " + Ipv4Utils.intToIp(last));
+        }
+        for (int key = first >>> CHUNK_BITS; key <= last >>> CHUNK_BITS; ++key) {
+            final int low = key == first >>> CHUNK_BITS ? first & LOW_MASK : 0;
+            final int high = key == last >>> CHUNK_BITS ? last & LOW_MASK : LOW_MASK;
+            addRange((char) key, low, high);
+        }
+    }
+
+    /**
+     * Adds a prefix. Bits of the address behind the prefix are ignored.
+     *
+     * @param address IP-Address as int value.
+     * @param prefix Prefix (0 - 32).
+     */
+    public void addPrefix(final int address, final int prefix) {
+        if (prefix < 0 || prefix > Ipv4Utils.ADDRESS_BITS) {
+            throw new IllegalArgumentException("Invalid prefix: " + prefix);
+        }
+        final int netmask = Ipv4Utils.prefixToNetmask(prefix);
+        addRange(address & netmask, address | ~netmask);
+    }
+
+    /**
+     * Adds a CIDR-Notation.
+     *
+     * @param cidr CIDR-Notation (e.g. 10.0.0.0/8) or IP-Address (/32).
+     */
+    public void addCidr(final String cidr) {
+        final long parsed = Ipv4PrefixTrie.parseCidr(cidr);
+        addPrefix((int) parsed, (int) (parsed >>> Ipv4Utils.ADDRESS_BITS));
+    }
+
+    /**
+     * Adds the IP-Address or the complete subnet (network to broadcast address) of a resolved query.
+     *
+     * @param info Resolved query (e.g. an IpInfo-Object).
+     */
+    public void add(final BasicInfo info) {
+        if (!info.isResolvable()) {
+            return;
+        }
+        if (info.isSubnet()) {
+            addRange(info.getIntNetwork(), info.getIntBroadcast());
+        } else {
+            add(info.getIntAddress());
+        }
+    }
+
+    /**
+     * Adds all IP-Addresses of a range set.
+     *
+     * @param set Range set.
+     */
+    public void addAll(final Ipv4RangeSet set) {
+        for (int i = 0; i < set.getRangeCount(); ++i) {
+            addRange(set.getFirst(i), set.getLast(i));
+        }
+    }
+
+    /**
+     * Tests if the set contains an IP-Address.
+     *
+     * @param address IP-Address as int value.
+     * @return {@code TRUE} if the set contains the IP-Address, otherwise {@code FALSE}.
+     */
+    public boolean contains(final int address) {
+        final int index = find(address >>> CHUNK_BITS);
+        return index >= 0 && contains(chunks[index], cardinalities[index], address & LOW_MASK);
+    }
+
+    /**
+     * Tests if the set contains an IP-Address.
+     *
+     * @param ip IP-Address.
+     * @return {@code TRUE} if the set contains the IP-Address, otherwise {@code FALSE}.
+     */
+    public boolean contains(final String ip) {
+        final long address = ip == null ? -1 : Ipv4Utils.parseIp(ip, 0, ip.length());
+        return address >= 0 && contains((int) address);
+    }
+
+    /**
+     * Returns the number of IP-Addresses of the set.
+     *
+     * @return Number of IP-Addresses (0 - 2^32).
+     */
+    public long getCardinality() {
+        long result = 0;
+        for (int i = 0; i < size; ++i) {
+            result += cardinalities[i];
+        }
+        return result;
+    }
+
+    /**
+     * Is the set empty?
+     *
+     * @return {@code TRUE} if the set is empty, otherwise {@code FALSE}.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Calls an action for each IP-Address of the set (in unsigned order).
+     *
+     * @param action Action.
+     */
+    public void forEach(final IntConsumer action) {
+        for (int i = 0; i < size; ++i) {
+            final int high = keys[i] << CHUNK_BITS;
+            if (chunks[i] instanceof char[]) {
+                final char[] array = (char[]) chunks[i];
+                for (int j = 0; j < cardinalities[i]; ++j) {
+                    action.accept(high | array[j]);
+                }
+            } else {
+                final long[] bitmap = (long[]) chunks[i];
+                for (int word = 0; word < BITMAP_WORDS; ++word) {
+                    for (long bits = bitmap[word]; bits != 0; bits &= bits - 1) {
+                        action.accept(high | word * Long.SIZE + Long.numberOfTrailingZeros(bits));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the IP-Addresses, that are contained in this and another set.
+     *
+     * @param other Other set.
+     * @return New set.
+     */
+    public Ipv4AddressBitmap and(final Ipv4AddressBitmap other) {
+        final Ipv4AddressBitmap result = new Ipv4AddressBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                ++i;
+            } else if (keys[i] > other.keys[j]) {
+                ++j;
+            } else {
+                final Object chunk;
+                if (chunks[i] instanceof char[]) {
+                    chunk = filter((char[]) chunks[i], cardinalities[i], other.chunks[j], other.cardinalities[j], true);
+                } else if (other.chunks[j] instanceof char[]) {
+                    chunk = filter((char[]) other.chunks[j], other.cardinalities[j], chunks[i], cardinalities[i], true);
+                } else {
+                    final long[] bitmap = ((long[]) chunks[i]).clone();
+                    final long[] otherBitmap = (long[]) other.chunks[j];
+                    for (int word = 0; word < BITMAP_WORDS; ++word) {
+                        bitmap[word] &= otherBitmap[word];
+                    }
+                    chunk = normalize(bitmap);
+                }
+                result.append(keys[i++], chunk);
+                ++j;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the IP-Addresses, that are contained in this or another set.
+     *
+     * @param other Other set.
+     * @return New set.
+     */
+    public Ipv4AddressBitmap or(final Ipv4AddressBitmap other) {
+        final Ipv4AddressBitmap result = new Ipv4AddressBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j >= other.size || i < size && keys[i] < other.keys[j]) {
+                result.append(keys[i], copy(chunks[i], cardinalities[i]));
+                ++i;
+            } else if (i >= size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], copy(other.chunks[j], other.cardinalities[j]));
+                ++j;
+            } else {
+                final Object chunk;
+                if (chunks[i] instanceof char[] && other.chunks[j] instanceof char[]) {
+                    chunk = mergeChunks((char[]) chunks[i], cardinalities[i], (char[]) other.chunks[j], other.cardinalities[j]);
+                } else {
+                    final long[] bitmap = toBitmap(chunks[i], cardinalities[i]);
+                    final long[] otherBitmap = toBitmap(other.chunks[j], other.cardinalities[j]);
+                    for (int word = 0; word < BITMAP_WORDS; ++word) {
+                        bitmap[word] |= otherBitmap[word];
+                    }
+                    chunk = normalize(bitmap);
+                }
+                result.append(keys[i++], chunk);
+                ++j;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the IP-Addresses of this set, that aren't contained in another set.
+     *
+     * @param other Other set.
+     * @return New set.
+     */
+    public Ipv4AddressBitmap andNot(final Ipv4AddressBitmap other) {
+        final Ipv4AddressBitmap result = new Ipv4AddressBitmap();
+        int j = 0;
+        for (int i = 0; i < size; ++i) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                ++j;
+            }
+            if (j >= other.size || other.keys[j] != keys[i]) {
+                result.append(keys[i], copy(chunks[i], cardinalities[i]));
+            } else if (chunks[i] instanceof char[]) {
+                result.append(keys[i], filter((char[]) chunks[i], cardinalities[i], other.chunks[j], other.cardinalities[j], false));
+            } else {
+                final long[] bitmap = ((long[]) chunks[i]).clone();
+                if (other.chunks[j] instanceof char[]) {
+                    final char[] array = (char[]) other.chunks[j];
+                    for (int k = 0; k < other.cardinalities[j]; ++k) {
+                        bitmap[array[k] >>> WORD_SHIFT] &= ~(1L << array[k]);
+                    }
+                } else {
+                    final long[] otherBitmap = (long[]) other.chunks[j];
+                    for (int word = 0; word < BITMAP_WORDS; ++word) {
+                        bitmap[word] &= ~otherBitmap[word];
+                    }
+                }
+                result.append(keys[i], normalize(bitmap));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes the set to a file. An existing file is replaced.
+     *
+     * @param file The file.
+     * @throws IOException If the file can't be written.
+     */
+    public void write(final File file) throws IOException {
+        final File tempFile = new File(file.getPath() + ".tmp");
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeInt(0);
+            int offset = ENTRY_SIZE * (size + 1);
+            for (int i = 0; i < size; ++i) {
+                out.writeInt(keys[i]);
+                out.writeInt(getType(i));
+                out.writeInt(cardinalities[i]);
+                out.writeInt(offset);
+                offset += getDataSize(i);
+            }
+            for (int i = 0; i < size; ++i) {
+                if (chunks[i] == FULL) {
+                    continue;
+                }
+                if (chunks[i] instanceof char[]) {
+                    final char[] array = (char[]) chunks[i];
+                    for (int j = 0; j < cardinalities[i]; ++j) {
+                        out.writeChar(array[j]);
+                    }
+                    // Padding, so all chunks are aligned to 8 bytes.
+                    for (int j = cardinalities[i] * Ipv4Utils.CONST_2; j < getDataSize(i); ++j) {
+                        out.writeByte(0);
+                    }
+                } else {
+                    for (long word : (long[]) chunks[i]) {
+                        out.writeLong(word);
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a set from a file, that was written by write().
+     *
+     * @param file The file.
+     * @return The set.
+     * @throws IOException If the file can't be read or isn't a valid bitmap file.
+     */
+    public static Ipv4AddressBitmap read(final File file) throws IOException {
+        final ByteBuffer buffer = map(file);
+        final Ipv4AddressBitmap result = new Ipv4AddressBitmap();
+        try {
+            final int count = buffer.getInt(Ipv4Utils.CONST_8);
+            for (int i = 1; i <= count; ++i) {
+                final char key = (char) buffer.getInt(i * ENTRY_SIZE);
+                final int type = buffer.getInt(i * ENTRY_SIZE + Ipv4Utils.CONST_4);
+                final int cardinality = buffer.getInt(i * ENTRY_SIZE + Ipv4Utils.CONST_8);
+                final ByteBuffer data = buffer.duplicate();
+                data.position(buffer.getInt(i * ENTRY_SIZE + Ipv4Utils.CONST_4 * Ipv4Utils.CONST_3));
+                if (type == TYPE_ARRAY) {
+                    final char[] array = new char[cardinality];
+                    data.asCharBuffer().get(array);
+                    result.append(key, array);
+                } else if (type == TYPE_BITMAP) {
+                    final long[] bitmap = new long[BITMAP_WORDS];
+                    data.asLongBuffer().get(bitmap);
+                    result.append(key, bitmap);
+                } else {
+                    result.append(key, FULL);
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt bitmap file: " + file, e);
+        }
+        return result;
+    }
+
+    /**
+     * Memory-maps a file, that was written by write(), so it can be queried by contains(ByteBuffer, int) without reading it.
+     *
+     * @param file The file (at most 2 GB).
+     * @return Read-only buffer of the file.
+     * @throws IOException If the file can't be read or isn't a valid bitmap file.
+     */
+    public static ByteBuffer map(final File file) throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < ENTRY_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(Ipv4Utils.CONST_4) != VERSION) {
+                throw new IOException("Not a bitmap file (or unsupported version): " + file);
+            }
+            return buffer;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Tests if a memory-mapped bitmap file contains an IP-Address. Only absolute reads are used, so the buffer can be
+     * shared across threads.
+     *
+     * @param buffer Buffer of the file (see map()).
+     * @param address IP-Address as int value.
+     * @return {@code TRUE} if the file contains the IP-Address, otherwise {@code FALSE}.
+     */
+    public static boolean contains(final ByteBuffer buffer, final int address) {
+        final int key = address >>> CHUNK_BITS;
+        final int low = address & LOW_MASK;
+        int first = 1;
+        int last = buffer.getInt(Ipv4Utils.CONST_8);
+        while (first <= last) {
+            final int middle = (first + last) >>> 1;
+            final int middleKey = buffer.getInt(middle * ENTRY_SIZE);
+            if (middleKey < key) {
+                first = middle + 1;
+            } else if (middleKey > key) {
+                last = middle - 1;
+            } else {
+                final int type = buffer.getInt(middle * ENTRY_SIZE + Ipv4Utils.CONST_4);
+                final int offset = buffer.getInt(middle * ENTRY_SIZE + Ipv4Utils.CONST_4 * Ipv4Utils.CONST_3);
+                if (type == TYPE_FULL) {
+                    return true;
+                }
+                if (type == TYPE_BITMAP) {
+                    return (buffer.getLong(offset + (low >>> WORD_SHIFT) * Ipv4Utils.CONST_8) & 1L << low) != 0;
+                }
+                int arrayFirst = 0;
+                int arrayLast = buffer.getInt(middle * ENTRY_SIZE + Ipv4Utils.CONST_8) - 1;
+                while (arrayFirst <= arrayLast) {
+                    final int arrayMiddle = (arrayFirst + arrayLast) >>> 1;
+                    final char value = buffer.getChar(offset + arrayMiddle * Ipv4Utils.CONST_2);
+                    if (value < low) {
+                        arrayFirst = arrayMiddle + 1;
+                    } else if (value > low) {
+                        arrayLast = arrayMiddle - 1;
+                    } else {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a range of IP-Addresses to a chunk.
+     *
+     * @param key Upper 16 bits of the chunk.
+     * @param low First lower 16 bits.
+     * @param high Last lower 16 bits (inclusive).
+     */
+    private void addRange(final char key, final int low, final int high) {
+        final int count = high - low + 1;
+        int index = find(key);
+        if (index < 0) {
+            index = -index - 1;
+            if (count == CHUNK_SIZE) {
+                insertChunk(index, key, FULL, CHUNK_SIZE);
+            } else if (count <= MAX_ARRAY_SIZE) {
+                final char[] array = new char[count];
+                for (int i = 0; i < count; ++i) {
+                    array[i] = (char) (low + i);
+                }
+                insertChunk(index, key, array, count);
+            } else {
+                final long[] bitmap = new long[BITMAP_WORDS];
+                setRange(bitmap, low, high);
+                insertChunk(index, key, bitmap, count);
+            }
+            return;
+        }
+        final Object chunk = chunks[index];
+        if (chunk == FULL) {
+            return;
+        }
+        if (count == CHUNK_SIZE) {
+            chunks[index] = FULL;
+            cardinalities[index] = CHUNK_SIZE;
+            return;
+        }
+        final long[] bitmap;
+        if (chunk instanceof char[]) {
+            if (cardinalities[index] + count <= MAX_ARRAY_SIZE) {
+                final char[] range = new char[count];
+                for (int i = 0; i < count; ++i) {
+                    range[i] = (char) (low + i);
+                }
+                final char[] merged = merge((char[]) chunk, cardinalities[index], range, count);
+                chunks[index] = merged;
+                cardinalities[index] = merged.length;
+                return;
+            }
+            bitmap = toBitmap(chunk, cardinalities[index]);
+            chunks[index] = bitmap;
+        } else {
+            bitmap = (long[]) chunk;
+        }
+        cardinalities[index] += setRange(bitmap, low, high);
+        if (cardinalities[index] == CHUNK_SIZE) {
+            chunks[index] = FULL;
+        }
+    }
+
+    /**
+     * Returns the index of a chunk.
+     *
+     * @param key Upper 16 bits of the chunk.
+     * @return Index of the chunk or (-(insertion point) - 1), if there's no such chunk.
+     */
+    private int find(final int key) {
+        return Arrays.binarySearch(keys, 0, size, (char) key);
+    }
+
+    /**
+     * Inserts a chunk.
+     *
+     * @param index Index of the chunk.
+     * @param key Upper 16 bits of the chunk.
+     * @param chunk The chunk.
+     * @param cardinality Number of addresses of the chunk.
+     */
+    private void insertChunk(final int index, final char key, final Object chunk, final int cardinality) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * Ipv4Utils.CONST_2);
+            chunks = Arrays.copyOf(chunks, size * Ipv4Utils.CONST_2);
+            cardinalities = Arrays.copyOf(cardinalities, size * Ipv4Utils.CONST_2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(chunks, index, chunks, index + 1, size - index);
+        System.arraycopy(cardinalities, index, cardinalities, index + 1, size - index);
+        keys[index] = key;
+        chunks[index] = chunk;
+        cardinalities[index] = cardinality;
+        ++size;
+    }
+
+    /**
+     * Appends a chunk with a higher key than all other chunks (empty chunks are skipped).
+     *
+     * @param key Upper 16 bits of the chunk.
+     * @param chunk The chunk (an array chunk must be completely filled).
+     */
+    private void append(final char key, final Object chunk) {
+        final int cardinality = chunk instanceof char[] ? ((char[]) chunk).length : cardinality((long[]) chunk);
+        if (cardinality > 0) {
+            insertChunk(size, key, chunk, cardinality);
+        }
+    }
+
+    /**
+     * Returns the file type of a chunk.
+     *
+     * @param index Index of the chunk.
+     * @return Type.
+     */
+    private int getType(final int index) {
+        return chunks[index] == FULL ? TYPE_FULL : chunks[index] instanceof char[] ? TYPE_ARRAY : TYPE_BITMAP;
+    }
+
+    /**
+     * Returns the size of the data of a chunk in a file.
+     *
+     * @param index Index of the chunk.
+     * @return Size in bytes (a multiple of 8).
+     */
+    private int getDataSize(final int index) {
+        switch (getType(index)) {
+            case TYPE_ARRAY:
+                return (cardinalities[index] * Ipv4Utils.CONST_2 + Ipv4Utils.CONST_8 - 1) & -Ipv4Utils.CONST_8;
+            case TYPE_BITMAP:
+                return BITMAP_WORDS * Ipv4Utils.CONST_8;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Tests if a chunk contains an address.
+     *
+     * @param chunk The chunk.
+     * @param cardinality Number of addresses of the chunk.
+     * @param low Lower 16 bits of the address.
+     * @return {@code TRUE} if the chunk contains the address, otherwise {@code FALSE}.
+     */
+    private static boolean contains(final Object chunk, final int cardinality, final int low) {
+        if (chunk instanceof char[]) {
+            return Arrays.binarySearch((char[]) chunk, 0, cardinality, (char) low) >= 0;
+        }
+        return (((long[]) chunk)[low >>> WORD_SHIFT] & 1L << low) != 0;
+    }
+
+    /**
+     * Returns a copy of a chunk (the full bitmap is shared, because it's never modified).
+     *
+     * @param chunk The chunk.
+     * @param cardinality Number of addresses of the chunk.
+     * @return Copy of the chunk.
+     */
+    private static Object copy(final Object chunk, final int cardinality) {
+        if (chunk instanceof char[]) {
+            return Arrays.copyOf((char[]) chunk, cardinality);
+        }
+        return chunk == FULL ? FULL : ((long[]) chunk).clone();
+    }
+
+    /**
+     * Returns the elements of an array chunk, that are (or aren't) contained in another chunk.
+     *
+     * @param array The array chunk.
+     * @param cardinality Number of addresses of the array chunk.
+     * @param other The other chunk.
+     * @param otherCardinality Number of addresses of the other chunk.
+     * @param contained {@code TRUE} to keep the contained elements, {@code FALSE} to keep the others.
+     * @return New array chunk.
+     */
+    private static char[] filter(final char[] array, final int cardinality, final Object other, final int otherCardinality,
+            final boolean contained) {
+        final char[] result = new char[cardinality];
+        int count = 0;
+        for (int i = 0; i < cardinality; ++i) {
+            if (contains(other, otherCardinality, array[i]) == contained) {
+                result[count++] = array[i];
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Merges two array chunks.
+     *
+     * @param array The first array chunk.
+     * @param cardinality Number of addresses of the first array chunk.
+     * @param other The second array chunk.
+     * @param otherCardinality Number of addresses of the second array chunk.
+     * @return New chunk (an array chunk or a bitmap, if there are too many addresses).
+     */
+    private static Object mergeChunks(final char[] array, final int cardinality, final char[] other, final int otherCardinality) {
+        final char[] merged = merge(array, cardinality, other, otherCardinality);
+        return merged.length > MAX_ARRAY_SIZE ? toBitmap(merged, merged.length) : merged;
+    }
+
+    /**
+     * Merges two sorted arrays.
+     *
+     * @param array The first array.
+     * @param cardinality Number of elements of the first array.
+     * @param other The second array.
+     * @param otherCardinality Number of elements of the second array.
+     * @return Sorted array of all elements (without duplicates).
+     */
+    private static char[] merge(final char[] array, final int cardinality, final char[] other, final int otherCardinality) {
+        final char[] result = new char[cardinality + otherCardinality];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < cardinality || j < otherCardinality) {
+            if (j >= otherCardinality || i < cardinality && array[i] < other[j]) {
+                result[count++] = array[i++];
+            } else if (i >= cardinality || other[j] < array[i]) {
+                result[count++] = other[j++];
+            } else {
+                result[count++] = array[i++];
+                ++j;
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Converts a chunk into a new bitmap.
+     *
+     * @param chunk The chunk.
+     * @param cardinality Number of addresses of the chunk.
+     * @return New bitmap.
+     */
+    private static long[] toBitmap(final Object chunk, final int cardinality) {
+        if (chunk instanceof long[]) {
+            return ((long[]) chunk).clone();
+        }
+        final char[] array = (char[]) chunk;
+        final long[] bitmap = new long[BITMAP_WORDS];
+        for (int i = 0; i < cardinality; ++i) {
+            bitmap[array[i] >>> WORD_SHIFT] |= 1L << array[i];
+        }
+        return bitmap;
+    }
+
+    /**
+     * Converts a bitmap into the smallest kind of chunk.
+     *
+     * @param bitmap The bitmap.
+     * @return Array chunk, bitmap or the full bitmap.
+     */
+    private static Object normalize(final long[] bitmap) {
+        final int cardinality = cardinality(bitmap);
+        if (cardinality == CHUNK_SIZE) {
+            return FULL;
+        }
+        if (cardinality > MAX_ARRAY_SIZE) {
+            return bitmap;
+        }
+        final char[] array = new char[cardinality];
+        int count = 0;
+        for (int word = 0; word < BITMAP_WORDS; ++word) {
+            for (long bits = bitmap[word]; bits != 0; bits &= bits - 1) {
+                array[count++] = (char) (word * Long.SIZE + Long.numberOfTrailingZeros(bits));
+            }
+        }
+        return array;
+    }
+
+    /**
+     * Counts the addresses of a bitmap.
+     *
+     * @param bitmap The bitmap.
+     * @return Number of addresses.
+     */
+    private static int cardinality(final long[] bitmap) {
+        int result = 0;
+        for (long word : bitmap) {
+            result += Long.bitCount(word);
+        }
+        return result;
+    }
+
+    /**
+     * Sets a range of bits of a bitmap.
+     *
+     * @param bitmap The bitmap.
+     * @param low First bit.
+     * @param high Last bit (inclusive).
+     * @return Number of newly set bits.
+     */
+    private static int setRange(final long[] bitmap, final int low, final int high) {
+        int result = 0;
+        for (int word = low >>> WORD_SHIFT; word <= high >>> WORD_SHIFT; ++word) {
+            long mask = -1L;
+            if (word == low >>> WORD_SHIFT) {
+                mask &= -1L << low;
+            }
+            if (word == high >>> WORD_SHIFT) {
+                mask &= -1L >>> (Long.SIZE - 1 - (high & (Long.SIZE - 1)));
+            }
+            result += Long.bitCount(mask & ~bitmap[word]);
+            bitmap[word] |= mask;
+        }
+        return result;
+    }
+
+}
@@ -20,6 +20,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
 
 import de.jdevelopers.ipv4info.enums.EDnsOption;
 import de.jdevelopers.ipv4info.enums.EMxOption;
@@ -44,6 +46,11 @@ import de.jdevelopers.ipv4info.utils.Ipv4Utils;
  */
 public class Ipv4Info {
 
+    /**
+     * Default maximum number of queries of a published stream, that are started, but not yet emitted.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = Ipv4Utils.CONST_255 + 1;
+
     /**
      * Shall MX entries be resolved?
      */
@@ -270,32 +277,56 @@ public class Ipv4Info {
         if (queries == null || queries.isEmpty()) {
             return;
         }
-        synchronized (Ipv4Utils.RESULT_POOL) {
-            for (final String query : queries) {
-                final String correctedQuery = queriesAlreadyCorrected ? query : Ipv4Utils.getCorrectedQuery(query);
-                if (correctedQuery != null && correctedQuery.length() > 0) {
-                    IpInfo ipInfo = Ipv4Utils.RESULT_POOL.get(correctedQuery);
-                    IpInfoOptions ipInfoOptions;
-                    if (ipInfo != null) {
-                        ipInfoOptions = ipInfo.getIpInfoOptions();
-                    } else {
-                        ipInfoOptions = new IpInfoOptions(correctedQuery);
-                    }
-                    ipInfoOptions.setResolveMx(isResolveMx(), getMxOptions());
-                    ipInfoOptions.setResolveRdns(isResolveRdns());
-                    ipInfoOptions.setResolveTxt(isResolveTxt());
-                    if (ipInfo == null) {
-                        Ipv4Utils.RESULT_POOL.put(correctedQuery, new IpInfo(query, ipInfoOptions));
-                    } else {
-                        // Check for paritially missing results.
-                        Ipv4Utils.RESULT_POOL.get(correctedQuery).resolveMissingResults(ipInfoOptions);
-                    }
-                }
+        for (final String query : queries) {
+            final String correctedQuery = queriesAlreadyCorrected ? query : Ipv4Utils.getCorrectedQuery(query);
+            if (correctedQuery != null && correctedQuery.length() > 0) {
+                addToPool(query, correctedQuery);
             }
-            Ipv4Utils.RESULT_POOL.notifyAll();
         }
     }
 
+    /**
+     * Adds a query to the internal result pool. If the query is already pooled, the missing results are resolved.
+     * Adding a query isn't recorded as an access of the result pool (see getPooledResult()).
+     *
+     * @param query The query.
+     * @param correctedQuery The query corrected by the Ipv4Utils.getCorrectedQuery() function.
+     * @return The IpInfo-Object of the query.
+     */
+    private IpInfo addToPool(final String query, final String correctedQuery) {
+        IpInfo ipInfo = Ipv4Utils.RESULT_POOL.get(correctedQuery);
+        if (ipInfo == null) {
+            // Only the producer that adds the object starts its requests (and not while holding a lock of the pool).
+            final IpInfo created = new IpInfo(query, createIpInfoOptions(new IpInfoOptions(correctedQuery)), false);
+            ipInfo = Ipv4Utils.RESULT_POOL.putIfAbsent(correctedQuery, created);
+            if (ipInfo == null) {
+                created.start();
+                Ipv4Utils.ensureCacheObserver();
+                Ipv4Utils.scheduleExpiry(correctedQuery, created);
+                Ipv4Utils.RESULT_POOL_POLICY.recordInsert(correctedQuery, created);
+                return created;
+            }
+        }
+        // Check for paritially missing results.
+        synchronized (ipInfo.getIpInfoOptions()) {
+            ipInfo.resolveMissingResults(createIpInfoOptions(ipInfo.getIpInfoOptions()));
+        }
+        return ipInfo;
+    }
+
+    /**
+     * Sets the actual resolve options to the given IpInfoOptions-Object.
+     *
+     * @param ipInfoOptions IpInfoOptions-Object.
+     * @return The given IpInfoOptions-Object.
+     */
+    private IpInfoOptions createIpInfoOptions(final IpInfoOptions ipInfoOptions) {
+        ipInfoOptions.setResolveMx(isResolveMx(), getMxOptions());
+        ipInfoOptions.setResolveRdns(isResolveRdns());
+        ipInfoOptions.setResolveTxt(isResolveTxt());
+        return ipInfoOptions;
+    }
+
     /**
      * Returns the results for the given queries.
      *
@@ -332,24 +363,134 @@ public class Ipv4Info {
      * @return IpInfo-Object or null.
      */
     public final IpInfo getResult(final String query) {
+        final IpInfo result = getPooledResult(query);
+        if (result == null) {
+            return null;
+        }
+        if (!result.awaitRequestDone()) {
+            System.err.println("Interrupted while waiting for the result of: " + query);
+        }
+        result.setLastAccessed(System.currentTimeMillis());
+        return result;
+    }
+
+    /**
+     * Returns the IpInfo-Object for the given query from the result pool. A new query is created, if there is none.
+     *
+     * @param query Query.
+     * @return IpInfo-Object (may still be in progress) or null.
+     */
+    private IpInfo getPooledResult(final String query) {
         if (query == null || query.length() == 0) {
             return null;
         }
         final String correctedQuery = Ipv4Utils.getCorrectedQuery(query);
-        if (!Ipv4Utils.RESULT_POOL.containsKey(correctedQuery)) {
+        if (correctedQuery == null || correctedQuery.length() == 0) {
+            return null;
+        }
+        IpInfo result = Ipv4Utils.RESULT_POOL.get(correctedQuery);
+        if (result == null) {
             System.err.println("No pre-resolved query found. Creating new query for: " + query);
-            addToQueries(true, Arrays.asList(correctedQuery));
+            // The created object is returned directly, as it may already be evicted from a bounded pool.
+            result = addToPool(correctedQuery, correctedQuery);
+        } else {
+            Ipv4Utils.refreshAheadIfNeeded(correctedQuery, result);
         }
-        final IpInfo result = Ipv4Utils.RESULT_POOL.get(correctedQuery);
-        while (!result.isRequestDone()) {
-            try {
-                Thread.sleep(Ipv4Utils.CONST_20);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+        // Every lookup is recorded here and only here, so the access frequencies count each lookup once.
+        Ipv4Utils.RESULT_POOL_POLICY.recordAccess(correctedQuery);
+        return result;
+    }
+
+    /**
+     * Resolves the given query asynchronously.
+     *
+     * The returned Future will be completed as soon as all the requested lookups (see the resolve options) are done.
+     * In contrast to getResult() the calling thread will never be blocked.
+     *
+     * @param query Query.
+     * @return Future of the IpInfo-Object (completed with null, if the query is empty).
+     */
+    public final CompletableFuture<IpInfo> resolveAsync(final String query) {
+        return resolveAsync(query, EDnsOption.ALL);
+    }
+
+    /**
+     * Resolves the given query asynchronously and returns a Future, that will be completed as soon as the lookup of the given type is done.
+     *
+     * Use EDnsOption.BASIC to act on the A-Record result before slower lookups (like a MX verification) are finished.
+     *
+     * @param query Query.
+     * @param option EDnsOption request type to wait for (BASIC, MX, RDNS, TXT or ALL).
+     * @return Future of the IpInfo-Object (completed with null, if the query is empty).
+     */
+    public final CompletableFuture<IpInfo> resolveAsync(final String query, final EDnsOption option) {
+        final IpInfo ipInfo = getPooledResult(query);
+        if (ipInfo == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return ipInfo.getFuture(option).thenApply(result -> {
+            result.setLastAccessed(System.currentTimeMillis());
+            return result;
+        });
+    }
+
+    /**
+     * Resolves the given queries asynchronously.
+     *
+     * The returned Future will be completed as soon as all the requested lookups of all queries are done.
+     * The resulting list is in the order of the given queries (empty queries are skipped like in getResults()).
+     *
+     * @param queries Collection of queries.
+     * @return Future of the list of IpInfo-Objects (completed with null, if there are no queries).
+     */
+    public final CompletableFuture<List<IpInfo>> resolveAllAsync(final Collection<String> queries) {
+        if (queries == null || queries.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        addToQueries(false, queries);
+        final List<CompletableFuture<IpInfo>> futures = new ArrayList<CompletableFuture<IpInfo>>();
+        for (final String query : queries) {
+            if (query != null && query.length() > 0) {
+                futures.add(resolveAsync(query));
             }
         }
-        result.setLastAccessed(System.currentTimeMillis());
-        return result;
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).thenApply(ignore -> {
+            final List<IpInfo> result = new ArrayList<IpInfo>(futures.size());
+            for (final CompletableFuture<IpInfo> future : futures) {
+                result.add(future.join());
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Returns a Publisher, that resolves the given queries and emits every IpInfo-Object as soon as all of its requested
+     * lookups (see the resolve options) are done. In contrast to getResults(), a slow query doesn't hold back the others.
+     *
+     * The queries are read lazily and started as the subscriber requests results (at most DEFAULT_MAX_IN_FLIGHT queries
+     * are started, but not yet emitted). Emitted results aren't referenced by the Publisher any more, so millions of queries
+     * can be streamed into a sink. Every subscriber gets its own pass over the queries; empty queries are skipped.
+     *
+     * @param queries The queries.
+     * @return Publisher of the IpInfo-Objects in the order of their completion.
+     */
+    public final Flow.Publisher<IpInfo> publishResults(final Iterable<String> queries) {
+        return publishResults(queries, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Returns a Publisher, that resolves the given queries and emits every IpInfo-Object as soon as all of its requested
+     * lookups (see the resolve options) are done.
+     *
+     * @param queries The queries.
+     * @param maxInFlight Maximum number of queries, that are started, but not yet emitted (&gt; 0).
+     * @return Publisher of the IpInfo-Objects in the order of their completion.
+     */
+    public final Flow.Publisher<IpInfo> publishResults(final Iterable<String> queries, final int maxInFlight) {
+        if (queries == null) {
+            throw new IllegalArgumentException("No queries given.");
+        }
+        return new ResultPublisher(this, queries, maxInFlight);
     }
 
 }
@@ -0,0 +1,393 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import de.jdevelopers.ipv4info.utils.Ipv4Utils;
+
+/**
+ * Binary trie over IPv4 prefixes (CIDR-Notations), e.g. to find the subnets of a customer- or blocklist, that contain
+ * an IP-Address.
+ *
+ * The nodes are stored in int arrays (no object per node) and all lookups work on int values (see
+ * Ipv4Utils.ipToInt()). This class is NOT thread-safe. Build it once and use toImmutable() to get a compact,
+ * faster form, that can be shared across threads.
+ *
+ * @param <V> Type of the values.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public class Ipv4PrefixTrie<V> {
+
+    /**
+     * Initial number of nodes.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Initial number of entries.
+     */
+    private static final int INITIAL_ENTRIES = 64;
+
+    /**
+     * Children of the nodes (two per node, 0 if there's no child, because the root is never a child).
+     */
+    private int[] children = new int[INITIAL_CAPACITY * Ipv4Utils.CONST_2];
+
+    /**
+     * Entry of the nodes (-1 if there's no entry).
+     */
+    private int[] nodeEntries = new int[INITIAL_CAPACITY];
+
+    /**
+     * Number of used nodes.
+     */
+    private int nodeCount = 1;
+
+    /**
+     * Network addresses of the entries.
+     */
+    private int[] networks = new int[INITIAL_ENTRIES];
+
+    /**
+     * Prefixes of the entries.
+     */
+    private byte[] prefixes = new byte[INITIAL_ENTRIES];
+
+    /**
+     * Values of the entries.
+     */
+    private Object[] values = new Object[INITIAL_ENTRIES];
+
+    /**
+     * Number of entries.
+     */
+    private int size;
+
+    /**
+     * Constructor.
+     */
+    public Ipv4PrefixTrie() {
+        nodeEntries[0] = -1;
+    }
+
+    /**
+     * Adds a prefix. Bits of the address behind the prefix are ignored.
+     *
+     * @param address IP-Address as int value.
+     * @param prefix Prefix (0 - 32).
+     * @param value Value (not {@code NULL}).
+     * @return Previous value of the prefix or {@code NULL}, if it's a new prefix.
+     */
+    @SuppressWarnings("unchecked")
+    public final V put(final int address, final int prefix, final V value) {
+        if (prefix < 0 || prefix > Ipv4Utils.ADDRESS_BITS) {
+            throw new IllegalArgumentException("Invalid prefix: " + prefix);
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("Value may not be null!");
+        }
+        int node = 0;
+        for (int depth = 0; depth < prefix; ++depth) {
+            final int slot = node * Ipv4Utils.CONST_2 + getBit(address, depth);
+            if (children[slot] == 0) {
+                // newNode() may replace the children array, so it has to be called before the store.
+                final int child = newNode();
+                children[slot] = child;
+            }
+            node = children[slot];
+        }
+        final int entry = nodeEntries[node];
+        if (entry >= 0) {
+            final V previous = (V) values[entry];
+            values[entry] = value;
+            return previous;
+        }
+        if (size == values.length) {
+            networks = Arrays.copyOf(networks, size * Ipv4Utils.CONST_2);
+            prefixes = Arrays.copyOf(prefixes, size * Ipv4Utils.CONST_2);
+            values = Arrays.copyOf(values, size * Ipv4Utils.CONST_2);
+        }
+        networks[size] = address & Ipv4Utils.prefixToNetmask(prefix);
+        prefixes[size] = (byte) prefix;
+        values[size] = value;
+        nodeEntries[node] = size++;
+        return null;
+    }
+
+    /**
+     * Adds a prefix.
+     *
+     * @param cidr CIDR-Notation (e.g. 10.0.0.0/8) or IP-Address (/32).
+     * @param value Value (not {@code NULL}).
+     * @return Previous value of the prefix or {@code NULL}, if it's a new prefix.
+     */
+    public final V put(final String cidr, final V value) {
+        final long parsed = parseCidr(cidr);
+        return put((int) parsed, (int) (parsed >>> Ipv4Utils.ADDRESS_BITS), value);
+    }
+
+    /**
+     * Adds a number of prefixes with the same value.
+     *
+     * @param cidrs CIDR-Notations (e.g. 10.0.0.0/8) or IP-Addresses (/32).
+     * @param value Value (not {@code NULL}).
+     */
+    public final void putAll(final Iterable<String> cidrs, final V value) {
+        for (String cidr : cidrs) {
+            put(cidr, value);
+        }
+    }
+
+    /**
+     * Adds a number of prefixes.
+     *
+     * @param cidrMap Map of CIDR-Notations (e.g. 10.0.0.0/8) or IP-Addresses (/32) to their values.
+     */
+    public final void putAll(final Map<String, ? extends V> cidrMap) {
+        for (Map.Entry<String, ? extends V> entry : cidrMap.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Returns the value of a prefix.
+     *
+     * @param address IP-Address as int value.
+     * @param prefix Prefix (0 - 32).
+     * @return Value of the prefix or {@code NULL}, if it isn't contained.
+     */
+    @SuppressWarnings("unchecked")
+    public final V get(final int address, final int prefix) {
+        if (prefix < 0 || prefix > Ipv4Utils.ADDRESS_BITS) {
+            return null;
+        }
+        int node = 0;
+        for (int depth = 0; depth < prefix; ++depth) {
+            node = children[node * Ipv4Utils.CONST_2 + getBit(address, depth)];
+            if (node == 0) {
+                return null;
+            }
+        }
+        final int entry = nodeEntries[node];
+        return entry < 0 ? null : (V) values[entry];
+    }
+
+    /**
+     * Returns the value of the longest prefix, that contains an IP-Address.
+     *
+     * @param address IP-Address as int value.
+     * @return Value of the longest matching prefix or {@code NULL}, if no prefix contains the IP-Address.
+     */
+    @SuppressWarnings("unchecked")
+    public final V getLongestMatch(final int address) {
+        final int entry = findLongestMatch(address);
+        return entry < 0 ? null : (V) values[entry];
+    }
+
+    /**
+     * Returns the value of the longest prefix, that contains an IP-Address.
+     *
+     * @param ip IP-Address.
+     * @return Value of the longest matching prefix or {@code NULL}, if no prefix contains the IP-Address (or it's invalid).
+     */
+    public final V getLongestMatch(final String ip) {
+        final long address = ip == null ? -1 : Ipv4Utils.parseIp(ip, 0, ip.length());
+        return address < 0 ? null : getLongestMatch((int) address);
+    }
+
+    /**
+     * Returns the longest prefix, that contains an IP-Address.
+     *
+     * @param address IP-Address as int value.
+     * @return Prefix (bits 32 - 39) and network address (bits 0 - 31) like Ipv4Utils.parseCidr() or -1, if no prefix
+     *         contains the IP-Address.
+     */
+    public final long getLongestMatchPrefix(final int address) {
+        final int entry = findLongestMatch(address);
+        return entry < 0 ? -1 : pack(networks[entry], prefixes[entry]);
+    }
+
+    /**
+     * Returns the values of all prefixes, that contain an IP-Address.
+     *
+     * @param address IP-Address as int value.
+     * @return Values from the shortest to the longest prefix.
+     */
+    @SuppressWarnings("unchecked")
+    public final List<V> getCoveringValues(final int address) {
+        final List<V> result = new ArrayList<V>();
+        int node = 0;
+        for (int depth = 0; depth <= Ipv4Utils.ADDRESS_BITS; ++depth) {
+            if (nodeEntries[node] >= 0) {
+                result.add((V) values[nodeEntries[node]]);
+            }
+            if (depth == Ipv4Utils.ADDRESS_BITS) {
+                break;
+            }
+            node = children[node * Ipv4Utils.CONST_2 + getBit(address, depth)];
+            if (node == 0) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns all prefixes, that contain an IP-Address.
+     *
+     * @param address IP-Address as int value.
+     * @return Prefixes (like Ipv4Utils.parseCidr()) from the shortest to the longest one.
+     */
+    public final long[] getCoveringPrefixes(final int address) {
+        final long[] result = new long[Ipv4Utils.ADDRESS_BITS + 1];
+        int count = 0;
+        int node = 0;
+        for (int depth = 0; depth <= Ipv4Utils.ADDRESS_BITS; ++depth) {
+            final int entry = nodeEntries[node];
+            if (entry >= 0) {
+                result[count++] = pack(networks[entry], prefixes[entry]);
+            }
+            if (depth == Ipv4Utils.ADDRESS_BITS) {
+                break;
+            }
+            node = children[node * Ipv4Utils.CONST_2 + getBit(address, depth)];
+            if (node == 0) {
+                break;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Returns the number of prefixes.
+     *
+     * @return Number of prefixes.
+     */
+    public final int size() {
+        return size;
+    }
+
+    /**
+     * Returns an immutable copy of the trie, that can be shared across threads.
+     *
+     * @return Immutable copy of the trie.
+     */
+    public final ImmutableIpv4PrefixTrie<V> toImmutable() {
+        final int[] sortedNetworks = new int[size];
+        final byte[] sortedPrefixes = new byte[size];
+        final Object[] sortedValues = new Object[size];
+        // Pre-order (0-child first) returns the prefixes sorted by network address and prefix.
+        final int[] stack = new int[Ipv4Utils.CONST_2 * (Ipv4Utils.ADDRESS_BITS + 1)];
+        int stackSize = 0;
+        int count = 0;
+        stack[stackSize++] = 0;
+        while (stackSize > 0) {
+            final int node = stack[--stackSize];
+            final int entry = nodeEntries[node];
+            if (entry >= 0) {
+                sortedNetworks[count] = networks[entry];
+                sortedPrefixes[count] = prefixes[entry];
+                sortedValues[count++] = values[entry];
+            }
+            for (int bit = 1; bit >= 0; --bit) {
+                final int child = children[node * Ipv4Utils.CONST_2 + bit];
+                if (child != 0) {
+                    stack[stackSize++] = child;
+                }
+            }
+        }
+        return new ImmutableIpv4PrefixTrie<V>(sortedNetworks, sortedPrefixes, sortedValues);
+    }
+
+    /**
+     * Returns the entry of the longest prefix, that contains an IP-Address.
+     *
+     * @param address IP-Address as int value.
+     * @return Entry or -1.
+     */
+    private int findLongestMatch(final int address) {
+        int best = nodeEntries[0];
+        int node = 0;
+        for (int depth = 0; depth < Ipv4Utils.ADDRESS_BITS; ++depth) {
+            node = children[node * Ipv4Utils.CONST_2 + getBit(address, depth)];
+            if (node == 0) {
+                break;
+            }
+            if (nodeEntries[node] >= 0) {
+                best = nodeEntries[node];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Creates a new node.
+     *
+     * @return Index of the new node.
+     */
+    private int newNode() {
+        if (nodeCount == nodeEntries.length) {
+            children = Arrays.copyOf(children, children.length * Ipv4Utils.CONST_2);
+            nodeEntries = Arrays.copyOf(nodeEntries, nodeEntries.length * Ipv4Utils.CONST_2);
+        }
+        nodeEntries[nodeCount] = -1;
+        return nodeCount++;
+    }
+
+    /**
+     * Returns a bit of an IP-Address.
+     *
+     * @param address IP-Address as int value.
+     * @param depth Position of the bit (0 = most significant bit).
+     * @return Bit (0 or 1).
+     */
+    private static int getBit(final int address, final int depth) {
+        return (address >>> (Ipv4Utils.ADDRESS_BITS - 1 - depth)) & 1;
+    }
+
+    /**
+     * Packs a prefix like Ipv4Utils.parseCidr().
+     *
+     * @param network Network address.
+     * @param prefix Prefix.
+     * @return Packed prefix.
+     */
+    static long pack(final int network, final int prefix) {
+        return (long) prefix << Ipv4Utils.ADDRESS_BITS | network & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Parses a CIDR-Notation.
+     *
+     * @param cidr CIDR-Notation.
+     * @return Parsed CIDR-Notation (see Ipv4Utils.parseCidr()).
+     */
+    static long parseCidr(final String cidr) {
+        final long parsed = cidr == null ? -1 : Ipv4Utils.parseCidr(cidr, 0, cidr.length());
+        if (parsed < 0) {
+            throw new IllegalArgumentException("Invalid CIDR-Notation: " + cidr);
+        }
+        return parsed;
+    }
+
+}
@@ -0,0 +1,454 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.jdevelopers.ipv4info.utils.Ipv4Utils;
+
+/**
+ * Immutable set of IPv4-Addresses, stored as sorted, disjoint and non-adjacent intervals of int values.
+ *
+ * Overlapping and adjacent ranges/prefixes are merged when the set is built, so toCidrs() always returns the minimal
+ * CIDR cover of the set. Use a Builder to create a set from many ranges or prefixes (O(n log n), without boxing).
+ *
+ * @author Carsten Jäger
+ *
+ */
+public final class Ipv4RangeSet {
+
+    /**
+     * The empty set.
+     */
+    public static final Ipv4RangeSet EMPTY = new Ipv4RangeSet(new int[0]);
+
+    /**
+     * The set of all IPv4-Addresses.
+     */
+    public static final Ipv4RangeSet ALL = new Ipv4RangeSet(new int[] {0, -1});
+
+    /**
+     * Bitmask for an unsigned int value.
+     */
+    private static final long INT_MASK = 0xFFFFFFFFL;
+
+    /**
+     * First and last address (inclusive) of each interval, sorted (unsigned).
+     */
+    private final int[] bounds;
+
+    /**
+     * Builder for an Ipv4RangeSet.
+     *
+     * @author Carsten Jäger
+     *
+     */
+    public static final class Builder {
+
+        /**
+         * Initial number of ranges.
+         */
+        private static final int INITIAL_CAPACITY = 64;
+
+        /**
+         * Ranges (first address xor Integer.MIN_VALUE in the upper and last address in the lower 32 bits, so they
+         * are sorted by a signed sort).
+         */
+        private long[] ranges = new long[INITIAL_CAPACITY];
+
+        /**
+         * Number of ranges.
+         */
+        private int size;
+
+        /**
+         * Adds a range.
+         *
+         * @param first First IP-Address as int value.
+         * @param last Last IP-Address as int value (inclusive, not lower than first as unsigned value).
+         * @return This builder.
+         */
+        public Builder addRange(final int first, final int last) {
+            if ((first & INT_MASK) > (last & INT_MASK)) {
+                throw new IllegalArgumentException("Invalid range: " + Ipv4Utils.intToIp(first) + " - " + Ipv4Utils.intToIp(last));
+            }
+            if (size == ranges.length) {
+                ranges = Arrays.copyOf(ranges, size * Ipv4Utils.CONST_2);
+            }
+            ranges[size++] = (long) (first ^ Integer.MIN_VALUE) << Ipv4Utils.ADDRESS_BITS | last & INT_MASK;
+            return this;
+        }
+
+        /**
+         * Adds a prefix. Bits of the address behind the prefix are ignored.
+         *
+         * @param address IP-Address as int value.
+         * @param prefix Prefix (0 - 32).
+         * @return This builder.
+         */
+        public Builder addPrefix(final int address, final int prefix) {
+            if (prefix < 0 || prefix > Ipv4Utils.ADDRESS_BITS) {
+                throw new IllegalArgumentException("Invalid prefix: " + prefix);
+            }
+            final int netmask = Ipv4Utils.prefixToNetmask(prefix);
+            return addRange(address & netmask, address | ~netmask);
+        }
+
+        /**
+         * Adds a CIDR-Notation.
+         *
+         * @param cidr CIDR-Notation (e.g. 10.0.0.0/8) or IP-Address (/32).
+         * @return This builder.
+         */
+        public Builder addCidr(final String cidr) {
+            final long parsed = Ipv4PrefixTrie.parseCidr(cidr);
+            return addPrefix((int) parsed, (int) (parsed >>> Ipv4Utils.ADDRESS_BITS));
+        }
+
+        /**
+         * Adds a number of CIDR-Notations.
+         *
+         * @param cidrs CIDR-Notations (e.g. 10.0.0.0/8) or IP-Addresses (/32).
+         * @return This builder.
+         */
+        public Builder addCidrs(final Iterable<String> cidrs) {
+            for (String cidr : cidrs) {
+                addCidr(cidr);
+            }
+            return this;
+        }
+
+        /**
+         * Adds all ranges of a set.
+         *
+         * @param set Set.
+         * @return This builder.
+         */
+        public Builder addAll(final Ipv4RangeSet set) {
+            for (int i = 0; i < set.bounds.length; i += Ipv4Utils.CONST_2) {
+                addRange(set.bounds[i], set.bounds[i + 1]);
+            }
+            return this;
+        }
+
+        /**
+         * Builds the set (sorts and merges the ranges).
+         *
+         * @return The set.
+         */
+        public Ipv4RangeSet build() {
+            final long[] sorted = Arrays.copyOf(ranges, size);
+            Arrays.sort(sorted);
+            final int[] merged = new int[size * Ipv4Utils.CONST_2];
+            int count = 0;
+            for (long range : sorted) {
+                final int first = (int) (range >>> Ipv4Utils.ADDRESS_BITS) ^ Integer.MIN_VALUE;
+                final int last = (int) range;
+                // Merge overlapping and adjacent ranges.
+                if (count > 0 && (first & INT_MASK) <= (merged[count - 1] & INT_MASK) + 1) {
+                    if ((last & INT_MASK) > (merged[count - 1] & INT_MASK)) {
+                        merged[count - 1] = last;
+                    }
+                } else {
+                    merged[count++] = first;
+                    merged[count++] = last;
+                }
+            }
+            return new Ipv4RangeSet(Arrays.copyOf(merged, count));
+        }
+
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param bounds First and last address of each interval (sorted, disjoint and non-adjacent).
+     */
+    private Ipv4RangeSet(final int[] bounds) {
+        this.bounds = bounds;
+    }
+
+    /**
+     * Creates a set from CIDR-Notations.
+     *
+     * @param cidrs CIDR-Notations (e.g. 10.0.0.0/8) or IP-Addresses (/32).
+     * @return The set.
+     */
+    public static Ipv4RangeSet fromCidrs(final String... cidrs) {
+        return new Builder().addCidrs(Arrays.asList(cidrs)).build();
+    }
+
+    /**
+     * Creates a set from a range.
+     *
+     * @param first First IP-Address as int value.
+     * @param last Last IP-Address as int value (inclusive).
+     * @return The set.
+     */
+    public static Ipv4RangeSet fromRange(final int first, final int last) {
+        return new Builder().addRange(first, last).build();
+    }
+
+    /**
+     * Tests if the set contains an IP-Address.
+     *
+     * @param address IP-Address as int value.
+     * @return {@code TRUE} if the set contains the IP-Address, otherwise {@code FALSE}.
+     */
+    public boolean contains(final int address) {
+        final long value = address & INT_MASK;
+        int low = 0;
+        int high = bounds.length / Ipv4Utils.CONST_2 - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            if ((bounds[middle * Ipv4Utils.CONST_2 + 1] & INT_MASK) < value) {
+                low = middle + 1;
+            } else if ((bounds[middle * Ipv4Utils.CONST_2] & INT_MASK) > value) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tests if the set contains an IP-Address.
+     *
+     * @param ip IP-Address.
+     * @return {@code TRUE} if the set contains the IP-Address, otherwise {@code FALSE}.
+     */
+    public boolean contains(final String ip) {
+        final long address = ip == null ? -1 : Ipv4Utils.parseIp(ip, 0, ip.length());
+        return address >= 0 && contains((int) address);
+    }
+
+    /**
+     * Returns the union of this and another set.
+     *
+     * @param other Other set.
+     * @return Union of the sets.
+     */
+    public Ipv4RangeSet union(final Ipv4RangeSet other) {
+        final int[] result = new int[bounds.length + other.bounds.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < bounds.length || j < other.bounds.length) {
+            final int[] source;
+            final int index;
+            // Take the interval with the lower first address.
+            if (j >= other.bounds.length || i < bounds.length && (bounds[i] & INT_MASK) <= (other.bounds[j] & INT_MASK)) {
+                source = bounds;
+                index = i;
+                i += Ipv4Utils.CONST_2;
+            } else {
+                source = other.bounds;
+                index = j;
+                j += Ipv4Utils.CONST_2;
+            }
+            if (count > 0 && (source[index] & INT_MASK) <= (result[count - 1] & INT_MASK) + 1) {
+                if ((source[index + 1] & INT_MASK) > (result[count - 1] & INT_MASK)) {
+                    result[count - 1] = source[index + 1];
+                }
+            } else {
+                result[count++] = source[index];
+                result[count++] = source[index + 1];
+            }
+        }
+        return new Ipv4RangeSet(Arrays.copyOf(result, count));
+    }
+
+    /**
+     * Returns the intersection of this and another set.
+     *
+     * @param other Other set.
+     * @return Intersection of the sets.
+     */
+    public Ipv4RangeSet intersection(final Ipv4RangeSet other) {
+        final int[] result = new int[bounds.length + other.bounds.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < bounds.length && j < other.bounds.length) {
+            final long first = Math.max(bounds[i] & INT_MASK, other.bounds[j] & INT_MASK);
+            final long last = Math.min(bounds[i + 1] & INT_MASK, other.bounds[j + 1] & INT_MASK);
+            if (first <= last) {
+                result[count++] = (int) first;
+                result[count++] = (int) last;
+            }
+            // Continue with the interval, that ends later.
+            if ((bounds[i + 1] & INT_MASK) < (other.bounds[j + 1] & INT_MASK)) {
+                i += Ipv4Utils.CONST_2;
+            } else {
+                j += Ipv4Utils.CONST_2;
+            }
+        }
+        return new Ipv4RangeSet(Arrays.copyOf(result, count));
+    }
+
+    /**
+     * Returns all IP-Addresses of this set, that aren't contained in another set.
+     *
+     * @param other Other set.
+     * @return Difference of the sets.
+     */
+    public Ipv4RangeSet difference(final Ipv4RangeSet other) {
+        return intersection(other.complement());
+    }
+
+    /**
+     * Returns all IP-Addresses, that aren't contained in this set.
+     *
+     * @return Complement of the set.
+     */
+    public Ipv4RangeSet complement() {
+        final int[] result = new int[bounds.length + Ipv4Utils.CONST_2];
+        int count = 0;
+        long next = 0;
+        for (int i = 0; i < bounds.length; i += Ipv4Utils.CONST_2) {
+            if ((bounds[i] & INT_MASK) > next) {
+                result[count++] = (int) next;
+                result[count++] = bounds[i] - 1;
+            }
+            next = (bounds[i + 1] & INT_MASK) + 1;
+        }
+        if (next <= INT_MASK) {
+            result[count++] = (int) next;
+            result[count++] = -1;
+        }
+        return new Ipv4RangeSet(Arrays.copyOf(result, count));
+    }
+
+    /**
+     * Returns the minimal list of prefixes, that covers exactly this set.
+     *
+     * @return Prefixes (like Ipv4Utils.parseCidr()) sorted by their network address.
+     */
+    public long[] toPrefixes() {
+        long[] result = new long[bounds.length];
+        int count = 0;
+        for (int i = 0; i < bounds.length; i += Ipv4Utils.CONST_2) {
+            long first = bounds[i] & INT_MASK;
+            final long last = bounds[i + 1] & INT_MASK;
+            while (first <= last) {
+                // Largest block, that is aligned at the first address and doesn't exceed the last address.
+                int bits = first == 0 ? Ipv4Utils.ADDRESS_BITS : Long.numberOfTrailingZeros(first);
+                while (first + (1L << bits) - 1 > last) {
+                    --bits;
+                }
+                if (count == result.length) {
+                    result = Arrays.copyOf(result, count * Ipv4Utils.CONST_2);
+                }
+                result[count++] = Ipv4PrefixTrie.pack((int) first, Ipv4Utils.ADDRESS_BITS - bits);
+                first += 1L << bits;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Returns the minimal list of CIDR-Notations, that covers exactly this set.
+     *
+     * @return CIDR-Notations sorted by their network address.
+     */
+    public List<String> toCidrs() {
+        final long[] prefixes = toPrefixes();
+        final List<String> result = new ArrayList<String>(prefixes.length);
+        for (long prefix : prefixes) {
+            result.add(Ipv4Utils.intToCidr((int) prefix, (int) (prefix >>> Ipv4Utils.ADDRESS_BITS)));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of IP-Addresses of the set.
+     *
+     * @return Number of IP-Addresses (0 - 2^32).
+     */
+    public long getAddressCount() {
+        long result = 0;
+        for (int i = 0; i < bounds.length; i += Ipv4Utils.CONST_2) {
+            result += (bounds[i + 1] & INT_MASK) - (bounds[i] & INT_MASK) + 1;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of intervals of the set.
+     *
+     * @return Number of intervals.
+     */
+    public int getRangeCount() {
+        return bounds.length / Ipv4Utils.CONST_2;
+    }
+
+    /**
+     * Returns the first IP-Address of an interval.
+     *
+     * @param range Index of the interval.
+     * @return First IP-Address as int value.
+     */
+    public int getFirst(final int range) {
+        return bounds[range * Ipv4Utils.CONST_2];
+    }
+
+    /**
+     * Returns the last IP-Address of an interval.
+     *
+     * @param range Index of the interval.
+     * @return Last IP-Address as int value (inclusive).
+     */
+    public int getLast(final int range) {
+        return bounds[range * Ipv4Utils.CONST_2 + 1];
+    }
+
+    /**
+     * Is the set empty?
+     *
+     * @return {@code TRUE} if the set is empty, otherwise {@code FALSE}.
+     */
+    public boolean isEmpty() {
+        return bounds.length == 0;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return obj instanceof Ipv4RangeSet && Arrays.equals(bounds, ((Ipv4RangeSet) obj).bounds);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bounds);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < bounds.length; i += Ipv4Utils.CONST_2) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            Ipv4Utils.appendIp(sb, bounds[i]).append(" - ");
+            Ipv4Utils.appendIp(sb, bounds[i + 1]);
+        }
+        return sb.append(']').toString();
+    }
+
+}
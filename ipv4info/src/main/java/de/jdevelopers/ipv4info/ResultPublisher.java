@@ -0,0 +1,288 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.jdevelopers.ipv4info.objects.IpInfo;
+
+/**
+ * Publisher, that resolves queries and emits the IpInfo-Objects in the order of their completion.
+ *
+ * Every subscriber gets its own pass over the queries. A query is only started, if the subscriber has requested results,
+ * and at most maxInFlight queries are started, but not yet emitted. So the queries are read lazily and only the results
+ * in flight are referenced, even for millions of queries.
+ *
+ * @author Carsten Jäger
+ *
+ */
+final class ResultPublisher implements Flow.Publisher<IpInfo> {
+
+    /**
+     * The Ipv4Info-Object, that resolves the queries.
+     */
+    private final Ipv4Info ipv4Info;
+
+    /**
+     * The queries.
+     */
+    private final Iterable<String> queries;
+
+    /**
+     * Maximum number of queries, that are started, but not yet emitted.
+     */
+    private final int maxInFlight;
+
+    /**
+     * Constructor.
+     *
+     * @param ipv4Info The Ipv4Info-Object, that resolves the queries.
+     * @param queries The queries.
+     * @param maxInFlight Maximum number of queries, that are started, but not yet emitted (&gt; 0).
+     */
+    ResultPublisher(final Ipv4Info ipv4Info, final Iterable<String> queries, final int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("Invalid maximum number of queries in flight: " + maxInFlight);
+        }
+        this.ipv4Info = ipv4Info;
+        this.queries = queries;
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super IpInfo> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        final ResultSubscription subscription = new ResultSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.drain();
+    }
+
+    /**
+     * Subscription of a subscriber.
+     *
+     * All signals to the subscriber are sent by drain(), which is entered by one thread at a time (the caller of request(),
+     * or the thread that completed a query).
+     */
+    private final class ResultSubscription implements Flow.Subscription {
+
+        /**
+         * The subscriber ({@code null} after the subscription is terminated).
+         */
+        private Flow.Subscriber<? super IpInfo> subscriber;
+
+        /**
+         * The remaining queries ({@code null} before the first and after the last query).
+         */
+        private Iterator<String> queryIterator;
+
+        /**
+         * Are all queries started?
+         */
+        private boolean allStarted;
+
+        /**
+         * The completed results, that aren't emitted yet.
+         */
+        private final Queue<IpInfo> completedResults = new ConcurrentLinkedQueue<IpInfo>();
+
+        /**
+         * Number of queries, that are started, but not yet emitted (or skipped).
+         */
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        /**
+         * Outstanding demand of the subscriber (Long.MAX_VALUE = unbounded).
+         */
+        private final AtomicLong requested = new AtomicLong();
+
+        /**
+         * Number of pending calls of drain().
+         */
+        private final AtomicInteger pendingDrains = new AtomicInteger();
+
+        /**
+         * Was the subscription cancelled?
+         */
+        private volatile boolean cancelled;
+
+        /**
+         * The failure to signal, if any.
+         */
+        private volatile Throwable failure;
+
+        /**
+         * Constructor.
+         *
+         * @param subscriber The subscriber.
+         */
+        ResultSubscription(final Flow.Subscriber<? super IpInfo> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                setFailure(new IllegalArgumentException("Non-positive number of requested results: " + n));
+            } else {
+                long current;
+                long next;
+                do {
+                    current = requested.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (current != Long.MAX_VALUE && !requested.compareAndSet(current, next));
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        /**
+         * Keeps the first failure.
+         *
+         * @param t The failure.
+         */
+        private void setFailure(final Throwable t) {
+            if (failure == null) {
+                failure = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            }
+        }
+
+        /**
+         * Emits the completed results as demanded, starts further queries and signals the termination.
+         */
+        void drain() {
+            if (pendingDrains.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                final Flow.Subscriber<? super IpInfo> s = subscriber;
+                if (s == null) {
+                    // Terminated, so late results are dropped.
+                    completedResults.clear();
+                } else if (cancelled) {
+                    terminate();
+                } else {
+                    emit(s);
+                    if (!cancelled && failure == null) {
+                        startQueries();
+                    }
+                    if (cancelled) {
+                        terminate();
+                    } else if (failure != null) {
+                        terminate();
+                        s.onError(failure);
+                    } else if (allStarted && inFlight.get() == 0) {
+                        terminate();
+                        s.onComplete();
+                    }
+                }
+                missed = pendingDrains.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Emits the completed results as long as there is demand.
+         *
+         * @param s The subscriber.
+         */
+        private void emit(final Flow.Subscriber<? super IpInfo> s) {
+            final long demand = requested.get();
+            long emitted = 0;
+            while (emitted != demand && !cancelled && failure == null) {
+                final IpInfo ipInfo = completedResults.poll();
+                if (ipInfo == null) {
+                    break;
+                }
+                inFlight.decrementAndGet();
+                ++emitted;
+                s.onNext(ipInfo);
+            }
+            if (emitted != 0 && demand != Long.MAX_VALUE) {
+                requested.addAndGet(-emitted);
+            }
+        }
+
+        /**
+         * Starts further queries, as long as there is demand and the number of queries in flight is below the maximum.
+         */
+        private void startQueries() {
+            try {
+                if (queryIterator == null && !allStarted) {
+                    queryIterator = queries.iterator();
+                }
+                while (!allStarted && requested.get() > 0 && inFlight.get() < maxInFlight && !cancelled) {
+                    if (!queryIterator.hasNext()) {
+                        allStarted = true;
+                        queryIterator = null;
+                        break;
+                    }
+                    final String query = queryIterator.next();
+                    if (query == null || query.length() == 0) {
+                        continue;
+                    }
+                    inFlight.incrementAndGet();
+                    ipv4Info.resolveAsync(query).whenComplete((ipInfo, t) -> onResult(ipInfo, t));
+                }
+            } catch (RuntimeException e) {
+                setFailure(e);
+            }
+        }
+
+        /**
+         * Takes the result of a query.
+         *
+         * @param ipInfo The IpInfo-Object (or {@code null}, if the query was empty after the correction).
+         * @param t The failure of the query, if any.
+         */
+        private void onResult(final IpInfo ipInfo, final Throwable t) {
+            if (t != null) {
+                inFlight.decrementAndGet();
+                setFailure(t);
+            } else if (ipInfo != null && !cancelled) {
+                completedResults.add(ipInfo);
+            } else {
+                inFlight.decrementAndGet();
+            }
+            drain();
+        }
+
+        /**
+         * Drops all references of the terminated subscription.
+         */
+        private void terminate() {
+            subscriber = null;
+            queryIterator = null;
+            allStarted = true;
+            completedResults.clear();
+        }
+
+    }
+
+}
@@ -31,6 +31,11 @@ public enum EDnsOption {
      */
     ALL,
 
+    /**
+     * Basic request (A-Record or address/subnet calculation).
+     */
+    BASIC,
+
     /**
      * MX request.
      */
@@ -0,0 +1,38 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package de.jdevelopers.ipv4info.enums;
+
+/**
+ * Enumeration of the reasons why a result was removed from the result pool.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public enum EEvictionCause {
+
+    /**
+     * The result was removed, because the result pool exceeded its maximum number of entries or its byte budget.
+     */
+    SIZE,
+
+    /**
+     * The result was removed, because it was not accessed for its maximum idle time.
+     */
+    EXPIRED;
+
+}
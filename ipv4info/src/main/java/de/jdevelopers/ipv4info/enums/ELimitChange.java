@@ -0,0 +1,53 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package de.jdevelopers.ipv4info.enums;
+
+/**
+ * Enumeration of the reasons for a change of the concurrency limit of the AdaptiveConcurrencyLimiter.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public enum ELimitChange {
+
+    /**
+     * The limit has not been changed since it was created.
+     */
+    INITIAL,
+
+    /**
+     * The limit was increased, because all queries of the last window were answered in time.
+     */
+    INCREASE,
+
+    /**
+     * The limit was decreased, because too many queries timed out.
+     */
+    TIMEOUT,
+
+    /**
+     * The limit was decreased, because the latency of the responses increased significantly.
+     */
+    LATENCY,
+
+    /**
+     * The limit was set to fit into new minimum/maximum bounds.
+     */
+    BOUNDS;
+
+}
@@ -0,0 +1,57 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info.enums;
+
+/**
+ * Enumeration of the kinds of queries, as they are detected by the QueryScanner.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public enum EQueryType {
+
+    /**
+     * The query starts with a hostname (Ipv4Utils.DOMAIN_PATTERN).
+     */
+    DOMAIN,
+
+    /**
+     * The query is a valid IP-Address (Ipv4Utils.ADDRESS_PATTERN).
+     */
+    IP,
+
+    /**
+     * The query looks like an IP-Address (Ipv4Utils.SIMPLE_IPS_PATTERN), but it can't be resolved.
+     */
+    INVALID_IP,
+
+    /**
+     * The query is a valid CIDR-Notation (Ipv4Utils.CIDR_PATTERN) with a prefix of 0 - 31.
+     */
+    SUBNET,
+
+    /**
+     * The query looks like a CIDR-Notation (Ipv4Utils.SIMPLE_IPS_PATTERN), but it can't be resolved.
+     */
+    INVALID_SUBNET,
+
+    /**
+     * The query is neither a hostname nor an IP-Address or a CIDR-Notation.
+     */
+    INVALID;
+
+}
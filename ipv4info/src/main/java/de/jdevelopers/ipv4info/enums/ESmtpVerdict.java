@@ -0,0 +1,48 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package de.jdevelopers.ipv4info.enums;
+
+/**
+ * Enumeration of the results of a SMTP connection check.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public enum ESmtpVerdict {
+
+    /**
+     * The connection was established.
+     */
+    REACHABLE,
+
+    /**
+     * The connection was refused. The server is alive, but won't talk to us right now (see EMxOption.SKIP_REFUSED).
+     */
+    REFUSED,
+
+    /**
+     * The server didn't answer in time (2 sec. for connect).
+     */
+    TIMEOUT,
+
+    /**
+     * The server doesn't exist or the connection failed for another reason.
+     */
+    UNREACHABLE;
+
+}
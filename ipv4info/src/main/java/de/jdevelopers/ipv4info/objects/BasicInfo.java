@@ -17,14 +17,24 @@
 package de.jdevelopers.ipv4info.objects;
 
 import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 import de.jdevelopers.ipv4info.enums.EBasicOption;
 import de.jdevelopers.ipv4info.resolvers.BasicResolver;
 import de.jdevelopers.ipv4info.results.BasicResult;
+import de.jdevelopers.ipv4info.utils.AddressSpliterator;
 import de.jdevelopers.ipv4info.utils.Ipv4Utils;
 
 /**
@@ -92,15 +102,20 @@ public class BasicInfo implements Serializable {
     private int usableAddressCount = -1;
 
     /**
-     * List of usable IP-Addresses.
+     * List of usable IP-Addresses. Declared as transient to exclude it from serialization (it may be huge).
      */
-    private List<String> usableAddresses;
+    private transient volatile List<String> usableAddresses;
 
     /**
      * Object, that holds the basic result values.
      */
     private BasicResult basicResult = new BasicResult();
 
+    /**
+     * Was the basic request started?
+     */
+    private boolean basicStarted;
+
     /**
      * Constructor.
      *
@@ -108,10 +123,34 @@ public class BasicInfo implements Serializable {
      * @param correctedQuery Corrected Query.
      */
     public BasicInfo(final String originalQuery, final String correctedQuery) {
+        this(originalQuery, correctedQuery, true);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param originalQuery Original query.
+     * @param correctedQuery Corrected Query.
+     * @param start Start the basic request? If {@code FALSE}, it has to be started by startBasicRequest().
+     */
+    protected BasicInfo(final String originalQuery, final String correctedQuery, final boolean start) {
         this.originalQuery = originalQuery;
         this.correctedQuery = correctedQuery;
+        if (start) {
+            startBasicRequest();
+        }
+    }
+
+    /**
+     * Starts the basic request, if not already done.
+     */
+    protected final synchronized void startBasicRequest() {
+        if (basicStarted) {
+            return;
+        }
+        basicStarted = true;
         if (Ipv4Utils.isDnsjavaAvailable() && this.correctedQuery != null && this.correctedQuery.length() > 0) {
-            Ipv4Utils.getThreadPool().execute(new BasicResolver(this.correctedQuery, basicResult));
+            Ipv4Utils.getExecutor().execute(new BasicResolver(this.correctedQuery, basicResult));
         } else {
             basicResult.setBasicDone(true);
             if (!Ipv4Utils.isDnsjavaAvailable()) {
@@ -127,39 +166,29 @@ public class BasicInfo implements Serializable {
      * @return Resulting string.
      */
     private String getBasicResult(final EBasicOption requestOption) {
-        while (!basicResult.isBasicDone()) {
-            try {
-                Thread.sleep(Ipv4Utils.CONST_20);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-                return null;
-            }
+        if (!awaitBasicDone()) {
+            return null;
         }
         if (requestOption == null) {
             return null;
         }
         switch (requestOption) {
         case NETMASK:
-            return basicResult.isResolvable() ? (basicResult.isSubnet() ? Ipv4Utils.formatToIp(Ipv4Utils.intToShortList(basicResult.getIntNetmask()),
-                    false) : null) : null;
+            return basicResult.isResolvable() ? (basicResult.isSubnet() ? Ipv4Utils.intToIp(basicResult.getIntNetmask()) : null) : null;
         case ADDRESS:
-            return basicResult.isResolvable() ? Ipv4Utils.formatToIp(Ipv4Utils.intToShortList(basicResult.getIntAddress()), false) : null;
+            return basicResult.isResolvable() ? Ipv4Utils.intToIp(basicResult.getIntAddress()) : null;
         case NETWORK:
-            return basicResult.isResolvable() ? (basicResult.isSubnet() ? Ipv4Utils.formatToIp(Ipv4Utils.intToShortList(basicResult.getIntNetwork()),
-                    false) : null) : null;
+            return basicResult.isResolvable() ? (basicResult.isSubnet() ? Ipv4Utils.intToIp(basicResult.getIntNetwork()) : null) : null;
         case BROADCAST:
-            return basicResult.isResolvable() ? (basicResult.isSubnet() ? Ipv4Utils.formatToIp(Ipv4Utils.intToShortList(basicResult.getIntBroadcast()),
-                    false) : null) : null;
+            return basicResult.isResolvable() ? (basicResult.isSubnet() ? Ipv4Utils.intToIp(basicResult.getIntBroadcast()) : null) : null;
         case LOW_ADDRESS:
-            return basicResult.isResolvable() ? (basicResult.isSubnet() ? Ipv4Utils.formatToIp(Ipv4Utils.intToShortList(getIntLowAddress()), false)
-                    : null) : null;
+            return basicResult.isResolvable() ? (basicResult.isSubnet() ? Ipv4Utils.intToIp(getIntLowAddress()) : null) : null;
         case HIGH_ADDRESS:
-            return basicResult.isResolvable() ? (basicResult.isSubnet() ? Ipv4Utils.formatToIp(Ipv4Utils.intToShortList(getIntHighAddress()), false)
-                    : null) : null;
+            return basicResult.isResolvable() ? (basicResult.isSubnet() ? Ipv4Utils.intToIp(getIntHighAddress()) : null) : null;
         case CIDR:
-            return basicResult.isResolvable() ? isSubnet() ? Ipv4Utils.toCidrAddress(Ipv4Utils.formatToIp(Ipv4Utils.intToShortList(
-                    basicResult.getIntAddress()), false), Ipv4Utils.formatToIp(Ipv4Utils.intToShortList(basicResult.getIntNetmask()), false))
-                    : Ipv4Utils.formatToIp(Ipv4Utils.intToShortList(basicResult.getIntAddress()), false) + "/" + (Ipv4Utils.CONST_30 + 1) : null;
+            return basicResult.isResolvable() ? Ipv4Utils.appendIp(new StringBuilder(Ipv4Utils.MAX_CIDR_LENGTH), basicResult.getIntAddress())
+                    .append('/').append(isSubnet() ? Ipv4Utils.countBits(basicResult.getIntNetmask()) : Ipv4Utils.CONST_30 + 1)
+                    .toString() : null;
         default:
             return null;
         }
@@ -369,21 +398,138 @@ public class BasicInfo implements Serializable {
     /**
      * Returns a list of usable IP-Addresses.
      *
+     * The list is created on the first call and kept by this object (but not serialized). Beware of large subnets:
+     * for a /8 the list holds about 16M Strings (more than 1 GB of heap) as long as this object lives, so for large subnets
+     * getUsableAddressList(), getUsableAddressIterator() or getUsableAddressStream() should be used instead.
+     *
      * @return List of usable IP-Addresses.
      */
     public final Collection<String> getUsableAddresses() {
-        if (usableAddresses != null) {
+        final List<String> result = usableAddresses;
+        if (result != null) {
+            return result;
+        }
+        // Wait for the basic request before taking the lock, as startBasicRequest() uses the same lock.
+        final boolean subnet = isSubnet();
+        synchronized (this) {
+            if (usableAddresses == null) {
+                final List<String> addresses = new ArrayList<String>(subnet ? Math.max(0, getUsableAddressCount()) : 1);
+                if (subnet) {
+                    for (final PrimitiveIterator.OfInt iterator = getUsableAddressIterator(); iterator.hasNext();) {
+                        addresses.add(Ipv4Utils.intToIp(iterator.nextInt()));
+                    }
+                } else {
+                    addresses.add(getAddress());
+                }
+                usableAddresses = Collections.synchronizedList(addresses);
+            }
             return usableAddresses;
         }
-        usableAddresses = Collections.synchronizedList(new ArrayList<String>());
-        if (isSubnet()) {
-            for (int subIp = (getIntNetwork() + 1); subIp <= (getIntBroadcast() - 1); ++subIp) {
-                usableAddresses.add(Ipv4Utils.formatToIp(Ipv4Utils.intToShortList(subIp), false));
+    }
+
+    /**
+     * Returns a list of usable IP-Addresses, that formats the IP-Addresses on demand.
+     *
+     * Unlike getUsableAddresses(), the list doesn't hold any Strings and isn't kept by this object. It is unmodifiable
+     * and it is empty for an unresolvable query (instead of holding a {@code NULL} address).
+     *
+     * @return Unmodifiable list of usable IP-Addresses.
+     */
+    public final List<String> getUsableAddressList() {
+        final int first = getFirstUsableAddress();
+        final int count = getUsableAddressCount();
+        return new AbstractList<String>() {
+
+            @Override
+            public String get(final int index) {
+                if (index < 0 || index >= count) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+                }
+                return Ipv4Utils.intToIp(first + index);
             }
-        } else {
-            usableAddresses.add(getAddress());
+
+            @Override
+            public int size() {
+                return count;
+            }
+
+        };
+    }
+
+    /**
+     * Returns a spliterator over the usable IP-Addresses as int values.
+     *
+     * @return Spliterator over the usable IP-Addresses.
+     */
+    public final Spliterator.OfInt getUsableAddressSpliterator() {
+        return new AddressSpliterator(getFirstUsableAddress(), getUsableAddressCount());
+    }
+
+    /**
+     * Returns an iterator over the usable IP-Addresses as int values.
+     *
+     * @return Iterator over the usable IP-Addresses.
+     */
+    public final PrimitiveIterator.OfInt getUsableAddressIterator() {
+        return Spliterators.iterator(getUsableAddressSpliterator());
+    }
+
+    /**
+     * Returns a stream of the usable IP-Addresses as int values.
+     *
+     * @param parallel {@code true} for a parallel stream, otherwise {@code false}.
+     * @return Stream of the usable IP-Addresses.
+     */
+    public final IntStream getUsableAddressStream(final boolean parallel) {
+        return StreamSupport.intStream(getUsableAddressSpliterator(), parallel);
+    }
+
+    /**
+     * Returns an iterator over consecutive chunks of the usable IP-Addresses. Each chunk is a spliterator over at most
+     * chunkSize IP-Addresses, so a large subnet can be processed (and scheduled) piece by piece.
+     *
+     * @param chunkSize Maximum number of IP-Addresses of a chunk (&gt; 0).
+     * @return Iterator over the chunks of the usable IP-Addresses.
+     */
+    public final Iterator<Spliterator.OfInt> getUsableAddressChunks(final int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
         }
-        return usableAddresses;
+        final int first = getFirstUsableAddress();
+        final long count = getUsableAddressCount();
+        return new Iterator<Spliterator.OfInt>() {
+
+            /**
+             * Number of IP-Addresses in the previous chunks.
+             */
+            private long offset;
+
+            @Override
+            public boolean hasNext() {
+                return offset < count;
+            }
+
+            @Override
+            public Spliterator.OfInt next() {
+                if (offset >= count) {
+                    throw new NoSuchElementException();
+                }
+                final long size = Math.min(chunkSize, count - offset);
+                final Spliterator.OfInt chunk = new AddressSpliterator(first + (int) offset, size);
+                offset += size;
+                return chunk;
+            }
+
+        };
+    }
+
+    /**
+     * Returns the first usable IP-Address as int (the IP-Address itself, if the query isn't a subnet).
+     *
+     * @return First usable IP-Address as int.
+     */
+    private int getFirstUsableAddress() {
+        return isSubnet() ? getIntNetwork() + 1 : getIntAddress();
     }
 
     /**
@@ -426,6 +572,27 @@ public class BasicInfo implements Serializable {
         return basicResult.isResolvable();
     }
 
+    /**
+     * Returns the Future that will be completed as soon as the basic request is done.
+     *
+     * @return Future of the basic request.
+     */
+    public final CompletableFuture<BasicResult> getBasicFuture() {
+        return basicResult.getBasicFuture();
+    }
+
+    /**
+     * Blocks until the basic request is done.
+     *
+     * @return {@code TRUE} if the basic request is done, {@code FALSE} if the waiting thread was interrupted.
+     */
+    public final boolean awaitBasicDone() {
+        if (basicResult.isBasicDone()) {
+            return true;
+        }
+        return Ipv4Utils.awaitCompletion(basicResult.getBasicFuture());
+    }
+
     /**
      * Is the init procedure done?
      *
@@ -16,7 +16,12 @@
 
 package de.jdevelopers.ipv4info.objects;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import de.jdevelopers.ipv4info.enums.EDnsOption;
 import de.jdevelopers.ipv4info.enums.EMxOption;
@@ -24,6 +29,7 @@ import de.jdevelopers.ipv4info.resolvers.MxResolver;
 import de.jdevelopers.ipv4info.resolvers.RdnsResolver;
 import de.jdevelopers.ipv4info.resolvers.TxtResolver;
 import de.jdevelopers.ipv4info.utils.Ipv4Utils;
+import de.jdevelopers.ipv4info.utils.StageScheduler;
 
 /**
  * Object that holds all the informations for a given IP/Subnet/Hostname.
@@ -38,6 +44,36 @@ public class IpInfo extends BasicInfo implements Comparable<IpInfo>, Serializabl
      */
     private static final long serialVersionUID = -1771327865767732883L;
 
+    /**
+     * Request types that are resolved in addition to the basic request.
+     */
+    private static final EDnsOption[] ADDITIONAL_OPTIONS = new EDnsOption[] {EDnsOption.MX, EDnsOption.RDNS, EDnsOption.TXT};
+
+    /**
+     * Estimated memory usage of an IpInfo-Object without any additional results in bytes.
+     */
+    private static final int ESTIMATED_BASE_SIZE = 1024;
+
+    /**
+     * Estimated memory usage of a MX priority with its results in bytes.
+     */
+    private static final int ESTIMATED_MX_SIZE = 512;
+
+    /**
+     * Estimated memory usage of a RDNS result in bytes.
+     */
+    private static final int ESTIMATED_RDNS_SIZE = 192;
+
+    /**
+     * Estimated memory usage of a TXT entry in bytes.
+     */
+    private static final int ESTIMATED_TXT_SIZE = 256;
+
+    /**
+     * Size of a char in bytes.
+     */
+    private static final int CHAR_SIZE = 2;
+
     /*
      * Running states. Declared as transient to exclude from serialization.
      */
@@ -45,22 +81,28 @@ public class IpInfo extends BasicInfo implements Comparable<IpInfo>, Serializabl
     /**
      * Is there a MX runner in progress?
      */
-    private transient boolean mxRunning;
+    private transient volatile boolean mxRunning;
 
     /**
      * Finish status of the MX request (including retry).
      */
-    private transient boolean isMxDone;
+    private transient volatile boolean isMxDone;
 
     /**
      * Is there a RDNS runner in progress?
      */
-    private transient boolean rdnsRunning;
+    private transient volatile boolean rdnsRunning;
 
     /**
      * Is there a TXT runner in progress?
      */
-    private transient boolean txtRunning;
+    private transient volatile boolean txtRunning;
+
+    /**
+     * Pending completion signals of the MX, RDNS and TXT requests.
+     * A Future is removed and completed as soon as the belonging request is done.
+     */
+    private transient Map<EDnsOption, CompletableFuture<IpInfo>> pendingFutures;
 
     /**
      * IpInfoOptions-Object.
@@ -70,7 +112,12 @@ public class IpInfo extends BasicInfo implements Comparable<IpInfo>, Serializabl
     /**
      * When was this object was last accessed?
      */
-    private long lastAccessed;
+    private volatile long lastAccessed = System.currentTimeMillis();
+
+    /**
+     * When was this object created (i.e. when was the query resolved)?
+     */
+    private final long created = System.currentTimeMillis();
 
     /**
      * MXInfo Result.
@@ -105,9 +152,33 @@ public class IpInfo extends BasicInfo implements Comparable<IpInfo>, Serializabl
      * @param ipInfoOptions IpInfoOptions-Object.
      */
     public IpInfo(final String query, final IpInfoOptions ipInfoOptions) {
-        super(query, ipInfoOptions.getQuery());
+        this(query, ipInfoOptions, true);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param query Query string.
+     * @param ipInfoOptions IpInfoOptions-Object.
+     * @param start Start the requests? If {@code FALSE}, they have to be started by start().
+     */
+    public IpInfo(final String query, final IpInfoOptions ipInfoOptions, final boolean start) {
+        super(query, ipInfoOptions.getQuery(), false);
         this.ipInfoOptions = ipInfoOptions;
-        resolveMissingResults(ipInfoOptions);
+        if (start) {
+            start();
+        }
+    }
+
+    /**
+     * Starts the requests of an object that was created without starting them. Calling it again has no effect
+     * on the basic request and just resolves the missing results.
+     */
+    public final void start() {
+        startBasicRequest();
+        synchronized (ipInfoOptions) {
+            resolveMissingResults(ipInfoOptions);
+        }
     }
 
     /**
@@ -125,10 +196,8 @@ public class IpInfo extends BasicInfo implements Comparable<IpInfo>, Serializabl
             return;
         }
         /*
-         * The order of the tasks is arbitrary. But the order below is optimized for speed, because some results
-         * depends on others. If the depended task is started some milliseconds earlier it can reduce the waittime.
-         * So the overall speed could be a little bit better. For just one ore two requests it makes no real
-         * difference, but if if you make dozens or hundreds of parallel requests it can summarize to remarkable values...
+         * All of the following tasks depend on the result of the basic request. So they are not submitted to the
+         * ThreadPool until the basic request is done. This way no pool thread is blocked by waiting for another task.
          */
         // Check for the need to run a MX task.
         if (ipInfoOptions.isResolveMx()) {
@@ -140,8 +209,12 @@ public class IpInfo extends BasicInfo implements Comparable<IpInfo>, Serializabl
                 setRunning(false, EDnsOption.MX);
                 setMxDone(true);
             } else if (!isRunning(EDnsOption.MX) && !isMxDone()) {
+                setRunning(true, EDnsOption.MX);
                 anyResolveActionPerformed = true;
-                Ipv4Utils.getThreadPool().execute(new MxResolver(this, false));
+                StageScheduler.submitAfterBasic(this, new MxResolver(this, false), () -> {
+                    setRunning(false, EDnsOption.MX);
+                    setMxDone(true);
+                });
             }
         } else {
             setRunning(false, EDnsOption.MX);
@@ -154,7 +227,7 @@ public class IpInfo extends BasicInfo implements Comparable<IpInfo>, Serializabl
             }
             setRunning(true, EDnsOption.RDNS);
             anyResolveActionPerformed = true;
-            Ipv4Utils.getThreadPool().execute(new RdnsResolver(this));
+            StageScheduler.submitAfterBasic(this, new RdnsResolver(this), () -> setRunning(false, EDnsOption.RDNS));
         }
         // Check for the need to run a TXT task.
         if (!isRunning(EDnsOption.TXT) && ipInfoOptions.isResolveTxt()) {
@@ -163,7 +236,7 @@ public class IpInfo extends BasicInfo implements Comparable<IpInfo>, Serializabl
             }
             setRunning(true, EDnsOption.TXT);
             anyResolveActionPerformed = true;
-            Ipv4Utils.getThreadPool().execute(new TxtResolver(this));
+            StageScheduler.submitAfterBasic(this, new TxtResolver(this), () -> setRunning(false, EDnsOption.TXT));
         }
         //Additional Tasks...?!
     }
@@ -183,13 +256,7 @@ public class IpInfo extends BasicInfo implements Comparable<IpInfo>, Serializabl
             ipInfoOptions.setResolveMx(true, EMxOption.getDefaultOptions(false));
             setMxDone(false);
             resolveMissingResults(ipInfoOptions);
-            while (!isMxDone()) {
-                try {
-                    Thread.sleep(Ipv4Utils.CONST_20);
-                } catch (InterruptedException ie) {
-                    break;
-                }
-            }
+            awaitDone(EDnsOption.MX);
         }
         return mxInfo;
     }
@@ -203,13 +270,7 @@ public class IpInfo extends BasicInfo implements Comparable<IpInfo>, Serializabl
         if (!ipInfoOptions.isResolveRdns()) {
             ipInfoOptions.setResolveRdns(true);
             resolveMissingResults(ipInfoOptions);
-            while (isRunning(EDnsOption.RDNS)) {
-                try {
-                    Thread.sleep(Ipv4Utils.CONST_20);
-                } catch (InterruptedException ie) {
-                    break;
-                }
-            }
+            awaitDone(EDnsOption.RDNS);
         }
         return rdnsInfo;
     }
@@ -223,13 +284,7 @@ public class IpInfo extends BasicInfo implements Comparable<IpInfo>, Serializabl
         if (!ipInfoOptions.isResolveTxt()) {
             ipInfoOptions.setResolveTxt(true);
             resolveMissingResults(ipInfoOptions);
-            while (isRunning(EDnsOption.TXT)) {
-                try {
-                    Thread.sleep(Ipv4Utils.CONST_20);
-                } catch (InterruptedException ie) {
-                    break;
-                }
-            }
+            awaitDone(EDnsOption.TXT);
         }
         return txtInfo;
     }
@@ -241,11 +296,18 @@ public class IpInfo extends BasicInfo implements Comparable<IpInfo>, Serializabl
      * @param option EDnsOption request tpye.
      */
     public final void setRunning(final boolean status, final EDnsOption option) {
-        switch (option) {
-        case MX: mxRunning = status; break;
-        case RDNS: rdnsRunning = status; break;
-        case TXT: txtRunning = status; break;
-        default: break;
+        final CompletableFuture<IpInfo> doneFuture;
+        synchronized (this) {
+            switch (option) {
+            case MX: mxRunning = status; break;
+            case RDNS: rdnsRunning = status; break;
+            case TXT: txtRunning = status; break;
+            default: break;
+            }
+            doneFuture = updatePendingFuture(option);
+        }
+        if (doneFuture != null) {
+            doneFuture.complete(this);
         }
     }
 
@@ -275,16 +337,139 @@ public class IpInfo extends BasicInfo implements Comparable<IpInfo>, Serializabl
      * @param isMxDone Sets the value of isMxDone.
      */
     public final void setMxDone(final boolean isMxDone) {
-        if (ipInfoOptions.getMxOptionList().contains(EMxOption.RETRY)) {
-            if (isRetryResolve()) {
-                this.isMxDone = false;
-                Ipv4Utils.getRecheckThreadPool().execute(new MxResolver(this, true));
+        final CompletableFuture<IpInfo> doneFuture;
+        synchronized (this) {
+            if (ipInfoOptions.getMxOptionList().contains(EMxOption.RETRY)) {
+                if (isRetryResolve()) {
+                    this.isMxDone = false;
+                    Ipv4Utils.getRecheckThreadPool().execute(new MxResolver(this, true));
+                } else {
+                    this.isMxDone = isMxDone;
+                }
             } else {
                 this.isMxDone = isMxDone;
             }
-        } else {
-            this.isMxDone = isMxDone;
+            doneFuture = updatePendingFuture(EDnsOption.MX);
+        }
+        if (doneFuture != null) {
+            doneFuture.complete(this);
+        }
+    }
+
+    /**
+     * Returns the finish status of the given request type.
+     *
+     * @param option EDnsOption request type.
+     * @return {@code TRUE} if the request is finished (or was never started), otherwise {@code FALSE}.
+     */
+    private boolean isDone(final EDnsOption option) {
+        switch (option) {
+        case BASIC: return isBasicDone();
+        case MX: return isMxDone && !mxRunning;
+        case RDNS: return !rdnsRunning;
+        case TXT: return !txtRunning;
+        default: return isRequestDone();
+        }
+    }
+
+    /**
+     * Synchronizes the pending Future of the given request type with its actual state.
+     * Must be called while holding the lock of this object.
+     *
+     * @param option EDnsOption request type.
+     * @return The Future to complete (outside of the lock), if the request is done, otherwise {@code NULL}.
+     */
+    private CompletableFuture<IpInfo> updatePendingFuture(final EDnsOption option) {
+        if (pendingFutures == null) {
+            pendingFutures = new EnumMap<EDnsOption, CompletableFuture<IpInfo>>(EDnsOption.class);
+        }
+        if (isDone(option)) {
+            return pendingFutures.remove(option);
+        }
+        if (!pendingFutures.containsKey(option)) {
+            pendingFutures.put(option, new CompletableFuture<IpInfo>());
+        }
+        return null;
+    }
+
+    /**
+     * Returns a Future that will be completed as soon as the actual request of the given type is done.
+     *
+     * @param option EDnsOption request type (MX, RDNS or TXT).
+     * @return Future of the given request type.
+     */
+    private synchronized CompletableFuture<IpInfo> getPendingFuture(final EDnsOption option) {
+        if (isDone(option)) {
+            return CompletableFuture.completedFuture(this);
+        }
+        updatePendingFuture(option);
+        return pendingFutures.get(option);
+    }
+
+    /**
+     * Returns a Future that will be completed with this object as soon as the request of the given type is done.
+     *
+     * This allows to act on a partial result, e.g. on the BASIC result (A-Record), while a slow MX verification
+     * is still in progress. If the given request type wasn't requested by the IpInfoOptions, the Future is already completed.
+     *
+     * @param option EDnsOption request type. BASIC, MX, RDNS or TXT for a single request type, ALL (or {@code NULL})
+     *               for all requests.
+     * @return Future of the given request type.
+     */
+    public final CompletableFuture<IpInfo> getFuture(final EDnsOption option) {
+        if (option == null || option == EDnsOption.ALL) {
+            return getRequestFuture();
+        }
+        if (option == EDnsOption.BASIC) {
+            return getBasicFuture().thenApply(basicResult -> this);
+        }
+        return getPendingFuture(option);
+    }
+
+    /**
+     * Returns a Future that will be completed with this object as soon as all requests are done.
+     *
+     * A request may be restarted in the meantime (e.g. a MX retry), so the states are checked again after each completion.
+     *
+     * @return Future of all requests.
+     */
+    private CompletableFuture<IpInfo> getRequestFuture() {
+        if (isRequestDone()) {
+            return CompletableFuture.completedFuture(this);
+        }
+        return CompletableFuture.allOf(getBasicFuture(), getPendingFuture(EDnsOption.MX), getPendingFuture(EDnsOption.RDNS),
+                getPendingFuture(EDnsOption.TXT)).thenCompose(ignore -> getRequestFuture());
+    }
+
+    /**
+     * Blocks until the actual request of the given type is done.
+     *
+     * @param option EDnsOption request type (MX, RDNS or TXT).
+     * @return {@code TRUE} if the request is done, {@code FALSE} if the waiting thread was interrupted.
+     */
+    private boolean awaitDone(final EDnsOption option) {
+        return Ipv4Utils.awaitCompletion(getPendingFuture(option));
+    }
+
+    /**
+     * Blocks until all running requests are done.
+     *
+     * A request may be restarted while waiting (e.g. a MX retry), so the states are checked again after each wakeup.
+     *
+     * @return {@code TRUE} if all requests are done, {@code FALSE} if the waiting thread was interrupted.
+     */
+    public final boolean awaitRequestDone() {
+        while (!isRequestDone()) {
+            if (!awaitBasicDone()) {
+                return false;
+            }
+            for (final EDnsOption option : ADDITIONAL_OPTIONS) {
+                if (!awaitDone(option)) {
+                    return false;
+                }
+            }
         }
+        return true;
     }
 
     /**
@@ -311,6 +496,15 @@ public class IpInfo extends BasicInfo implements Comparable<IpInfo>, Serializabl
         return lastAccessed;
     }
 
+    /**
+     * Returns the value of created.
+     *
+     * @return The value of created.
+     */
+    public final long getCreated() {
+        return created;
+    }
+
     /**
      * Sets the value of lastAccessed.
      *
@@ -343,6 +537,45 @@ public class IpInfo extends BasicInfo implements Comparable<IpInfo>, Serializabl
         return anyResolveActionPerformed;
     }
 
+    /**
+     * Returns a rough estimation of the memory used by this object in bytes (used by the bounded result pool).
+     *
+     * The estimation just counts the results, without walking through them, so it's cheap enough to be called on every access.
+     *
+     * @return Estimated memory usage in bytes.
+     */
+    public final long getEstimatedSize() {
+        long result = ESTIMATED_BASE_SIZE + (long) CHAR_SIZE * (getOriginalQuery().length() + getCorrectedQuery().length());
+        final MxInfo mx = mxInfo;
+        if (mx != null) {
+            result += (long) ESTIMATED_MX_SIZE * mx.getMxResult().size();
+        }
+        final RdnsInfo rdns = rdnsInfo;
+        if (rdns != null && rdns.getRdnsResult() != null) {
+            result += (long) ESTIMATED_RDNS_SIZE * rdns.getRdnsResult().size();
+        }
+        final TxtInfo txt = txtInfo;
+        if (txt != null) {
+            result += (long) ESTIMATED_TXT_SIZE * txt.getTxtResultList().size();
+        }
+        return result;
+    }
+
+    /**
+     * Restores the object after deserialization.
+     *
+     * The running states are transient. As just finished results are serialized (see CacheSnapshot), the MX request
+     * of a deserialized object is marked as done.
+     *
+     * @param in The stream to read from.
+     * @throws IOException If the object can't be read.
+     * @throws ClassNotFoundException If a class of the serialized object can't be found.
+     */
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        isMxDone = true;
+    }
+
     public final int compareTo(final IpInfo ipInfo) {
         return getCorrectedQuery().compareTo(ipInfo.getCorrectedQuery());
     }
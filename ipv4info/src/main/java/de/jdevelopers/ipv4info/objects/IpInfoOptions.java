@@ -17,6 +17,7 @@
 package de.jdevelopers.ipv4info.objects;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 
 import de.jdevelopers.ipv4info.enums.EDnsOption;
@@ -84,6 +85,22 @@ public class IpInfoOptions implements Serializable {
         this.query = query.trim();
     }
 
+    /**
+     * Copy constructor. The option lists are copied, so the copy can be changed independently.
+     *
+     * @param ipInfoOptions The IpInfoOptions-Object to copy.
+     */
+    public IpInfoOptions(final IpInfoOptions ipInfoOptions) {
+        this(ipInfoOptions.getQuery());
+        resolveRdns = ipInfoOptions.resolveRdns;
+        resolveTxt = ipInfoOptions.resolveTxt;
+        resolveMx = ipInfoOptions.resolveMx;
+        resolveScore = ipInfoOptions.resolveScore;
+        resolveWhois = ipInfoOptions.resolveWhois;
+        mxOptionList = ipInfoOptions.mxOptionList == null ? null : new ArrayList<EMxOption>(ipInfoOptions.mxOptionList);
+        whoisOptionList = ipInfoOptions.whoisOptionList == null ? null : new ArrayList<EDnsOption>(ipInfoOptions.whoisOptionList);
+    }
+
     /**
      * Returns the value of resovleRdns.
      *
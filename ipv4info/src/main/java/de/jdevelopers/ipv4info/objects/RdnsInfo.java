@@ -17,8 +17,12 @@
 package de.jdevelopers.ipv4info.objects;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 import de.jdevelopers.ipv4info.results.RdnsResult;
 import de.jdevelopers.ipv4info.utils.Ipv4Utils;
@@ -41,6 +45,16 @@ public class RdnsInfo implements Serializable {
      */
     private Map<String, RdnsResult> rdnsResults;
 
+    /**
+     * Number of RdnsResult-Objects of the RDNS sweep, that weren't kept (see Ipv4Utils.setMaxRetainedRdnsResults()).
+     */
+    private long droppedResultCount;
+
+    /**
+     * Listeners for the chunks of the RDNS sweep.
+     */
+    private transient volatile List<Consumer<List<RdnsResult>>> chunkListeners;
+
     /**
      * Reference to the resulting IpInfo-Object.
      */
@@ -82,6 +96,67 @@ public class RdnsInfo implements Serializable {
         rdnsResults.put(rdnsResult.getIp(), rdnsResult);
     }
 
+    /**
+     * Adds a chunk of RdnsResult-Objects of the RDNS sweep. The results are kept up to the maximum number of
+     * Ipv4Utils.getMaxRetainedRdnsResults(), but every chunk is passed to the chunk listeners.
+     *
+     * @param chunk RdnsResult-Objects of the chunk.
+     */
+    public final void addChunk(final List<RdnsResult> chunk) {
+        final int maxResults = Ipv4Utils.getMaxRetainedRdnsResults();
+        for (RdnsResult rdnsResult : chunk) {
+            if (rdnsResults.size() < maxResults || rdnsResults.containsKey(rdnsResult.getIp())) {
+                addToRdnsResultMap(rdnsResult);
+            } else {
+                ++droppedResultCount;
+            }
+        }
+        final List<Consumer<List<RdnsResult>>> listeners = chunkListeners;
+        if (listeners != null && !chunk.isEmpty()) {
+            final List<RdnsResult> unmodifiableChunk = Collections.unmodifiableList(chunk);
+            for (Consumer<List<RdnsResult>> listener : listeners) {
+                try {
+                    listener.accept(unmodifiableChunk);
+                } catch (RuntimeException e) {
+                    System.err.println("RDNS chunk listener failed: " + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a listener, that gets every chunk of the RDNS sweep as soon as it's resolved. The listener is called by
+     * the resolver thread, so it should return quickly.
+     *
+     * @param listener Listener for the chunks of the RDNS sweep.
+     */
+    public final synchronized void addChunkListener(final Consumer<List<RdnsResult>> listener) {
+        if (chunkListeners == null) {
+            chunkListeners = new CopyOnWriteArrayList<Consumer<List<RdnsResult>>>();
+        }
+        chunkListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener for the chunks of the RDNS sweep.
+     *
+     * @param listener Listener for the chunks of the RDNS sweep.
+     */
+    public final synchronized void removeChunkListener(final Consumer<List<RdnsResult>> listener) {
+        if (chunkListeners != null) {
+            chunkListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Returns the number of RdnsResult-Objects of the RDNS sweep, that weren't kept.
+     *
+     * @return Number of dropped RdnsResult-Objects.
+     */
+    public final long getDroppedResultCount() {
+        return droppedResultCount;
+    }
+
     /**
      * Returns the value of query.
      *
@@ -138,6 +213,9 @@ public class RdnsInfo implements Serializable {
             for (RdnsResult rdnsResult : getRdnsResult().values()) {
                 sb.append(rdnsResult);
             }
+            if (droppedResultCount > 0) {
+                sb.append(droppedResultCount).append(" further RDNS results not kept.\n");
+            }
         } else {
             sb.append("RDNS info for \"").append(query).append("\" not");
             if (!ipInfo.isResolvable()) {
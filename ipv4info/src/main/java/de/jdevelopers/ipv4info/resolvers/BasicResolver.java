@@ -17,16 +17,14 @@
 package de.jdevelopers.ipv4info.resolvers;
 
 import java.net.SocketTimeoutException;
-import java.util.regex.Matcher;
 
-import org.xbill.DNS.DClass;
-import org.xbill.DNS.Message;
-import org.xbill.DNS.Record;
 import org.xbill.DNS.Section;
 import org.xbill.DNS.Type;
 
+import de.jdevelopers.ipv4info.enums.EQueryType;
 import de.jdevelopers.ipv4info.results.BasicResult;
 import de.jdevelopers.ipv4info.utils.Ipv4Utils;
+import de.jdevelopers.ipv4info.utils.QueryScanner;
 
 /**
  * Thread for Basic IP-Lookups.
@@ -66,10 +64,12 @@ public class BasicResolver implements Runnable {
             return;
         }
         try {
-            Matcher matcher = Ipv4Utils.DOMAIN_PATTERN.matcher(query);
-            if (matcher.find()) {
+            final long scanResult = QueryScanner.scan(query);
+            final EQueryType queryType = QueryScanner.getType(scanResult);
+            long intAddress = QueryScanner.getAddress(scanResult);
+            if (queryType == EQueryType.DOMAIN) {
                 basicResult.setIsDomain(true);
-                // Change representation of query to a CIDR-Notation (Get A-Record)
+                // Get the IP-Address of the domain (A-Record)
                 try {
                     query = getARecord(query, false);
                 } catch (SocketTimeoutException ste) {
@@ -84,56 +84,43 @@ public class BasicResolver implements Runnable {
                     basicResult.setIsResolvable(false);
                     return;
                 }
-            } else {
-                if (Ipv4Utils.ADDRESS_PATTERN.matcher(query).find()) {
-                    basicResult.setIsIp(true);
-                    query += "/31";
-                } else {
-                    // Invalid IP-Address
-                    matcher = Ipv4Utils.SIMPLE_IPS_PATTERN.matcher(query);
-                    if (matcher.find()) {
-                        if (matcher.group(2) != null) {
-                            // Subnet (CIDR) notation
-                            basicResult.setIsSubnet(true);
-                            if (Integer.parseInt(matcher.group(2)) > Ipv4Utils.CONST_30 + 1) {
-                                basicResult.setIsResolvable(false);
-                                return;
-                            }
-                        } else {
-                            // Simple IP notation
-                            basicResult.setIsIp(true);
-                            basicResult.setIsResolvable(false);
-                            return;
-                        }
-                    }
+                intAddress = Ipv4Utils.parseIp(query, 0, query.length());
+                if (intAddress < 0) {
+                    basicResult.setIsResolvable(false);
+                    return;
                 }
-            }
-            // Here the query should be represented in CIDR-Notation
-            matcher = Ipv4Utils.CIDR_PATTERN.matcher(query);
-            if (!matcher.find()) {
+            } else if (queryType == EQueryType.IP || queryType == EQueryType.INVALID_IP) {
+                basicResult.setIsIp(true);
+                if (queryType == EQueryType.INVALID_IP) {
+                    // Simple IP notation
+                    basicResult.setIsResolvable(false);
+                    return;
+                }
+            } else if (queryType == EQueryType.SUBNET || queryType == EQueryType.INVALID_SUBNET) {
+                // Subnet (CIDR) notation
+                basicResult.setIsSubnet(true);
+                if (queryType == EQueryType.INVALID_SUBNET) {
+                    basicResult.setIsResolvable(false);
+                    return;
+                }
+            } else {
                 basicResult.setIsResolvable(false);
                 return;
             }
-            basicResult.setIsSubnet(!(basicResult.isDomain() || basicResult.isIp()));
-            basicResult.setIntAddress(Ipv4Utils.matchAddress(matcher));
+            basicResult.setIntAddress((int) intAddress);
             if (basicResult.isSubnet()) {
-                byte cidr = Byte.parseByte(matcher.group(Ipv4Utils.CONST_5));
+                final int cidr = QueryScanner.getPrefix(scanResult);
                 /*
-                 * cidr may not be less than 24 and not be greater than 31!
-                 * There are values less than 24 possible, but this equals to resolve the half internet, so we deny it...
+                 * The subnet is represented arithmetically (netmask, network and broadcast), so its size doesn't matter here.
+                 * Only the RDNS sweep walks the addresses, and it's done in chunks. But a prefix below the minimum
+                 * (default 8) equals to resolve a big part of the internet, so we deny it...
                  */
-                if (cidr < Ipv4Utils.CONST_20 + Ipv4Utils.CONST_4 || cidr > Ipv4Utils.CONST_30 + 1) {
+                if (cidr < Ipv4Utils.getMinimumSubnetPrefix()) {
                     basicResult.setIsResolvable(false);
                     basicResult.setInvalidSubnet(true);
                     return;
-                } else if (cidr < 0) {
-                    cidr = 0;
-                }
-                int intNetmask = 0;
-                for (byte i = 0; i < cidr; ++i) {
-                    intNetmask |= (1 << (Ipv4Utils.CONST_30 + 1) - i);
                 }
-                basicResult.setIntNetmask(intNetmask);
+                basicResult.setIntNetmask(Ipv4Utils.prefixToNetmask(cidr));
                 basicResult.setIntNetwork(basicResult.getIntAddress() & basicResult.getIntNetmask());
                 basicResult.setIntBroadcast(basicResult.getIntNetwork() | ~basicResult.getIntNetmask());
             }
@@ -147,12 +134,12 @@ public class BasicResolver implements Runnable {
      *
      * @param domain Domain.
      * @param useRecheckResolver {@code true} to use the recheckResolver from Ipv4Utils, otherwise {@code false}.
-     * @return A-Record for the given domain.
+     * @return IP-Address of the A-Record for the given domain.
      * @throws Exception Throws an Exception (normally a SocketTimeoutException).
      */
     private String getARecord(final String domain, final boolean useRecheckResolver) throws Exception {
-        return Ipv4Utils.getResolver(useRecheckResolver).send(Message.newQuery(Record.newRecord(Ipv4Utils.getNameFromString(query), Type.A, DClass.IN,
-                Ipv4Utils.DNSJAVA_TTL_TIMEOUT))).getSectionArray(Section.ANSWER)[0].rdataToString() + "/31";
+        return Ipv4Utils.sendQuery(Ipv4Utils.getNameFromString(query), Type.A, useRecheckResolver).getSectionArray(Section.ANSWER)[0]
+                .rdataToString();
     }
 
 }
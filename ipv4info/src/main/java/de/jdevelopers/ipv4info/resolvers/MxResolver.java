@@ -17,20 +17,16 @@
 package de.jdevelopers.ipv4info.resolvers;
 
 import java.io.IOException;
-import java.net.ConnectException;
-import java.net.InetSocketAddress;
 import java.net.PortUnreachableException;
-import java.net.Socket;
 import java.net.SocketTimeoutException;
-import java.net.UnknownHostException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.xbill.DNS.DClass;
 import org.xbill.DNS.MXRecord;
 import org.xbill.DNS.Message;
 import org.xbill.DNS.Record;
@@ -40,9 +36,12 @@ import org.xbill.DNS.Type;
 import de.jdevelopers.ipv4info.enums.EDnsOption;
 import de.jdevelopers.ipv4info.enums.EException;
 import de.jdevelopers.ipv4info.enums.EMxOption;
+import de.jdevelopers.ipv4info.enums.EQueryType;
+import de.jdevelopers.ipv4info.enums.ESmtpVerdict;
 import de.jdevelopers.ipv4info.objects.IpInfo;
 import de.jdevelopers.ipv4info.results.MxResult;
 import de.jdevelopers.ipv4info.utils.Ipv4Utils;
+import de.jdevelopers.ipv4info.utils.QueryScanner;
 
 /**
  * Thread for MX-Lookups.
@@ -62,11 +61,6 @@ public class MxResolver implements Runnable {
      */
     private static final Pattern INVALID_IP_PATTERN = Pattern.compile("^(?:(?:0\\.){3}|127\\.0\\.0\\.)(?:[\\d]+)");
 
-    /**
-     * Pattern for refused connections.
-     */
-    private static final Pattern REFUSED_PATTERN = Pattern.compile("refused.*?connect", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
-
     /**
      * Reference to the resulting IpInfo-Object.
      */
@@ -77,11 +71,6 @@ public class MxResolver implements Runnable {
      */
     private boolean isRetry;
 
-    /**
-     * To avoid redundant verfications in this thread, we cache already verifyed Domain/IP's.
-     */
-    private Map<String, Boolean> verifiedMap;
-
     /**
      * Skip unreachable entries?
      */
@@ -120,10 +109,6 @@ public class MxResolver implements Runnable {
         if (this.isRetry) {
             ipInfo.setRetryResolve(false);
         }
-        if (ipInfo.getIpInfoOptions().getMxOptionList().contains(EMxOption.VERIFY_DOMAIN)
-                || ipInfo.getIpInfoOptions().getMxOptionList().contains(EMxOption.VERIFY_IPS)) {
-            verifiedMap = new HashMap<String, Boolean>();
-        }
         skipUnreachable = ipInfo.getIpInfoOptions().getMxOptionList().contains(EMxOption.SKIP_UNREACHABLE);
         skipBlackhole = ipInfo.getIpInfoOptions().getMxOptionList().contains(EMxOption.SKIP_BLACKHOLES);
         skipDisabled = ipInfo.getIpInfoOptions().getMxOptionList().contains(EMxOption.SKIP_DISABLED);
@@ -137,16 +122,16 @@ public class MxResolver implements Runnable {
             ipInfo.setMxDone(true);
             return;
         }
-        if (ipInfo.isRunning(EDnsOption.MX)) {
-            return;
+        // The first request is marked as running when it's scheduled (see IpInfo.resolveMissingResults()), a retry marks itself.
+        if (isRetry) {
+            if (ipInfo.isRunning(EDnsOption.MX)) {
+                return;
+            }
+            ipInfo.setRunning(true, EDnsOption.MX);
         }
-        ipInfo.setRunning(true, EDnsOption.MX);
         ipInfo.setMxDone(false);
-        try {
-            while (!ipInfo.isBasicDone()) {
-                Thread.sleep(Ipv4Utils.CONST_20);
-            }
-        } catch (InterruptedException ie) {
+        // Normally scheduled after the basic request by the StageScheduler, so this won't block.
+        if (!ipInfo.awaitBasicDone()) {
             ipInfo.setRunning(false, EDnsOption.MX);
             ipInfo.setMxDone(true);
             return;
@@ -167,8 +152,7 @@ public class MxResolver implements Runnable {
             MxResult mxResult;
             try {
                 final long startMx = System.currentTimeMillis();
-                final Message response = Ipv4Utils.getResolver(isRetry).send(Message.newQuery(Record.newRecord(Ipv4Utils.getNameFromString(
-                        ipInfo.getCorrectedQuery()), Type.MX, DClass.IN, Ipv4Utils.DNSJAVA_TTL_TIMEOUT)));
+                final Message response = Ipv4Utils.sendQuery(Ipv4Utils.getNameFromString(ipInfo.getCorrectedQuery()), Type.MX, isRetry);
 //                System.err.println(response);
                 final String additionalData = response.sectionToString(Section.ADDITIONAL);
                 for (final Record record : response.getSectionArray(Section.ANSWER)) {
@@ -182,7 +166,7 @@ public class MxResolver implements Runnable {
                     // If the found domain doesn't fulfills the specification for a domain name or a valid IP-Address,
                     // the answer isn't correct. We can skip this record.
                     final String domain = Ipv4Utils.removeTrailingDots(mxRecord.getTarget().toString());
-                    if (!Ipv4Utils.DOMAIN_PATTERN.matcher(domain).find() && !Ipv4Utils.SIMPLE_IPS_PATTERN.matcher(domain).find()
+                    if (QueryScanner.getType(QueryScanner.scan(domain)) == EQueryType.INVALID
                             || INVALID_IP_PATTERN.matcher(domain).find()) {
 //                        System.err.println("Invalid answer for (" + ipInfo.getCorrectedQuery() + "): " + domain);
                         continue;
@@ -211,7 +195,7 @@ public class MxResolver implements Runnable {
                         if (!ipInfo.getIpInfoOptions().getMxOptionList().contains(EMxOption.VERIFY_DOMAIN)) {
                             ipInfo.getIpInfoOptions().getMxOptionList().add(EMxOption.VERIFY_DOMAIN);
                         }
-                        mxResult.setDomainReachable(isServerUsable(mxResult.getDomain(), mxResult.getSmtpPort()));
+                        mxResult.setDomainReachable(isServerUsable(mxResult, mxResult.getDomain()));
                         if (!mxResult.isDomainReachable() && skipUnreachable) {
                             continue;
                         }
@@ -228,17 +212,11 @@ public class MxResolver implements Runnable {
                                 }
                                 if (additionalData != null && additionalData.length() > 0) {
                                     mxResult.addToMxIps(getMxIpsFromSectionData(additionalData, mxResult));
-                                    if (!mxResult.hasMxIps()) {
-                                        // No valid IP's in Section.ADDITIONAL found? Then we have to to a DNS request...
-                                        mxResult.addToMxIps(getMxIpsFromSectionData(Ipv4Utils.getResolver(isRetry)
-                                                .send(Message.newQuery(Record.newRecord(Ipv4Utils.getNameFromString(mxResult.getDomain()), Type.A, DClass.IN,
-                                                        Ipv4Utils.DNSJAVA_TTL_TIMEOUT))).sectionToString(Section.ANSWER), mxResult));
-                                    }
-                                } else {
-                                    // No additional data found? Then we have to do a DNS request...
-                                    mxResult.addToMxIps(getMxIpsFromSectionData(Ipv4Utils.getResolver(isRetry)
-                                            .send(Message.newQuery(Record.newRecord(Ipv4Utils.getNameFromString(mxResult.getDomain()), Type.A, DClass.IN,
-                                                    Ipv4Utils.DNSJAVA_TTL_TIMEOUT))).sectionToString(Section.ANSWER), mxResult));
+                                }
+                                if (!mxResult.hasMxIps()) {
+                                    // No (valid) IP's in Section.ADDITIONAL found? Then we ask the MX host registry...
+                                    mxResult.addToMxIps(getMxIps(Ipv4Utils.MX_HOST_REGISTRY.getAddresses(mxResult.getDomain(),
+                                            mxResult.getTTL(), isRetry), mxResult));
                                 }
                             }
                         } catch (SocketTimeoutException se) {
@@ -255,7 +233,7 @@ public class MxResolver implements Runnable {
                             ipInfo.getIpInfoOptions());
 //                    System.err.println("Doing MX ROOT check for: " + ipInfo.getCorrectedQuery());
                     mxResult.setRequestStart(System.currentTimeMillis());
-                    if (isServerUsable(ipInfo.getCorrectedQuery(), Ipv4Utils.SMTP_PORT)) {
+                    if (isServerUsable(mxResult, ipInfo.getCorrectedQuery())) {
                         mxResult.setRequestEnd(System.currentTimeMillis());
                         mxResult.setDomainReachable(true);
                         ipInfo.getMxInfo().addToMxResultMap(mxResult);
@@ -291,10 +269,6 @@ public class MxResolver implements Runnable {
                 ipInfo.setRetryResolve((!ipInfo.isRetryResolve() && !isRetry));
             } catch (Throwable t) {
                 t.printStackTrace();
-            } finally {
-                if (verifiedMap != null) {
-                    verifiedMap.clear();
-                }
             }
         }
         ipInfo.setRunning(false, EDnsOption.MX);
@@ -304,44 +278,23 @@ public class MxResolver implements Runnable {
     /**
      * Checks a given Domain/IP can be connected to.
      *
-     * @param server Domain/IP.
-     * @param port Port.
+     * The result of the check is cached (see Ipv4Utils.SMTP_VERDICT_CACHE), so a server is not connected again
+     * by every query that refers to it.
+     *
+     * @param mxResult MxResult-Object of the MX host.
+     * @param server Domain/IP of the MX host.
      * @return {@code TRUE} if the connection was successfull, otherwise {@code FALSE}.
      */
-    private boolean isServerUsable(final String server, final int port) {
-        if (server == null || server.length() < Ipv4Utils.CONST_4) {
-            return false;
-        }
-        Socket so = null;
-        try {
-            so = new Socket();
-            so.setSoTimeout((int) TimeUnit.SECONDS.toMillis(Ipv4Utils.CONST_3));
-            so.connect(new InetSocketAddress(server, port), (int) TimeUnit.SECONDS.toMillis(Ipv4Utils.CONST_2));
-            return so.isConnected();
-        } catch (ConnectException ce) {
+    private boolean isServerUsable(final MxResult mxResult, final String server) {
+        final ESmtpVerdict verdict = Ipv4Utils.SMTP_VERDICT_CACHE.getVerdict(server, mxResult.getSmtpPort());
+        if (verdict == ESmtpVerdict.REFUSED) {
             /*
-             *  If the exception message contains "refused", the server is alive, but won't talk to me right now.
+             *  The server is alive, but won't talk to me right now.
              *  As the server is theoratically usable, the result depends on the EMxOption.SKIP_REFUSED option...
              */
-            if (REFUSED_PATTERN.matcher(ce.getMessage()).find()) {
-                return !ipInfo.getIpInfoOptions().getMxOptionList().contains(EMxOption.SKIP_REFUSED);
-            }
-        } catch (SocketTimeoutException ste) {
-            // Server not reachable in the given timeout of 2 sec. for connect and 3 sec. for a response,
-            // so we declare it as unusable..
-        } catch (UnknownHostException uhe) {
-            // Server doesn't exist, so it's unusable..
-        } catch (Throwable t) {
-            t.printStackTrace();
-        } finally {
-            try {
-              if (so != null) {
-                  so.close();
-              }
-            } catch (Exception ignore) {
-            }
+            return !ipInfo.getIpInfoOptions().getMxOptionList().contains(EMxOption.SKIP_REFUSED);
         }
-        return false;
+        return verdict == ESmtpVerdict.REACHABLE;
     }
 
     /**
@@ -354,31 +307,38 @@ public class MxResolver implements Runnable {
     private Map<String, Boolean> getMxIpsFromSectionData(final String sectionData, final MxResult mxResult) {
 //        System.err.println("sectionData: " + sectionData);
         final Matcher matcher = Pattern.compile(String.format(Ipv4Utils.VARIABLE_MX_DOMAIN_IPS, mxResult.getDomain())).matcher(sectionData);
-        if (matcher.find()) {
-            matcher.reset();
-            final Map<String, Boolean> result = new TreeMap<String, Boolean>();
-            while (matcher.find()) {
-                if (!ipInfo.getIpInfoOptions().getMxOptionList().contains(EMxOption.VERIFY_IPS)) {
-                    result.put(matcher.group(1), false);
-                } else {
-                    if (mxResult.isBlackholeSuspect()) {
-                        // Don't check entries under blackhole suspicion
-                        verifiedMap.put(matcher.group(1), false);
-                    } else {
-                        final Boolean verified = verifiedMap.get(matcher.group(1));
-                        if (verified == null) {
-                            verifiedMap.put(matcher.group(1), isServerUsable(matcher.group(1), mxResult.getSmtpPort()));
-                        }
-                    }
-                    if (!verifiedMap.get(matcher.group(1)) && (skipUnreachable || skipBlackhole)) {
-                        continue;
-                    }
-                    result.put(matcher.group(1), verifiedMap.get(matcher.group(1)));
-                }
+        final List<String> ips = new ArrayList<String>();
+        while (matcher.find()) {
+            ips.add(matcher.group(1));
+        }
+        return getMxIps(ips, mxResult);
+    }
+
+    /**
+     * Returns a set of IP's for the given MX domain, verified if requested by the EMxOption.VERIFY_IPS option.
+     *
+     * @param ips IP's of the MX domain.
+     * @param mxResult MxResult-Object.
+     * @return Set of IP's for the given MX domain.
+     */
+    private Map<String, Boolean> getMxIps(final List<String> ips, final MxResult mxResult) {
+        if (ips.isEmpty()) {
+            return null;
+        }
+        final Map<String, Boolean> result = new TreeMap<String, Boolean>();
+        for (final String ip : ips) {
+            if (!ipInfo.getIpInfoOptions().getMxOptionList().contains(EMxOption.VERIFY_IPS)) {
+                result.put(ip, false);
+                continue;
+            }
+            // Don't check entries under blackhole suspicion
+            final boolean verified = !mxResult.isBlackholeSuspect() && isServerUsable(mxResult, ip);
+            if (!verified && (skipUnreachable || skipBlackhole)) {
+                continue;
             }
-            return result;
+            result.put(ip, verified);
         }
-        return null;
+        return result;
     }
 
 }
@@ -17,9 +17,14 @@
 package de.jdevelopers.ipv4info.resolvers;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.RejectedExecutionException;
 
-import org.xbill.DNS.DClass;
-import org.xbill.DNS.Message;
 import org.xbill.DNS.Record;
 import org.xbill.DNS.ReverseMap;
 import org.xbill.DNS.Section;
@@ -33,6 +38,10 @@ import de.jdevelopers.ipv4info.utils.Ipv4Utils;
 /**
  * Thread for RDNS-Lookups.
  *
+ * A subnet is swept in chunks (see Ipv4Utils.setRdnsChunkSize()) by a RdnsSweep, which sends the PTR queries of a chunk
+ * in parallel and passes the results to the RdnsInfo-Object as they arrive. After a chunk, the next one is scheduled
+ * as a new task on the executor.
+ *
  * @author Carsten Jäger
  *
  */
@@ -43,6 +52,16 @@ public class RdnsResolver implements Runnable {
      */
     private IpInfo ipInfo;
 
+    /**
+     * Remaining chunks of the usable IP-Addresses ({@code null} before the first chunk).
+     */
+    private Iterator<Spliterator.OfInt> chunks;
+
+    /**
+     * Sweep engine of a subnet ({@code null} before the first chunk and for a simple IP or hostname).
+     */
+    private RdnsSweep sweep;
+
     /**
      * Constructor.
      *
@@ -52,41 +71,98 @@ public class RdnsResolver implements Runnable {
         this.ipInfo = ipInfo;
     }
 
+    /**
+     * Constructor for the next chunk of a sweep.
+     *
+     * @param ipInfo Reference to resulting IpInfo-Object.
+     * @param chunks Remaining chunks of the usable IP-Addresses.
+     * @param sweep Sweep engine of the subnet.
+     */
+    private RdnsResolver(final IpInfo ipInfo, final Iterator<Spliterator.OfInt> chunks, final RdnsSweep sweep) {
+        this.ipInfo = ipInfo;
+        this.chunks = chunks;
+        this.sweep = sweep;
+    }
+
     public final void run() {
         if (ipInfo == null) {
             return;
         }
-        try {
-            while (!ipInfo.isBasicDone()) {
-                Thread.sleep(Ipv4Utils.CONST_20);
-            }
-        } catch (InterruptedException ie) {
+        // Normally scheduled after the basic request by the StageScheduler, so this won't block.
+        if (!ipInfo.awaitBasicDone()) {
             ipInfo.setRunning(false, EDnsOption.RDNS);
             return;
         }
+        boolean done = true;
         try {
-            if (ipInfo.isResolvable() && ipInfo.getUsableAddressCount() > 0) {
-                 // Increment the ThreadPool if needed...
-                //Ipv4Utils.adjustThreadPoolMaximumSize(ipInfo.getUsableAddressCount() - 1);
-                for (final String ip : ipInfo.getUsableAddresses()) {
-                    if (ipInfo.getRdnsInfo().getRdnsResult().get(ip) != null) {
-                        continue;
-                    }
-//                    System.err.println("Incoming RDNS request: " + ip);
-                    final RdnsResult rdnsResult = new RdnsResult(ip);
-                    try {
-                        rdnsResult.setRdns(Ipv4Utils.removeTrailingDots(getRdnsEntry(ip)));
-                    } catch (Exception ignore) {
-                        // IP exists, but RDNS isn't resolvable.
-                        //ignore.printStackTrace();
-                    } finally {
-                        ipInfo.getRdnsInfo().addToRdnsResultMap(rdnsResult);
+            if (chunks == null) {
+                if (!ipInfo.isResolvable() || ipInfo.getUsableAddressCount() <= 0) {
+                    return;
+                }
+                chunks = ipInfo.getUsableAddressChunks(Ipv4Utils.getRdnsChunkSize());
+                if (ipInfo.isSubnet()) {
+                    sweep = new RdnsSweep(ipInfo.getRdnsInfo(), Ipv4Utils.getRdnsSweepWindow(), Ipv4Utils.getRdnsSweepRate(),
+                            ipInfo.getUsableAddressCount() > 1);
+                }
+            }
+            if (chunks.hasNext()) {
+                resolveNextChunk();
+            }
+            if (chunks.hasNext()) {
+                // Reschedule the rest of the sweep, so other requests are served between the chunks.
+                try {
+                    Ipv4Utils.getExecutor().execute(new RdnsResolver(ipInfo, chunks, sweep));
+                    done = false;
+                } catch (RejectedExecutionException e) {
+                    // The executor doesn't take tasks anymore (e.g. while shutting down), so this thread finishes the sweep.
+                    while (chunks.hasNext() && !Thread.currentThread().isInterrupted()) {
+                        resolveNextChunk();
                     }
                 }
             }
         } finally {
-            ipInfo.setRunning(false, EDnsOption.RDNS);
+            if (done) {
+                ipInfo.setRunning(false, EDnsOption.RDNS);
+            }
+        }
+    }
+
+    /**
+     * Resolves the next chunk of IP-Addresses (by the sweep engine for a subnet).
+     */
+    private void resolveNextChunk() {
+        if (sweep != null) {
+            sweep.sweep(chunks.next());
+        } else {
+            ipInfo.getRdnsInfo().addChunk(resolveChunk(chunks.next()));
+        }
+    }
+
+    /**
+     * Resolves the RDNS-Entries of a chunk of IP-Addresses one by one, that aren't already resolved.
+     *
+     * @param chunk Chunk of IP-Addresses.
+     * @return RdnsResult-Objects of the chunk.
+     */
+    private List<RdnsResult> resolveChunk(final Spliterator.OfInt chunk) {
+        final List<RdnsResult> results = new ArrayList<RdnsResult>((int) chunk.estimateSize());
+        final PrimitiveIterator.OfInt addresses = Spliterators.iterator(chunk);
+        while (addresses.hasNext()) {
+            // Format the IP-Addresses on demand, so huge ranges are walked in constant memory.
+            final String ip = Ipv4Utils.intToIp(addresses.nextInt());
+            if (ipInfo.getRdnsInfo().getRdnsResult().get(ip) != null) {
+                continue;
+            }
+            final RdnsResult rdnsResult = new RdnsResult(ip);
+            try {
+                rdnsResult.setRdns(Ipv4Utils.removeTrailingDots(getRdnsEntry(ip)));
+            } catch (Exception ignore) {
+                // IP exists, but RDNS isn't resolvable.
+            } finally {
+                results.add(rdnsResult);
+            }
         }
+        return results;
     }
 
     /**
@@ -114,9 +190,7 @@ public class RdnsResolver implements Runnable {
          * so we have to start a dnsjava request and from ground up, we use the more tolerant Ipv4Utils.recheckResolver
          * to resolve the entry...
          */
-        final Record[] rdnsRecords = Ipv4Utils.getResolver(true)
-                .send(Message.newQuery(Record.newRecord(ReverseMap.fromAddress(ip), Type.PTR, DClass.IN, Ipv4Utils.DNSJAVA_TTL_TIMEOUT)))
-                .getSectionArray(Section.ANSWER);
+        final Record[] rdnsRecords = Ipv4Utils.sendQuery(ReverseMap.fromAddress(ip), Type.PTR, true).getSectionArray(Section.ANSWER);
         return Ipv4Utils.removeTrailingDots(rdnsRecords[rdnsRecords.length - 1].rdataToString());
     }
 
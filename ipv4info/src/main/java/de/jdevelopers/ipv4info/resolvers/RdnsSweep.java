@@ -0,0 +1,351 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info.resolvers;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+import de.jdevelopers.ipv4info.objects.RdnsInfo;
+import de.jdevelopers.ipv4info.results.RdnsResult;
+import de.jdevelopers.ipv4info.utils.Ipv4Utils;
+
+/**
+ * Sweep engine for the PTR queries of a range of IP-Addresses.
+ *
+ * The queries are sent without blocking (see Ipv4Utils.sendQueryAsync()), bounded by an in-flight window and an optional
+ * rate. The RdnsResult-Objects are passed to the RdnsInfo-Object as they arrive. Before the first query into a /24, its
+ * reverse zone (e.g. 2.1.10.in-addr.arpa.) is probed: if the zone itself doesn't exist (NXDOMAIN), no name below it
+ * exists either (RFC 8020), so the IP-Addresses of the /24 are completed without a query.
+ *
+ * Only the sweeping thread writes into the RdnsInfo-Object. The callbacks of the queries just queue their results.
+ * So a sweep always waits for the queries in flight; if the sweeping thread is interrupted, no further queries are
+ * sent and the timed out IP-Addresses are completed without a RDNS-Entry instead of being queried again.
+ *
+ * @author Carsten Jäger
+ *
+ */
+final class RdnsSweep {
+
+    /**
+     * Interval to pass the arrived results to the RdnsInfo-Object, while waiting for a free slot of the window (in msec.).
+     */
+    private static final long DRAIN_INTERVAL = Ipv4Utils.CONST_10;
+
+    /**
+     * Number of nanoseconds per second.
+     */
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The RdnsInfo-Object, that gets the results.
+     */
+    private final RdnsInfo rdnsInfo;
+
+    /**
+     * Size of the in-flight window.
+     */
+    private final int windowSize;
+
+    /**
+     * Free slots of the in-flight window.
+     */
+    private final Semaphore window;
+
+    /**
+     * Minimum interval between two queries in nanoseconds (0 = unlimited).
+     */
+    private final long sendInterval;
+
+    /**
+     * Shall the reverse zone of every /24 be probed?
+     */
+    private final boolean probeZones;
+
+    /**
+     * The results, that arrived since they were passed to the RdnsInfo-Object the last time.
+     */
+    private final Queue<RdnsResult> arrivedResults = new ConcurrentLinkedQueue<RdnsResult>();
+
+    /**
+     * The IP-Addresses, whose query timed out and that are queried again with the recheckResolver.
+     */
+    private final Queue<Integer> timedOutAddresses = new ConcurrentLinkedQueue<Integer>();
+
+    /**
+     * Is the actual sweep cancelled (the sweeping thread was interrupted)?
+     */
+    private boolean cancelled;
+
+    /**
+     * Earliest time of the next query (System.nanoTime()).
+     */
+    private long nextSendTime;
+
+    /**
+     * The /24 of the last probed reverse zone (the upper 24 bits of an IP-Address).
+     */
+    private int probedZone;
+
+    /**
+     * Was a reverse zone probed yet?
+     */
+    private boolean zoneProbed;
+
+    /**
+     * Is the last probed reverse zone missing (NXDOMAIN)?
+     */
+    private boolean zoneMissing;
+
+    /**
+     * Constructor.
+     *
+     * @param rdnsInfo The RdnsInfo-Object, that gets the results.
+     * @param windowSize Maximum number of queries in flight (&gt; 0).
+     * @param rate Maximum number of queries per second (0 = unlimited).
+     * @param probeZones {@code true} to probe the reverse zone of every /24, otherwise {@code false}.
+     */
+    RdnsSweep(final RdnsInfo rdnsInfo, final int windowSize, final int rate, final boolean probeZones) {
+        this.rdnsInfo = rdnsInfo;
+        this.windowSize = windowSize;
+        this.window = new Semaphore(windowSize);
+        this.sendInterval = rate > 0 ? NANOS_PER_SECOND / rate : 0;
+        this.probeZones = probeZones;
+    }
+
+    /**
+     * Sweeps the given IP-Addresses, that aren't already resolved, and returns after all of their results are passed
+     * to the RdnsInfo-Object. If the thread is interrupted, the sweep stops sending queries, but still waits for
+     * the results of the queries in flight (the interrupt status is restored on return).
+     *
+     * @param chunk The IP-Addresses.
+     */
+    void sweep(final Spliterator.OfInt chunk) {
+        final PrimitiveIterator.OfInt addresses = Spliterators.iterator(chunk);
+        boolean interrupted = false;
+        cancelled = false;
+        try {
+            while (addresses.hasNext()) {
+                final int address = addresses.nextInt();
+                final String ip = Ipv4Utils.intToIp(address);
+                if (rdnsInfo.getRdnsResult().get(ip) != null) {
+                    continue;
+                }
+                if (probeZones && isZoneMissing(address)) {
+                    arrivedResults.add(new RdnsResult(ip));
+                    continue;
+                }
+                while (!window.tryAcquire(DRAIN_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    drain();
+                }
+                pace();
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                send(address, false);
+                drain();
+            }
+        } catch (InterruptedException ie) {
+            interrupted = true;
+            cancelled = true;
+        } finally {
+            interrupted |= awaitInFlight();
+            drain();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Waits until the results of all queries in flight arrived and passes them to the RdnsInfo-Object meanwhile.
+     * An interrupt cancels the sweep, but doesn't stop the waiting, as the results can only be passed by this thread.
+     *
+     * @return {@code TRUE}, if the thread was interrupted while waiting, otherwise {@code FALSE}.
+     */
+    private boolean awaitInFlight() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (window.tryAcquire(windowSize, DRAIN_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException ie) {
+                interrupted = true;
+                cancelled = true;
+            }
+            drain();
+        }
+        window.release(windowSize);
+        return interrupted;
+    }
+
+    /**
+     * Sends the PTR query for an IP-Address. The slot of the window is released, when its result arrived.
+     *
+     * @param address IP-Address as int.
+     * @param useRecheckResolver Shall the recheckResolver be used?
+     */
+    private void send(final int address, final boolean useRecheckResolver) {
+        final String ip = Ipv4Utils.intToIp(address);
+        final Name name;
+        try {
+            name = Ipv4Utils.getNameFromString(Ipv4Utils.appendReverseName(new StringBuilder(), address).toString());
+        } catch (Exception e) {
+            complete(new RdnsResult(ip));
+            return;
+        }
+        Ipv4Utils.sendQueryAsync(name, Type.PTR, useRecheckResolver).whenComplete((response, failure) -> {
+            final Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            if (cause instanceof SocketTimeoutException && !useRecheckResolver) {
+                // Retry it with the recheckResolver from Ipv4Utils (sent by the sweeping thread, the slot stays taken).
+                timedOutAddresses.add(address);
+                return;
+            }
+            final RdnsResult rdnsResult = new RdnsResult(ip);
+            try {
+                if (response != null) {
+                    rdnsResult.setRdns(getPtr(response));
+                }
+            } catch (RuntimeException ignore) {
+                // IP exists, but the answer isn't usable.
+            } finally {
+                complete(rdnsResult);
+            }
+        });
+    }
+
+    /**
+     * Queues the result of a query and releases its slot of the window.
+     *
+     * @param rdnsResult The result.
+     */
+    private void complete(final RdnsResult rdnsResult) {
+        arrivedResults.add(rdnsResult);
+        window.release();
+    }
+
+    /**
+     * Passes the arrived results to the RdnsInfo-Object and queries the timed out IP-Addresses again (paced like
+     * the first queries). If the sweep is cancelled, the timed out IP-Addresses are completed without a RDNS-Entry.
+     */
+    private void drain() {
+        Integer address;
+        while ((address = timedOutAddresses.poll()) != null) {
+            if (!cancelled) {
+                pace();
+            }
+            if (cancelled || Thread.currentThread().isInterrupted()) {
+                complete(new RdnsResult(Ipv4Utils.intToIp(address)));
+            } else {
+                send(address, true);
+            }
+        }
+        List<RdnsResult> results = null;
+        RdnsResult rdnsResult;
+        while ((rdnsResult = arrivedResults.poll()) != null) {
+            if (results == null) {
+                results = new ArrayList<RdnsResult>();
+            }
+            results.add(rdnsResult);
+        }
+        if (results != null) {
+            rdnsInfo.addChunk(results);
+        }
+    }
+
+    /**
+     * Waits until the next query may be sent according to the rate. Returns early, if the thread is interrupted.
+     */
+    private void pace() {
+        if (sendInterval == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (nextSendTime == 0 || now - nextSendTime > sendInterval) {
+            // No bursts after an idle time.
+            nextSendTime = now;
+        }
+        while (nextSendTime - now > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(nextSendTime - now);
+            now = System.nanoTime();
+        }
+        nextSendTime += sendInterval;
+    }
+
+    /**
+     * Checks, if the reverse zone of the /24 of an IP-Address doesn't exist. The zone is probed once per /24
+     * (and the answer is cached by the DNS_CACHE of Ipv4Utils).
+     *
+     * @param address IP-Address as int.
+     * @return {@code TRUE}, if the reverse zone returned NXDOMAIN, otherwise {@code FALSE}.
+     */
+    private boolean isZoneMissing(final int address) {
+        final int zone = address >>> Ipv4Utils.CONST_8;
+        if (zoneProbed && zone == probedZone) {
+            return zoneMissing;
+        }
+        zoneProbed = true;
+        probedZone = zone;
+        final String reverseName = Ipv4Utils.appendReverseName(new StringBuilder(), address).toString();
+        try {
+            // Drop the label of the host, so the zone itself is queried.
+            final Name zoneName = Ipv4Utils.getNameFromString(reverseName.substring(reverseName.indexOf('.') + 1));
+            zoneMissing = Ipv4Utils.sendQuery(zoneName, Type.SOA, false).getRcode() == Rcode.NXDOMAIN;
+        } catch (Exception e) {
+            // Unknown, so the IP-Addresses are queried.
+            zoneMissing = false;
+        }
+        return zoneMissing;
+    }
+
+    /**
+     * Returns the name of the last PTR record of a response.
+     *
+     * @param response The response.
+     * @return The name without the trailing dot or {@code null}, if there is no PTR record.
+     */
+    private static String getPtr(final Message response) {
+        if (response.getRcode() != Rcode.NOERROR) {
+            return null;
+        }
+        final Record[] answers = response.getSectionArray(Section.ANSWER);
+        for (int i = answers.length - 1; i >= 0; --i) {
+            if (answers[i].getType() == Type.PTR) {
+                return Ipv4Utils.removeTrailingDots(answers[i].rdataToString());
+            }
+        }
+        return null;
+    }
+
+}
@@ -16,8 +16,6 @@
 
 package de.jdevelopers.ipv4info.resolvers;
 
-import org.xbill.DNS.DClass;
-import org.xbill.DNS.Message;
 import org.xbill.DNS.Record;
 import org.xbill.DNS.ReverseMap;
 import org.xbill.DNS.Section;
@@ -55,22 +53,16 @@ public class TxtResolver implements Runnable {
         if (ipInfo == null) {
             return;
         }
-        try {
-            while (!ipInfo.isBasicDone()) {
-                Thread.sleep(Ipv4Utils.CONST_20);
-            }
-        } catch (InterruptedException ie) {
+        // Normally scheduled after the basic request by the StageScheduler, so this won't block.
+        if (!ipInfo.awaitBasicDone()) {
             ipInfo.setRunning(false, EDnsOption.TXT);
             return;
         }
         try {
             if (ipInfo.isResolvable() && !ipInfo.isSubnet()) {
 //                System.err.println("Incoming TXT request: " + ipInfo.getCorrectedQuery());
-                for (Record record : Ipv4Utils.getResolver(false)
-                        .send(Message.newQuery(Record.newRecord(
-                                ipInfo.isDomain() ? Ipv4Utils.getNameFromString(ipInfo.getCorrectedQuery())
-                                        : ReverseMap.fromAddress(ipInfo.getCorrectedQuery()), Type.TXT, DClass.IN,
-                                        Ipv4Utils.DNSJAVA_TTL_TIMEOUT))).getSectionArray(Section.ANSWER)) {
+                for (Record record : Ipv4Utils.sendQuery(ipInfo.isDomain() ? Ipv4Utils.getNameFromString(ipInfo.getCorrectedQuery())
+                        : ReverseMap.fromAddress(ipInfo.getCorrectedQuery()), Type.TXT, false).getSectionArray(Section.ANSWER)) {
                     try {
                         ipInfo.getTxtInfo().addToTxtEntryList(((TXTRecord) record).rdataToString()/*.replaceAll("^[\"]|[\"]$", "")*/);
                     } catch (ClassCastException cce) {
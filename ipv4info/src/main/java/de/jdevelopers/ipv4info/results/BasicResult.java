@@ -17,6 +17,7 @@
 package de.jdevelopers.ipv4info.results;
 
 import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Result-Object for Basic IP-Calls.
@@ -74,13 +75,18 @@ public class BasicResult implements Cloneable, Serializable {
     /**
      * Are all the values set?
      */
-    private boolean isBasicDone;
+    private volatile boolean isBasicDone;
 
     /**
      * Was there an invalid subnet query?
      */
     private boolean invalidSubnet;
 
+    /**
+     * Completion signal of the basic request. Declared as transient to exclude from serialization.
+     */
+    private transient CompletableFuture<BasicResult> basicFuture;
+
     /**
      * @return Returns the value of intNetmask.
      */
@@ -223,6 +229,25 @@ public class BasicResult implements Cloneable, Serializable {
      */
     public final void setBasicDone(final boolean basicDone) {
         this.isBasicDone = basicDone;
+        if (basicDone) {
+            getBasicFuture().complete(this);
+        }
+    }
+
+    /**
+     * Returns the Future that will be completed as soon as all the basic values are set.
+     *
+     * @return Future of the basic request.
+     */
+    public final synchronized CompletableFuture<BasicResult> getBasicFuture() {
+        if (basicFuture == null) {
+            // Also happens after deserialization, so take over the actual state.
+            basicFuture = new CompletableFuture<BasicResult>();
+            if (isBasicDone) {
+                basicFuture.complete(this);
+            }
+        }
+        return basicFuture;
     }
 
     @Override
@@ -0,0 +1,400 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package de.jdevelopers.ipv4info.utils;
+
+import java.util.concurrent.TimeUnit;
+
+import de.jdevelopers.ipv4info.enums.ELimitChange;
+
+/**
+ * Limits the number of concurrently running DNS queries by an AIMD (additive increase, multiplicative decrease) algorithm.
+ *
+ * Every query takes a permit by acquire() and reports its outcome by release(). If all queries of a window
+ * (as many queries as the actual limit) were answered in time, the limit is increased by one.
+ * If the timeout rate exceeds MAX_TIMEOUT_RATE, the limit is decreased by a factor.
+ *
+ * The latency is judged by its gradient: a short-term average (the last ~10 queries) is compared to a long-term average
+ * (the last ~LONG_TERM_SAMPLES queries), which follows the normal latency distribution, e.g. a mix of fast cached and
+ * slow remote answers. Only if the short-term latency exceeds the long-term latency by the factor LATENCY_TOLERANCE
+ * for a whole window of queries, while the limit is actually used, the latency rises with the load and the limit is
+ * decreased by a factor (a single slow answer or a short run of them is just the normal spread of DNS latencies).
+ * A decrease is only done once per "round trip", i.e. just queries started after the last decrease can trigger the next one.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    /**
+     * Factor for decreasing the limit on timeouts.
+     */
+    private static final double TIMEOUT_BACKOFF = 0.5;
+
+    /**
+     * Factor for decreasing the limit on increasing latency.
+     */
+    private static final double LATENCY_BACKOFF = 0.9;
+
+    /**
+     * Maximum tolerated timeout rate (5%).
+     */
+    private static final double MAX_TIMEOUT_RATE = 0.05;
+
+    /**
+     * Maximum tolerated factor between the short-term and the long-term latency.
+     */
+    private static final double LATENCY_TOLERANCE = 2.0;
+
+    /**
+     * Weight of a new sample for the short-term latency and the timeout rate.
+     */
+    private static final double SMOOTHING = 0.1;
+
+    /**
+     * Number of samples, over which the long-term latency is averaged.
+     */
+    private static final int LONG_TERM_SAMPLES = 500;
+
+    /**
+     * Minimum number of samples before the limit is decreased because of the latency.
+     */
+    private static final int MIN_LATENCY_SAMPLES = 50;
+
+    /**
+     * Minimum limit.
+     */
+    private int minLimit;
+
+    /**
+     * Maximum limit.
+     */
+    private int maxLimit;
+
+    /**
+     * The actual limit.
+     */
+    private int limit;
+
+    /**
+     * Number of actually running queries.
+     */
+    private int inFlight;
+
+    /**
+     * Number of successful queries since the last change of the limit.
+     */
+    private int successCount;
+
+    /**
+     * Long-term average latency in nanoseconds.
+     */
+    private double longTermLatency = -1;
+
+    /**
+     * Short-term (smoothed) latency in nanoseconds.
+     */
+    private double smoothedLatency = -1;
+
+    /**
+     * Number of latency samples (up to LONG_TERM_SAMPLES).
+     */
+    private int latencySamples;
+
+    /**
+     * Number of consecutive queries with a short-term latency above the tolerated latency.
+     */
+    private int congestedCount;
+
+    /**
+     * Smoothed rate of timed out queries (0.0 - 1.0).
+     */
+    private double timeoutRate;
+
+    /**
+     * Point of time (System.nanoTime()) of the last decrease.
+     */
+    private long lastDecreaseTime = System.nanoTime();
+
+    /**
+     * Point of time (System.currentTimeMillis()) of the last change.
+     */
+    private long lastChangeTime = System.currentTimeMillis();
+
+    /**
+     * The reason of the last change.
+     */
+    private ELimitChange lastChangeReason = ELimitChange.INITIAL;
+
+    /**
+     * Constructor.
+     *
+     * @param initialLimit Initial limit.
+     * @param minLimit Minimum limit (min. 1).
+     * @param maxLimit Maximum limit.
+     */
+    public AdaptiveConcurrencyLimiter(final int initialLimit, final int minLimit, final int maxLimit) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    /**
+     * Blocks until a permit is available and takes it.
+     *
+     * @return Start time of the query (needed for release()).
+     * @throws InterruptedException If the waiting thread was interrupted.
+     */
+    public final synchronized long acquire() throws InterruptedException {
+        while (inFlight >= limit) {
+            wait();
+        }
+        ++inFlight;
+        return System.nanoTime();
+    }
+
+    /**
+     * Returns a permit and adjusts the limit according to the outcome of the query.
+     *
+     * @param startTime Start time of the query (returned by acquire()).
+     * @param timedOut {@code true}, if the query timed out.
+     */
+    public final void release(final long startTime, final boolean timedOut) {
+        final long now = System.nanoTime();
+        final int oldLimit;
+        final int newLimit;
+        final ELimitChange reason;
+        synchronized (this) {
+            --inFlight;
+            oldLimit = limit;
+            reason = adjust(startTime, now, timedOut);
+            newLimit = limit;
+            notifyAll();
+        }
+        if (reason != null) {
+            onLimitChanged(oldLimit, newLimit, reason);
+        }
+    }
+
+    /**
+     * Returns a permit without adjusting the limit (e.g. on errors that tell nothing about the load).
+     */
+    public final synchronized void release() {
+        --inFlight;
+        notifyAll();
+    }
+
+    /**
+     * Adjusts the limit according to the outcome of a query. Must be called with the lock held.
+     *
+     * @param startTime Start time of the query.
+     * @param now Actual time.
+     * @param timedOut {@code true}, if the query timed out.
+     * @return The reason of the change or {@code NULL} if the limit was not changed.
+     */
+    private ELimitChange adjust(final long startTime, final long now, final boolean timedOut) {
+        timeoutRate += ((timedOut ? 1 : 0) - timeoutRate) * SMOOTHING;
+        // Queries started before the last decrease reflect the old limit.
+        final boolean isRecent = startTime - lastDecreaseTime >= 0;
+        if (timedOut) {
+            successCount = 0;
+            if (isRecent && timeoutRate > MAX_TIMEOUT_RATE) {
+                return decrease(TIMEOUT_BACKOFF, ELimitChange.TIMEOUT, now);
+            }
+            return null;
+        }
+        final long latency = now - startTime;
+        if (latencySamples < LONG_TERM_SAMPLES) {
+            ++latencySamples;
+        }
+        // A plain average until LONG_TERM_SAMPLES are reached, so the first samples don't dominate.
+        longTermLatency = longTermLatency < 0 ? latency : longTermLatency + (latency - longTermLatency) / latencySamples;
+        smoothedLatency = smoothedLatency < 0 ? latency : smoothedLatency + (latency - smoothedLatency) * SMOOTHING;
+        // Is the limit actually used? Otherwise neither a rising latency nor a success tells anything about the limit.
+        final boolean isUsed = inFlight + 1 >= limit / 2;
+        if (isUsed && latencySamples >= MIN_LATENCY_SAMPLES && smoothedLatency > longTermLatency * LATENCY_TOLERANCE) {
+            successCount = 0;
+            if (++congestedCount >= limit && isRecent) {
+                congestedCount = 0;
+                return decrease(LATENCY_BACKOFF, ELimitChange.LATENCY, now);
+            }
+            return null;
+        }
+        congestedCount = 0;
+        if (isUsed && ++successCount >= limit && limit < maxLimit) {
+            ++limit;
+            successCount = 0;
+            return changed(ELimitChange.INCREASE);
+        }
+        return null;
+    }
+
+    /**
+     * Decreases the limit. Must be called with the lock held.
+     *
+     * @param factor Factor for decreasing the limit.
+     * @param reason The reason of the decrease.
+     * @param now Actual time.
+     * @return The reason of the change or {@code NULL} if the limit was not changed.
+     */
+    private ELimitChange decrease(final double factor, final ELimitChange reason, final long now) {
+        lastDecreaseTime = now;
+        final int newLimit = Math.max(minLimit, (int) (limit * factor));
+        if (newLimit == limit) {
+            return null;
+        }
+        limit = newLimit;
+        return changed(reason);
+    }
+
+    /**
+     * Records a change of the limit. Must be called with the lock held.
+     *
+     * @param reason The reason of the change.
+     * @return The reason of the change.
+     */
+    private ELimitChange changed(final ELimitChange reason) {
+        lastChangeReason = reason;
+        lastChangeTime = System.currentTimeMillis();
+        return reason;
+    }
+
+    /**
+     * Called after every change of the limit (without holding the lock). Does nothing by default.
+     *
+     * @param oldLimit The old limit.
+     * @param newLimit The new limit.
+     * @param reason The reason of the change.
+     */
+    protected void onLimitChanged(final int oldLimit, final int newLimit, final ELimitChange reason) {
+    }
+
+    /**
+     * Sets the minimum and maximum limit. The actual limit is adjusted, if it's out of the new bounds.
+     *
+     * @param minLimit Minimum limit (min. 1).
+     * @param maxLimit Maximum limit.
+     */
+    public final void setBounds(final int minLimit, final int maxLimit) {
+        final int oldLimit;
+        final int newLimit;
+        synchronized (this) {
+            this.minLimit = Math.max(1, minLimit);
+            this.maxLimit = Math.max(this.minLimit, maxLimit);
+            oldLimit = limit;
+            limit = Math.min(this.maxLimit, Math.max(this.minLimit, limit));
+            newLimit = limit;
+            if (newLimit != oldLimit) {
+                changed(ELimitChange.BOUNDS);
+            }
+            notifyAll();
+        }
+        if (newLimit != oldLimit) {
+            onLimitChanged(oldLimit, newLimit, ELimitChange.BOUNDS);
+        }
+    }
+
+    /**
+     * Returns the actual limit.
+     *
+     * @return The actual limit.
+     */
+    public final synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Returns the minimum limit.
+     *
+     * @return The minimum limit.
+     */
+    public final synchronized int getMinLimit() {
+        return minLimit;
+    }
+
+    /**
+     * Returns the maximum limit.
+     *
+     * @return The maximum limit.
+     */
+    public final synchronized int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * Returns the number of actually running queries.
+     *
+     * @return Number of actually running queries.
+     */
+    public final synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Returns the reason of the last change of the limit.
+     *
+     * @return The reason of the last change of the limit.
+     */
+    public final synchronized ELimitChange getLastChangeReason() {
+        return lastChangeReason;
+    }
+
+    /**
+     * Returns the point of time of the last change of the limit (in msec. since 1970).
+     *
+     * @return Point of time of the last change of the limit.
+     */
+    public final synchronized long getLastChangeTime() {
+        return lastChangeTime;
+    }
+
+    /**
+     * Returns the smoothed timeout rate (0.0 - 1.0).
+     *
+     * @return The smoothed timeout rate.
+     */
+    public final synchronized double getTimeoutRate() {
+        return timeoutRate;
+    }
+
+    /**
+     * Returns the smoothed latency.
+     *
+     * @param timeUnit The TimeUnit as how the latency shall be returned.
+     * @return The smoothed latency (or -1, if no query was answered yet).
+     */
+    public final synchronized long getSmoothedLatency(final TimeUnit timeUnit) {
+        return smoothedLatency < 0 ? -1 : timeUnit.convert((long) smoothedLatency, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the baseline (long-term average) latency.
+     *
+     * @param timeUnit The TimeUnit as how the latency shall be returned.
+     * @return The baseline latency (or -1, if no query was answered yet).
+     */
+    public final synchronized long getBaselineLatency(final TimeUnit timeUnit) {
+        return longTermLatency < 0 ? -1 : timeUnit.convert((long) longTermLatency, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public final synchronized String toString() {
+        return "limit=" + limit + ", inFlight=" + inFlight + ", lastChange=" + lastChangeReason + ", timeoutRate=" + timeoutRate
+                + ", latency=" + getSmoothedLatency(TimeUnit.MILLISECONDS) + "ms";
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info.utils;
+
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+
+/**
+ * Primitive, splittable view over a range of IP-Addresses (as int values).
+ *
+ * The addresses are computed on the fly, so even huge ranges can be walked (or processed in parallel) in constant
+ * memory. Use Ipv4Utils.intToIp() to format an address only when it's needed.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public final class AddressSpliterator implements Spliterator.OfInt {
+
+    /**
+     * Minimum number of addresses of a split part.
+     */
+    private static final long MIN_SPLIT_SIZE = Ipv4Utils.CONST_255 + 1;
+
+    /**
+     * Maximum number of addresses of a range (2^32).
+     */
+    private static final long MAX_COUNT = 1L << (Ipv4Utils.CONST_4 * Ipv4Utils.CONST_8);
+
+    /**
+     * Characteristics of the spliterator.
+     */
+    private static final int CHARACTERISTICS = ORDERED | DISTINCT | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+
+    /**
+     * Next address.
+     */
+    private int next;
+
+    /**
+     * Number of remaining addresses.
+     */
+    private long remaining;
+
+    /**
+     * Constructor.
+     *
+     * @param first First address of the range.
+     * @param count Number of addresses of the range (0 - 2^32).
+     */
+    public AddressSpliterator(final int first, final long count) {
+        if (count < 0 || count > MAX_COUNT) {
+            throw new IllegalArgumentException("Invalid number of addresses: " + count);
+        }
+        this.next = first;
+        this.remaining = count;
+    }
+
+    @Override
+    public boolean tryAdvance(final IntConsumer action) {
+        if (remaining <= 0) {
+            return false;
+        }
+        --remaining;
+        action.accept(next++);
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(final IntConsumer action) {
+        int address = next;
+        final long count = remaining;
+        next += (int) count;
+        remaining = 0;
+        for (long i = 0; i < count; ++i) {
+            action.accept(address++);
+        }
+    }
+
+    @Override
+    public Spliterator.OfInt trySplit() {
+        final long half = remaining >>> 1;
+        if (half < MIN_SPLIT_SIZE) {
+            return null;
+        }
+        final AddressSpliterator prefix = new AddressSpliterator(next, half);
+        next += (int) half;
+        remaining -= half;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return remaining;
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+
+}
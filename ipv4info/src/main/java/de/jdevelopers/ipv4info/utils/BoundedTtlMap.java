@@ -0,0 +1,379 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info.utils;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Size bounded map, whose entries expire at a given point of time (System.currentTimeMillis()).
+ *
+ * If the map is full, the expired entries are removed first. If it's still full, the entry that expires first is
+ * evicted, so a new entry is always added. The entries are kept in the order of their expiry, so neither case needs
+ * a scan of all entries.
+ *
+ * The lookups are lock-free, all changes are made under a lock.
+ *
+ * @author Carsten Jäger
+ *
+ * @param <K> Type of the keys.
+ * @param <V> Type of the values.
+ */
+final class BoundedTtlMap<K, V> {
+
+    /**
+     * Order of the entries: the entry that expires first is the first one.
+     */
+    private static final Comparator<Node<?, ?>> EXPIRY_ORDER = new Comparator<Node<?, ?>>() {
+
+        @Override
+        public int compare(final Node<?, ?> node1, final Node<?, ?> node2) {
+            if (node1.expires != node2.expires) {
+                return node1.expires < node2.expires ? -1 : 1;
+            }
+            return Long.compare(node1.sequence, node2.sequence);
+        }
+
+    };
+
+    /**
+     * The entries by their keys.
+     */
+    private final ConcurrentMap<K, Node<K, V>> entries = new ConcurrentHashMap<K, Node<K, V>>();
+
+    /**
+     * The entries in the order of their expiry (guarded by the lock).
+     */
+    private final TreeSet<Node<K, V>> expiryOrder = new TreeSet<Node<K, V>>(EXPIRY_ORDER);
+
+    /**
+     * Lock for all changes.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Number of valid entries evicted because of the size bound.
+     */
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Sequence number of the last added entry (guarded by the lock).
+     */
+    private long sequence;
+
+    /**
+     * Maximum number of entries.
+     */
+    private volatile int maxSize;
+
+    /**
+     * An entry of the map.
+     *
+     * @param <K> Type of the key.
+     * @param <V> Type of the value.
+     */
+    private static final class Node<K, V> {
+
+        /**
+         * The key.
+         */
+        private final K key;
+
+        /**
+         * The value.
+         */
+        private final V value;
+
+        /**
+         * Sequence number to keep entries with the same expiry apart.
+         */
+        private final long sequence;
+
+        /**
+         * Point of time (System.currentTimeMillis()) when the entry expires (just changed under the lock).
+         */
+        private volatile long expires;
+
+        /**
+         * Constructor.
+         *
+         * @param key The key.
+         * @param value The value.
+         * @param expires Point of time when the entry expires.
+         * @param sequence Sequence number.
+         */
+        Node(final K key, final V value, final long expires, final long sequence) {
+            this.key = key;
+            this.value = value;
+            this.expires = expires;
+            this.sequence = sequence;
+        }
+
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize Maximum number of entries (min. 1).
+     */
+    BoundedTtlMap(final int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    /**
+     * Returns the value of the given key, if it's not expired. An expired entry is removed.
+     *
+     * @param key The key.
+     * @param now Actual time.
+     * @return The value or {@code NULL}, if there is no valid entry.
+     */
+    V get(final K key, final long now) {
+        final Node<K, V> node = entries.get(key);
+        if (node == null) {
+            return null;
+        }
+        if (node.expires <= now) {
+            lock.lock();
+            try {
+                if (entries.remove(key, node)) {
+                    expiryOrder.remove(node);
+                }
+            } finally {
+                lock.unlock();
+            }
+            return null;
+        }
+        return node.value;
+    }
+
+    /**
+     * Adds an entry. An existing entry of the key is replaced.
+     *
+     * @param key The key.
+     * @param value The value.
+     * @param expires Point of time when the entry expires.
+     * @param now Actual time.
+     */
+    void put(final K key, final V value, final long expires, final long now) {
+        lock.lock();
+        try {
+            add(key, value, expires, now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds an entry, if there is no valid entry of the key. An expired entry of the key is replaced.
+     *
+     * @param key The key.
+     * @param value The value.
+     * @param expires Point of time when the entry expires.
+     * @param now Actual time.
+     * @return The value of the valid entry or {@code NULL}, if the entry was added.
+     */
+    V putIfAbsent(final K key, final V value, final long expires, final long now) {
+        lock.lock();
+        try {
+            final Node<K, V> node = entries.get(key);
+            if (node != null && node.expires > now) {
+                return node.value;
+            }
+            add(key, value, expires, now);
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds an entry and makes room for it (the lock must be held).
+     *
+     * @param key The key.
+     * @param value The value.
+     * @param expires Point of time when the entry expires.
+     * @param now Actual time.
+     */
+    private void add(final K key, final V value, final long expires, final long now) {
+        final Node<K, V> node = new Node<K, V>(key, value, expires, ++sequence);
+        final Node<K, V> old = entries.put(key, node);
+        if (old != null) {
+            expiryOrder.remove(old);
+        }
+        expiryOrder.add(node);
+        trim(now);
+    }
+
+    /**
+     * Removes the entries that expire first, until the map isn't larger than maxSize (the lock must be held).
+     *
+     * @param now Actual time.
+     */
+    private void trim(final long now) {
+        if (entries.size() <= maxSize) {
+            return;
+        }
+        removeExpired(now);
+        while (entries.size() > maxSize) {
+            final Node<K, V> node = expiryOrder.pollFirst();
+            entries.remove(node.key, node);
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Changes the expiry of an entry, if the key is still mapped to the given value.
+     *
+     * @param key The key.
+     * @param value The value.
+     * @param expires New point of time when the entry expires.
+     * @return {@code TRUE}, if the expiry was changed, otherwise {@code FALSE}.
+     */
+    boolean setExpires(final K key, final V value, final long expires) {
+        lock.lock();
+        try {
+            final Node<K, V> node = entries.get(key);
+            if (node == null || node.value != value) {
+                return false;
+            }
+            expiryOrder.remove(node);
+            node.expires = expires;
+            expiryOrder.add(node);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the entry of the given key.
+     *
+     * @param key The key.
+     */
+    void remove(final K key) {
+        lock.lock();
+        try {
+            final Node<K, V> node = entries.remove(key);
+            if (node != null) {
+                expiryOrder.remove(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all expired entries.
+     *
+     * @param now Actual time.
+     * @return Number of removed entries.
+     */
+    int removeExpired(final long now) {
+        lock.lock();
+        try {
+            int result = 0;
+            while (!expiryOrder.isEmpty() && expiryOrder.first().expires <= now) {
+                final Node<K, V> node = expiryOrder.pollFirst();
+                entries.remove(node.key, node);
+                ++result;
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns all valid entries.
+     *
+     * @param now Actual time.
+     * @return The valid entries.
+     */
+    List<Map.Entry<K, V>> getValidEntries(final long now) {
+        final List<Map.Entry<K, V>> result = new ArrayList<Map.Entry<K, V>>();
+        for (final Node<K, V> node : entries.values()) {
+            if (node.expires > now) {
+                result.add(new AbstractMap.SimpleImmutableEntry<K, V>(node.key, node.value));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            expiryOrder.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of entries (including the expired ones, that are not removed yet).
+     *
+     * @return Number of entries.
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of valid entries evicted because of the size bound.
+     *
+     * @return Number of evicted entries.
+     */
+    long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Returns the maximum number of entries.
+     *
+     * @return Maximum number of entries.
+     */
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the maximum number of entries. If the map is larger, the entries that expire first are removed.
+     *
+     * @param maxSize Maximum number of entries (min. 1).
+     */
+    void setMaxSize(final int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+        lock.lock();
+        try {
+            trim(System.currentTimeMillis());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -16,17 +16,15 @@
 
 package de.jdevelopers.ipv4info.utils;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.TimerTask;
-import java.util.concurrent.TimeUnit;
-
-import de.jdevelopers.ipv4info.objects.IpInfo;
 
 /**
  * TimerTask that takes care of the cache sizes to avoid to consume too much memory.
  *
  * All entries from the Ipv4Utils.RESULT_POOL map will be removed if they are not accessed for Ipv4Utils.INTERNAL_CACHE_TTL.
+ * The task runs every tick of the expiry timing wheel and just processes the results that are due (see Ipv4Utils.expireDueResults()).
+ * Expired entries are removed from the Ipv4Utils.DNS_CACHE, the Ipv4Utils.MX_HOST_REGISTRY and the Ipv4Utils.SMTP_VERDICT_CACHE
+ * every DNS_CACHE_PURGE_INTERVAL runs.
  *
  * @author Carsten Jäger
  *
@@ -34,49 +32,31 @@ import de.jdevelopers.ipv4info.objects.IpInfo;
 class CacheObserver extends TimerTask {
 
     /**
-     * Maximum lifetime of unresolved objects in Ipv4Utils.RESULT_POOL (1 hour).
+     * Maximum number of results processed in a batch.
      */
-    private static final long MAX_UNRESOLVED_TTL = TimeUnit.HOURS.toMillis(1);
+    private static final int BATCH_SIZE = 1000;
 
     /**
-     * List that holds the strings (queries/servers) to remove from the caches.
+     * Number of runs between the purges of the DNS_CACHE, the MX_HOST_REGISTRY and the SMTP_VERDICT_CACHE.
      */
-    private static final List<String> REMOVE_LIST = new ArrayList<String>();
+    private static final int DNS_CACHE_PURGE_INTERVAL = Ipv4Utils.CONST_20;
+
+    /**
+     * Number of runs.
+     */
+    private int runCount;
 
     @Override
     public final void run() {
 //        System.err.println("### Running CacheObserver!");
-        final long actualTime = System.currentTimeMillis();
-        try {
-            REMOVE_LIST.clear();
-            if (!Ipv4Utils.RESULT_POOL.isEmpty()) {
-                synchronized (Ipv4Utils.RESULT_POOL) {
-                    for (String query : Ipv4Utils.RESULT_POOL.keySet()) {
-                        final IpInfo ipInfo = Ipv4Utils.RESULT_POOL.get(query);
-                        if (!ipInfo.isAnyResolveActionPerformed()) {
-                            if (ipInfo.getLastAccessed() == 0) {
-                                ipInfo.setLastAccessed(System.currentTimeMillis());
-                            } else {
-                                // If there was no request to resolve anything for MAX_UNRESOLVED_TTL we drop this entry anyway...
-                                if ((actualTime - ipInfo.getLastAccessed()) >= MAX_UNRESOLVED_TTL) {
-                                    REMOVE_LIST.add(query);
-                                }
-                            }
-                            continue;
-                        }
-                        if ((actualTime - ipInfo.getLastAccessed()) > Ipv4Utils.getInternalCacheTTL(TimeUnit.MILLISECONDS)) {
-                            REMOVE_LIST.add(query);
-                        }
-                    }
-                    for (String query : REMOVE_LIST) {
-                        System.err.println("### Removing from RESULT_POOL because lifetime expired: " + query + " -> "
-                                + Ipv4Utils.RESULT_POOL.get(query).getLastAccessed());
-                        Ipv4Utils.RESULT_POOL.remove(query);
-                    }
-                }
-            }
-        } finally {
-            REMOVE_LIST.clear();
+        while (Ipv4Utils.expireDueResults(BATCH_SIZE) >= BATCH_SIZE) {
+            // Give other threads a chance between the batches.
+            Thread.yield();
+        }
+        if (++runCount % DNS_CACHE_PURGE_INTERVAL == 0) {
+            Ipv4Utils.DNS_CACHE.removeExpired();
+            Ipv4Utils.MX_HOST_REGISTRY.removeExpired();
+            Ipv4Utils.SMTP_VERDICT_CACHE.removeExpired();
         }
     }
 
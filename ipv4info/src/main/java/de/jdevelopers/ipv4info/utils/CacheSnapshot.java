@@ -0,0 +1,297 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package de.jdevelopers.ipv4info.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ConcurrentModificationException;
+import java.util.Map;
+
+import de.jdevelopers.ipv4info.objects.IpInfo;
+
+/**
+ * Persistent snapshot of the RESULT_POOL and the DNS answer cache for warm restarts.
+ *
+ * The snapshot is a compact binary file, which is read by memory-mapping it. All numbers are stored in big endian order:
+ * <pre>
+ * Header:      int magic ("IP4S"), short version, long creation time, int number of DNS answers, int number of results
+ * DNS answer:  byte negative, int type, int rcode, long TTL (msec), long expiry time, name (wire format),
+ *              answer, authority and additional records (short count, records in wire format with their original TTLs)
+ * Result:      long last access time, long TTL (msec), long expiry time, query (UTF-8), int length, serialized IpInfo-Object
+ * </pre>
+ * Byte arrays without an explicit length are prefixed by their length as unsigned short. All times are absolute
+ * (System.currentTimeMillis()), so entries that expired while the application was down are skipped on restoring,
+ * without parsing their records or deserializing the IpInfo-Object.
+ *
+ * Just finished results are written. A snapshot is written to a temporary file first and then moved to the target,
+ * so an existing snapshot is never left in a partially written state.
+ *
+ * As a snapshot file may have been tampered with, the IpInfo-Objects are deserialized through an allow-list
+ * (see SNAPSHOT_FILTER): just the classes of this library and of java.lang and java.util are accepted, with limits
+ * for the depth of the object graph and the length of arrays. Any other object is skipped with its result.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public final class CacheSnapshot {
+
+    /**
+     * Magic number of a snapshot file ("IP4S").
+     */
+    public static final int MAGIC = 0x49503453;
+
+    /**
+     * Version of the snapshot format.
+     */
+    public static final short VERSION = 1;
+
+    /**
+     * Filter for the deserialization of the results. Accepts just the classes of this library and of java.lang and java.util,
+     * up to a depth of 32 and an array length of 65536. Everything else is rejected.
+     */
+    static final ObjectInputFilter SNAPSHOT_FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=32;maxarray=65536;de.jdevelopers.ipv4info.**;java.util.*;java.lang.*;!*");
+
+    /**
+     * Size of the header in bytes.
+     */
+    private static final int HEADER_SIZE = Ipv4Utils.CONST_2 * Ipv4Utils.CONST_10 + Ipv4Utils.CONST_2;
+
+    /**
+     * Private constructor, as this is a utility class.
+     */
+    private CacheSnapshot() {
+        super();
+    }
+
+    /**
+     * Writes a snapshot of the RESULT_POOL and the DNS answer cache to the given file. An existing file is replaced.
+     *
+     * @param file The snapshot file.
+     * @return Number of written entries (DNS answers and results).
+     * @throws IOException If the snapshot can't be written.
+     */
+    public static int save(final File file) throws IOException {
+        final File tempFile = new File(file.getPath() + ".tmp");
+        final int dnsCount;
+        final int poolCount;
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(tempFile, "rw");
+        try {
+            randomAccessFile.setLength(0);
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(randomAccessFile.getChannel())));
+            // The counts are not known in advance, so the header is written again at the end.
+            writeHeader(out, 0, 0);
+            dnsCount = Ipv4Utils.DNS_CACHE.writeSnapshot(out);
+            poolCount = writeResultPool(out);
+            out.flush();
+            randomAccessFile.seek(0);
+            writeHeader(randomAccessFile, dnsCount, poolCount);
+        } finally {
+            randomAccessFile.close();
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return dnsCount + poolCount;
+    }
+
+    /**
+     * Restores the RESULT_POOL and the DNS answer cache from the given snapshot file.
+     *
+     * Entries that are expired, or already present, are skipped. The restored results are handled like new results,
+     * i.e. they are scheduled for expiry and recorded by the RESULT_POOL_POLICY.
+     *
+     * @param file The snapshot file (at most 2 GB).
+     * @return Number of restored entries (DNS answers and results).
+     * @throws IOException If the file can't be read or isn't a valid snapshot.
+     */
+    public static int restore(final File file) throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+                throw new IOException("Not a cache snapshot (or unsupported version): " + file);
+            }
+            // Creation time, just informational.
+            buffer.getLong();
+            final int dnsCount = buffer.getInt();
+            final int poolCount = buffer.getInt();
+            return Ipv4Utils.DNS_CACHE.readSnapshot(buffer, dnsCount) + readResultPool(buffer, poolCount);
+        } catch (final BufferUnderflowException e) {
+            throw new IOException("Truncated cache snapshot: " + file, e);
+        } catch (final IllegalArgumentException e) {
+            throw new IOException("Corrupt cache snapshot: " + file, e);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Writes the header of a snapshot.
+     *
+     * @param out The output of the snapshot.
+     * @param dnsCount Number of DNS answers.
+     * @param poolCount Number of results.
+     * @throws IOException If the header can't be written.
+     */
+    private static void writeHeader(final DataOutput out, final int dnsCount, final int poolCount) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(System.currentTimeMillis());
+        out.writeInt(dnsCount);
+        out.writeInt(poolCount);
+    }
+
+    /**
+     * Writes all finished and valid results of the RESULT_POOL.
+     *
+     * @param out The output of the snapshot.
+     * @return Number of written results.
+     * @throws IOException If the results can't be written.
+     */
+    private static int writeResultPool(final DataOutput out) throws IOException {
+        final long now = System.currentTimeMillis();
+        int result = 0;
+        for (final Map.Entry<String, IpInfo> entry : Ipv4Utils.RESULT_POOL.entrySet()) {
+            final IpInfo ipInfo = entry.getValue();
+            if (!ipInfo.isRequestDone()) {
+                continue;
+            }
+            final long lastAccessed = ipInfo.getLastAccessed();
+            final long expires = Ipv4Utils.getExpiryTime(ipInfo, Ipv4Utils.MAX_UNRESOLVED_TTL);
+            if (expires <= now) {
+                continue;
+            }
+            final byte[] serialized;
+            try {
+                serialized = serialize(ipInfo);
+            } catch (final ConcurrentModificationException e) {
+                // The result was changed while writing (e.g. by a new request with additional options).
+                System.err.println("Skipping result in cache snapshot, because it's in progress: " + entry.getKey());
+                continue;
+            }
+            out.writeLong(lastAccessed);
+            out.writeLong(expires - lastAccessed);
+            out.writeLong(expires);
+            DnsCache.writeBytes(out, entry.getKey().getBytes(StandardCharsets.UTF_8));
+            out.writeInt(serialized.length);
+            out.write(serialized);
+            ++result;
+        }
+        return result;
+    }
+
+    /**
+     * Reads the given number of results from a snapshot and adds them to the RESULT_POOL.
+     *
+     * @param buffer The (memory-mapped) snapshot, positioned at the first result.
+     * @param count Number of results to read.
+     * @return Number of restored results.
+     */
+    private static int readResultPool(final ByteBuffer buffer, final int count) {
+        final long now = System.currentTimeMillis();
+        int result = 0;
+        for (int i = 0; i < count; ++i) {
+            final long lastAccessed = buffer.getLong();
+            // TTL, just informational.
+            buffer.getLong();
+            final long expires = buffer.getLong();
+            final String query = new String(DnsCache.readBytes(buffer), StandardCharsets.UTF_8);
+            final int length = buffer.getInt();
+            if (expires <= now || Ipv4Utils.RESULT_POOL.containsKey(query)) {
+                buffer.position(buffer.position() + length);
+                continue;
+            }
+            final byte[] serialized = new byte[length];
+            buffer.get(serialized);
+            final IpInfo ipInfo;
+            try {
+                ipInfo = deserialize(serialized);
+            } catch (final Exception e) {
+                // E.g. a snapshot of an incompatible version of the IpInfo class, or a class rejected by the SNAPSHOT_FILTER.
+                System.err.println("Skipping result of cache snapshot: " + query + " (" + e + ")");
+                continue;
+            }
+            ipInfo.setLastAccessed(lastAccessed);
+            if (Ipv4Utils.RESULT_POOL.putIfAbsent(query, ipInfo) == null) {
+                Ipv4Utils.ensureCacheObserver();
+                Ipv4Utils.scheduleExpiry(query, ipInfo);
+                Ipv4Utils.RESULT_POOL_POLICY.recordInsert(query, ipInfo);
+                ++result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Serializes a result.
+     *
+     * @param ipInfo The result.
+     * @return The serialized result.
+     * @throws IOException If the result can't be serialized.
+     */
+    static byte[] serialize(final IpInfo ipInfo) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        try {
+            out.writeObject(ipInfo);
+        } finally {
+            out.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserializes a result. Just the classes accepted by the SNAPSHOT_FILTER are deserialized.
+     *
+     * @param serialized The serialized result.
+     * @return The result.
+     * @throws IOException If the result can't be deserialized (an InvalidClassException, if it was rejected by the filter).
+     * @throws ClassNotFoundException If a class of the serialized result can't be found.
+     */
+    static IpInfo deserialize(final byte[] serialized) throws IOException, ClassNotFoundException {
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized));
+        try {
+            in.setObjectInputFilter(SNAPSHOT_FILTER);
+            final Object result = in.readObject();
+            if (!(result instanceof IpInfo)) {
+                throw new InvalidClassException(result == null ? "null" : result.getClass().getName(), "Not an IpInfo-Object");
+            }
+            return (IpInfo) result;
+        } finally {
+            in.close();
+        }
+    }
+
+}
@@ -0,0 +1,704 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package de.jdevelopers.ipv4info.utils;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+
+/**
+ * Cache for DNS answers that honors the TTLs of the records.
+ *
+ * The answers are cached per question, i.e. by the name and the type of the query. An entry expires after the
+ * smallest TTL of its records, which is clamped to the configurable minimum and maximum TTL. The records of the
+ * additional section (e.g. the addresses of MX hosts) are cached with the answer, so a cached response looks like
+ * the original one.
+ *
+ * Negative answers (NXDOMAIN and NODATA) are cached separately according to RFC 2308: they expire after the minimum
+ * of the TTL and the MINIMUM field of the SOA record in the authority section. Negative answers without a SOA record
+ * are not cached. As a NXDOMAIN answer means that the name doesn't exist at all, it is returned for every type of question.
+ *
+ * If the cache is full, the expired answers are removed first and then the answers that expire first are evicted.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public final class DnsCache {
+
+    /**
+     * Default minimum TTL in seconds.
+     */
+    public static final long DEFAULT_MIN_TTL = Ipv4Utils.CONST_60;
+
+    /**
+     * Default maximum TTL in seconds.
+     */
+    public static final long DEFAULT_MAX_TTL = Ipv4Utils.DNSJAVA_TTL_TIMEOUT;
+
+    /**
+     * Default minimum TTL of negative answers in seconds.
+     */
+    public static final long DEFAULT_NEGATIVE_MIN_TTL = Ipv4Utils.CONST_60;
+
+    /**
+     * Default maximum TTL of negative answers in seconds.
+     */
+    public static final long DEFAULT_NEGATIVE_MAX_TTL = Ipv4Utils.DNSJAVA_TTL_TIMEOUT;
+
+    /**
+     * Type of the key for NXDOMAIN answers, which are valid for all types.
+     */
+    private static final int ANY_TYPE = -1;
+
+    /**
+     * Mask to read an unsigned short from a snapshot.
+     */
+    private static final int UNSIGNED_SHORT_MASK = 0xFFFF;
+
+    /**
+     * Default maximum number of cached answers.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = Ipv4Utils.CONST_100 * Ipv4Utils.CONST_100 * Ipv4Utils.CONST_10;
+
+    /**
+     * The cached answers.
+     */
+    private final BoundedTtlMap<Key, Entry> entries = new BoundedTtlMap<Key, Entry>(DEFAULT_MAX_ENTRIES);
+
+    /**
+     * The cached negative answers (NXDOMAIN and NODATA).
+     */
+    private final BoundedTtlMap<Key, Entry> negativeEntries = new BoundedTtlMap<Key, Entry>(DEFAULT_MAX_ENTRIES);
+
+    /**
+     * Number of answers returned from the cache.
+     */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /**
+     * Number of questions not found in the cache.
+     */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Number of negative answers returned from the cache.
+     */
+    private final AtomicLong negativeHitCount = new AtomicLong();
+
+    /**
+     * Minimum TTL in msec.
+     */
+    private volatile long minTtl = TimeUnit.SECONDS.toMillis(DEFAULT_MIN_TTL);
+
+    /**
+     * Maximum TTL in msec.
+     */
+    private volatile long maxTtl = TimeUnit.SECONDS.toMillis(DEFAULT_MAX_TTL);
+
+    /**
+     * Minimum TTL of negative answers in msec.
+     */
+    private volatile long negativeMinTtl = TimeUnit.SECONDS.toMillis(DEFAULT_NEGATIVE_MIN_TTL);
+
+    /**
+     * Maximum TTL of negative answers in msec.
+     */
+    private volatile long negativeMaxTtl = TimeUnit.SECONDS.toMillis(DEFAULT_NEGATIVE_MAX_TTL);
+
+    /**
+     * Is the cache enabled?
+     */
+    private volatile boolean enabled = true;
+
+    /**
+     * Key of a cached answer (name and type of the question).
+     */
+    private static final class Key {
+
+        /**
+         * The name of the question.
+         */
+        private final Name name;
+
+        /**
+         * The type of the question.
+         */
+        private final int type;
+
+        /**
+         * Constructor.
+         *
+         * @param name The name of the question.
+         * @param type The type of the question.
+         */
+        Key(final Name name, final int type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        @Override
+        public int hashCode() {
+            return (Ipv4Utils.CONST_30 + 1) * name.hashCode() + type;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) obj;
+            // Name.equals() ignores the case.
+            return type == key.type && name.equals(key.name);
+        }
+
+    }
+
+    /**
+     * A cached answer.
+     */
+    private static final class Entry {
+
+        /**
+         * Records of the answer section.
+         */
+        private final Record[] answers;
+
+        /**
+         * Records of the authority section (just stored for negative answers).
+         */
+        private final Record[] authorities;
+
+        /**
+         * Records of the additional section.
+         */
+        private final Record[] additionals;
+
+        /**
+         * The response code.
+         */
+        private final int rcode;
+
+        /**
+         * The (clamped) TTL of the entry in msec.
+         */
+        private final long ttl;
+
+        /**
+         * Point of time (System.currentTimeMillis()) when the entry expires.
+         */
+        private final long expires;
+
+        /**
+         * Constructor.
+         *
+         * @param rcode The response code.
+         * @param answers Records of the answer section.
+         * @param authorities Records of the authority section.
+         * @param additionals Records of the additional section.
+         * @param ttl The TTL of the entry in msec.
+         * @param expires Point of time when the entry expires.
+         */
+        Entry(final int rcode, final Record[] answers, final Record[] authorities, final Record[] additionals, final long ttl,
+                final long expires) {
+            this.rcode = rcode;
+            this.answers = answers;
+            this.authorities = authorities;
+            this.additionals = additionals;
+            this.ttl = ttl;
+            this.expires = expires;
+        }
+
+    }
+
+    /**
+     * Returns the cached response for the given question.
+     *
+     * @param question The question.
+     * @return A response built from the cached records or {@code NULL}, if there is no valid entry.
+     */
+    public Message get(final Record question) {
+        if (!enabled) {
+            return null;
+        }
+        final Key key = new Key(question.getName(), question.getType());
+        final long now = System.currentTimeMillis();
+        Entry entry = entries.get(key, now);
+        if (entry != null) {
+            hitCount.incrementAndGet();
+            return toResponse(question, entry);
+        }
+        entry = negativeEntries.get(key, now);
+        if (entry == null) {
+            entry = negativeEntries.get(new Key(question.getName(), ANY_TYPE), now);
+        }
+        if (entry != null) {
+            negativeHitCount.incrementAndGet();
+            return toResponse(question, entry);
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Builds a response from a cached entry.
+     *
+     * @param question The question.
+     * @param entry The cached entry.
+     * @return The response.
+     */
+    private static Message toResponse(final Record question, final Entry entry) {
+        final Message response = new Message();
+        response.getHeader().setFlag(Flags.QR);
+        response.getHeader().setFlag(Flags.RA);
+        response.getHeader().setRcode(entry.rcode);
+        response.addRecord(question, Section.QUESTION);
+        for (final Record record : entry.answers) {
+            response.addRecord(record, Section.ANSWER);
+        }
+        for (final Record record : entry.authorities) {
+            response.addRecord(record, Section.AUTHORITY);
+        }
+        for (final Record record : entry.additionals) {
+            response.addRecord(record, Section.ADDITIONAL);
+        }
+        return response;
+    }
+
+    /**
+     * Caches the answer of a response.
+     *
+     * Successful responses with at least one answer are cached as positive answers. NXDOMAIN responses and successful
+     * responses without an answer (NODATA) are cached as negative answers, if there is a SOA record in the authority section.
+     * Truncated and failed responses are not cached.
+     *
+     * @param question The question of the query.
+     * @param response The response.
+     */
+    public void put(final Record question, final Message response) {
+        if (!enabled || question == null || response == null || response.getHeader().getFlag(Flags.TC)) {
+            return;
+        }
+        final int rcode = response.getRcode();
+        if (rcode != Rcode.NOERROR && rcode != Rcode.NXDOMAIN) {
+            return;
+        }
+        final Record[] answers = getSection(response, Section.ANSWER);
+        final Key key = new Key(question.getName(), question.getType());
+        if (rcode == Rcode.NOERROR && answers.length > 0) {
+            final Record[] additionals = getSection(response, Section.ADDITIONAL);
+            long ttl = Long.MAX_VALUE;
+            for (final Record record : answers) {
+                ttl = Math.min(ttl, record.getTTL());
+            }
+            for (final Record record : additionals) {
+                ttl = Math.min(ttl, record.getTTL());
+            }
+            ttl = Math.min(maxTtl, Math.max(minTtl, TimeUnit.SECONDS.toMillis(ttl)));
+            if (ttl > 0) {
+                final long now = System.currentTimeMillis();
+                entries.put(key, new Entry(rcode, answers, new Record[0], additionals, ttl, now + ttl), now + ttl, now);
+                negativeEntries.remove(key);
+                negativeEntries.remove(new Key(question.getName(), ANY_TYPE));
+            }
+            return;
+        }
+        // Negative answer (RFC 2308, section 5): the TTL is the minimum of the SOA TTL and the SOA MINIMUM field.
+        SOARecord soaRecord = null;
+        for (final Record record : getSection(response, Section.AUTHORITY)) {
+            if (record instanceof SOARecord) {
+                soaRecord = (SOARecord) record;
+                break;
+            }
+        }
+        if (soaRecord == null) {
+            return;
+        }
+        final long ttl = Math.min(negativeMaxTtl, Math.max(negativeMinTtl,
+                TimeUnit.SECONDS.toMillis(Math.min(soaRecord.getTTL(), soaRecord.getMinimum()))));
+        if (ttl > 0) {
+            final long now = System.currentTimeMillis();
+            final Entry entry = new Entry(rcode, answers, new Record[] {soaRecord}, new Record[0], ttl, now + ttl);
+            if (rcode == Rcode.NXDOMAIN && answers.length == 0) {
+                // The name doesn't exist, so the answer is the same for every type.
+                negativeEntries.put(new Key(question.getName(), ANY_TYPE), entry, entry.expires, now);
+            } else {
+                negativeEntries.put(key, entry, entry.expires, now);
+            }
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Returns the records of a section of a message.
+     *
+     * @param message The message.
+     * @param section The section.
+     * @return The records of the section (never {@code NULL}).
+     */
+    private static Record[] getSection(final Message message, final int section) {
+        final Record[] result = message.getSectionArray(section);
+        return result != null ? result : new Record[0];
+    }
+
+    /**
+     * Removes all expired entries.
+     *
+     * @return Number of removed entries.
+     */
+    public int removeExpired() {
+        final long now = System.currentTimeMillis();
+        return entries.removeExpired(now) + negativeEntries.removeExpired(now);
+    }
+
+    /**
+     * Writes all valid entries to a snapshot (see CacheSnapshot for the format).
+     *
+     * @param out The output of the snapshot.
+     * @return Number of written entries.
+     * @throws IOException If the entries can't be written.
+     */
+    int writeSnapshot(final DataOutput out) throws IOException {
+        final long now = System.currentTimeMillis();
+        return writeSnapshot(out, entries, false, now) + writeSnapshot(out, negativeEntries, true, now);
+    }
+
+    /**
+     * Writes all valid entries of the given map to a snapshot.
+     *
+     * @param out The output of the snapshot.
+     * @param map Map of the entries.
+     * @param negative Is it the map of the negative answers?
+     * @param now Actual time.
+     * @return Number of written entries.
+     * @throws IOException If the entries can't be written.
+     */
+    private static int writeSnapshot(final DataOutput out, final BoundedTtlMap<Key, Entry> map, final boolean negative,
+            final long now) throws IOException {
+        int result = 0;
+        for (final Map.Entry<Key, Entry> mapEntry : map.getValidEntries(now)) {
+            final Entry entry = mapEntry.getValue();
+            out.writeBoolean(negative);
+            out.writeInt(mapEntry.getKey().type);
+            out.writeInt(entry.rcode);
+            out.writeLong(entry.ttl);
+            out.writeLong(entry.expires);
+            writeBytes(out, mapEntry.getKey().name.toWire());
+            writeSection(out, entry.answers, Section.ANSWER);
+            writeSection(out, entry.authorities, Section.AUTHORITY);
+            writeSection(out, entry.additionals, Section.ADDITIONAL);
+            ++result;
+        }
+        return result;
+    }
+
+    /**
+     * Writes the records of a section in wire format (including their original TTLs).
+     *
+     * @param out The output of the snapshot.
+     * @param records The records.
+     * @param section The section of the records.
+     * @throws IOException If the records can't be written.
+     */
+    private static void writeSection(final DataOutput out, final Record[] records, final int section) throws IOException {
+        out.writeShort(records.length);
+        for (final Record record : records) {
+            writeBytes(out, record.toWire(section));
+        }
+    }
+
+    /**
+     * Writes a byte array with a leading (unsigned short) length.
+     *
+     * @param out The output of the snapshot.
+     * @param bytes The byte array.
+     * @throws IOException If the byte array can't be written.
+     */
+    static void writeBytes(final DataOutput out, final byte[] bytes) throws IOException {
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads the given number of entries from a snapshot. Entries that expired in the meanwhile are skipped.
+     *
+     * @param buffer The (memory-mapped) snapshot, positioned at the first entry.
+     * @param count Number of entries to read.
+     * @return Number of restored entries.
+     * @throws IOException If the snapshot is corrupt.
+     */
+    int readSnapshot(final ByteBuffer buffer, final int count) throws IOException {
+        final long now = System.currentTimeMillis();
+        int result = 0;
+        for (int i = 0; i < count; ++i) {
+            final boolean negative = buffer.get() != 0;
+            final int type = buffer.getInt();
+            final int rcode = buffer.getInt();
+            final long ttl = buffer.getLong();
+            final long expires = buffer.getLong();
+            if (expires <= now) {
+                // Just skip the stale entry without parsing the records.
+                skipBytes(buffer);
+                for (int section = 0; section < Ipv4Utils.CONST_3; ++section) {
+                    for (int records = readUnsignedShort(buffer); records > 0; --records) {
+                        skipBytes(buffer);
+                    }
+                }
+                continue;
+            }
+            final Key key = new Key(new Name(readBytes(buffer)), type);
+            final Entry entry = new Entry(rcode, readSection(buffer, Section.ANSWER), readSection(buffer, Section.AUTHORITY),
+                    readSection(buffer, Section.ADDITIONAL), ttl, expires);
+            final BoundedTtlMap<Key, Entry> map = negative ? negativeEntries : entries;
+            if (enabled && map.putIfAbsent(key, entry, expires, now) == null) {
+                ++result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the records of a section in wire format.
+     *
+     * @param buffer The snapshot.
+     * @param section The section of the records.
+     * @return The records.
+     * @throws IOException If the records are corrupt.
+     */
+    private static Record[] readSection(final ByteBuffer buffer, final int section) throws IOException {
+        final Record[] result = new Record[readUnsignedShort(buffer)];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = Record.fromWire(readBytes(buffer), section);
+        }
+        return result;
+    }
+
+    /**
+     * Reads a byte array with a leading (unsigned short) length.
+     *
+     * @param buffer The snapshot.
+     * @return The byte array.
+     */
+    static byte[] readBytes(final ByteBuffer buffer) {
+        final byte[] result = new byte[readUnsignedShort(buffer)];
+        buffer.get(result);
+        return result;
+    }
+
+    /**
+     * Skips a byte array with a leading (unsigned short) length.
+     *
+     * @param buffer The snapshot.
+     */
+    static void skipBytes(final ByteBuffer buffer) {
+        final int length = readUnsignedShort(buffer);
+        buffer.position(buffer.position() + length);
+    }
+
+    /**
+     * Reads an unsigned short.
+     *
+     * @param buffer The snapshot.
+     * @return The value.
+     */
+    private static int readUnsignedShort(final ByteBuffer buffer) {
+        return buffer.getShort() & UNSIGNED_SHORT_MASK;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        entries.clear();
+        negativeEntries.clear();
+    }
+
+    /**
+     * Returns the number of cached positive answers (including the expired ones, that are not removed yet).
+     *
+     * @return Number of cached positive answers.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of cached negative answers (including the expired ones, that are not removed yet).
+     *
+     * @return Number of cached negative answers.
+     */
+    public int negativeSize() {
+        return negativeEntries.size();
+    }
+
+    /**
+     * Returns the number of negative answers (NXDOMAIN and NODATA) returned from the cache.
+     *
+     * @return Number of negative answers returned from the cache.
+     */
+    public long getNegativeHitCount() {
+        return negativeHitCount.get();
+    }
+
+    /**
+     * Returns the number of positive answers returned from the cache.
+     *
+     * @return Number of answers returned from the cache.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of questions not found in the cache.
+     *
+     * @return Number of questions not found in the cache.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the value of enabled.
+     *
+     * @return {@code TRUE}, if the cache is enabled, otherwise {@code FALSE}.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables/Disables the cache. Disabling the cache removes all entries.
+     *
+     * @param enabled {@code TRUE} to enable the cache, {@code FALSE} to disable it.
+     */
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            clear();
+        }
+    }
+
+    /**
+     * Returns the minimum TTL.
+     *
+     * @param timeUnit The TimeUnit as how the TTL shall be returned.
+     * @return The minimum TTL.
+     */
+    public long getMinTtl(final TimeUnit timeUnit) {
+        return timeUnit.convert(minTtl, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the maximum TTL.
+     *
+     * @param timeUnit The TimeUnit as how the TTL shall be returned.
+     * @return The maximum TTL.
+     */
+    public long getMaxTtl(final TimeUnit timeUnit) {
+        return timeUnit.convert(maxTtl, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets the bounds for the TTLs of the records. A record TTL less than minTtl is raised to minTtl,
+     * a record TTL greater than maxTtl is lowered to maxTtl. Already cached entries are not affected.
+     *
+     * @param minTtl Minimum TTL (min. 0).
+     * @param maxTtl Maximum TTL (min. minTtl).
+     * @param timeUnit The TimeUnit as how the TTL parameters shall be interpreted.
+     * @return {@code true}, if the bounds were set, otherwise {@code false}.
+     */
+    public boolean setTtlBounds(final long minTtl, final long maxTtl, final TimeUnit timeUnit) {
+        if (timeUnit == null || minTtl < 0 || maxTtl < minTtl) {
+            System.err.println("Invalid TTL bounds given.");
+            return false;
+        }
+        this.minTtl = timeUnit.toMillis(minTtl);
+        this.maxTtl = timeUnit.toMillis(maxTtl);
+        return true;
+    }
+
+    /**
+     * Returns the minimum TTL of negative answers.
+     *
+     * @param timeUnit The TimeUnit as how the TTL shall be returned.
+     * @return The minimum TTL of negative answers.
+     */
+    public long getNegativeMinTtl(final TimeUnit timeUnit) {
+        return timeUnit.convert(negativeMinTtl, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the maximum TTL of negative answers.
+     *
+     * @param timeUnit The TimeUnit as how the TTL shall be returned.
+     * @return The maximum TTL of negative answers.
+     */
+    public long getNegativeMaxTtl(final TimeUnit timeUnit) {
+        return timeUnit.convert(negativeMaxTtl, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets the bounds for the TTLs of negative answers (derived from the SOA record). Already cached entries are not affected.
+     *
+     * @param minTtl Minimum TTL (min. 0).
+     * @param maxTtl Maximum TTL (min. minTtl). A value of 0 disables the negative caching.
+     * @param timeUnit The TimeUnit as how the TTL parameters shall be interpreted.
+     * @return {@code true}, if the bounds were set, otherwise {@code false}.
+     */
+    public boolean setNegativeTtlBounds(final long minTtl, final long maxTtl, final TimeUnit timeUnit) {
+        if (timeUnit == null || minTtl < 0 || maxTtl < minTtl) {
+            System.err.println("Invalid TTL bounds given.");
+            return false;
+        }
+        this.negativeMinTtl = timeUnit.toMillis(minTtl);
+        this.negativeMaxTtl = timeUnit.toMillis(maxTtl);
+        return true;
+    }
+
+    /**
+     * Returns the maximum number of cached answers.
+     *
+     * @return Maximum number of cached answers.
+     */
+    public int getMaxEntries() {
+        return entries.getMaxSize();
+    }
+
+    /**
+     * Sets the maximum number of cached answers (positive and negative answers are counted separately).
+     * If the cache is full, the expired answers are removed and then the answers that expire first are evicted.
+     *
+     * @param maxEntries Maximum number of cached answers (min. 1).
+     */
+    public void setMaxEntries(final int maxEntries) {
+        entries.setMaxSize(maxEntries);
+        negativeEntries.setMaxSize(maxEntries);
+    }
+
+}
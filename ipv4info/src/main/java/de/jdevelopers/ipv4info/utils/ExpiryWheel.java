@@ -0,0 +1,197 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package de.jdevelopers.ipv4info.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import de.jdevelopers.ipv4info.objects.IpInfo;
+
+/**
+ * Timing wheel for the expiry of the results of the Ipv4Utils.RESULT_POOL.
+ *
+ * Every result is added to the bucket of the tick its expiry time falls into. On each tick only the buckets that are due
+ * are processed, so the work per tick depends on the number of due results, not on the size of the pool.
+ * The buckets are lock-free queues, so scheduling never blocks and the processing thread holds no global lock.
+ *
+ * Only the buckets of completely elapsed ticks are processed, so a result is returned up to one tick after its expiry time.
+ * An expiry time beyond the span of the wheel (SLOT_COUNT ticks) is put into its bucket anyway and is just put back,
+ * when the bucket is processed before its expiry time.
+ *
+ * @author Carsten Jäger
+ *
+ */
+final class ExpiryWheel {
+
+    /**
+     * Number of buckets (a power of two).
+     */
+    static final int SLOT_COUNT = 2048;
+
+    /**
+     * The buckets.
+     */
+    private final List<Queue<Entry>> slots = new ArrayList<Queue<Entry>>(SLOT_COUNT);
+
+    /**
+     * Duration of a tick in msec.
+     */
+    private final long tickDuration;
+
+    /**
+     * The last tick whose bucket was completely processed.
+     */
+    private volatile long processedTick;
+
+    /**
+     * A scheduled result.
+     */
+    static final class Entry {
+
+        /**
+         * The corrected query.
+         */
+        private final String key;
+
+        /**
+         * The result.
+         */
+        private final IpInfo value;
+
+        /**
+         * Point of time (System.currentTimeMillis()) when the result expires.
+         */
+        private final long expiryTime;
+
+        /**
+         * Constructor.
+         *
+         * @param key The corrected query.
+         * @param value The result.
+         * @param expiryTime Point of time when the result expires.
+         */
+        Entry(final String key, final IpInfo value, final long expiryTime) {
+            this.key = key;
+            this.value = value;
+            this.expiryTime = expiryTime;
+        }
+
+        /**
+         * Returns the value of key.
+         *
+         * @return The corrected query.
+         */
+        String getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the value of value.
+         *
+         * @return The result.
+         */
+        IpInfo getValue() {
+            return value;
+        }
+
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param tickDuration Duration of a tick in msec.
+     */
+    ExpiryWheel(final long tickDuration) {
+        this.tickDuration = Math.max(1, tickDuration);
+        for (int i = 0; i < SLOT_COUNT; ++i) {
+            slots.add(new ConcurrentLinkedQueue<Entry>());
+        }
+        // The actual tick isn't elapsed yet.
+        processedTick = System.currentTimeMillis() / this.tickDuration - 1;
+    }
+
+    /**
+     * Returns the bucket of a tick.
+     *
+     * @param tick The tick.
+     * @return The bucket of the tick.
+     */
+    private Queue<Entry> getSlot(final long tick) {
+        return slots.get((int) (tick & (SLOT_COUNT - 1)));
+    }
+
+    /**
+     * Schedules a result for expiry.
+     *
+     * @param key The corrected query.
+     * @param value The result.
+     * @param expiryTime Point of time (System.currentTimeMillis()) when the result expires.
+     */
+    void schedule(final String key, final IpInfo value, final long expiryTime) {
+        // An expiry time in the past is put into the next bucket (the actual one might be processed right now).
+        final long tick = Math.max(expiryTime / tickDuration, processedTick + 2);
+        getSlot(tick).add(new Entry(key, value, expiryTime));
+    }
+
+    /**
+     * Removes all scheduled results.
+     */
+    synchronized void clear() {
+        for (final Queue<Entry> slot : slots) {
+            slot.clear();
+        }
+    }
+
+    /**
+     * Removes and returns the results that are due, but not more than maxBatch results.
+     *
+     * @param now Actual time (System.currentTimeMillis()).
+     * @param maxBatch Maximum number of results to return.
+     * @return The due results (less than maxBatch, if there are no more due results).
+     */
+    synchronized List<Entry> poll(final long now, final int maxBatch) {
+        final List<Entry> result = new ArrayList<Entry>();
+        final List<Entry> notDue = new ArrayList<Entry>();
+        final long actualTick = now / tickDuration;
+        // The actual tick isn't over yet: its bucket may still hold results that expire later in this tick.
+        while (processedTick + 1 < actualTick && result.size() < maxBatch) {
+            final long tick = processedTick + 1;
+            final Queue<Entry> slot = getSlot(tick);
+            Entry entry;
+            while (result.size() < maxBatch && (entry = slot.poll()) != null) {
+                if (entry.expiryTime <= now) {
+                    result.add(entry);
+                } else {
+                    // Belongs to a later round of the wheel.
+                    notDue.add(entry);
+                }
+            }
+            if (result.size() < maxBatch) {
+                processedTick = tick;
+            }
+            for (final Entry later : notDue) {
+                getSlot(later.expiryTime / tickDuration).add(later);
+            }
+            notDue.clear();
+        }
+        return result;
+    }
+
+}
@@ -20,20 +20,32 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Timer;
 import java.util.WeakHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -41,15 +53,25 @@ import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.NodeList;
+import org.xbill.DNS.DClass;
 import org.xbill.DNS.ExtendedResolver;
+import org.xbill.DNS.Message;
 import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
 import org.xbill.DNS.Resolver;
+import org.xbill.DNS.ResolverConfig;
+import org.xbill.DNS.ResolverListener;
 import org.xbill.DNS.SimpleResolver;
 import org.xbill.DNS.TextParseException;
 
 import de.jdevelopers.ipv4info.enums.EDnsOption;
+import de.jdevelopers.ipv4info.enums.EEvictionCause;
+import de.jdevelopers.ipv4info.enums.EException;
+import de.jdevelopers.ipv4info.enums.ELimitChange;
 import de.jdevelopers.ipv4info.enums.EMxOption;
+import de.jdevelopers.ipv4info.enums.EQueryType;
 import de.jdevelopers.ipv4info.objects.IpInfo;
+import de.jdevelopers.ipv4info.objects.IpInfoOptions;
 
 /**
  * Utility class for the Ipv4Info package.
@@ -161,6 +183,31 @@ public final class Ipv4Utils {
      */
     public static final short CONST_255 = 255;
 
+    /**
+     * Number of bits of an IP-Address (and maximum prefix of a CIDR-Notation).
+     */
+    public static final int ADDRESS_BITS = 32;
+
+    /**
+     * Maximum length of an IP-Address in dotted-quad notation (xxx.xxx.xxx.xxx).
+     */
+    public static final int MAX_IP_LENGTH = 15;
+
+    /**
+     * Maximum length of an IP-Address in CIDR-Notation (xxx.xxx.xxx.xxx/yy).
+     */
+    public static final int MAX_CIDR_LENGTH = MAX_IP_LENGTH + CONST_3;
+
+    /**
+     * Domain of the reverse names of IP-Addresses.
+     */
+    private static final String REVERSE_DOMAIN = ".in-addr.arpa.";
+
+    /**
+     * Maximum allowed number of queries in flight in the virtual thread mode.
+     */
+    public static final int MAX_VIRTUAL_CONCURRENCY = 10000;
+
     /**
      * Timeout for establishing URL connections. Standard: 2 sec.
      */
@@ -178,8 +225,41 @@ public final class Ipv4Utils {
 
     /**
      * Map that stores the results of DNS-Queries for further queries.
+     *
+     * Lookups are lock-free and inserts of different queries don't block each other. The entries are strongly referenced,
+     * so a result is just removed by the retention policy (see scheduleExpiry()).
+     */
+    public static final ConcurrentMap<String, IpInfo> RESULT_POOL = new ConcurrentHashMap<String, IpInfo>();
+
+    /**
+     * Optional size and memory bound of the RESULT_POOL (disabled by default, see setResultPoolBounds()).
+     */
+    public static final ResultPoolPolicy RESULT_POOL_POLICY = new ResultPoolPolicy();
+
+    /**
+     * Cache for DNS answers shared by all resolvers.
+     */
+    public static final DnsCache DNS_CACHE = new DnsCache();
+
+    /**
+     * Registry of MX hosts, so each MX host is resolved and verified just once per TTL.
+     */
+    public static final MxHostRegistry MX_HOST_REGISTRY = new MxHostRegistry();
+
+    /**
+     * Cache for the results of SMTP connection checks (VERIFY_DOMAIN and VERIFY_IPS).
+     */
+    public static final SmtpVerdictCache SMTP_VERDICT_CACHE = new SmtpVerdictCache();
+
+    /**
+     * The DNS questions in flight (by name, type and resolver) with the Future of their response.
+     */
+    private static final ConcurrentMap<String, CompletableFuture<Message>> IN_FLIGHT_QUERIES = new ConcurrentHashMap<String, CompletableFuture<Message>>();
+
+    /**
+     * Number of DNS queries saved by attaching to an identical question in flight.
      */
-    public static final Map<String, IpInfo> RESULT_POOL = new WeakHashMap<String, IpInfo>();
+    private static final AtomicLong COALESCED_QUERY_COUNT = new AtomicLong();
 
     /**
      * Default port for SMTP connections.
@@ -191,11 +271,6 @@ public final class Ipv4Utils {
      */
     public static final int DEFAULT_SOCKET_TIMEOUT = 3000;
 
-    /**
-     * Replace string to auto correct faulty incoming query strings.
-     */
-    private static final String QUERY_CORRECTION = "(?i)^(?:https?|ftps?|udp|tcp)://|.*?[@]+.*?[.]*|^[.]+|[.]{2,}";
-
     /**
      * Map to store prefixes for querying WHOIS-Servers.
      */
@@ -227,20 +302,48 @@ public final class Ipv4Utils {
     private static int maximumPoolSize = CONST_2 * CONST_10;
 
     /**
-     * Shall the maximumPoolSize of the ThreadPool be autoadjusted depending on the number of queries to resolve? (default: true).
+     * Shall the number of concurrent DNS queries (and the maximumPoolSize of the ThreadPool) be adjusted automatically
+     * depending on the observed latency and timeouts? (default: true).
      */
-    private static boolean autoAdjustThreadPoolSize = true;
+    private static volatile boolean autoAdjustThreadPoolSize = true;
 
     /**
      * Global ThreadPool.
      */
     private static ThreadPoolExecutor threadPool = createBoundedCachedThreadPool(0, maximumPoolSize, CONST_60, TimeUnit.SECONDS);
 
+    /**
+     * Limiter for the number of concurrent DNS queries (just used if autoAdjustThreadPoolSize is set).
+     * The limit never falls below the configured maximumPoolSize.
+     */
+    private static final AdaptiveConcurrencyLimiter CONCURRENCY_LIMITER = new AdaptiveConcurrencyLimiter(maximumPoolSize, maximumPoolSize,
+            CONST_100) {
+        @Override
+        protected void onLimitChanged(final int oldLimit, final int newLimit, final ELimitChange reason) {
+            applyConcurrencyLimit(newLimit);
+        }
+    };
+
+    /**
+     * Resolver that passes the queries of the resolver through the CONCURRENCY_LIMITER.
+     */
+    private static volatile LimitedResolver limitedResolver;
+
     /**
      * Global small ThreadPool used for rechecks.
      */
     private static ThreadPoolExecutor recheckThreadPool;
 
+    /**
+     * Executor that runs the resolver tasks on virtual threads (just used in the virtual thread mode, otherwise {@code NULL}).
+     */
+    private static volatile VirtualThreadExecutor virtualThreadPool;
+
+    /**
+     * Executor that runs the recheck tasks on virtual threads (just used in the virtual thread mode, otherwise {@code NULL}).
+     */
+    private static volatile VirtualThreadExecutor virtualRecheckThreadPool;
+
     /**
      * ExtendedResolver for dnsjava queries.
      */
@@ -251,6 +354,48 @@ public final class Ipv4Utils {
      */
     private static ExtendedResolver recheckResolver;
 
+    /**
+     * Multiplexed UDP transport for dnsjava queries (just used if enabled, otherwise {@code NULL}).
+     */
+    private static volatile MultiplexedDnsTransport transport;
+
+    /**
+     * Multiplexed UDP transport for dnsjava queries with MX recheck settings (just used if enabled, otherwise {@code NULL}).
+     */
+    private static volatile MultiplexedDnsTransport recheckTransport;
+
+    /**
+     * Addresses of the nameservers of the SimpleResolvers created by this class (needed for the multiplexed transport,
+     * as the dnsjava resolvers don't tell them).
+     */
+    private static final Map<Resolver, InetSocketAddress> RESOLVER_ADDRESSES = Collections.synchronizedMap(
+            new WeakHashMap<Resolver, InetSocketAddress>());
+
+    /**
+     * Timeout of the resolver in sec. (needed for the multiplexed transport).
+     */
+    private static volatile int resolverTimeout = CONST_3;
+
+    /**
+     * Number of retries of the resolver (needed for the multiplexed transport).
+     */
+    private static volatile int resolverRetries;
+
+    /**
+     * Timeout of the recheckResolver in sec. (needed for the multiplexed transport).
+     */
+    private static volatile int recheckResolverTimeout = CONST_20;
+
+    /**
+     * Number of retries of the recheckResolver (needed for the multiplexed transport).
+     */
+    private static volatile int recheckResolverRetries = 1;
+
+    /**
+     * Is the round robin usage of the resolver enabled (needed for the multiplexed transport)?
+     */
+    private static volatile boolean resolverLoadBalance;
+
     /**
      * Additional Google-Resolvers.
      */
@@ -266,6 +411,66 @@ public final class Ipv4Utils {
      */
     private static Timer cacheTimer;
 
+    /**
+     * Was the CacheObserver-TimerTask disabled explicitly?
+     */
+    private static volatile boolean cacheObserverDisabled;
+
+    /**
+     * Maximum idle time of results with just the basic lookup in the RESULT_POOL (1 hour).
+     */
+    static final long MAX_UNRESOLVED_TTL = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Duration of a tick of the expiry timing wheel (1 min.).
+     */
+    private static final long EXPIRY_TICK = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Timing wheel for the expiry of the results of the RESULT_POOL.
+     */
+    private static final ExpiryWheel EXPIRY_WHEEL = new ExpiryWheel(EXPIRY_TICK);
+
+    /**
+     * Fraction of the TTL of a result, after which a recently accessed result is refreshed in the background (0 = disabled).
+     */
+    private static volatile double refreshAheadFactor;
+
+    /**
+     * Smallest prefix of a subnet query, that is resolved (smaller prefixes are marked as invalid subnet).
+     */
+    private static volatile int minimumSubnetPrefix = CONST_8;
+
+    /**
+     * Number of IP-Addresses of a subnet, that are resolved by one RDNS task.
+     */
+    private static volatile int rdnsChunkSize = CONST_255 + 1;
+
+    /**
+     * Maximum number of RdnsResult-Objects kept by the RdnsInfo-Object of a subnet.
+     */
+    private static volatile int maxRetainedRdnsResults = 1 << (CONST_8 + CONST_8);
+
+    /**
+     * Maximum number of PTR queries of a RDNS sweep in flight.
+     */
+    private static volatile int rdnsSweepWindow = CONST_30 + 2;
+
+    /**
+     * Maximum number of PTR queries per second of a RDNS sweep (0 = unlimited).
+     */
+    private static volatile int rdnsSweepRate;
+
+    /**
+     * The results that are refreshed in the background by their corrected query.
+     */
+    private static final ConcurrentMap<String, IpInfo> REFRESHING_RESULTS = new ConcurrentHashMap<String, IpInfo>();
+
+    /**
+     * Number of results replaced by a refreshed result.
+     */
+    private static final AtomicLong REFRESHED_RESULT_COUNT = new AtomicLong();
+
     /**
      * Document that holds the internal configuration XML file.
      */
@@ -294,14 +499,15 @@ public final class Ipv4Utils {
         //System.setProperty("networkaddress.cache.ttl", String.valueOf(DNSJAVA_TTL_TIMEOUT));
         // Known prefixes for querying WHOIS servers (to be extended ?!)
         WHOIS_QUERY_PREFIX_MAP.put("de", "-T dn,ace ");
-        // Creates an dnsjava ExtendedResolver with the system default DNS-Server(s).
+        // Creates an dnsjava ExtendedResolver with the system default DNS-Server(s) (like new ExtendedResolver() does).
         try {
-            resolver = new ExtendedResolver();
+            final String[] systemServers = ResolverConfig.getCurrentConfig().servers();
+            resolver = createResolver(systemServers != null ? systemServers : new String[] {"localhost"});
         } catch (UnknownHostException uhe) {
             // Can only occur, if there is no system nameserver, or nameserver(s) are out of service.
             // So we switch to use just the Google resolvers...
             try {
-                resolver = new ExtendedResolver(GOOGLE_DNS_IPS);
+                resolver = createResolver(GOOGLE_DNS_IPS);
             } catch (UnknownHostException uhe2) {
                 uhe2.printStackTrace();
             }
@@ -357,6 +563,10 @@ public final class Ipv4Utils {
         };
         RejectedExecutionHandler handler = new RejectedExecutionHandler() {
             public void rejectedExecution(final Runnable r, final ThreadPoolExecutor executor) {
+                if (executor.isShutdown()) {
+                    // Tasks added after a shutdown would never be executed.
+                    throw new RejectedExecutionException("ThreadPool is shut down");
+                }
                 queue.add(r);
             }
         };
@@ -366,6 +576,9 @@ public final class Ipv4Utils {
     /**
      * Sets the params of the global ThreadPool.
      *
+     * In the virtual thread mode the maximumPoolSize is the maximum number of queries in flight (max. MAX_VIRTUAL_CONCURRENCY).
+     * The ThreadPool for the normal mode is never set to more than 200 threads.
+     *
      * @param corePoolSize Core pool size (min. 0, max. 200).
      * @param maximumPoolSize Maximum pool size (min. 1, max. 200).
      * @param keepAliveTime Maximum allowed idle time of ThreadPool threads (min. 0, max. 24h).
@@ -379,7 +592,7 @@ public final class Ipv4Utils {
             System.err.println("Invalid corePoolSize given.");
             return false;
         }
-        if (maximumPoolSize < 1 || maximumPoolSize > CONST_2 * CONST_100) {
+        if (maximumPoolSize < 1 || maximumPoolSize > (isUsingVirtualThreads() ? MAX_VIRTUAL_CONCURRENCY : CONST_2 * CONST_100)) {
             System.err.println("Invalid maximumPoolSize given.");
             return false;
         }
@@ -388,13 +601,20 @@ public final class Ipv4Utils {
             return false;
         }
         Ipv4Utils.maximumPoolSize = maximumPoolSize;
+        updateConcurrencyLimiterBounds();
+        final VirtualThreadExecutor virtualPool = virtualThreadPool;
+        if (virtualPool != null && virtualPool.getConcurrencyLimit() != maximumPoolSize) {
+            System.err.println("Setting the concurrency limit of the virtual threads to: " + maximumPoolSize);
+            virtualPool.setConcurrencyLimit(maximumPoolSize);
+        }
+        final int platformMaximumPoolSize = Math.min(maximumPoolSize, CONST_2 * CONST_100);
         if (threadPool.getCorePoolSize() != corePoolSize) {
             System.err.println("Setting threadPool's corePoolSize to: " + corePoolSize);
             threadPool.setCorePoolSize(corePoolSize);
         }
-        if (threadPool.getMaximumPoolSize() != maximumPoolSize) {
-            System.err.println("Setting threadPool's maximumPoolSize to: " + maximumPoolSize);
-            threadPool.setMaximumPoolSize(maximumPoolSize);
+        if (threadPool.getMaximumPoolSize() != platformMaximumPoolSize) {
+            System.err.println("Setting threadPool's maximumPoolSize to: " + platformMaximumPoolSize);
+            threadPool.setMaximumPoolSize(platformMaximumPoolSize);
         }
         if (threadPool.getKeepAliveTime(timeUnit) != keepAliveTime) {
             System.err.println("Setting threadPool's keepAliveTime to: " + keepAliveTime + " " + timeUnit);
@@ -434,13 +654,82 @@ public final class Ipv4Utils {
     /**
      * Sets the value of autoAdjustThreadPoolMaximumSize.
      *
+     * If enabled, all DNS queries are passed through the concurrency limiter (see getConcurrencyLimiter()).
+     * The maximumPoolSize of the ThreadPool (or the concurrency limit of the virtual threads) follows the limit
+     * of the limiter, but is never set below the maximumPoolSize given by setThreadPoolParams().
+     *
      * @param autoAdjustThreadPoolSize The value of autoAdjustThreadPoolMaximumSize.
      */
     public static void setAutoAdjustThreadPoolSize(final boolean autoAdjustThreadPoolSize) {
         Ipv4Utils.autoAdjustThreadPoolSize = autoAdjustThreadPoolSize;
-        if (!autoAdjustThreadPoolSize) {
+        if (autoAdjustThreadPoolSize) {
+            applyConcurrencyLimit(CONCURRENCY_LIMITER.getLimit());
+        } else {
             // Reset set maximumPoolSize value to the default.
-            threadPool.setMaximumPoolSize(Ipv4Utils.maximumPoolSize);
+            threadPool.setMaximumPoolSize(Math.min(Ipv4Utils.maximumPoolSize, CONST_2 * CONST_100));
+            final VirtualThreadExecutor virtualPool = virtualThreadPool;
+            if (virtualPool != null) {
+                virtualPool.setConcurrencyLimit(Ipv4Utils.maximumPoolSize);
+            }
+        }
+    }
+
+    /**
+     * Returns the limiter for the number of concurrent DNS queries.
+     *
+     * The limit is increased by one, if all queries of a window were answered in time and decreased by a factor,
+     * if too many queries time out or the latency rises significantly with the load. It never falls below the
+     * maximumPoolSize given by setThreadPoolParams(). The limiter is just used, if
+     * autoAdjustThreadPoolMaximumSize is enabled (default).
+     *
+     * @return The limiter for the number of concurrent DNS queries.
+     */
+    public static AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return CONCURRENCY_LIMITER;
+    }
+
+    /**
+     * Returns the actual limit for the number of concurrent DNS queries.
+     *
+     * @return The actual limit for the number of concurrent DNS queries.
+     */
+    public static int getConcurrencyLimit() {
+        return CONCURRENCY_LIMITER.getLimit();
+    }
+
+    /**
+     * Returns the reason for the last change of the limit for the number of concurrent DNS queries.
+     *
+     * @return The reason for the last change of the limit.
+     */
+    public static ELimitChange getConcurrencyLimitChangeReason() {
+        return CONCURRENCY_LIMITER.getLastChangeReason();
+    }
+
+    /**
+     * Sets the bounds of the concurrency limiter according to the actual thread mode and maximumPoolSize.
+     */
+    private static void updateConcurrencyLimiterBounds() {
+        CONCURRENCY_LIMITER.setBounds(maximumPoolSize, isUsingVirtualThreads() ? MAX_VIRTUAL_CONCURRENCY : Math.max(CONST_100, maximumPoolSize));
+    }
+
+    /**
+     * Lets the size of the ThreadPool (or the concurrency limit of the virtual threads) follow the limit of the concurrency limiter.
+     *
+     * @param limit The actual limit of the concurrency limiter.
+     */
+    private static void applyConcurrencyLimit(final int limit) {
+        if (!autoAdjustThreadPoolSize) {
+            return;
+        }
+        final VirtualThreadExecutor virtualPool = virtualThreadPool;
+        if (virtualPool != null) {
+            virtualPool.setConcurrencyLimit(Math.max(maximumPoolSize, limit));
+        } else {
+            final int size = Math.max(Math.min(maximumPoolSize, CONST_2 * CONST_100), Math.min(limit, CONST_2 * CONST_100));
+            if (threadPool.getMaximumPoolSize() != size) {
+                threadPool.setMaximumPoolSize(size);
+            }
         }
     }
 
@@ -450,40 +739,50 @@ public final class Ipv4Utils {
      * @return Number of the actual free slots in the ThreadPool.
      */
     public static int getThreadPoolFreeSlots() {
+        final VirtualThreadExecutor virtualPool = virtualThreadPool;
+        if (virtualPool != null) {
+            return virtualPool.getFreeSlots();
+        }
         return threadPool.getMaximumPoolSize() - threadPool.getPoolSize();
     }
 
     /**
-     * Increments the maximumPoolSize value of the ThreadPool according to the number of incoming queries.
+     * Increments the maximumPoolSize value of the ThreadPool (or the concurrency limit of the virtual threads) according
+     * to the number of incoming queries.
      *
      * This function is just for internal use and is only called by the getUnresolvedRequestsFromResultPool() function
      * which is only executed, if a resolveing option was set AFTER adding queries!
      *
-     * The automatic incrementation just takes place, if the pool is actually full and the value of maximumPoolSize is
+     * If autoAdjustThreadPoolMaximumSize is enabled, the size follows the limit of the concurrency limiter, which is
+     * driven by the observed latency and timeouts (see getConcurrencyLimiter()), so just the actual limit is applied.
+     * Otherwise the size is incremented as before: just if the pool is actually full and the value of maximumPoolSize is
      * beyond 100 threads. The maximum incrementation will be 25% of the actual value of threadPool.getMaximumPoolSize().
      *
      * @param numberOfQueries Number of incoming queries.
      */
     public static void autoAdjustThreadPoolMaximumSize(final int numberOfQueries) {
-//        System.err.println("numberOfQueries: " + numberOfQueries);
-//        System.err.println("getPoolSize: " + threadPool.getPoolSize());
-//        System.err.println("getMaximumPoolSize: " + threadPool.getMaximumPoolSize());
+        if (autoAdjustThreadPoolSize) {
+            applyConcurrencyLimit(CONCURRENCY_LIMITER.getLimit());
+            return;
+        }
+        final VirtualThreadExecutor virtualPool = virtualThreadPool;
+        final int actualMaximum = virtualPool != null ? virtualPool.getConcurrencyLimit() : threadPool.getMaximumPoolSize();
+        final int actualSize = virtualPool != null ? actualMaximum - virtualPool.getFreeSlots() : threadPool.getPoolSize();
         /*
          * A correction of the maximumPoolSize just makes sense, if the pool is actually full.
          * So, if there are enough free slots available, there is not need to increment the pool size and we do nothing...
          */
-        if (numberOfQueries <= 0 || threadPool.getMaximumPoolSize() >= CONST_100
-                || (getThreadPoolFreeSlots() >= numberOfQueries)) {
+        if (numberOfQueries <= 0 || actualMaximum >= CONST_100 || (actualMaximum - actualSize >= numberOfQueries)) {
             return;
         }
-        int maximumPoolSize = threadPool.getMaximumPoolSize();
+        int maximumPoolSize = actualMaximum;
         // If all slots are full and the actual pool size is less than 50 threads, we set a value of 50 threads.
-        if (threadPool.getPoolSize() == threadPool.getMaximumPoolSize()) {
+        if (actualSize >= actualMaximum) {
             // If there are more than 50 queries waiting, we set the size to 50 threads first.
-            if (numberOfQueries - threadPool.getMaximumPoolSize() > CONST_5 * CONST_10 && threadPool.getMaximumPoolSize() < CONST_5 * CONST_10) {
+            if (numberOfQueries - actualMaximum > CONST_5 * CONST_10 && actualMaximum < CONST_5 * CONST_10) {
                 maximumPoolSize = CONST_5 * CONST_10;
             } else {
-                maximumPoolSize += numberOfQueries - threadPool.getMaximumPoolSize();
+                maximumPoolSize += numberOfQueries - actualMaximum;
                 if (maximumPoolSize > CONST_5 * CONST_10) {
                     maximumPoolSize = CONST_5 * CONST_10;
                 }
@@ -491,18 +790,19 @@ public final class Ipv4Utils {
         }
         if (maximumPoolSize < numberOfQueries) {
             // Add additional 25% of the actual maximumPoolSize value.
-            maximumPoolSize += (numberOfQueries - threadPool.getMaximumPoolSize()) / CONST_4;
+            maximumPoolSize += (numberOfQueries - actualMaximum) / CONST_4;
             if (maximumPoolSize > numberOfQueries) {
                 maximumPoolSize = numberOfQueries;
             }
         }
-        if (threadPool.getMaximumPoolSize() < maximumPoolSize) {
-            if (maximumPoolSize < CONST_100) {
-                threadPool.setMaximumPoolSize(maximumPoolSize);
+        if (actualMaximum < maximumPoolSize) {
+            maximumPoolSize = Math.min(maximumPoolSize, CONST_100);
+            if (virtualPool != null) {
+                virtualPool.setConcurrencyLimit(maximumPoolSize);
             } else {
-                threadPool.setMaximumPoolSize(CONST_100);
+                threadPool.setMaximumPoolSize(maximumPoolSize);
             }
-            System.err.println("Auto adjusted maximumPoolSize value to: " + threadPool.getMaximumPoolSize());
+            System.err.println("Auto adjusted maximumPoolSize value to: " + maximumPoolSize);
         }
     }
 
@@ -516,12 +816,81 @@ public final class Ipv4Utils {
     }
 
     /**
-     * Returns the MX recheck ThreadPool.
+     * Returns the executor for the resolver tasks. Depending on the actual mode, this is the ThreadPool
+     * or the executor for virtual threads.
+     *
+     * @return Executor for the resolver tasks.
+     */
+    public static ExecutorService getExecutor() {
+        final VirtualThreadExecutor virtualPool = virtualThreadPool;
+        return virtualPool != null ? virtualPool : threadPool;
+    }
+
+    /**
+     * Returns the value of usingVirtualThreads.
+     *
+     * @return {@code true}, if the resolver tasks are running on virtual threads, otherwise {@code false}.
+     */
+    public static boolean isUsingVirtualThreads() {
+        return virtualThreadPool != null;
+    }
+
+    /**
+     * Enables/Disables the virtual thread mode.
+     *
+     * In the virtual thread mode, every resolver task (including the SMTP verifications of the MX resolver)
+     * runs on its own virtual thread. The tasks are not limited by the number of threads. Instead, the number of
+     * queries in flight (DNS queries and SMTP connection checks) is limited to the actual maximumPoolSize
+     * (see setThreadPoolParams() and acquireQuerySlot()). The queries of the MX recheck tasks are limited to 10
+     * like the recheck tasks in the normal mode.
+     *
+     * Already submitted tasks are finished by the executor they were submitted to. Tasks that wait for another stage
+     * (see StageScheduler) are submitted to the executor that is current when the stage is completed.
+     *
+     * @param useVirtualThreads {@code true} to enable, {@code false} to disable the virtual thread mode.
+     * @return {@code true}, if the mode was set, {@code false} if virtual threads are not supported by the runtime (min. Java 21).
+     */
+    public static synchronized boolean setUseVirtualThreads(final boolean useVirtualThreads) {
+        if (useVirtualThreads == isUsingVirtualThreads()) {
+            return true;
+        }
+        if (useVirtualThreads) {
+            final VirtualThreadExecutor virtualPool = VirtualThreadExecutor.create(maximumPoolSize);
+            final VirtualThreadExecutor virtualRecheckPool = VirtualThreadExecutor.create(CONST_10);
+            if (virtualPool == null || virtualRecheckPool == null) {
+                System.err.println("Virtual threads are not supported by this runtime (min. Java 21 needed).");
+                return false;
+            }
+            System.err.println("Enabling virtual thread mode");
+            virtualRecheckThreadPool = virtualRecheckPool;
+            virtualThreadPool = virtualPool;
+            updateConcurrencyLimiterBounds();
+            applyConcurrencyLimit(CONCURRENCY_LIMITER.getLimit());
+        } else {
+            System.err.println("Disabling virtual thread mode");
+            final VirtualThreadExecutor virtualPool = virtualThreadPool;
+            final VirtualThreadExecutor virtualRecheckPool = virtualRecheckThreadPool;
+            // Hand over first, so getExecutor() never returns an executor that is already shut down.
+            virtualThreadPool = null;
+            virtualRecheckThreadPool = null;
+            virtualPool.shutdown();
+            virtualRecheckPool.shutdown();
+            updateConcurrencyLimiterBounds();
+            applyConcurrencyLimit(CONCURRENCY_LIMITER.getLimit());
+        }
+        return true;
+    }
+
+    /**
+     * Returns the MX recheck ThreadPool (or the recheck executor for virtual threads in the virtual thread mode).
      * This ThreadPool is NOT configurable!
      *
      * @return The MX recheck ThreadPool
      */
     public static synchronized ExecutorService getRecheckThreadPool() {
+        if (virtualRecheckThreadPool != null) {
+            return virtualRecheckThreadPool;
+        }
         if (recheckThreadPool == null) {
 //            System.err.println("#### CREATING recheckThreadPool");
             recheckThreadPool = createBoundedCachedThreadPool(0, CONST_10, CONST_60, TimeUnit.SECONDS);
@@ -544,6 +913,18 @@ public final class Ipv4Utils {
      */
     public static void shutDownThreadPool(final int timeout, final TimeUnit timeUnit) {
         enableCacheObserver(false);
+        final ExecutorService virtualPool;
+        final ExecutorService virtualRecheckPool;
+        synchronized (Ipv4Utils.class) {
+            virtualPool = virtualThreadPool;
+            virtualRecheckPool = virtualRecheckThreadPool;
+        }
+        if (virtualRecheckPool != null) {
+            virtualRecheckPool.shutdown();
+        }
+        if (virtualPool != null) {
+            virtualPool.shutdown();
+        }
         if (recheckThreadPool != null && !recheckThreadPool.isShutdown()) {
             recheckThreadPool.shutdown();
         }
@@ -561,6 +942,37 @@ public final class Ipv4Utils {
             threadPool.awaitTermination(timeout, timeUnit);
         } catch (InterruptedException ignore) {
         }
+        try {
+            if (virtualRecheckPool != null) {
+                virtualRecheckPool.awaitTermination(timeout, timeUnit);
+            }
+            if (virtualPool != null) {
+                virtualPool.awaitTermination(timeout, timeUnit);
+            }
+        } catch (InterruptedException ignore) {
+        }
+    }
+
+    /**
+     * Blocks the calling thread until the given Future is completed (no matter if normally or exceptionally).
+     *
+     * @param future Future to wait for.
+     * @return {@code true} if the Future is completed, {@code false} if the waiting thread was interrupted.
+     */
+    public static boolean awaitCompletion(final Future<?> future) {
+        if (future == null) {
+            return true;
+        }
+        try {
+            future.get();
+        } catch (InterruptedException ie) {
+            // Restore the interrupt status for the caller.
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException ignore) {
+        } catch (CancellationException ignore) {
+        }
+        return true;
     }
 
     /**
@@ -607,12 +1019,12 @@ public final class Ipv4Utils {
     }
 
     /**
-     * Initializes the CacheObserver-TimerTask to run every 20 min. after an initial delay of 10 min.
+     * Initializes the CacheObserver-TimerTask to run every tick of the expiry timing wheel (1 min.).
      */
     private static void initCacheObserver() {
         System.err.println("Enabling CacheObserver");
-        cacheTimer = new Timer();
-        cacheTimer.schedule(new CacheObserver(), TimeUnit.MINUTES.toMillis(CONST_10), TimeUnit.MINUTES.toMillis(CONST_20));
+        cacheTimer = new Timer("IPv4Info-CacheObserver", true);
+        cacheTimer.schedule(new CacheObserver(), EXPIRY_TICK, EXPIRY_TICK);
     }
 
     /**
@@ -620,74 +1032,733 @@ public final class Ipv4Utils {
      *
      * @param enable  {@code TRUE} to enable the CacheObserver-Task, otherwise {@code FALSE}.
      */
-    public static void enableCacheObserver(final boolean enable) {
-        if (enable && cacheTimer == null) {
-            initCacheObserver();
-        } else if (cacheTimer != null) {
-            System.err.println("Disabling CacheObserver");
-            cacheTimer.cancel();
-            cacheTimer.purge();
-            cacheTimer = null;
+    public static synchronized void enableCacheObserver(final boolean enable) {
+        final boolean wasDisabled = cacheObserverDisabled;
+        cacheObserverDisabled = !enable;
+        if (enable) {
+            if (wasDisabled) {
+                // The results added while disabled were not scheduled for expiry.
+                for (final Map.Entry<String, IpInfo> entry : RESULT_POOL.entrySet()) {
+                    scheduleExpiry(entry.getKey(), entry.getValue());
+                }
+            }
+            if (cacheTimer == null) {
+                initCacheObserver();
+            }
+        } else {
+            EXPIRY_WHEEL.clear();
+            if (cacheTimer != null) {
+                System.err.println("Disabling CacheObserver");
+                cacheTimer.cancel();
+                cacheTimer.purge();
+                cacheTimer = null;
+            }
         }
     }
 
     /**
-     * Returns the DNS-Resolver.
+     * Enables the CacheObserver-TimerTask, if it's not running and wasn't disabled explicitly.
      *
-     * @param useRecheckResolver Shall the Fallback-Resolver be used?
-     * @return The value of resolver or fallbackResolver.
+     * As the entries of the RESULT_POOL are not removed by the garbage collector, this is called on adding new results.
      */
-    public static ExtendedResolver getResolver(final boolean useRecheckResolver) {
-        if (useRecheckResolver) {
-            if (recheckResolver == null) {
-//                System.err.println("### New recheckResolver");
-                recheckResolver = getNewResolver();
-                recheckResolver.setTimeout(CONST_20);
-                recheckResolver.setRetries(1);
+    public static void ensureCacheObserver() {
+        if (cacheTimer == null && !cacheObserverDisabled) {
+            synchronized (Ipv4Utils.class) {
+                if (cacheTimer == null && !cacheObserverDisabled) {
+                    initCacheObserver();
+                }
             }
-            return recheckResolver;
         }
-        return resolver;
     }
 
+    /**
+     * Schedules the expiry of a result that was added to the RESULT_POOL.
+     *
+     * The retention policy of the RESULT_POOL is:
+     * <ul>
+     * <li>Results that are still in progress are never removed.</li>
+     * <li>Results with additional lookups (MX, RDNS, TXT) are removed, if they were not accessed for internalCacheTTL.</li>
+     * <li>Results with just the basic lookup are removed, if they were not accessed for one hour.</li>
+     * </ul>
+     * The scheduled results are checked by the CacheObserver-TimerTask, when they are due. A result accessed in the meanwhile
+     * is just scheduled again.
+     *
+     * @param query The corrected query.
+     * @param ipInfo The result.
+     */
+    public static void scheduleExpiry(final String query, final IpInfo ipInfo) {
+        if (!cacheObserverDisabled) {
+            EXPIRY_WHEEL.schedule(query, ipInfo, getExpiryTime(ipInfo, MAX_UNRESOLVED_TTL));
+        }
+    }
 
     /**
-     * Enables or disables the DNS-Server-Roundrobin-Usage of the resolver.
+     * Returns the point of time, when a result expires, if it's not accessed anymore.
      *
-     * The round robin usage will just be enabled if there is more than one nameserver available.
+     * @param ipInfo The result.
+     * @param maxUnresolvedTTL Maximum idle time of results with just the basic lookup in msec.
+     * @return Point of time (System.currentTimeMillis()) when the result expires.
+     */
+    static long getExpiryTime(final IpInfo ipInfo, final long maxUnresolvedTTL) {
+        return ipInfo.getLastAccessed() + getResultTTL(ipInfo, maxUnresolvedTTL);
+    }
+
+    /**
+     * Returns the TTL of a result.
      *
-     * @param useRoundRobin {@code true} enables Roundrobin usage, {@code false} disables it (default).
+     * @param ipInfo The result.
+     * @param maxUnresolvedTTL TTL of results with just the basic lookup in msec.
+     * @return TTL of the result in msec.
      */
-    public static void setUseRoundRobin(final boolean useRoundRobin) {
-        setUseRoundRobin(useRoundRobin, false);
+    private static long getResultTTL(final IpInfo ipInfo, final long maxUnresolvedTTL) {
+        return ipInfo.isAnyResolveActionPerformed() ? internalCacheTTL : maxUnresolvedTTL;
     }
 
     /**
-     * Enables or disables the DNS-Server-Roundrobin-Usage of the resolver.
+     * Refreshes a result of the RESULT_POOL in the background, if it's near its TTL and was accessed recently.
      *
-     * The round robin usage will just be enabled if there is more than one nameserver available.
+     * A result is refreshed, if it's older than refreshAheadFactor * TTL and its last access (before the actual one)
+     * was within the remaining part of the TTL. The query is resolved again with a copy of the IpInfoOptions of the result.
+     * As soon as the refreshed result is done, it replaces the old one atomically. Until then the old result is returned.
+     * A refreshed result with a MX request exception (e.g. a timeout) doesn't replace a result without one.
      *
-     * @param useRoundRobin {@code true} enables Roundrobin usage, {@code false} disables it (default).
-     * @param addGoogleResolvers {@code true} to add the Google resolvers to the resolver list.
+     * @param query The corrected query.
+     * @param ipInfo The pooled result (called before its last access time is updated).
+     * @return {@code TRUE}, if a refresh was started, otherwise {@code FALSE}.
      */
-    public static void setUseRoundRobin(final boolean useRoundRobin, final boolean addGoogleResolvers) {
-        if (useRoundRobin) {
-            if (addGoogleResolvers) {
-                addGoogleResolvers(true);
+    public static boolean refreshAheadIfNeeded(final String query, final IpInfo ipInfo) {
+        final double factor = refreshAheadFactor;
+        if (factor <= 0 || !ipInfo.isRequestDone()) {
+            return false;
+        }
+        final long actualTime = System.currentTimeMillis();
+        final long ttl = getResultTTL(ipInfo, MAX_UNRESOLVED_TTL);
+        final long refreshTime = (long) (ttl * factor);
+        if (actualTime - ipInfo.getCreated() < refreshTime || actualTime - ipInfo.getLastAccessed() > ttl - refreshTime) {
+            return false;
+        }
+        if (REFRESHING_RESULTS.putIfAbsent(query, ipInfo) != null) {
+            return false;
+        }
+        final IpInfoOptions ipInfoOptions;
+        synchronized (ipInfo.getIpInfoOptions()) {
+            ipInfoOptions = new IpInfoOptions(ipInfo.getIpInfoOptions());
+        }
+        final IpInfo refreshed = new IpInfo(ipInfo.getOriginalQuery(), ipInfoOptions);
+        refreshed.getFuture(EDnsOption.ALL).whenComplete((result, t) -> {
+            try {
+                if (t == null) {
+                    replaceRefreshedResult(query, ipInfo, refreshed);
+                }
+            } finally {
+                REFRESHING_RESULTS.remove(query, ipInfo);
             }
-            resolver.setLoadBalance(resolver.getResolvers().length > 1);
-        } else {
-            resolver.setLoadBalance(false);
+        });
+        return true;
+    }
+
+    /**
+     * Replaces a result of the RESULT_POOL by its refreshed result, if it wasn't removed or replaced in the meanwhile.
+     *
+     * @param query The corrected query.
+     * @param ipInfo The old result.
+     * @param refreshed The refreshed result.
+     */
+    private static void replaceRefreshedResult(final String query, final IpInfo ipInfo, final IpInfo refreshed) {
+        if (refreshed.getIpInfoOptions().isResolveMx() && ipInfo.getIpInfoOptions().isResolveMx()
+                && refreshed.getMxInfo().getRequestException() != EException.NONE
+                && ipInfo.getMxInfo().getRequestException() == EException.NONE) {
+            System.err.println("### Keeping result in RESULT_POOL because refresh failed: " + query);
+            return;
+        }
+        refreshed.setLastAccessed(ipInfo.getLastAccessed());
+        if (RESULT_POOL.replace(query, ipInfo, refreshed)) {
+            RESULT_POOL_POLICY.recordReplace(query, ipInfo, refreshed);
+            scheduleExpiry(query, refreshed);
+            REFRESHED_RESULT_COUNT.incrementAndGet();
         }
     }
 
     /**
-     * Enables or disables the usage of the additional Google-DNS-Servers.
+     * Returns the fraction of the TTL of a result, after which a recently accessed result is refreshed.
      *
-     * @param addResolvers {@code true} to use the Google DNS-Servers, otherwise {@code false}.
+     * @return The refresh-ahead factor (0 = disabled).
      */
-    public static void addGoogleResolvers(final boolean addResolvers) {
-        if (!addResolvers) {
+    public static double getRefreshAheadFactor() {
+        return refreshAheadFactor;
+    }
+
+    /**
+     * Sets the fraction of the TTL of a result, after which a recently accessed result is refreshed in the background
+     * (see refreshAheadIfNeeded()). E.g. 0.8 refreshes a hot result with a TTL of 30 min. after 24 min.
+     *
+     * @param factor The refresh-ahead factor (0 <= factor < 1, 0 disables the refresh-ahead, which is the default).
+     */
+    public static void setRefreshAheadFactor(final double factor) {
+        if (factor < 0 || factor >= 1) {
+            System.err.println("Invalid refresh-ahead factor given: " + factor);
+            return;
+        }
+        refreshAheadFactor = factor;
+    }
+
+    /**
+     * Returns the number of results that were replaced by a refreshed result.
+     *
+     * @return Number of refreshed results.
+     */
+    public static long getRefreshedResultCount() {
+        return REFRESHED_RESULT_COUNT.get();
+    }
+
+    /**
+     * Returns the smallest prefix of a subnet query, that is resolved.
+     *
+     * @return The smallest prefix of a subnet query (default 8).
+     */
+    public static int getMinimumSubnetPrefix() {
+        return minimumSubnetPrefix;
+    }
+
+    /**
+     * Sets the smallest prefix of a subnet query, that is resolved. Subnet queries with a smaller prefix are marked as
+     * invalid subnet. Only the RDNS sweep depends on the size of a subnet, and it's processed in chunks
+     * (see setRdnsChunkSize()).
+     *
+     * @param prefix The smallest prefix (1 - 31).
+     */
+    public static void setMinimumSubnetPrefix(final int prefix) {
+        if (prefix < 1 || prefix >= ADDRESS_BITS) {
+            System.err.println("Invalid minimum subnet prefix given: " + prefix);
+            return;
+        }
+        minimumSubnetPrefix = prefix;
+    }
+
+    /**
+     * Returns the number of IP-Addresses of a subnet, that are resolved by one RDNS task.
+     *
+     * @return The chunk size of the RDNS sweep (default 256).
+     */
+    public static int getRdnsChunkSize() {
+        return rdnsChunkSize;
+    }
+
+    /**
+     * Sets the number of IP-Addresses of a subnet, that are resolved by one RDNS task. After a chunk, the sweep is
+     * rescheduled on the executor, so a large subnet doesn't occupy a thread for its whole sweep.
+     *
+     * @param chunkSize The chunk size of the RDNS sweep (&gt; 0).
+     */
+    public static void setRdnsChunkSize(final int chunkSize) {
+        if (chunkSize <= 0) {
+            System.err.println("Invalid RDNS chunk size given: " + chunkSize);
+            return;
+        }
+        rdnsChunkSize = chunkSize;
+    }
+
+    /**
+     * Returns the maximum number of RdnsResult-Objects kept by the RdnsInfo-Object of a subnet.
+     *
+     * @return The maximum number of kept RdnsResult-Objects (default 65536).
+     */
+    public static int getMaxRetainedRdnsResults() {
+        return maxRetainedRdnsResults;
+    }
+
+    /**
+     * Sets the maximum number of RdnsResult-Objects kept by the RdnsInfo-Object of a subnet. Further results of the
+     * RDNS sweep are only passed to the chunk listeners of the RdnsInfo-Object (see RdnsInfo.addChunkListener()).
+     *
+     * @param maxResults The maximum number of kept RdnsResult-Objects (&gt;= 0).
+     */
+    public static void setMaxRetainedRdnsResults(final int maxResults) {
+        if (maxResults < 0) {
+            System.err.println("Invalid maximum number of RDNS results given: " + maxResults);
+            return;
+        }
+        maxRetainedRdnsResults = maxResults;
+    }
+
+    /**
+     * Returns the maximum number of PTR queries of a RDNS sweep in flight.
+     *
+     * @return The in-flight window of a RDNS sweep (default 32).
+     */
+    public static int getRdnsSweepWindow() {
+        return rdnsSweepWindow;
+    }
+
+    /**
+     * Sets the maximum number of PTR queries of a RDNS sweep in flight. The queries are sent without blocking a thread,
+     * so the window may be much larger than the ThreadPool.
+     *
+     * @param window The in-flight window of a RDNS sweep (&gt; 0).
+     */
+    public static void setRdnsSweepWindow(final int window) {
+        if (window <= 0) {
+            System.err.println("Invalid RDNS sweep window given: " + window);
+            return;
+        }
+        rdnsSweepWindow = window;
+    }
+
+    /**
+     * Returns the maximum number of PTR queries per second of a RDNS sweep.
+     *
+     * @return The rate of a RDNS sweep (0 = unlimited, which is the default).
+     */
+    public static int getRdnsSweepRate() {
+        return rdnsSweepRate;
+    }
+
+    /**
+     * Sets the maximum number of PTR queries per second of a RDNS sweep, e.g. to stay below the rate limit of
+     * a nameserver.
+     *
+     * @param rate The rate of a RDNS sweep (0 = unlimited).
+     */
+    public static void setRdnsSweepRate(final int rate) {
+        if (rate < 0) {
+            System.err.println("Invalid RDNS sweep rate given: " + rate);
+            return;
+        }
+        rdnsSweepRate = rate;
+    }
+
+    /**
+     * Removes a result from the RESULT_POOL, if it's expired.
+     *
+     * @param query The corrected query.
+     * @param ipInfo The result.
+     * @param actualTime Actual time.
+     * @param maxUnresolvedTTL Maximum idle time of results with just the basic lookup in msec.
+     * @return {@code TRUE}, if the result was removed, otherwise {@code FALSE}.
+     */
+    private static boolean removeIfExpired(final String query, final IpInfo ipInfo, final long actualTime, final long maxUnresolvedTTL) {
+        // The entry is only removed, if it wasn't replaced in the meanwhile.
+        if (getExpiryTime(ipInfo, maxUnresolvedTTL) >= actualTime || !RESULT_POOL.remove(query, ipInfo)) {
+            return false;
+        }
+        System.err.println("### Removing from RESULT_POOL because lifetime expired: " + query + " -> " + ipInfo.getLastAccessed());
+        RESULT_POOL_POLICY.recordRemoval(query, ipInfo);
+        RESULT_POOL_POLICY.notifyListeners(query, ipInfo, EEvictionCause.EXPIRED);
+        return true;
+    }
+
+    /**
+     * Processes a batch of the results that are due by the expiry timing wheel.
+     * Expired results are removed, all others are scheduled again.
+     *
+     * @param maxBatch Maximum number of results to process.
+     * @return Number of processed results (less than maxBatch, if there are no more due results).
+     */
+    static int expireDueResults(final int maxBatch) {
+        final long actualTime = System.currentTimeMillis();
+        final List<ExpiryWheel.Entry> dueList = EXPIRY_WHEEL.poll(actualTime, maxBatch);
+        for (final ExpiryWheel.Entry entry : dueList) {
+            final IpInfo ipInfo = entry.getValue();
+            if (RESULT_POOL.get(entry.getKey()) != ipInfo) {
+                // Already removed or replaced.
+                continue;
+            }
+            if (ipInfo.getLastAccessed() == 0) {
+                ipInfo.setLastAccessed(actualTime);
+            }
+            if (!ipInfo.isRequestDone()) {
+                EXPIRY_WHEEL.schedule(entry.getKey(), ipInfo, Math.max(getExpiryTime(ipInfo, MAX_UNRESOLVED_TTL), actualTime + EXPIRY_TICK));
+            } else if (!removeIfExpired(entry.getKey(), ipInfo, actualTime, MAX_UNRESOLVED_TTL)) {
+                EXPIRY_WHEEL.schedule(entry.getKey(), ipInfo, getExpiryTime(ipInfo, MAX_UNRESOLVED_TTL));
+            }
+        }
+        return dueList.size();
+    }
+
+    /**
+     * Removes all expired results from the RESULT_POOL by walking through the whole pool (see scheduleExpiry() for the policy).
+     *
+     * This is normally not needed, as the results are removed incrementally by the CacheObserver-TimerTask.
+     * It's useful if results were added to the RESULT_POOL directly or the CacheObserver-TimerTask is disabled.
+     *
+     * @param maxUnresolvedTTL Maximum idle time of results with just the basic lookup in msec.
+     * @return Number of removed results.
+     */
+    public static int removeExpiredResults(final long maxUnresolvedTTL) {
+        final long actualTime = System.currentTimeMillis();
+        int result = 0;
+        for (final Map.Entry<String, IpInfo> entry : RESULT_POOL.entrySet()) {
+            final IpInfo ipInfo = entry.getValue();
+            if (!ipInfo.isRequestDone()) {
+                continue;
+            }
+            if (ipInfo.getLastAccessed() == 0) {
+                ipInfo.setLastAccessed(actualTime);
+                continue;
+            }
+            if (removeIfExpired(entry.getKey(), ipInfo, actualTime, maxUnresolvedTTL)) {
+                ++result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Bounds the RESULT_POOL by a maximum number of results and/or a maximum estimated memory usage.
+     *
+     * If the bounds are exceeded, results are evicted by a W-TinyLFU style policy (see ResultPoolPolicy), which keeps
+     * frequently accessed results and prefers to evict one-off queries. The retention policy (see removeExpiredResults())
+     * is applied in addition. Results in progress count against the bounds, but they are never evicted: finished results
+     * are evicted instead, so the bounds are only exceeded, if the results in progress alone exceed them.
+     *
+     * @param maxEntries Maximum number of results (0 = unbounded).
+     * @param maxBytes Maximum estimated memory usage of all results in bytes (0 = unbounded).
+     * @return {@code true}, if the bounds were set, otherwise {@code false}.
+     */
+    public static boolean setResultPoolBounds(final int maxEntries, final long maxBytes) {
+        if (maxEntries < 0 || maxBytes < 0) {
+            System.err.println("Invalid result pool bounds given.");
+            return false;
+        }
+        RESULT_POOL_POLICY.setBounds(maxEntries, maxBytes);
+        return true;
+    }
+
+    /**
+     * Adds a listener that is notified when a result is removed from the RESULT_POOL (by the bounds or the retention policy).
+     *
+     * @param listener The listener.
+     */
+    public static void addResultEvictionListener(final ResultEvictionListener listener) {
+        RESULT_POOL_POLICY.addEvictionListener(listener);
+    }
+
+    /**
+     * Removes a listener that was added by addResultEvictionListener().
+     *
+     * @param listener The listener.
+     */
+    public static void removeResultEvictionListener(final ResultEvictionListener listener) {
+        RESULT_POOL_POLICY.removeEvictionListener(listener);
+    }
+
+    /**
+     * Returns the DNS-Resolver.
+     *
+     * @param useRecheckResolver Shall the Fallback-Resolver be used?
+     * @return The value of resolver or fallbackResolver.
+     */
+    public static ExtendedResolver getResolver(final boolean useRecheckResolver) {
+        if (useRecheckResolver) {
+            if (recheckResolver == null) {
+//                System.err.println("### New recheckResolver");
+                recheckResolver = getNewResolver();
+                recheckResolver.setTimeout(CONST_20);
+                recheckResolver.setRetries(1);
+            }
+            return recheckResolver;
+        }
+        return resolver;
+    }
+
+    /**
+     * Returns the Resolver for the DNS queries of the resolver threads.
+     *
+     * If the multiplexed transport is enabled, all queries share its few non-blocking sockets,
+     * otherwise the ExtendedResolver of getResolver() is used. If autoAdjustThreadPoolMaximumSize is enabled,
+     * the queries of the normal resolver are passed through the concurrency limiter (the recheck queries are not).
+     *
+     * @param useRecheckResolver Shall the Fallback-Resolver be used?
+     * @return Resolver for the DNS queries.
+     */
+    public static Resolver getQueryResolver(final boolean useRecheckResolver) {
+        final MultiplexedDnsTransport currentTransport = useRecheckResolver ? recheckTransport : transport;
+        final Resolver result = currentTransport != null ? currentTransport : getResolver(useRecheckResolver);
+        // The recheck queries (with their long timeouts) would distort the latency and timeout rate of the normal queries.
+        if (!autoAdjustThreadPoolSize || useRecheckResolver) {
+            return result;
+        }
+        LimitedResolver limited = limitedResolver;
+        if (limited == null || limited.getDelegate() != result) {
+            limited = new LimitedResolver(result, CONCURRENCY_LIMITER);
+            limitedResolver = limited;
+        }
+        return limited;
+    }
+
+    /**
+     * Sends a DNS query for the given name and type (class IN).
+     *
+     * The answer is taken from the DNS_CACHE, as long as the cached records are valid. Otherwise the query
+     * is sent by the Resolver of getQueryResolver() and the response is cached.
+     *
+     * If the same question is already in flight, no other query is sent. The caller waits for the pending response
+     * (or its failure) instead. The response is shared, so it must not be modified.
+     *
+     * @param name The name to query.
+     * @param type The type to query (see org.xbill.DNS.Type).
+     * @param useRecheckResolver Shall the Fallback-Resolver be used?
+     * @return The response.
+     * @throws IOException On timeouts (SocketTimeoutException) and other I/O errors.
+     */
+    public static Message sendQuery(final Name name, final int type, final boolean useRecheckResolver) throws IOException {
+        final Record question = Record.newRecord(name, type, DClass.IN, DNSJAVA_TTL_TIMEOUT);
+        final Message cached = DNS_CACHE.get(question);
+        if (cached != null) {
+            return cached;
+        }
+        // Name.equals() ignores the case, so the key does the same.
+        final String key = type + (useRecheckResolver ? "/R/" : "/") + name.toString().toLowerCase(Locale.ENGLISH);
+        final CompletableFuture<Message> created = new CompletableFuture<Message>();
+        final CompletableFuture<Message> pending = IN_FLIGHT_QUERIES.putIfAbsent(key, created);
+        if (pending != null) {
+            COALESCED_QUERY_COUNT.incrementAndGet();
+            return awaitResponse(pending);
+        }
+        try {
+            final VirtualThreadExecutor slot = acquireQuerySlot(useRecheckResolver);
+            final Message response;
+            try {
+                response = getQueryResolver(useRecheckResolver).send(Message.newQuery(question));
+            } finally {
+                releaseQuerySlot(slot);
+            }
+            // Cached before the question is removed from the flight, so no other query is sent in between.
+            DNS_CACHE.put(question, response);
+            created.complete(response);
+            return response;
+        } catch (Throwable t) {
+            created.completeExceptionally(t);
+            throw t;
+        } finally {
+            IN_FLIGHT_QUERIES.remove(key, created);
+        }
+    }
+
+    /**
+     * Sends a DNS query for the given name and type (class IN) without blocking.
+     *
+     * Like sendQuery(), the answer is taken from the DNS_CACHE if possible and an identical question in flight is
+     * shared. The returned Future is completed with the response, or exceptionally with the failure of the query
+     * (normally a SocketTimeoutException). The Future may be shared, so it must not be completed by the caller.
+     *
+     * @param name The name to query.
+     * @param type The type to query (see org.xbill.DNS.Type).
+     * @param useRecheckResolver Shall the Fallback-Resolver be used?
+     * @return Future of the response.
+     */
+    public static CompletableFuture<Message> sendQueryAsync(final Name name, final int type, final boolean useRecheckResolver) {
+        final Record question = Record.newRecord(name, type, DClass.IN, DNSJAVA_TTL_TIMEOUT);
+        final Message cached = DNS_CACHE.get(question);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        final String key = type + (useRecheckResolver ? "/R/" : "/") + name.toString().toLowerCase(Locale.ENGLISH);
+        final CompletableFuture<Message> created = new CompletableFuture<Message>();
+        final CompletableFuture<Message> pending = IN_FLIGHT_QUERIES.putIfAbsent(key, created);
+        if (pending != null) {
+            COALESCED_QUERY_COUNT.incrementAndGet();
+            return pending;
+        }
+        final VirtualThreadExecutor slot;
+        try {
+            slot = acquireQuerySlot(useRecheckResolver);
+        } catch (InterruptedIOException iioe) {
+            IN_FLIGHT_QUERIES.remove(key, created);
+            created.completeExceptionally(iioe);
+            return created;
+        }
+        try {
+            getQueryResolver(useRecheckResolver).sendAsync(Message.newQuery(question), new ResolverListener() {
+                public void receiveMessage(final Object id, final Message m) {
+                    releaseQuerySlot(slot);
+                    // Cached before the question is removed from the flight, so no other query is sent in between.
+                    DNS_CACHE.put(question, m);
+                    IN_FLIGHT_QUERIES.remove(key, created);
+                    created.complete(m);
+                }
+                public void handleException(final Object id, final Exception e) {
+                    releaseQuerySlot(slot);
+                    IN_FLIGHT_QUERIES.remove(key, created);
+                    created.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException re) {
+            releaseQuerySlot(slot);
+            IN_FLIGHT_QUERIES.remove(key, created);
+            created.completeExceptionally(re);
+        }
+        return created;
+    }
+
+    /**
+     * Takes a slot for a query in flight (a DNS query or an SMTP connection check), if the resolver tasks are running
+     * on virtual threads. Otherwise the queries are just limited by the number of threads, so nothing is done.
+     *
+     * The slot must be returned by releaseQuerySlot() on the response or failure of the query.
+     *
+     * @param useRecheckResolver Is it a query of the MX recheck?
+     * @return The executor the slot was taken from, or {@code NULL} if the virtual thread mode is disabled.
+     * @throws InterruptedIOException If the thread was interrupted while waiting for a slot.
+     */
+    static VirtualThreadExecutor acquireQuerySlot(final boolean useRecheckResolver) throws InterruptedIOException {
+        final VirtualThreadExecutor virtualPool = useRecheckResolver ? virtualRecheckThreadPool : virtualThreadPool;
+        if (virtualPool != null) {
+            try {
+                virtualPool.acquirePermit();
+            } catch (InterruptedException ie) {
+                // Restore the interrupt status for the caller.
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a query slot");
+            }
+        }
+        return virtualPool;
+    }
+
+    /**
+     * Returns a slot taken by acquireQuerySlot().
+     *
+     * @param slot The executor the slot was taken from (may be {@code NULL}).
+     */
+    static void releaseQuerySlot(final VirtualThreadExecutor slot) {
+        if (slot != null) {
+            slot.releasePermit();
+        }
+    }
+
+    /**
+     * Waits for the response of a DNS question in flight.
+     *
+     * @param pending The Future of the response.
+     * @return The response.
+     * @throws IOException The failure of the query, or an InterruptedIOException if the waiting thread was interrupted.
+     */
+    private static Message awaitResponse(final Future<Message> pending) throws IOException {
+        try {
+            return pending.get();
+        } catch (InterruptedException ie) {
+            // Restore the interrupt status for the caller.
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a DNS response");
+        } catch (ExecutionException ee) {
+            final Throwable cause = ee.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Returns the number of DNS queries that were saved, because an identical question was already in flight.
+     *
+     * @return Number of saved DNS queries.
+     */
+    public static long getCoalescedQueryCount() {
+        return COALESCED_QUERY_COUNT.get();
+    }
+
+    /**
+     * Returns the number of DNS questions in flight.
+     *
+     * @return Number of DNS questions in flight.
+     */
+    public static int getInFlightQueryCount() {
+        return IN_FLIGHT_QUERIES.size();
+    }
+
+    /**
+     * Returns {@code TRUE}, if the DNS queries are sent by the multiplexed transport.
+     *
+     * @return {@code TRUE}, if the DNS queries are sent by the multiplexed transport, otherwise {@code FALSE}.
+     */
+    public static boolean isUsingMultiplexedTransport() {
+        return transport != null;
+    }
+
+    /**
+     * Enables or disables the multiplexed transport for the DNS queries.
+     *
+     * By default, every query blocks a thread and opens its own socket. On a high number of parallel queries,
+     * this may end up in "Too many open files" errors. The multiplexed transport sends all queries through
+     * a few non-blocking sockets, which are served by a single thread. It uses the nameservers, timeouts, retries and
+     * round robin setting of the resolvers, and follows every later change of them (see applyResolverConfig()).
+     *
+     * The transport can't be enabled, if the addresses of the nameservers are unknown (see setNewResolver()).
+     *
+     * @param useMultiplexedTransport {@code true} to enable the multiplexed transport, {@code false} to disable it (default).
+     * @return {@code true}, if the transport was set, {@code false} if the addresses of the nameservers are unknown.
+     */
+    public static synchronized boolean setUseMultiplexedTransport(final boolean useMultiplexedTransport) {
+        if (useMultiplexedTransport == isUsingMultiplexedTransport()) {
+            return true;
+        }
+        if (useMultiplexedTransport) {
+            final List<InetSocketAddress> servers = getServerAddresses(resolver);
+            final List<InetSocketAddress> recheckServers = getServerAddresses(getResolver(true));
+            if (servers == null || recheckServers == null) {
+                System.err.println("The multiplexed transport can't be used, as the nameservers of the resolver are unknown.");
+                return false;
+            }
+            recheckTransport = new MultiplexedDnsTransport(MultiplexedDnsTransport.DEFAULT_CHANNEL_COUNT, recheckServers);
+            transport = new MultiplexedDnsTransport(MultiplexedDnsTransport.DEFAULT_CHANNEL_COUNT, servers);
+            applyResolverConfig();
+        } else {
+            final MultiplexedDnsTransport oldTransport = transport;
+            final MultiplexedDnsTransport oldRecheckTransport = recheckTransport;
+            transport = null;
+            recheckTransport = null;
+            oldTransport.close();
+            oldRecheckTransport.close();
+        }
+        return true;
+    }
+
+    /**
+     * Enables or disables the DNS-Server-Roundrobin-Usage of the resolver.
+     *
+     * The round robin usage will just be enabled if there is more than one nameserver available.
+     *
+     * @param useRoundRobin {@code true} enables Roundrobin usage, {@code false} disables it (default).
+     */
+    public static void setUseRoundRobin(final boolean useRoundRobin) {
+        setUseRoundRobin(useRoundRobin, false);
+    }
+
+    /**
+     * Enables or disables the DNS-Server-Roundrobin-Usage of the resolver.
+     *
+     * The round robin usage will just be enabled if there is more than one nameserver available.
+     *
+     * @param useRoundRobin {@code true} enables Roundrobin usage, {@code false} disables it (default).
+     * @param addGoogleResolvers {@code true} to add the Google resolvers to the resolver list.
+     */
+    public static void setUseRoundRobin(final boolean useRoundRobin, final boolean addGoogleResolvers) {
+        if (useRoundRobin) {
+            if (addGoogleResolvers) {
+                addGoogleResolvers(true);
+            }
+            resolverLoadBalance = resolver.getResolvers().length > 1;
+        } else {
+            resolverLoadBalance = false;
+        }
+        resolver.setLoadBalance(resolverLoadBalance);
+        applyResolverConfig();
+    }
+
+    /**
+     * Enables or disables the usage of the additional Google-DNS-Servers.
+     *
+     * @param addResolvers {@code true} to use the Google DNS-Servers, otherwise {@code false}.
+     */
+    public static void addGoogleResolvers(final boolean addResolvers) {
+        if (!addResolvers) {
             if (googleResolverList != null) {
                 for (Resolver googleResolver : googleResolverList) {
                     resolver.deleteResolver(googleResolver);
@@ -698,7 +1769,7 @@ public final class Ipv4Utils {
                 googleResolverList = new ArrayList<Resolver>();
                 for (final String address : GOOGLE_DNS_IPS) {
                     try {
-                        googleResolverList.add(new SimpleResolver(address));
+                        googleResolverList.add(createSimpleResolver(address));
                     } catch (UnknownHostException ignore) {
                     }
                 }
@@ -710,6 +1781,7 @@ public final class Ipv4Utils {
                 }
             }
         }
+        applyResolverConfig();
     }
 
     /**
@@ -734,6 +1806,7 @@ public final class Ipv4Utils {
                 resolver.deleteResolver(r);
             }
             justUsingGoogleResolvers = true;
+            // Also applies the new nameservers to the multiplexed transport.
             addGoogleResolvers(true);
         }
     }
@@ -744,7 +1817,9 @@ public final class Ipv4Utils {
      * @param retries Number of retries.
      */
     public static void setResolverRetries(final int retries) {
-        resolver.setRetries(retries >= 0 ? retries : 0);
+        resolverRetries = retries >= 0 ? retries : 0;
+        resolver.setRetries(resolverRetries);
+        applyResolverConfig();
     }
 
     /**
@@ -759,10 +1834,13 @@ public final class Ipv4Utils {
         final int givenTimeout = (int) timeUnit.convert(timeout, TimeUnit.SECONDS);
         if (givenTimeout > 0 && givenTimeout <= CONST_2 * CONST_60) {
             if (useRecheckResolver) {
+                recheckResolverTimeout = givenTimeout;
                 recheckResolver.setTimeout(givenTimeout);
             } else {
+                resolverTimeout = givenTimeout;
                 resolver.setTimeout(givenTimeout);
             }
+            applyResolverConfig();
         }
     }
 
@@ -787,10 +1865,12 @@ public final class Ipv4Utils {
             getResolver(true);
         }
         if (retries > 0) {
-            recheckResolver.setRetries(retries);
+            recheckResolverRetries = retries;
         } else {
-            recheckResolver.setRetries(1);
+            recheckResolverRetries = 1;
         }
+        recheckResolver.setRetries(recheckResolverRetries);
+        applyResolverConfig();
     }
 
     /**
@@ -824,10 +1904,111 @@ public final class Ipv4Utils {
     /**
      * Changes the default resolver.
      *
+     * The multiplexed transport needs the addresses of the nameservers, which are just known for resolvers created
+     * by this class (see createResolver() and getNewResolver()). If the transport is enabled and the addresses of
+     * the new resolver are unknown, the transport is disabled.
+     *
      * @param resolver ExtendedResolver.
      */
     public static void setNewResolver(final ExtendedResolver resolver) {
         Ipv4Utils.resolver = resolver;
+        applyResolverConfig();
+    }
+
+    /**
+     * Creates a new ExtendedResolver for the given nameservers, which can be set by setNewResolver().
+     * Unlike a self-made ExtendedResolver, it can be used by the multiplexed transport.
+     *
+     * @param servers Addresses of the nameservers.
+     * @return ExtendedResolver for the given nameservers.
+     * @throws UnknownHostException If the default nameserver of dnsjava is unknown.
+     */
+    public static ExtendedResolver createResolver(final InetSocketAddress... servers) throws UnknownHostException {
+        final Resolver[] resolvers = new Resolver[servers.length];
+        for (int i = 0; i < servers.length; ++i) {
+            final SimpleResolver simpleResolver = new SimpleResolver();
+            simpleResolver.setAddress(servers[i]);
+            RESOLVER_ADDRESSES.put(simpleResolver, servers[i]);
+            resolvers[i] = simpleResolver;
+        }
+        return new ExtendedResolver(resolvers);
+    }
+
+    /**
+     * Creates a new ExtendedResolver for the given nameservers (with the default DNS port).
+     *
+     * @param servers Names or IP-Addresses of the nameservers.
+     * @return ExtendedResolver for the given nameservers.
+     * @throws UnknownHostException If a nameserver is unknown.
+     */
+    private static ExtendedResolver createResolver(final String[] servers) throws UnknownHostException {
+        final Resolver[] resolvers = new Resolver[servers.length];
+        for (int i = 0; i < servers.length; ++i) {
+            resolvers[i] = createSimpleResolver(servers[i]);
+        }
+        return new ExtendedResolver(resolvers);
+    }
+
+    /**
+     * Creates a new SimpleResolver for the given nameserver (with the default DNS port) and remembers its address.
+     *
+     * @param server Name or IP-Address of the nameserver.
+     * @return SimpleResolver for the given nameserver.
+     * @throws UnknownHostException If the nameserver is unknown.
+     */
+    private static SimpleResolver createSimpleResolver(final String server) throws UnknownHostException {
+        final InetSocketAddress address = new InetSocketAddress(InetAddress.getByName(server), MultiplexedDnsTransport.DNS_PORT);
+        final SimpleResolver result = new SimpleResolver(server);
+        result.setAddress(address);
+        RESOLVER_ADDRESSES.put(result, address);
+        return result;
+    }
+
+    /**
+     * Returns the addresses of the nameservers of a resolver.
+     *
+     * @param extendedResolver The resolver.
+     * @return Addresses of the nameservers, or {@code NULL} if there are none or they are unknown.
+     */
+    private static List<InetSocketAddress> getServerAddresses(final ExtendedResolver extendedResolver) {
+        if (extendedResolver == null) {
+            return null;
+        }
+        final List<InetSocketAddress> result = new ArrayList<InetSocketAddress>();
+        for (final Resolver r : extendedResolver.getResolvers()) {
+            final InetSocketAddress address = RESOLVER_ADDRESSES.get(r);
+            if (address == null) {
+                return null;
+            }
+            result.add(address);
+        }
+        return result.isEmpty() ? null : result;
+    }
+
+    /**
+     * Applies the actual nameservers, timeouts, retries and round robin setting of the resolvers to the multiplexed transport
+     * (if enabled). Queries already in flight are not affected. If the nameservers are unknown, the transport is disabled.
+     */
+    private static synchronized void applyResolverConfig() {
+        final MultiplexedDnsTransport currentTransport = transport;
+        final MultiplexedDnsTransport currentRecheckTransport = recheckTransport;
+        if (currentTransport == null || currentRecheckTransport == null) {
+            return;
+        }
+        final List<InetSocketAddress> servers = getServerAddresses(resolver);
+        final List<InetSocketAddress> recheckServers = getServerAddresses(getResolver(true));
+        if (servers == null || recheckServers == null) {
+            System.err.println("Disabling the multiplexed transport, as the nameservers of the resolver are unknown.");
+            setUseMultiplexedTransport(false);
+            return;
+        }
+        currentTransport.setServers(servers);
+        currentTransport.setTimeout(resolverTimeout);
+        currentTransport.setRetries(resolverRetries);
+        currentTransport.setLoadBalance(resolverLoadBalance);
+        currentRecheckTransport.setServers(recheckServers);
+        currentRecheckTransport.setTimeout(recheckResolverTimeout);
+        currentRecheckTransport.setRetries(recheckResolverRetries);
     }
 
     /**
@@ -837,7 +2018,7 @@ public final class Ipv4Utils {
      * @return Corrected IP/Domain.
      */
     public static String getCorrectedQuery(final String query) {
-        return query == null ? null : query.replaceAll(QUERY_CORRECTION, "").toLowerCase();
+        return QueryScanner.correct(query);
     }
 
     /**
@@ -860,14 +2041,223 @@ public final class Ipv4Utils {
     /**
      * Converts an IP-Address to int.
      *
+     * Use parseIp() to check the IP-Address without an exception.
+     *
      * @param ip IP-Address.
-     * @return IP-Address as int.
+     * @return IP-Address as int (0 for {@code NULL}).
+     * @throws IllegalStateException If the given String isn't a valid IP-Address.
      */
     public static int ipToInt(final String ip) {
         if (ip == null) {
             return 0;
         }
-        return matchAddress(ADDRESS_PATTERN.matcher(ip));
+        final long result = parseIp(ip, 0, ip.length());
+        if (result < 0) {
+            throw new IllegalStateException("No valid IP-Address: " + ip);
+        }
+        return (int) result;
+    }
+
+    /**
+     * Parses an IP-Address in dotted-quad notation without allocating any objects.
+     *
+     * The accepted notation is the same as of the ADDRESS_PATTERN: four decimal octets (0-255) without leading zeros.
+     *
+     * @param chars Characters containing the IP-Address.
+     * @param start Index of the first character of the IP-Address.
+     * @param end Index after the last character of the IP-Address.
+     * @return IP-Address as unsigned int value (0 - 2^32-1), or -1 if it isn't a valid IP-Address.
+     */
+    public static long parseIp(final CharSequence chars, final int start, final int end) {
+        long result = 0;
+        int octet = 0;
+        int digits = 0;
+        int dots = 0;
+        for (int i = start; i < end; ++i) {
+            final char c = chars.charAt(i);
+            if (c == '.') {
+                if (digits == 0 || ++dots > CONST_3) {
+                    return -1;
+                }
+                result = result << CONST_8 | octet;
+                octet = 0;
+                digits = 0;
+            } else if (c >= '0' && c <= '9') {
+                // Leading zeros are not allowed.
+                if (digits > 0 && octet == 0) {
+                    return -1;
+                }
+                octet = octet * CONST_10 + (c - '0');
+                if (++digits > CONST_3 || octet > CONST_255) {
+                    return -1;
+                }
+            } else {
+                return -1;
+            }
+        }
+        if (digits == 0 || dots != CONST_3) {
+            return -1;
+        }
+        return result << CONST_8 | octet;
+    }
+
+    /**
+     * Converts an int value into it's IP-Address representation (dotted-quad notation).
+     *
+     * @param intValue int value.
+     * @return IP-Address.
+     */
+    public static String intToIp(final int intValue) {
+        final char[] chars = new char[MAX_IP_LENGTH];
+        int position = 0;
+        for (int shift = CONST_8 * CONST_3; shift >= 0; shift -= CONST_8) {
+            final int octet = (intValue >>> shift) & CONST_255;
+            if (octet >= CONST_100) {
+                chars[position++] = (char) ('0' + octet / CONST_100);
+            }
+            if (octet >= CONST_10) {
+                chars[position++] = (char) ('0' + octet / CONST_10 % CONST_10);
+            }
+            chars[position++] = (char) ('0' + octet % CONST_10);
+            if (shift > 0) {
+                chars[position++] = '.';
+            }
+        }
+        return new String(chars, 0, position);
+    }
+
+    /**
+     * Appends the IP-Address representation (dotted-quad notation) of an int value to a StringBuilder.
+     *
+     * @param sb The StringBuilder.
+     * @param intValue int value.
+     * @return The given StringBuilder.
+     */
+    public static StringBuilder appendIp(final StringBuilder sb, final int intValue) {
+        for (int shift = CONST_8 * CONST_3; shift >= 0; shift -= CONST_8) {
+            sb.append((intValue >>> shift) & CONST_255);
+            if (shift > 0) {
+                sb.append('.');
+            }
+        }
+        return sb;
+    }
+
+    /**
+     * Writes the IP-Address representation (dotted-quad notation) of an int value as ASCII characters into a byte array.
+     *
+     * @param buffer The byte array (needs space for MAX_IP_LENGTH bytes from the offset).
+     * @param offset Index of the first written byte.
+     * @param intValue int value.
+     * @return Index after the last written byte.
+     */
+    public static int writeIp(final byte[] buffer, final int offset, final int intValue) {
+        int position = offset;
+        for (int shift = CONST_8 * CONST_3; shift >= 0; shift -= CONST_8) {
+            final int octet = (intValue >>> shift) & CONST_255;
+            if (octet >= CONST_100) {
+                buffer[position++] = (byte) ('0' + octet / CONST_100);
+            }
+            if (octet >= CONST_10) {
+                buffer[position++] = (byte) ('0' + octet / CONST_10 % CONST_10);
+            }
+            buffer[position++] = (byte) ('0' + octet % CONST_10);
+            if (shift > 0) {
+                buffer[position++] = '.';
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Appends the reversed IP-Address representation of an int value (e.g. 4.3.2.1 for 1.2.3.4) to a StringBuilder.
+     *
+     * @param sb The StringBuilder.
+     * @param intValue int value.
+     * @return The given StringBuilder.
+     */
+    public static StringBuilder appendReverseIp(final StringBuilder sb, final int intValue) {
+        for (int shift = 0; shift <= CONST_8 * CONST_3; shift += CONST_8) {
+            sb.append((intValue >>> shift) & CONST_255);
+            if (shift < CONST_8 * CONST_3) {
+                sb.append('.');
+            }
+        }
+        return sb;
+    }
+
+    /**
+     * Appends the reverse name of an int value, as used for RDNS queries (e.g. 4.3.2.1.in-addr.arpa. for 1.2.3.4),
+     * to a StringBuilder.
+     *
+     * @param sb The StringBuilder.
+     * @param intValue int value.
+     * @return The given StringBuilder.
+     */
+    public static StringBuilder appendReverseName(final StringBuilder sb, final int intValue) {
+        return appendReverseIp(sb, intValue).append(REVERSE_DOMAIN);
+    }
+
+    /**
+     * Parses a CIDR-Notation (e.g. 10.0.0.0/8) without allocating any objects. A single IP-Address is treated as /32.
+     *
+     * @param chars Characters containing the CIDR-Notation.
+     * @param start Index of the first character of the CIDR-Notation.
+     * @param end Index after the last character of the CIDR-Notation.
+     * @return Prefix (bits 32 - 39) and IP-Address (bits 0 - 31, unsigned), or -1 if it isn't a valid CIDR-Notation.
+     */
+    public static long parseCidr(final CharSequence chars, final int start, final int end) {
+        int slash = end;
+        for (int i = start; i < end; ++i) {
+            if (chars.charAt(i) == '/') {
+                slash = i;
+                break;
+            }
+        }
+        final long address = parseIp(chars, start, slash);
+        if (address < 0) {
+            return -1;
+        }
+        int prefix = ADDRESS_BITS;
+        if (slash < end) {
+            final int digits = end - slash - 1;
+            if (digits < 1 || digits > CONST_2) {
+                return -1;
+            }
+            prefix = 0;
+            for (int i = slash + 1; i < end; ++i) {
+                final char c = chars.charAt(i);
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                prefix = prefix * CONST_10 + (c - '0');
+            }
+            if (prefix > ADDRESS_BITS) {
+                return -1;
+            }
+        }
+        return (long) prefix << ADDRESS_BITS | address;
+    }
+
+    /**
+     * Returns the netmask of a prefix (e.g. 0xFFFFFF00 for 24).
+     *
+     * @param prefix Prefix (0 - 32).
+     * @return Netmask as int value.
+     */
+    public static int prefixToNetmask(final int prefix) {
+        return prefix == 0 ? 0 : -1 << (ADDRESS_BITS - prefix);
+    }
+
+    /**
+     * Converts an int value and a prefix into a CIDR-Notation (e.g. 10.0.0.0/8).
+     *
+     * @param intValue int value of the IP-Address.
+     * @param prefix Prefix (0 - 32).
+     * @return CIDR-Notation.
+     */
+    public static String intToCidr(final int intValue, final int prefix) {
+        return appendIp(new StringBuilder(MAX_CIDR_LENGTH), intValue).append('/').append(prefix).toString();
     }
 
     /**
@@ -909,10 +2299,14 @@ public final class Ipv4Utils {
         if (shortList == null) {
             return null;
         }
-        if (reverseOrder) {
-            Collections.reverse(shortList);
+        final StringBuilder sb = new StringBuilder(MAX_IP_LENGTH);
+        for (int i = 0; i < shortList.size(); ++i) {
+            if (i > 0) {
+                sb.append('.');
+            }
+            sb.append(shortList.get(reverseOrder ? shortList.size() - 1 - i : i).shortValue());
         }
-        return shortList.toString().replaceAll(",[ ]*", ".").replaceAll("[\\[\\]]", "");
+        return sb.toString();
     }
 
     /**
@@ -925,6 +2319,11 @@ public final class Ipv4Utils {
         if (ip == null || ip.length() == 0) {
             return null;
         }
+        final long intValue = parseIp(ip, 0, ip.length());
+        if (intValue >= 0) {
+            return appendReverseIp(new StringBuilder(MAX_IP_LENGTH), (int) intValue).toString();
+        }
+        // Not a valid IP-Address, so just the parts are reversed.
         final List<Short> shortList = new ArrayList<Short>();
         try {
             for (String s : ip.split("[.]")) {
@@ -998,7 +2397,7 @@ public final class Ipv4Utils {
         if (query == null || query.length() == 0) {
             return false;
         }
-        return DOMAIN_PATTERN.matcher(query).find();
+        return QueryScanner.getType(QueryScanner.scan(query)) == EQueryType.DOMAIN;
     }
 
     /**
@@ -1011,7 +2410,9 @@ public final class Ipv4Utils {
         if (query == null || query.length() == 0) {
             return false;
         }
-        return CIDR_PATTERN.matcher(query).find();
+        final long result = QueryScanner.scan(query);
+        // CIDR_PATTERN accepts prefixes up to 99.
+        return QueryScanner.getPrefix(result) != QueryScanner.NO_PREFIX;
     }
 
     /**
@@ -0,0 +1,157 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package de.jdevelopers.ipv4info.utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.List;
+
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.ResolverListener;
+import org.xbill.DNS.TSIG;
+
+/**
+ * Resolver that passes every query through an AdaptiveConcurrencyLimiter before sending it by the wrapped Resolver.
+ *
+ * @author Carsten Jäger
+ *
+ */
+final class LimitedResolver implements Resolver {
+
+    /**
+     * The wrapped Resolver.
+     */
+    private final Resolver delegate;
+
+    /**
+     * The limiter.
+     */
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    /**
+     * Constructor.
+     *
+     * @param delegate The wrapped Resolver.
+     * @param limiter The limiter.
+     */
+    LimitedResolver(final Resolver delegate, final AdaptiveConcurrencyLimiter limiter) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+    }
+
+    /**
+     * Returns the wrapped Resolver.
+     *
+     * @return The wrapped Resolver.
+     */
+    Resolver getDelegate() {
+        return delegate;
+    }
+
+    public Message send(final Message query) throws IOException {
+        final long startTime;
+        try {
+            startTime = limiter.acquire();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a DNS query slot.");
+        }
+        boolean released = false;
+        try {
+            final Message response = delegate.send(query);
+            limiter.release(startTime, false);
+            released = true;
+            return response;
+        } catch (SocketTimeoutException ste) {
+            limiter.release(startTime, true);
+            released = true;
+            throw ste;
+        } finally {
+            if (!released) {
+                limiter.release();
+            }
+        }
+    }
+
+    public Object sendAsync(final Message query, final ResolverListener listener) {
+        final long startTime;
+        try {
+            startTime = limiter.acquire();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            final Object id = new Object();
+            listener.handleException(id, new InterruptedIOException("Interrupted while waiting for a DNS query slot."));
+            return id;
+        }
+        try {
+            return delegate.sendAsync(query, new ResolverListener() {
+                public void receiveMessage(final Object id, final Message m) {
+                    limiter.release(startTime, false);
+                    listener.receiveMessage(id, m);
+                }
+                public void handleException(final Object id, final Exception e) {
+                    if (e instanceof SocketTimeoutException) {
+                        limiter.release(startTime, true);
+                    } else {
+                        limiter.release();
+                    }
+                    listener.handleException(id, e);
+                }
+            });
+        } catch (RuntimeException re) {
+            limiter.release();
+            throw re;
+        }
+    }
+
+    public void setPort(final int port) {
+        delegate.setPort(port);
+    }
+
+    public void setTCP(final boolean flag) {
+        delegate.setTCP(flag);
+    }
+
+    public void setIgnoreTruncation(final boolean flag) {
+        delegate.setIgnoreTruncation(flag);
+    }
+
+    public void setEDNS(final int level) {
+        delegate.setEDNS(level);
+    }
+
+    @SuppressWarnings("rawtypes")
+    public void setEDNS(final int level, final int payloadSize, final int flags, final List options) {
+        delegate.setEDNS(level, payloadSize, flags, options);
+    }
+
+    public void setTSIGKey(final TSIG key) {
+        delegate.setTSIGKey(key);
+    }
+
+    public void setTimeout(final int secs, final int msecs) {
+        delegate.setTimeout(secs, msecs);
+    }
+
+    public void setTimeout(final int secs) {
+        delegate.setTimeout(secs);
+    }
+
+}
@@ -0,0 +1,1045 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package de.jdevelopers.ipv4info.utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.ResolverListener;
+import org.xbill.DNS.SimpleResolver;
+import org.xbill.DNS.TSIG;
+
+/**
+ * Non-blocking DNS transport that multiplexes any number of in-flight UDP queries over a few DatagramChannels.
+ *
+ * Every send() of a dnsjava ExtendedResolver blocks a thread and opens its own socket, which ends up in
+ * "Too many open files" errors on a high number of parallel queries. This transport sends all queries through
+ * a small, fixed set of non-blocking channels which are served by a single selector thread. A response is matched
+ * to its query by the channel, the message ID, the address of the nameserver and the question section.
+ *
+ * As it implements the dnsjava Resolver interface, it can be used in place of the ExtendedResolver of Ipv4Utils.getResolver()
+ * (see Ipv4Utils.setUseMultiplexedTransport()). On a timeout the query is sent to the next nameserver, like the
+ * ExtendedResolver does. If load balancing is enabled, the first nameserver of a query is chosen round robin. Truncated responses are repeated over TCP by a dnsjava SimpleResolver.
+ * EDNS and TSIG settings are not supported; the query messages are sent as they are.
+ *
+ * A channel bound once would send every query from the same source port, which makes it much easier to spoof
+ * responses. So each channel is replaced by a new one (bound to a new random port) after a number of queries or
+ * a period of time (see setChannelRotation()). The old channel keeps receiving until the tries sent through it
+ * have timed out, and a response is only accepted from the channel its actual try was sent through.
+ *
+ * A channel that fails is reopened. If the selector itself fails, all pending queries fail and the next query
+ * starts a new selector thread, so the transport only stops working by close().
+ *
+ * @author Carsten Jäger
+ *
+ */
+public class MultiplexedDnsTransport implements Resolver {
+
+    /**
+     * Default port of DNS servers.
+     */
+    public static final int DNS_PORT = 53;
+
+    /**
+     * Default number of DatagramChannels.
+     */
+    public static final int DEFAULT_CHANNEL_COUNT = 4;
+
+    /**
+     * Default number of queries sent through a channel before it is replaced.
+     */
+    public static final int DEFAULT_ROTATION_QUERIES = 500;
+
+    /**
+     * Default time in sec. a channel is used before it is replaced.
+     */
+    public static final int DEFAULT_ROTATION_SECONDS = 30;
+
+    /**
+     * Maximum size of a UDP datagram.
+     */
+    private static final int MAX_DATAGRAM_SIZE = 65535;
+
+    /**
+     * Minimum size of a DNS message (size of the header).
+     */
+    private static final int HEADER_SIZE = 12;
+
+    /**
+     * Number of possible message ID's (16 bit).
+     */
+    private static final int ID_COUNT = 65536;
+
+    /**
+     * Number of bits of a message ID.
+     */
+    private static final int ID_BITS = 16;
+
+    /**
+     * Maximum number of tries to find a free message ID.
+     */
+    private static final int MAX_ID_TRIES = 100;
+
+    /**
+     * Maximum time the selector thread sleeps, if there is nothing to do (in msec.).
+     */
+    private static final long MAX_SELECT_WAIT = 1000;
+
+    /**
+     * Number of the created transports (for naming the threads).
+     */
+    private static final AtomicInteger TRANSPORT_COUNT = new AtomicInteger();
+
+    /**
+     * Random generator for message ID's. Unpredictable ID's make it harder to spoof responses.
+     */
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Number of DatagramChannels.
+     */
+    private final int channelCount;
+
+    /**
+     * All queries waiting for a response, mapped by channel index and message ID.
+     */
+    private final Map<Integer, PendingQuery> pendingQueries = new ConcurrentHashMap<Integer, PendingQuery>();
+
+    /**
+     * Queries to be sent by the selector thread.
+     */
+    private final Queue<PendingQuery> sendQueue = new ConcurrentLinkedQueue<PendingQuery>();
+
+    /**
+     * Channel index for the next query (round robin).
+     */
+    private final AtomicInteger nextChannel = new AtomicInteger();
+
+    /**
+     * Nameserver index for the first try of the next query (round robin, if load balancing is enabled).
+     */
+    private final AtomicInteger nextServer = new AtomicInteger();
+
+    /**
+     * Executor that completes the Futures, so no callback ever runs on (and blocks) the selector thread.
+     */
+    private final Executor completionExecutor;
+
+    /**
+     * Addresses of the nameservers.
+     */
+    private volatile List<InetSocketAddress> servers;
+
+    /**
+     * Timeout for a single try in msec. (default: 3 sec.).
+     */
+    private volatile long timeout = TimeUnit.SECONDS.toMillis(Ipv4Utils.CONST_3);
+
+    /**
+     * Number of retries per nameserver.
+     */
+    private volatile int retries;
+
+    /**
+     * Choose the first nameserver of a query round robin?
+     */
+    private volatile boolean loadBalance;
+
+    /**
+     * Number of queries sent through a channel before it is replaced (0 = no limit).
+     */
+    private volatile int rotationQueries = DEFAULT_ROTATION_QUERIES;
+
+    /**
+     * Time in nanosec. a channel is used before it is replaced (0 = no limit).
+     */
+    private volatile long rotationTime = TimeUnit.SECONDS.toNanos(DEFAULT_ROTATION_SECONDS);
+
+    /**
+     * Send all queries over TCP?
+     */
+    private volatile boolean useTcp;
+
+    /**
+     * Accept truncated responses instead of repeating them over TCP?
+     */
+    private volatile boolean ignoreTruncation;
+
+    /**
+     * Has this transport been closed?
+     */
+    private volatile boolean closed;
+
+    /**
+     * The running selector loop ({@code null} before the first query and after the loop stopped).
+     */
+    private SelectorLoop selectorLoop;
+
+    /**
+     * Executor for the TCP queries (created on demand).
+     */
+    private ExecutorService tcpExecutor;
+
+    /**
+     * A query waiting for its response.
+     */
+    private static final class PendingQuery {
+
+        /**
+         * Key in pendingQueries (channel index and message ID).
+         */
+        private final int key;
+
+        /**
+         * Index of the channel the query is sent through.
+         */
+        private final int channelIndex;
+
+        /**
+         * The question of the query.
+         */
+        private final Record question;
+
+        /**
+         * The query in wire format.
+         */
+        private final byte[] wireData;
+
+        /**
+         * Future that will be completed with the response.
+         */
+        private final CompletableFuture<Message> future;
+
+        /**
+         * Index of the nameserver of the first try.
+         */
+        private final int firstServer;
+
+        /**
+         * Number of the actual try (changed by the selector thread only).
+         */
+        private int attempt;
+
+        /**
+         * Number of remaining tries (changed by the selector thread only).
+         */
+        private int attemptsLeft;
+
+        /**
+         * Nameserver of the actual try (changed by the selector thread only).
+         */
+        private volatile InetSocketAddress server;
+
+        /**
+         * Channel the actual try was sent through (used by the selector thread only).
+         */
+        private DatagramChannel channel;
+
+        /**
+         * Constructor.
+         *
+         * @param key Key in pendingQueries.
+         * @param channelIndex Index of the channel.
+         * @param question The question of the query.
+         * @param wireData The query in wire format.
+         * @param firstServer Index of the nameserver of the first try.
+         * @param attemptsLeft Number of tries.
+         * @param future Future that will be completed with the response.
+         */
+        PendingQuery(final int key, final int channelIndex, final Record question, final byte[] wireData, final int firstServer,
+                final int attemptsLeft, final CompletableFuture<Message> future) {
+            this.key = key;
+            this.channelIndex = channelIndex;
+            this.question = question;
+            this.wireData = wireData;
+            this.firstServer = firstServer;
+            this.attemptsLeft = attemptsLeft;
+            this.future = future;
+        }
+
+    }
+
+    /**
+     * The loop of a selector thread with its selector and channels.
+     */
+    private final class SelectorLoop implements Runnable {
+
+        /**
+         * Selector for the DatagramChannels.
+         */
+        private final Selector selector;
+
+        /**
+         * DatagramChannels for the queries (a failed or used up channel is replaced by the selector thread).
+         */
+        private final DatagramChannel[] channels;
+
+        /**
+         * Points of time (System.nanoTime()) when the channels were opened (used by the selector thread only).
+         */
+        private final long[] openTimes;
+
+        /**
+         * Number of queries sent through each channel (used by the selector thread only).
+         */
+        private final int[] sentCounts;
+
+        /**
+         * Replaced channels, mapped to the point of time (System.nanoTime()) when they are closed (used by the selector thread only).
+         */
+        private final Map<DatagramChannel, Long> retiredChannels = new HashMap<DatagramChannel, Long>();
+
+        /**
+         * Has the loop stopped? Queries registered after that are failed by their sender.
+         */
+        private volatile boolean stopped;
+
+        /**
+         * Constructor.
+         *
+         * @param selector Selector for the DatagramChannels.
+         * @param channels DatagramChannels for the queries.
+         */
+        SelectorLoop(final Selector selector, final DatagramChannel[] channels) {
+            this.selector = selector;
+            this.channels = channels;
+            this.openTimes = new long[channels.length];
+            this.sentCounts = new int[channels.length];
+            Arrays.fill(openTimes, System.nanoTime());
+        }
+
+        public void run() {
+            runSelectorLoop(this);
+        }
+
+    }
+
+    /**
+     * Timeout of a single try of a query.
+     */
+    private static final class Deadline implements Comparable<Deadline> {
+
+        /**
+         * Point of time (System.nanoTime()) when the try times out.
+         */
+        private final long time;
+
+        /**
+         * The query.
+         */
+        private final PendingQuery query;
+
+        /**
+         * Number of the try.
+         */
+        private final int attempt;
+
+        /**
+         * Constructor.
+         *
+         * @param time Point of time (System.nanoTime()) when the try times out.
+         * @param query The query.
+         * @param attempt Number of the try.
+         */
+        Deadline(final long time, final PendingQuery query, final int attempt) {
+            this.time = time;
+            this.query = query;
+            this.attempt = attempt;
+        }
+
+        public int compareTo(final Deadline deadline) {
+            return Long.signum(time - deadline.time);
+        }
+
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param channelCount Number of DatagramChannels (min. 1).
+     * @param servers Addresses of the nameservers.
+     */
+    public MultiplexedDnsTransport(final int channelCount, final List<InetSocketAddress> servers) {
+        this(channelCount, servers, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param channelCount Number of DatagramChannels (min. 1).
+     * @param servers Addresses of the nameservers.
+     * @param completionExecutor Executor that completes the Futures of the queries.
+     */
+    public MultiplexedDnsTransport(final int channelCount, final List<InetSocketAddress> servers, final Executor completionExecutor) {
+        if (servers == null || servers.isEmpty()) {
+            throw new IllegalArgumentException("At least one nameserver is needed.");
+        }
+        this.channelCount = Math.max(1, channelCount);
+        this.servers = Collections.unmodifiableList(new ArrayList<InetSocketAddress>(servers));
+        this.completionExecutor = completionExecutor;
+    }
+
+    /**
+     * Returns the addresses of the nameservers.
+     *
+     * @return Addresses of the nameservers.
+     */
+    public final List<InetSocketAddress> getServers() {
+        return servers;
+    }
+
+    /**
+     * Sets the addresses of the nameservers. Queries that are already sent are not affected.
+     *
+     * @param servers Addresses of the nameservers.
+     */
+    public final void setServers(final List<InetSocketAddress> servers) {
+        if (servers == null || servers.isEmpty()) {
+            throw new IllegalArgumentException("At least one nameserver is needed.");
+        }
+        this.servers = Collections.unmodifiableList(new ArrayList<InetSocketAddress>(servers));
+    }
+
+    /**
+     * Returns the timeout of a single try.
+     *
+     * @param timeUnit The TimeUnit as how the timeout shall be returned.
+     * @return The timeout of a single try.
+     */
+    public final long getTimeout(final TimeUnit timeUnit) {
+        return timeUnit.convert(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the number of retries per nameserver.
+     *
+     * @return Number of retries per nameserver.
+     */
+    public final int getRetries() {
+        return retries;
+    }
+
+    /**
+     * Sets the number of retries per nameserver.
+     *
+     * @param retries Number of retries per nameserver.
+     */
+    public final void setRetries(final int retries) {
+        this.retries = Math.max(0, retries);
+    }
+
+    /**
+     * Enables or disables the load balancing. If enabled, the first nameserver of a query is chosen round robin,
+     * otherwise every query is sent to the first nameserver first.
+     *
+     * @param loadBalance {@code true} to enable, {@code false} to disable the load balancing (default).
+     */
+    public final void setLoadBalance(final boolean loadBalance) {
+        this.loadBalance = loadBalance;
+    }
+
+    /**
+     * Sets when a channel is replaced by a new one with a new source port. A channel is replaced as soon as one of
+     * the limits is reached. Already opened channels are affected as well.
+     *
+     * @param queries Number of queries sent through a channel before it is replaced (0 = no limit).
+     * @param time Time a channel is used before it is replaced (0 = no limit).
+     * @param timeUnit The TimeUnit as how the time parameter shall be interpreted.
+     */
+    public final void setChannelRotation(final int queries, final long time, final TimeUnit timeUnit) {
+        this.rotationQueries = Math.max(0, queries);
+        this.rotationTime = Math.max(0, timeUnit.toNanos(time));
+    }
+
+    /**
+     * Returns the number of queries waiting for a response.
+     *
+     * @return Number of queries waiting for a response.
+     */
+    public final int getPendingQueryCount() {
+        return pendingQueries.size();
+    }
+
+    public final void setPort(final int port) {
+        final List<InetSocketAddress> result = new ArrayList<InetSocketAddress>();
+        for (final InetSocketAddress server : servers) {
+            result.add(new InetSocketAddress(server.getAddress(), port));
+        }
+        setServers(result);
+    }
+
+    public final void setTCP(final boolean flag) {
+        useTcp = flag;
+    }
+
+    public final void setIgnoreTruncation(final boolean flag) {
+        ignoreTruncation = flag;
+    }
+
+    public final void setEDNS(final int level) {
+        // Not supported. The query messages are sent as they are.
+    }
+
+    @SuppressWarnings("rawtypes")
+    public final void setEDNS(final int level, final int payloadSize, final int flags, final List options) {
+        // Not supported. The query messages are sent as they are.
+    }
+
+    public final void setTSIGKey(final TSIG key) {
+        // Not supported.
+    }
+
+    public final void setTimeout(final int secs, final int msecs) {
+        timeout = Math.max(1, TimeUnit.SECONDS.toMillis(secs) + msecs);
+    }
+
+    public final void setTimeout(final int secs) {
+        setTimeout(secs, 0);
+    }
+
+    public final Message send(final Message query) throws IOException {
+        // All tries of all nameservers (plus one timeout as margin for the completion).
+        final long maxWait = timeout * (servers.size() * (retries + 1) + 1);
+        try {
+            return sendQuery(query).get(maxWait, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException te) {
+            throw new SocketTimeoutException("DNS query timed out.");
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a DNS response.");
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            throw new IOException(ee.getCause());
+        }
+    }
+
+    public final Object sendAsync(final Message query, final ResolverListener listener) {
+        final Object id = new Object();
+        sendQuery(query).whenComplete((response, throwable) -> {
+            if (throwable == null) {
+                listener.receiveMessage(id, response);
+            } else {
+                listener.handleException(id, throwable instanceof Exception ? (Exception) throwable : new IOException(throwable));
+            }
+        });
+        return id;
+    }
+
+    /**
+     * Sends a query without blocking.
+     *
+     * The returned Future is completed with the response, or exceptionally with a SocketTimeoutException, if no nameserver
+     * answered in time. The Future is never completed by the selector thread, so callbacks may block.
+     *
+     * @param query The query message. It's not modified; the message ID is set on a copy.
+     * @return Future of the response.
+     */
+    public final CompletableFuture<Message> sendQuery(final Message query) {
+        final CompletableFuture<Message> future = new CompletableFuture<Message>();
+        final List<InetSocketAddress> serverList = servers;
+        if (useTcp) {
+            sendTcp(query, serverList.get(0), future);
+            return future;
+        }
+        final SelectorLoop loop;
+        try {
+            loop = ensureStarted();
+        } catch (IOException ioe) {
+            future.completeExceptionally(ioe);
+            return future;
+        }
+        final Message request = (Message) query.clone();
+        final int channelIndex = (nextChannel.getAndIncrement() & Integer.MAX_VALUE) % channelCount;
+        final int attempts = serverList.size() * (retries + 1);
+        final int firstServer = loadBalance ? (nextServer.getAndIncrement() & Integer.MAX_VALUE) % serverList.size() : 0;
+        for (int i = 0; i < MAX_ID_TRIES; ++i) {
+            final int id = random.nextInt(ID_COUNT);
+            final int key = (channelIndex << ID_BITS) | id;
+            request.getHeader().setID(id);
+            final PendingQuery pendingQuery = new PendingQuery(key, channelIndex, request.getQuestion(), request.toWire(), firstServer, attempts,
+                    future);
+            if (pendingQueries.putIfAbsent(key, pendingQuery) == null) {
+                sendQueue.add(pendingQuery);
+                if (loop.stopped) {
+                    // The loop stopped after ensureStarted() and may have missed this query while failing the pending ones.
+                    fail(pendingQuery, new IOException(closed ? "Transport is closed." : "Transport failed."));
+                } else {
+                    loop.selector.wakeup();
+                }
+                return future;
+            }
+        }
+        future.completeExceptionally(new IOException("No free message ID available."));
+        return future;
+    }
+
+    /**
+     * Closes the transport. All queries waiting for a response are completed exceptionally.
+     */
+    public final synchronized void close() {
+        closed = true;
+        if (selectorLoop != null) {
+            selectorLoop.selector.wakeup();
+        }
+        if (tcpExecutor != null) {
+            tcpExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Opens the channels and starts the selector thread, if not already done.
+     *
+     * @return The running selector loop.
+     * @throws IOException If the channels can't be opened or the transport is already closed.
+     */
+    private synchronized SelectorLoop ensureStarted() throws IOException {
+        if (closed) {
+            throw new IOException("Transport is closed.");
+        }
+        if (selectorLoop != null) {
+            return selectorLoop;
+        }
+        final Selector selector = Selector.open();
+        final DatagramChannel[] channels = new DatagramChannel[channelCount];
+        try {
+            for (int i = 0; i < channelCount; ++i) {
+                channels[i] = openChannel(selector, i);
+            }
+        } catch (IOException ioe) {
+            closeChannels(selector, channels);
+            throw ioe;
+        }
+        final SelectorLoop loop = new SelectorLoop(selector, channels);
+        final Thread selectorThread = new Thread(loop, "IPv4Info-DnsTransport-" + TRANSPORT_COUNT.incrementAndGet());
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        selectorLoop = loop;
+        return loop;
+    }
+
+    /**
+     * Opens a non-blocking DatagramChannel and registers it for reading.
+     *
+     * @param selector The selector.
+     * @param channelIndex Index of the channel.
+     * @return The channel.
+     * @throws IOException If the channel can't be opened.
+     */
+    private static DatagramChannel openChannel(final Selector selector, final int channelIndex) throws IOException {
+        final DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        try {
+            channel.configureBlocking(false);
+            channel.bind(null);
+            channel.register(selector, SelectionKey.OP_READ, channelIndex);
+        } catch (IOException ioe) {
+            channel.close();
+            throw ioe;
+        }
+        return channel;
+    }
+
+    /**
+     * The loop of the selector thread. Sends the queued queries, receives the responses and handles the timeouts.
+     *
+     * @param loop The selector loop.
+     */
+    private void runSelectorLoop(final SelectorLoop loop) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+        final PriorityQueue<Deadline> deadlines = new PriorityQueue<Deadline>();
+        final Queue<PendingQuery> deferred = new ArrayDeque<PendingQuery>();
+        try {
+            while (!closed) {
+                PendingQuery pendingQuery;
+                // Queries that couldn't be sent because of a full socket buffer are tried again first.
+                for (int i = deferred.size(); i > 0; --i) {
+                    transmit(loop, deferred.poll(), deadlines, deferred);
+                }
+                while ((pendingQuery = sendQueue.poll()) != null) {
+                    transmit(loop, pendingQuery, deadlines, deferred);
+                }
+                long wait = handleTimeouts(loop, deadlines, deferred);
+                closeRetiredChannels(loop, false);
+                if (!deferred.isEmpty()) {
+                    wait = 1;
+                }
+                loop.selector.select(wait);
+                final Iterator<SelectionKey> iterator = loop.selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    final SelectionKey key = iterator.next();
+                    iterator.remove();
+                    if (key.isValid() && key.isReadable()) {
+                        final int channelIndex = (Integer) key.attachment();
+                        try {
+                            receive((DatagramChannel) key.channel(), channelIndex, buffer);
+                        } catch (IOException ioe) {
+                            // The queries of the channel are sent again through the new channel on their timeout.
+                            buffer.clear();
+                            closeChannels(null, new DatagramChannel[] {(DatagramChannel) key.channel()});
+                            if (loop.retiredChannels.remove(key.channel()) == null) {
+                                System.err.println("DNS transport channel failed, reopening it: " + ioe);
+                                replaceChannel(loop, channelIndex, openChannel(loop.selector, channelIndex));
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (ClosedSelectorException cse) {
+            // Transport closed.
+        } catch (IOException ioe) {
+            System.err.println("DNS transport failed, restarting it with the next query: " + ioe);
+        } finally {
+            loop.stopped = true;
+            sendQueue.clear();
+            final IOException stoppedException = new IOException(closed ? "Transport is closed." : "Transport failed.");
+            for (final PendingQuery pendingQuery : pendingQueries.values()) {
+                fail(pendingQuery, stoppedException);
+            }
+            synchronized (this) {
+                closeRetiredChannels(loop, true);
+                closeChannels(loop.selector, loop.channels);
+                selectorLoop = null;
+            }
+        }
+    }
+
+    /**
+     * Sends a query to its actual nameserver.
+     *
+     * @param loop The selector loop.
+     * @param pendingQuery The query.
+     * @param deadlines Queue of the timeouts.
+     * @param deferred Queue of queries to be sent later.
+     */
+    private void transmit(final SelectorLoop loop, final PendingQuery pendingQuery, final PriorityQueue<Deadline> deadlines,
+            final Queue<PendingQuery> deferred) {
+        if (pendingQuery.future.isDone()) {
+            return;
+        }
+        final List<InetSocketAddress> serverList = servers;
+        final InetSocketAddress server = serverList.get((pendingQuery.firstServer + pendingQuery.attempt) % serverList.size());
+        final DatagramChannel channel = getChannel(loop, pendingQuery.channelIndex);
+        pendingQuery.server = server;
+        pendingQuery.channel = channel;
+        try {
+            if (channel.send(ByteBuffer.wrap(pendingQuery.wireData), server) == 0) {
+                // No space in the socket buffer.
+                deferred.add(pendingQuery);
+                return;
+            }
+        } catch (IOException ioe) {
+            fail(pendingQuery, ioe);
+            return;
+        }
+        ++loop.sentCounts[pendingQuery.channelIndex];
+        deadlines.add(new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout), pendingQuery, pendingQuery.attempt));
+    }
+
+    /**
+     * Returns the channel for the next query, after replacing it by a new one if it's used up.
+     *
+     * @param loop The selector loop.
+     * @param channelIndex Index of the channel.
+     * @return The channel.
+     */
+    private DatagramChannel getChannel(final SelectorLoop loop, final int channelIndex) {
+        final long now = System.nanoTime();
+        final int queries = rotationQueries;
+        final long time = rotationTime;
+        if ((queries > 0 && loop.sentCounts[channelIndex] >= queries) || (time > 0 && now - loop.openTimes[channelIndex] >= time)) {
+            final DatagramChannel channel = loop.channels[channelIndex];
+            try {
+                replaceChannel(loop, channelIndex, openChannel(loop.selector, channelIndex));
+                // The old channel keeps receiving until the tries sent through it have timed out.
+                loop.retiredChannels.put(channel, now + TimeUnit.MILLISECONDS.toNanos(timeout));
+            } catch (IOException ioe) {
+                System.err.println("DNS transport channel couldn't be replaced, using the old one: " + ioe);
+                // Not tried again before the next rotation is due.
+                loop.openTimes[channelIndex] = now;
+                loop.sentCounts[channelIndex] = 0;
+            }
+        }
+        return loop.channels[channelIndex];
+    }
+
+    /**
+     * Sets a new channel.
+     *
+     * @param loop The selector loop.
+     * @param channelIndex Index of the channel.
+     * @param channel The new channel.
+     */
+    private static void replaceChannel(final SelectorLoop loop, final int channelIndex, final DatagramChannel channel) {
+        loop.channels[channelIndex] = channel;
+        loop.openTimes[channelIndex] = System.nanoTime();
+        loop.sentCounts[channelIndex] = 0;
+    }
+
+    /**
+     * Closes the replaced channels whose tries have timed out.
+     *
+     * @param loop The selector loop.
+     * @param all Close all replaced channels?
+     */
+    private static void closeRetiredChannels(final SelectorLoop loop, final boolean all) {
+        final long now = System.nanoTime();
+        for (final Iterator<Map.Entry<DatagramChannel, Long>> iterator = loop.retiredChannels.entrySet().iterator(); iterator.hasNext();) {
+            final Map.Entry<DatagramChannel, Long> entry = iterator.next();
+            if (all || entry.getValue() - now <= 0) {
+                closeChannels(null, new DatagramChannel[] {entry.getKey()});
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Handles all expired tries. A query is sent to the next nameserver, if there are tries left, otherwise it fails.
+     *
+     * @param loop The selector loop.
+     * @param deadlines Queue of the timeouts.
+     * @param deferred Queue of queries to be sent later.
+     * @return Time until the next timeout in msec.
+     */
+    private long handleTimeouts(final SelectorLoop loop, final PriorityQueue<Deadline> deadlines, final Queue<PendingQuery> deferred) {
+        final long now = System.nanoTime();
+        Deadline deadline;
+        while ((deadline = deadlines.peek()) != null && deadline.time - now <= 0) {
+            deadlines.poll();
+            final PendingQuery pendingQuery = deadline.query;
+            if (pendingQuery.future.isDone() || deadline.attempt != pendingQuery.attempt) {
+                continue;
+            }
+            if (--pendingQuery.attemptsLeft > 0) {
+                ++pendingQuery.attempt;
+                transmit(loop, pendingQuery, deadlines, deferred);
+            } else {
+                fail(pendingQuery, new SocketTimeoutException("DNS query timed out."));
+            }
+        }
+        if (deadline == null) {
+            return MAX_SELECT_WAIT;
+        }
+        return Math.max(1, Math.min(MAX_SELECT_WAIT, TimeUnit.NANOSECONDS.toMillis(deadline.time - now)));
+    }
+
+    /**
+     * Receives all available datagrams of a channel and completes the matching queries.
+     *
+     * @param channel The channel.
+     * @param channelIndex Index of the channel.
+     * @param buffer Receive buffer.
+     * @throws IOException IOException.
+     */
+    private void receive(final DatagramChannel channel, final int channelIndex, final ByteBuffer buffer) throws IOException {
+        SocketAddress source;
+        while ((source = channel.receive(buffer)) != null) {
+            buffer.flip();
+            try {
+                if (buffer.remaining() < HEADER_SIZE) {
+                    continue;
+                }
+                final int id = buffer.getShort(0) & (ID_COUNT - 1);
+                final PendingQuery pendingQuery = pendingQueries.get((channelIndex << ID_BITS) | id);
+                // Only accept responses from the nameserver and through the channel the actual try was sent to.
+                if (pendingQuery == null || channel != pendingQuery.channel || !source.equals(pendingQuery.server)) {
+                    continue;
+                }
+                final byte[] data = new byte[buffer.remaining()];
+                buffer.get(data);
+                final Message response;
+                try {
+                    response = new Message(data);
+                } catch (IOException ignore) {
+                    // Malformed response. Wait for the right one (or the timeout).
+                    continue;
+                }
+                if (!isMatchingQuestion(pendingQuery.question, response.getQuestion())) {
+                    continue;
+                }
+                if (response.getHeader().getFlag(Flags.TC) && !ignoreTruncation) {
+                    if (pendingQueries.remove(pendingQuery.key, pendingQuery)) {
+                        sendTcp(toQuery(pendingQuery), pendingQuery.server, pendingQuery.future);
+                    }
+                    continue;
+                }
+                if (pendingQueries.remove(pendingQuery.key, pendingQuery)) {
+                    completionExecutor.execute(new Runnable() {
+                        public void run() {
+                            pendingQuery.future.complete(response);
+                        }
+                    });
+                }
+            } finally {
+                buffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Checks if the question of a response matches the question of the query.
+     *
+     * @param question Question of the query.
+     * @param responseQuestion Question of the response.
+     * @return {@code TRUE} if both questions are equal, otherwise {@code FALSE}.
+     */
+    private static boolean isMatchingQuestion(final Record question, final Record responseQuestion) {
+        if (question == null || responseQuestion == null) {
+            return question == responseQuestion;
+        }
+        return question.getType() == responseQuestion.getType() && question.getDClass() == responseQuestion.getDClass()
+                && question.getName().equals(responseQuestion.getName());
+    }
+
+    /**
+     * Restores the query message of a pending query.
+     *
+     * @param pendingQuery The pending query.
+     * @return The query message.
+     */
+    private static Message toQuery(final PendingQuery pendingQuery) {
+        try {
+            return new Message(pendingQuery.wireData);
+        } catch (IOException ioe) {
+            // Can't happen, as the data was created by Message.toWire().
+            throw new IllegalStateException(ioe);
+        }
+    }
+
+    /**
+     * Sends a query over TCP by a dnsjava SimpleResolver.
+     *
+     * @param query The query.
+     * @param server The nameserver.
+     * @param future Future to complete with the response.
+     */
+    private void sendTcp(final Message query, final InetSocketAddress server, final CompletableFuture<Message> future) {
+        final ExecutorService executor;
+        synchronized (this) {
+            if (tcpExecutor == null) {
+                tcpExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                    public Thread newThread(final Runnable r) {
+                        final Thread thread = new Thread(r, "IPv4Info-DnsTransport-TCP");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            executor = tcpExecutor;
+        }
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        final SimpleResolver tcpResolver = new SimpleResolver();
+                        tcpResolver.setAddress(server);
+                        tcpResolver.setTCP(true);
+                        tcpResolver.setTimeout((int) (timeout / TimeUnit.SECONDS.toMillis(1)), (int) (timeout % TimeUnit.SECONDS.toMillis(1)));
+                        future.complete(tcpResolver.send(query));
+                    } catch (Exception e) {
+                        future.completeExceptionally(e);
+                    }
+                }
+            });
+        } catch (Exception e) {
+            future.completeExceptionally(new IOException("Transport is closed.", e));
+        }
+    }
+
+    /**
+     * Completes a query exceptionally.
+     *
+     * @param pendingQuery The query.
+     * @param exception The exception.
+     */
+    private void fail(final PendingQuery pendingQuery, final IOException exception) {
+        if (pendingQueries.remove(pendingQuery.key, pendingQuery)) {
+            try {
+                completionExecutor.execute(new Runnable() {
+                    public void run() {
+                        pendingQuery.future.completeExceptionally(exception);
+                    }
+                });
+            } catch (Exception e) {
+                pendingQuery.future.completeExceptionally(exception);
+            }
+        }
+    }
+
+    /**
+     * Closes a selector and channels.
+     *
+     * @param selector The selector (may be {@code null}).
+     * @param channels The channels (the array and its elements may be {@code null}).
+     */
+    private static void closeChannels(final Selector selector, final DatagramChannel[] channels) {
+        if (channels != null) {
+            for (final DatagramChannel channel : channels) {
+                try {
+                    if (channel != null) {
+                        channel.close();
+                    }
+                } catch (IOException ignore) {
+                }
+            }
+        }
+        try {
+            if (selector != null) {
+                selector.close();
+            }
+        } catch (IOException ignore) {
+        }
+    }
+
+}
@@ -0,0 +1,330 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package de.jdevelopers.ipv4info.utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+/**
+ * Process-wide registry of MX hosts.
+ *
+ * Many domains point at the same MX hosts (e.g. the ones of large mail providers). The registry makes sure that the
+ * addresses of a MX host are resolved just once per TTL, no matter how many queries refer to it. Concurrent requests
+ * for the same MX host wait for the running lookup instead of starting another one. The SMTP connection checks of the
+ * MX hosts and their addresses are cached by the Ipv4Utils.SMTP_VERDICT_CACHE.
+ *
+ * An entry expires after the TTL of the MX record that referred to it first, which is clamped to the configurable
+ * minimum and maximum TTL. Failed address lookups (e.g. timeouts) are not kept, so the next request tries again.
+ * If the registry is full, the expired entries are removed first and then the entries that expire first are evicted.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public final class MxHostRegistry {
+
+    /**
+     * Default minimum TTL in seconds.
+     */
+    public static final long DEFAULT_MIN_TTL = Ipv4Utils.CONST_60;
+
+    /**
+     * Default maximum TTL in seconds.
+     */
+    public static final long DEFAULT_MAX_TTL = Ipv4Utils.DNSJAVA_TTL_TIMEOUT;
+
+    /**
+     * Default maximum number of registered MX hosts.
+     */
+    public static final int DEFAULT_MAX_HOSTS = Ipv4Utils.CONST_100 * Ipv4Utils.CONST_100 * Ipv4Utils.CONST_10;
+
+    /**
+     * The registered MX hosts by their (lower case) domain.
+     */
+    private final BoundedTtlMap<String, MxHost> hosts = new BoundedTtlMap<String, MxHost>(DEFAULT_MAX_HOSTS);
+
+    /**
+     * Number of lookups answered by the registry.
+     */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /**
+     * Number of lookups that had to be done.
+     */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Minimum TTL in msec.
+     */
+    private volatile long minTtl = TimeUnit.SECONDS.toMillis(DEFAULT_MIN_TTL);
+
+    /**
+     * Maximum TTL in msec.
+     */
+    private volatile long maxTtl = TimeUnit.SECONDS.toMillis(DEFAULT_MAX_TTL);
+
+    /**
+     * Is the registry enabled?
+     */
+    private volatile boolean enabled = true;
+
+    /**
+     * A registered MX host.
+     */
+    private static final class MxHost {
+
+        /**
+         * The addresses of the MX host (set by the first lookup).
+         */
+        private final AtomicReference<CompletableFuture<List<String>>> addresses = new AtomicReference<CompletableFuture<List<String>>>();
+
+    }
+
+    /**
+     * Returns the addresses (A records) of a MX host.
+     *
+     * @param domain The domain of the MX host.
+     * @param ttl The TTL of the MX record in seconds.
+     * @param useRecheckResolver Use the recheck resolver for the lookup?
+     * @return The addresses of the MX host (may be empty).
+     * @throws IOException If the lookup failed.
+     */
+    public List<String> getAddresses(final String domain, final long ttl, final boolean useRecheckResolver) throws IOException {
+        final MxHost host = getHost(domain, ttl);
+        if (host == null) {
+            return resolveAddresses(domain, useRecheckResolver);
+        }
+        final CompletableFuture<List<String>> created = new CompletableFuture<List<String>>();
+        if (!host.addresses.compareAndSet(null, created)) {
+            hitCount.incrementAndGet();
+            return await(host.addresses.get());
+        }
+        missCount.incrementAndGet();
+        try {
+            created.complete(resolveAddresses(domain, useRecheckResolver));
+        } catch (final IOException e) {
+            // A failed lookup is not kept, so the next request tries again.
+            host.addresses.compareAndSet(created, null);
+            created.completeExceptionally(e);
+        } catch (final RuntimeException e) {
+            host.addresses.compareAndSet(created, null);
+            created.completeExceptionally(e);
+        }
+        return await(created);
+    }
+
+    /**
+     * Returns the valid entry of a MX host. A missing or expired entry is replaced by a new one.
+     *
+     * @param domain The domain of the MX host.
+     * @param ttl The TTL of the MX record in seconds.
+     * @return The entry or {@code NULL}, if the registry is disabled.
+     */
+    private MxHost getHost(final String domain, final long ttl) {
+        if (!enabled || domain == null) {
+            return null;
+        }
+        final String key = domain.toLowerCase(Locale.ENGLISH);
+        final long now = System.currentTimeMillis();
+        final MxHost host = hosts.get(key, now);
+        if (host != null) {
+            return host;
+        }
+        final MxHost created = new MxHost();
+        final MxHost existing = hosts.putIfAbsent(key, created,
+                now + Math.min(maxTtl, Math.max(minTtl, TimeUnit.SECONDS.toMillis(ttl))), now);
+        return existing != null ? existing : created;
+    }
+
+    /**
+     * Resolves the addresses (A records) of a MX host.
+     *
+     * @param domain The domain of the MX host.
+     * @param useRecheckResolver Use the recheck resolver for the lookup?
+     * @return The addresses of the MX host.
+     * @throws IOException If the lookup failed.
+     */
+    private static List<String> resolveAddresses(final String domain, final boolean useRecheckResolver) throws IOException {
+        final List<String> result = new ArrayList<String>();
+        final Record[] records = Ipv4Utils.sendQuery(Ipv4Utils.getNameFromString(domain), Type.A, useRecheckResolver).getSectionArray(Section.ANSWER);
+        if (records != null) {
+            for (final Record record : records) {
+                if (record instanceof ARecord) {
+                    result.add(((ARecord) record).getAddress().getHostAddress());
+                }
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Waits for the result of a lookup.
+     *
+     * @param future The Future of the lookup.
+     * @return The result of the lookup.
+     * @throws IOException If the lookup failed or the waiting thread was interrupted.
+     */
+    private static List<String> await(final CompletableFuture<List<String>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a MX host lookup");
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Removes all expired entries.
+     *
+     * @return Number of removed entries.
+     */
+    public int removeExpired() {
+        return hosts.removeExpired(System.currentTimeMillis());
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        hosts.clear();
+    }
+
+    /**
+     * Returns the number of registered MX hosts.
+     *
+     * @return Number of registered MX hosts.
+     */
+    public int size() {
+        return hosts.size();
+    }
+
+    /**
+     * Returns the number of lookups answered by the registry.
+     *
+     * @return Number of hits.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of lookups that had to be done.
+     *
+     * @return Number of misses.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the state of the registry.
+     *
+     * @return {@code TRUE}, if the registry is enabled, otherwise {@code FALSE}.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables/Disables the registry. Disabling the registry removes all entries.
+     *
+     * @param enabled {@code TRUE} to enable the registry, {@code FALSE} to disable it.
+     */
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            clear();
+        }
+    }
+
+    /**
+     * Returns the minimum TTL.
+     *
+     * @param timeUnit The time unit of the result.
+     * @return Minimum TTL.
+     */
+    public long getMinTtl(final TimeUnit timeUnit) {
+        return timeUnit.convert(minTtl, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the maximum TTL.
+     *
+     * @param timeUnit The time unit of the result.
+     * @return Maximum TTL.
+     */
+    public long getMaxTtl(final TimeUnit timeUnit) {
+        return timeUnit.convert(maxTtl, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets the bounds of the TTL of the entries. Already registered MX hosts keep their expiry time.
+     *
+     * @param minTtl Minimum TTL (min. 0).
+     * @param maxTtl Maximum TTL (min. minTtl).
+     * @param timeUnit The TimeUnit as how the TTL parameters shall be interpreted.
+     * @return {@code true}, if the bounds were set, otherwise {@code false}.
+     */
+    public boolean setTtlBounds(final long minTtl, final long maxTtl, final TimeUnit timeUnit) {
+        if (timeUnit == null || minTtl < 0 || maxTtl < minTtl) {
+            System.err.println("Invalid TTL bounds given.");
+            return false;
+        }
+        this.minTtl = timeUnit.toMillis(minTtl);
+        this.maxTtl = timeUnit.toMillis(maxTtl);
+        return true;
+    }
+
+    /**
+     * Returns the maximum number of registered MX hosts.
+     *
+     * @return Maximum number of registered MX hosts.
+     */
+    public int getMaxHosts() {
+        return hosts.getMaxSize();
+    }
+
+    /**
+     * Sets the maximum number of registered MX hosts. If the registry is full, the expired entries are removed
+     * and then the entries that expire first are evicted.
+     *
+     * @param maxHosts Maximum number of registered MX hosts (min. 1).
+     */
+    public void setMaxHosts(final int maxHosts) {
+        hosts.setMaxSize(maxHosts);
+    }
+
+}
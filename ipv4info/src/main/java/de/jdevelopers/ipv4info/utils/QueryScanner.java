@@ -0,0 +1,416 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info.utils;
+
+import de.jdevelopers.ipv4info.enums.EQueryType;
+
+/**
+ * Hand-written scanner for incoming queries.
+ *
+ * The scanner replaces the RegEx pipeline (the correction "(?i)^(?:https?|ftps?|udp|tcp)://|.*?[@]+.*?[.]*|^[.]+|[.]{2,}",
+ * DOMAIN_PATTERN, ADDRESS_PATTERN, SIMPLE_IPS_PATTERN and CIDR_PATTERN) with a single pass over the characters of the
+ * query, that parses the IP-Address and the prefix while it detects the kind of the query. The results are exactly the
+ * same as the results of the patterns.
+ *
+ * The result of scan() is packed into a long value (type, prefix and IP-Address), so no objects are created for it.
+ * Use getType(), getPrefix() and getAddress() to read the parts.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public final class QueryScanner {
+
+    /**
+     * Prefix-value of results without a prefix.
+     */
+    public static final int NO_PREFIX = -1;
+
+    /**
+     * Schemes, that will be removed from the beginning of a query.
+     */
+    private static final String[] SCHEMES = new String[] {"https", "http", "ftps", "ftp", "udp", "tcp"};
+
+    /**
+     * All types of queries (cached, because values() creates a new array on each call).
+     */
+    private static final EQueryType[] TYPES = EQueryType.values();
+
+    /**
+     * Number of bits of an int value.
+     */
+    private static final int INT_BITS = 32;
+
+    /**
+     * Number of bits of the prefix in a result.
+     */
+    private static final int PREFIX_BITS = 8;
+
+    /**
+     * Maximum prefix of a valid subnet.
+     */
+    private static final int MAX_PREFIX = Ipv4Utils.CONST_30 + 1;
+
+    /**
+     * Bitmask for an unsigned int value.
+     */
+    private static final long INT_MASK = 0xFFFFFFFFL;
+
+    /**
+     * Constructor.
+     */
+    private QueryScanner() {
+    }
+
+    /**
+     * Corrects the incoming IP/Domain query by removing leading schemes (http://, ftp://, ...), everything up to the last
+     * '@' (and the dots following it), leading dots and multiple dots, and converts it to lower case.
+     *
+     * @param query IP or Domain.
+     * @return Corrected IP/Domain or {@code NULL} if the query was {@code NULL}.
+     */
+    public static String correct(final String query) {
+        if (query == null) {
+            return null;
+        }
+        final int length = query.length();
+        int nextAt = query.indexOf('@');
+        int nextLineTerminator = indexOfLineTerminator(query, 0);
+        int position = skipScheme(query);
+        if (position == 0 && !isAtReachable(nextAt, nextLineTerminator)) {
+            position = skip(query, 0, '.');
+        }
+        StringBuilder sb = position > 0 ? new StringBuilder(length - position) : null;
+        boolean lowerCase = false;
+        while (position < length) {
+            if (nextAt >= 0 && nextAt < position) {
+                nextAt = query.indexOf('@', position);
+            }
+            if (nextLineTerminator >= 0 && nextLineTerminator < position) {
+                nextLineTerminator = indexOfLineTerminator(query, position);
+            }
+            final int start = position;
+            if (isAtReachable(nextAt, nextLineTerminator)) {
+                // Remove everything up to the '@', all following '@' and the dots behind them.
+                position = skip(query, skip(query, nextAt, '@'), '.');
+            } else if (query.charAt(position) == '.' && position + 1 < length && query.charAt(position + 1) == '.') {
+                position = skip(query, position, '.');
+            } else {
+                final char c = query.charAt(position++);
+                lowerCase |= c >= 'A' && c <= 'Z' || c > Byte.MAX_VALUE;
+                if (sb != null) {
+                    sb.append(c);
+                }
+                continue;
+            }
+            if (sb == null) {
+                sb = new StringBuilder(length).append(query, 0, start);
+            }
+        }
+        final String result = sb == null ? query : sb.toString();
+        // String.toLowerCase() is only needed (and used, because it depends on the default locale) for non-trivial cases.
+        return lowerCase ? result.toLowerCase() : result;
+    }
+
+    /**
+     * Scans a query.
+     *
+     * @param query Query (should be corrected by correct() before).
+     * @return Result of the scan (use getType(), getPrefix() and getAddress() to read it).
+     */
+    public static long scan(final CharSequence query) {
+        if (query == null) {
+            return pack(EQueryType.INVALID, NO_PREFIX, 0);
+        }
+        final int end = getContentEnd(query);
+        // State of the hostname.
+        boolean hostnameAlive = true;
+        int labels = 0;
+        int labelLength = 0;
+        boolean hyphen = false;
+        // State of the IP-Address (and prefix).
+        boolean ipAlive = true;
+        long address = 0;
+        int octet = 0;
+        int digits = 0;
+        int dots = 0;
+        int prefix = NO_PREFIX;
+        int prefixDigits = 0;
+        for (int i = 0; i < end && (hostnameAlive || ipAlive); ++i) {
+            final char c = query.charAt(i);
+            if (hostnameAlive) {
+                if (c == '.') {
+                    if (labelLength == 0 || hyphen) {
+                        hostnameAlive = false;
+                    } else {
+                        ++labels;
+                        labelLength = 0;
+                        // At least one label followed by two letters makes it a hostname.
+                        if (i + 2 < end && isLetter(query.charAt(i + 1)) && isLetter(query.charAt(i + 2))) {
+                            return pack(EQueryType.DOMAIN, NO_PREFIX, 0);
+                        }
+                    }
+                } else if (c == '-') {
+                    hostnameAlive = labelLength > 0 && !hyphen;
+                    hyphen = true;
+                } else if (c >= '0' && c <= '9' || isLetter(c)) {
+                    ++labelLength;
+                    hyphen = false;
+                } else {
+                    hostnameAlive = false;
+                }
+            }
+            if (ipAlive) {
+                if (prefix != NO_PREFIX) {
+                    if (c >= '0' && c <= '9' && ++prefixDigits <= Ipv4Utils.CONST_2) {
+                        prefix = prefix * Ipv4Utils.CONST_10 + (c - '0');
+                    } else {
+                        ipAlive = false;
+                    }
+                } else if (c >= '0' && c <= '9') {
+                    // Leading zeros are not allowed.
+                    if (digits > 0 && octet == 0) {
+                        ipAlive = false;
+                    } else {
+                        octet = octet * Ipv4Utils.CONST_10 + (c - '0');
+                        ipAlive = ++digits <= Ipv4Utils.CONST_3 && octet <= Ipv4Utils.CONST_255;
+                    }
+                } else if (c == '.' && digits > 0 && dots < Ipv4Utils.CONST_3) {
+                    address = address << Ipv4Utils.CONST_8 | octet;
+                    octet = 0;
+                    digits = 0;
+                    ++dots;
+                } else if (c == '/' && digits > 0 && dots == Ipv4Utils.CONST_3) {
+                    prefix = 0;
+                } else {
+                    ipAlive = false;
+                }
+            }
+        }
+        if (ipAlive && digits > 0 && dots == Ipv4Utils.CONST_3) {
+            address = address << Ipv4Utils.CONST_8 | octet;
+            if (prefix == NO_PREFIX) {
+                // A trailing line terminator is accepted by the ADDRESS_PATTERN, but not by the CIDR_PATTERN
+                // after "/31" has been appended.
+                return pack(end == query.length() ? EQueryType.IP : EQueryType.INVALID_IP, NO_PREFIX, address);
+            }
+            if (prefixDigits > 0) {
+                return pack(prefix > MAX_PREFIX ? EQueryType.INVALID_SUBNET : EQueryType.SUBNET, prefix, address);
+            }
+        }
+        return pack(scanTail(query, end), NO_PREFIX, 0);
+    }
+
+    /**
+     * Returns the type of a result of scan().
+     *
+     * @param result Result of scan().
+     * @return Type of the query.
+     */
+    public static EQueryType getType(final long result) {
+        return TYPES[(int) (result >>> (INT_BITS + PREFIX_BITS))];
+    }
+
+    /**
+     * Returns the prefix of a result of scan().
+     *
+     * @param result Result of scan().
+     * @return Prefix of the CIDR-Notation or NO_PREFIX.
+     */
+    public static int getPrefix(final long result) {
+        final int prefix = (int) (result >>> INT_BITS) & Ipv4Utils.CONST_255;
+        return prefix == Ipv4Utils.CONST_255 ? NO_PREFIX : prefix;
+    }
+
+    /**
+     * Returns the IP-Address of a result of scan().
+     *
+     * @param result Result of scan().
+     * @return IP-Address as int value (0 if the query isn't an IP-Address or CIDR-Notation).
+     */
+    public static int getAddress(final long result) {
+        return (int) result;
+    }
+
+    /**
+     * Packs the parts of a result.
+     *
+     * @param type Type of the query.
+     * @param prefix Prefix or NO_PREFIX.
+     * @param address IP-Address.
+     * @return Packed result.
+     */
+    private static long pack(final EQueryType type, final int prefix, final long address) {
+        return (long) type.ordinal() << (INT_BITS + PREFIX_BITS) | (long) (prefix & Ipv4Utils.CONST_255) << INT_BITS | address & INT_MASK;
+    }
+
+    /**
+     * Checks the end of a query, that isn't a valid IP-Address or CIDR-Notation, against the SIMPLE_IPS_PATTERN
+     * ((?:[0-9]{1,3}\.){3}[0-9]{1,3})(?:/([\d]+))*$.
+     *
+     * @param query Query.
+     * @param end End of the query without a trailing line terminator.
+     * @return INVALID_SUBNET, INVALID_IP or INVALID.
+     */
+    private static EQueryType scanTail(final CharSequence query, final int end) {
+        int position = end;
+        boolean subnet = false;
+        int run = digitsBefore(query, position);
+        // Read the prefixes (/nn) from the end.
+        while (run > 0 && position - run > 0 && query.charAt(position - run - 1) == '/') {
+            subnet = true;
+            position -= run + 1;
+            run = digitsBefore(query, position);
+        }
+        // Four octets: the first one may be preceded by anything, the other ones need 1 - 3 digits and a dot before.
+        for (int i = 0; i < Ipv4Utils.CONST_3; ++i) {
+            if (run == 0 || run > Ipv4Utils.CONST_3 || position - run == 0 || query.charAt(position - run - 1) != '.') {
+                return EQueryType.INVALID;
+            }
+            position -= run + 1;
+            run = digitsBefore(query, position);
+        }
+        if (run == 0) {
+            return EQueryType.INVALID;
+        }
+        return subnet ? EQueryType.INVALID_SUBNET : EQueryType.INVALID_IP;
+    }
+
+    /**
+     * Counts the digits in front of a position.
+     *
+     * @param query Query.
+     * @param position Position.
+     * @return Number of digits.
+     */
+    private static int digitsBefore(final CharSequence query, final int position) {
+        int i = position;
+        while (i > 0 && query.charAt(i - 1) >= '0' && query.charAt(i - 1) <= '9') {
+            --i;
+        }
+        return position - i;
+    }
+
+    /**
+     * Returns the end of a query without a trailing line terminator (which is accepted by '$' in the patterns).
+     *
+     * @param query Query.
+     * @return End of the query.
+     */
+    private static int getContentEnd(final CharSequence query) {
+        final int length = query.length();
+        if (length > 1 && query.charAt(length - 2) == '\r' && query.charAt(length - 1) == '\n') {
+            return length - Ipv4Utils.CONST_2;
+        }
+        if (length > 0 && isLineTerminator(query.charAt(length - 1))) {
+            return length - 1;
+        }
+        return length;
+    }
+
+    /**
+     * Tests if a character is matched by [a-z] with CASE_INSENSITIVE and UNICODE_CASE (as in the DOMAIN_PATTERN).
+     *
+     * @param c Character.
+     * @return {@code TRUE} if it's a letter, otherwise {@code FALSE}.
+     */
+    private static boolean isLetter(final char c) {
+        if (c <= Byte.MAX_VALUE) {
+            return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+        }
+        final char upperCase = Character.toUpperCase(c);
+        final char lowerCase = Character.toLowerCase(upperCase);
+        return upperCase >= 'a' && upperCase <= 'z' || lowerCase >= 'a' && lowerCase <= 'z';
+    }
+
+    /**
+     * Tests if a character is a line terminator (not matched by '.' in a pattern).
+     *
+     * @param c Character.
+     * @return {@code TRUE} if it's a line terminator, otherwise {@code FALSE}.
+     */
+    private static boolean isLineTerminator(final char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || (c | 1) == '\u2029';
+    }
+
+    /**
+     * Returns the index of the next line terminator in a string.
+     *
+     * @param s String.
+     * @param start Index to start the search from.
+     * @return Index of the next line terminator or -1 if there's none.
+     */
+    private static int indexOfLineTerminator(final String s, final int start) {
+        for (int i = start; i < s.length(); ++i) {
+            if (isLineTerminator(s.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Tests if the next '@' can be reached without crossing a line terminator (as by ".*?[@]+" in the correction).
+     *
+     * @param nextAt Index of the next '@' or -1.
+     * @param nextLineTerminator Index of the next line terminator or -1.
+     * @return {@code TRUE} if the '@' can be reached, otherwise {@code FALSE}.
+     */
+    private static boolean isAtReachable(final int nextAt, final int nextLineTerminator) {
+        return nextAt >= 0 && (nextLineTerminator < 0 || nextAt < nextLineTerminator);
+    }
+
+    /**
+     * Skips all occurrences of a character.
+     *
+     * @param s String.
+     * @param start Index to start from.
+     * @param c Character to skip.
+     * @return Index of the first other character (or the length of the string).
+     */
+    private static int skip(final String s, final int start, final char c) {
+        int i = start;
+        while (i < s.length() && s.charAt(i) == c) {
+            ++i;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the length of a leading scheme (e.g. "http://") of a query.
+     *
+     * @param query Query.
+     * @return Length of the scheme or 0 if there's no scheme.
+     */
+    private static int skipScheme(final String query) {
+        for (String scheme : SCHEMES) {
+            final int length = scheme.length();
+            if (query.length() >= length + Ipv4Utils.CONST_3 && query.charAt(length) == ':' && query.charAt(length + 1) == '/'
+                    && query.charAt(length + 2) == '/') {
+                boolean matches = true;
+                for (int i = 0; i < length && matches; ++i) {
+                    // Case insensitive for ASCII letters only (like (?i) without UNICODE_CASE).
+                    matches = (query.charAt(i) | ' ') == scheme.charAt(i);
+                }
+                if (matches) {
+                    return length + Ipv4Utils.CONST_3;
+                }
+            }
+        }
+        return 0;
+    }
+
+}
@@ -0,0 +1,40 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package de.jdevelopers.ipv4info.utils;
+
+import de.jdevelopers.ipv4info.enums.EEvictionCause;
+import de.jdevelopers.ipv4info.objects.IpInfo;
+
+/**
+ * Listener that is notified when a result is removed from the result pool.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public interface ResultEvictionListener {
+
+    /**
+     * Called after a result was removed from the result pool. The call is done without holding any lock of the pool.
+     *
+     * @param query The corrected query of the result.
+     * @param ipInfo The removed result.
+     * @param cause The reason why the result was removed.
+     */
+    void onEviction(String query, IpInfo ipInfo, EEvictionCause cause);
+
+}
@@ -0,0 +1,927 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package de.jdevelopers.ipv4info.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import de.jdevelopers.ipv4info.enums.EDnsOption;
+import de.jdevelopers.ipv4info.enums.EEvictionCause;
+import de.jdevelopers.ipv4info.objects.IpInfo;
+
+/**
+ * Size and memory bound for the Ipv4Utils.RESULT_POOL with a W-TinyLFU style admission and eviction policy.
+ *
+ * New results are added to a small LRU window (1% of the capacity). A result that drops out of the window is only
+ * admitted to the main region, if it was accessed more often than the result that would be evicted from the main region
+ * instead. The access frequencies are estimated by a count-min sketch that is halved regularly, so old popularity fades.
+ * This way a few very hot results (e.g. gmail.com) are never pushed out by a long tail of one-off queries.
+ * The main region is a segmented LRU: a result accessed again while on probation is moved to the protected segment.
+ * Results that are still resolved are kept apart from these regions: they count against the bounds, but they are
+ * neither rejected nor evicted. A result enters the window, when all its requests are done. So a large batch of new
+ * queries evicts finished results to make room, and the bounds are only exceeded, if the results in progress alone
+ * exceed them.
+ *
+ * The lookups of the RESULT_POOL stay lock-free: accesses are recorded in a buffer, that is applied to the policy
+ * by the thread that gets the lock (accesses may be dropped under heavy load, which just makes the policy less precise).
+ * The bound is disabled by default (see Ipv4Utils.setResultPoolBounds()).
+ *
+ * @author Carsten Jäger
+ *
+ */
+public final class ResultPoolPolicy {
+
+    /**
+     * Number of buffered accesses that triggers applying the buffer.
+     */
+    private static final int READ_BUFFER_THRESHOLD = 64;
+
+    /**
+     * Maximum number of buffered accesses. Further accesses are dropped until the buffer is applied.
+     */
+    private static final int READ_BUFFER_MAX = 1024;
+
+    /**
+     * Percentage of the capacity that is used for the window.
+     */
+    private static final int WINDOW_PERCENT = 1;
+
+    /**
+     * Percentage of the main region that is used for the protected segment.
+     */
+    private static final int PROTECTED_PERCENT = 80;
+
+    /**
+     * Estimated size of a result in bytes, used to size the frequency sketch if just a byte budget is given.
+     */
+    private static final int ESTIMATED_ENTRY_SIZE = 1024;
+
+    /**
+     * Lock for the policy structures.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Buffer of the recorded accesses.
+     */
+    private final Queue<String> readBuffer = new ConcurrentLinkedQueue<String>();
+
+    /**
+     * Number of buffered accesses.
+     */
+    private final AtomicInteger readBufferSize = new AtomicInteger();
+
+    /**
+     * All tracked results.
+     */
+    private final Map<String, Node> nodes = new HashMap<String, Node>();
+
+    /**
+     * The results that are still resolved (they enter the window, when they are done).
+     */
+    private final Map<String, Node> pending = new HashMap<String, Node>();
+
+    /**
+     * Results that became pending and whose completion is not watched yet (it's watched without holding the lock).
+     */
+    private final Queue<Node> unwatched = new ConcurrentLinkedQueue<Node>();
+
+    /**
+     * The window (LRU order, the first entry is the eldest).
+     */
+    private final LinkedHashMap<String, Node> window = new LinkedHashMap<String, Node>();
+
+    /**
+     * The probation segment of the main region (LRU order).
+     */
+    private final LinkedHashMap<String, Node> probation = new LinkedHashMap<String, Node>();
+
+    /**
+     * The protected segment of the main region (LRU order).
+     */
+    private final LinkedHashMap<String, Node> protectedSegment = new LinkedHashMap<String, Node>();
+
+    /**
+     * Listeners to notify on evictions.
+     */
+    private final List<ResultEvictionListener> listeners = new CopyOnWriteArrayList<ResultEvictionListener>();
+
+    /**
+     * Number of results evicted because of the bounds.
+     */
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Number of results that were not admitted to the main region.
+     */
+    private final AtomicLong rejectionCount = new AtomicLong();
+
+    /**
+     * Estimated access frequencies.
+     */
+    private FrequencySketch sketch;
+
+    /**
+     * Sum of the estimated sizes of all tracked results.
+     */
+    private long weightedSize;
+
+    /**
+     * Maximum number of results (0 = unbounded).
+     */
+    private volatile int maxEntries;
+
+    /**
+     * Maximum estimated size of all results in bytes (0 = unbounded).
+     */
+    private volatile long maxBytes;
+
+    /**
+     * Region of a tracked result.
+     */
+    private enum Region {
+
+        /**
+         * The results in progress.
+         */
+        PENDING,
+
+        /**
+         * The window.
+         */
+        WINDOW,
+
+        /**
+         * The probation segment.
+         */
+        PROBATION,
+
+        /**
+         * The protected segment.
+         */
+        PROTECTED;
+
+    }
+
+    /**
+     * A tracked result.
+     */
+    private static final class Node {
+
+        /**
+         * The corrected query.
+         */
+        private final String key;
+
+        /**
+         * The result.
+         */
+        private IpInfo value;
+
+        /**
+         * Estimated size of the result.
+         */
+        private long weight;
+
+        /**
+         * Region of the result.
+         */
+        private Region region = Region.WINDOW;
+
+        /**
+         * Constructor.
+         *
+         * @param key The corrected query.
+         * @param value The result.
+         */
+        Node(final String key, final IpInfo value) {
+            this.key = key;
+            this.value = value;
+            this.weight = value.getEstimatedSize();
+        }
+
+    }
+
+    /**
+     * Count-min sketch with 4-bit counters (stored in bytes) for estimating the access frequencies.
+     */
+    private static final class FrequencySketch {
+
+        /**
+         * Maximum value of a counter.
+         */
+        private static final int MAX_COUNT = 15;
+
+        /**
+         * Number of counters per key.
+         */
+        private static final int DEPTH = 4;
+
+        /**
+         * Minimum number of counters.
+         */
+        private static final int MIN_SIZE = 1 << 10;
+
+        /**
+         * Maximum number of counters.
+         */
+        private static final int MAX_SIZE = 1 << 22;
+
+        /**
+         * Factor between the number of counters and the number of increments after which all counters are halved.
+         */
+        private static final int SAMPLE_FACTOR = 10;
+
+        /**
+         * Seeds for the hash functions (odd 64 bit constants with well distributed bits).
+         */
+        private static final long[] SEEDS = new long[] {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+        /**
+         * The counters.
+         */
+        private final byte[] table;
+
+        /**
+         * Mask for the index of a counter.
+         */
+        private final int mask;
+
+        /**
+         * Number of increments after which all counters are halved.
+         */
+        private final int sampleSize;
+
+        /**
+         * Number of increments since the last halving.
+         */
+        private int additions;
+
+        /**
+         * Constructor.
+         *
+         * @param capacity Expected number of results.
+         */
+        FrequencySketch(final long capacity) {
+            int size = MIN_SIZE;
+            while (size < capacity && size < MAX_SIZE) {
+                size <<= 1;
+            }
+            table = new byte[size];
+            mask = size - 1;
+            sampleSize = size * SAMPLE_FACTOR;
+        }
+
+        /**
+         * Returns the index of a counter.
+         *
+         * @param hash Hash of the key.
+         * @param i Number of the hash function.
+         * @return Index of the counter.
+         */
+        private int indexOf(final int hash, final int i) {
+            long result = (hash + SEEDS[i]) * SEEDS[i];
+            result += result >>> (Integer.SIZE);
+            return (int) result & mask;
+        }
+
+        /**
+         * Returns the estimated frequency of a key.
+         *
+         * @param key The key.
+         * @return Estimated frequency (max. 15).
+         */
+        int frequency(final String key) {
+            final int hash = key.hashCode();
+            int result = MAX_COUNT;
+            for (int i = 0; i < DEPTH; ++i) {
+                result = Math.min(result, table[indexOf(hash, i)]);
+            }
+            return result;
+        }
+
+        /**
+         * Increments the estimated frequency of a key.
+         *
+         * @param key The key.
+         */
+        void increment(final String key) {
+            final int hash = key.hashCode();
+            boolean added = false;
+            for (int i = 0; i < DEPTH; ++i) {
+                final int index = indexOf(hash, i);
+                if (table[index] < MAX_COUNT) {
+                    ++table[index];
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                // Aging: halving all counters lets the popularity of old results fade.
+                for (int i = 0; i < table.length; ++i) {
+                    table[i] >>= 1;
+                }
+                additions >>= 1;
+            }
+        }
+
+    }
+
+    /**
+     * Returns {@code TRUE}, if the result pool is bounded.
+     *
+     * @return {@code TRUE}, if the result pool is bounded, otherwise {@code FALSE}.
+     */
+    public boolean isBounded() {
+        return maxEntries > 0 || maxBytes > 0;
+    }
+
+    /**
+     * Returns the maximum number of results.
+     *
+     * @return Maximum number of results (0 = unbounded).
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Returns the maximum estimated size of all results in bytes.
+     *
+     * @return Maximum estimated size of all results in bytes (0 = unbounded).
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Sets the bounds. If a bound is enabled, all results of the RESULT_POOL are tracked from now on.
+     *
+     * @param maxEntries Maximum number of results (0 = unbounded).
+     * @param maxBytes Maximum estimated size of all results in bytes (0 = unbounded).
+     */
+    void setBounds(final int maxEntries, final long maxBytes) {
+        final List<Node> evicted;
+        lock.lock();
+        try {
+            final boolean wasBounded = isBounded();
+            this.maxEntries = Math.max(0, maxEntries);
+            this.maxBytes = Math.max(0, maxBytes);
+            if (!isBounded()) {
+                clear();
+                return;
+            }
+            sketch = new FrequencySketch(this.maxEntries > 0 ? this.maxEntries : this.maxBytes / ESTIMATED_ENTRY_SIZE);
+            if (!wasBounded) {
+                for (final Map.Entry<String, IpInfo> entry : Ipv4Utils.RESULT_POOL.entrySet()) {
+                    addNode(entry.getKey(), entry.getValue());
+                }
+            }
+            evicted = evict();
+        } finally {
+            lock.unlock();
+        }
+        removeEvicted(evicted);
+    }
+
+    /**
+     * Records a result that was added to the RESULT_POOL. The insert itself isn't counted as an access (see recordAccess()).
+     *
+     * @param key The corrected query.
+     * @param value The result.
+     */
+    public void recordInsert(final String key, final IpInfo value) {
+        if (!isBounded()) {
+            return;
+        }
+        final List<Node> evicted;
+        lock.lock();
+        try {
+            if (!isBounded()) {
+                return;
+            }
+            drainReadBuffer();
+            addNode(key, value);
+            evicted = evict();
+        } finally {
+            lock.unlock();
+        }
+        removeEvicted(evicted);
+    }
+
+    /**
+     * Records an access of a result of the RESULT_POOL. This never blocks.
+     *
+     * @param key The corrected query.
+     */
+    public void recordAccess(final String key) {
+        if (!isBounded()) {
+            return;
+        }
+        if (readBufferSize.get() < READ_BUFFER_MAX) {
+            readBuffer.add(key);
+            readBufferSize.incrementAndGet();
+        }
+        if (readBufferSize.get() >= READ_BUFFER_THRESHOLD && lock.tryLock()) {
+            final List<Node> evicted;
+            try {
+                drainReadBuffer();
+                evicted = evict();
+            } finally {
+                lock.unlock();
+            }
+            removeEvicted(evicted);
+        }
+    }
+
+    /**
+     * Records a result, whose requests are done. It leaves the pending results and enters the window.
+     *
+     * @param node The tracked result.
+     * @param value The result, that is done.
+     */
+    private void recordCompletion(final Node node, final IpInfo value) {
+        final List<Node> evicted;
+        lock.lock();
+        try {
+            if (!isBounded() || nodes.get(node.key) != node || node.value != value || node.region != Region.PENDING) {
+                return;
+            }
+            pending.remove(node.key);
+            updateWeight(node);
+            place(node);
+            evicted = evict();
+        } finally {
+            lock.unlock();
+        }
+        removeEvicted(evicted);
+    }
+
+    /**
+     * Records a result that was replaced in the RESULT_POOL by a refreshed result. The refreshed result takes over
+     * the position of the replaced one.
+     *
+     * @param key The corrected query.
+     * @param oldValue The replaced result.
+     * @param newValue The refreshed result.
+     */
+    void recordReplace(final String key, final IpInfo oldValue, final IpInfo newValue) {
+        if (!isBounded()) {
+            return;
+        }
+        final List<Node> evicted;
+        lock.lock();
+        try {
+            final Node node = nodes.get(key);
+            if (node != null && node.value == oldValue) {
+                node.value = newValue;
+                updateWeight(node);
+                if (node.region == Region.PENDING) {
+                    pending.remove(key);
+                    place(node);
+                }
+            } else {
+                addNode(key, newValue);
+            }
+            evicted = evict();
+        } finally {
+            lock.unlock();
+        }
+        removeEvicted(evicted);
+    }
+
+    /**
+     * Records a result that was removed from the RESULT_POOL by someone else (e.g. the retention policy).
+     *
+     * @param key The corrected query.
+     * @param value The removed result.
+     */
+    void recordRemoval(final String key, final IpInfo value) {
+        if (!isBounded()) {
+            return;
+        }
+        lock.lock();
+        try {
+            final Node node = nodes.get(key);
+            if (node != null && node.value == value) {
+                removeNode(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a result to the window. Must be called with the lock held.
+     *
+     * @param key The corrected query.
+     * @param value The result.
+     */
+    private void addNode(final String key, final IpInfo value) {
+        final Node old = nodes.get(key);
+        if (old != null) {
+            if (old.value == value) {
+                return;
+            }
+            removeNode(old);
+        }
+        final Node node = new Node(key, value);
+        nodes.put(key, node);
+        weightedSize += node.weight;
+        place(node);
+    }
+
+    /**
+     * Puts a result, that isn't in any region, into the window or (if it's still resolved) to the pending results.
+     * Must be called with the lock held.
+     *
+     * @param node The tracked result.
+     */
+    private void place(final Node node) {
+        if (node.value.isRequestDone()) {
+            node.region = Region.WINDOW;
+            window.put(node.key, node);
+        } else {
+            node.region = Region.PENDING;
+            pending.put(node.key, node);
+            unwatched.add(node);
+        }
+    }
+
+    /**
+     * Updates the estimated size of a result. Must be called with the lock held.
+     *
+     * @param node The tracked result.
+     */
+    private void updateWeight(final Node node) {
+        final long weight = node.value.getEstimatedSize();
+        weightedSize += weight - node.weight;
+        node.weight = weight;
+    }
+
+    /**
+     * Watches the completion of the results, that became pending. Must be called without holding the lock,
+     * as the completion may be recorded at once.
+     */
+    private void watchPending() {
+        Node node;
+        while ((node = unwatched.poll()) != null) {
+            final Node watched = node;
+            final IpInfo value = node.value;
+            value.getFuture(EDnsOption.ALL).whenComplete((result, throwable) -> recordCompletion(watched, value));
+        }
+    }
+
+    /**
+     * Removes a result from all structures. Must be called with the lock held.
+     *
+     * @param node The tracked result.
+     */
+    private void removeNode(final Node node) {
+        nodes.remove(node.key);
+        getRegion(node.region).remove(node.key);
+        weightedSize -= node.weight;
+    }
+
+    /**
+     * Returns the map of a region.
+     *
+     * @param region The region.
+     * @return The map of the region.
+     */
+    private Map<String, Node> getRegion(final Region region) {
+        switch (region) {
+        case PENDING: return pending;
+        case PROBATION: return probation;
+        case PROTECTED: return protectedSegment;
+        default: return window;
+        }
+    }
+
+    /**
+     * Applies all buffered accesses. Must be called with the lock held.
+     */
+    private void drainReadBuffer() {
+        String key;
+        while ((key = readBuffer.poll()) != null) {
+            readBufferSize.decrementAndGet();
+            sketch.increment(key);
+            final Node node = nodes.get(key);
+            if (node == null) {
+                continue;
+            }
+            // The results grow while they are resolved, so the size is updated on every access.
+            updateWeight(node);
+            switch (node.region) {
+            case PENDING:
+                // Not ordered until it's done.
+                break;
+            case WINDOW:
+                moveToEnd(window, node);
+                break;
+            case PROBATION:
+                probation.remove(key);
+                node.region = Region.PROTECTED;
+                protectedSegment.put(key, node);
+                break;
+            default:
+                moveToEnd(protectedSegment, node);
+                break;
+            }
+        }
+        // Demote the eldest protected results to probation, if the protected segment is too large.
+        final int protectedLimit = (int) ((long) (getCapacity() - getWindowLimit()) * PROTECTED_PERCENT / Ipv4Utils.CONST_100);
+        while (protectedSegment.size() > Math.max(0, protectedLimit)) {
+            final Node node = pollFirst(protectedSegment);
+            node.region = Region.PROBATION;
+            probation.put(node.key, node);
+        }
+    }
+
+    /**
+     * Moves a result to the end (most recently used) of a region.
+     *
+     * @param region Map of the region.
+     * @param node The tracked result.
+     */
+    private static void moveToEnd(final LinkedHashMap<String, Node> region, final Node node) {
+        region.remove(node.key);
+        region.put(node.key, node);
+    }
+
+    /**
+     * Removes and returns the first (least recently used) result of a region.
+     *
+     * @param region Map of the region.
+     * @return The first result or {@code NULL}, if the region is empty.
+     */
+    private static Node pollFirst(final LinkedHashMap<String, Node> region) {
+        final Iterator<Node> iterator = region.values().iterator();
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        final Node result = iterator.next();
+        iterator.remove();
+        return result;
+    }
+
+    /**
+     * Returns the first (least recently used) result of a region, whose requests are all done. A result that is resolved
+     * again (e.g. because of further resolve options) is moved to the pending results on the way, so this is O(1) amortized.
+     * Must be called with the lock held.
+     *
+     * @param region Map of the region.
+     * @return The first finished result or {@code NULL}, if the region is empty.
+     */
+    private Node peekFirstDone(final LinkedHashMap<String, Node> region) {
+        Node node;
+        while ((node = peekFirst(region)) != null && !node.value.isRequestDone()) {
+            region.remove(node.key);
+            place(node);
+        }
+        return node;
+    }
+
+    /**
+     * Returns the first (least recently used) result of a region without removing it.
+     *
+     * @param region Map of the region.
+     * @return The first result or {@code NULL}, if the region is empty.
+     */
+    private static Node peekFirst(final LinkedHashMap<String, Node> region) {
+        final Iterator<Node> iterator = region.values().iterator();
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /**
+     * Returns the capacity in number of results (the actual number of results, if just a byte budget is set).
+     *
+     * @return The capacity in number of results.
+     */
+    private int getCapacity() {
+        return maxEntries > 0 ? maxEntries : Math.max(1, nodes.size());
+    }
+
+    /**
+     * Returns the maximum number of results in the window.
+     *
+     * @return The maximum number of results in the window.
+     */
+    private int getWindowLimit() {
+        return Math.max(1, getCapacity() * WINDOW_PERCENT / Ipv4Utils.CONST_100);
+    }
+
+    /**
+     * Checks if the bounds are exceeded.
+     *
+     * @return {@code TRUE}, if the bounds are exceeded, otherwise {@code FALSE}.
+     */
+    private boolean isOverBounds() {
+        return (maxEntries > 0 && nodes.size() > maxEntries) || (maxBytes > 0 && weightedSize > maxBytes);
+    }
+
+    /**
+     * Moves the results that drop out of the window through the admission filter and evicts results until the bounds are met.
+     * Must be called with the lock held.
+     *
+     * @return The evicted results.
+     */
+    private List<Node> evict() {
+        List<Node> result = null;
+        while (window.size() > getWindowLimit()) {
+            final Node candidate = peekFirstDone(window);
+            if (candidate == null) {
+                break;
+            }
+            window.remove(candidate.key);
+            Node victim = peekFirstDone(probation);
+            if (victim == null) {
+                victim = peekFirstDone(protectedSegment);
+            }
+            if (!isOverBounds() || victim == null) {
+                candidate.region = Region.PROBATION;
+                probation.put(candidate.key, candidate);
+                continue;
+            }
+            if (result == null) {
+                result = new ArrayList<Node>();
+            }
+            // Admission: the candidate just replaces the victim, if it was accessed more often.
+            if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                removeNode(victim);
+                result.add(victim);
+                candidate.region = Region.PROBATION;
+                probation.put(candidate.key, candidate);
+            } else {
+                nodes.remove(candidate.key);
+                weightedSize -= candidate.weight;
+                result.add(candidate);
+                rejectionCount.incrementAndGet();
+            }
+        }
+        // The bounds may still be exceeded, e.g. because the results have grown or many results are in progress.
+        while (isOverBounds()) {
+            Node victim = peekFirstDone(probation);
+            if (victim == null) {
+                victim = peekFirstDone(protectedSegment);
+            }
+            if (victim == null) {
+                victim = peekFirstDone(window);
+            }
+            if (victim == null) {
+                // Just results in progress are left.
+                break;
+            }
+            if (result == null) {
+                result = new ArrayList<Node>();
+            }
+            removeNode(victim);
+            result.add(victim);
+        }
+        return result;
+    }
+
+    /**
+     * Removes the evicted results from the RESULT_POOL and notifies the listeners. Must be called without holding the lock.
+     * The results, that became pending meanwhile, are watched for their completion.
+     *
+     * @param evicted The evicted results (may be {@code NULL}).
+     */
+    private void removeEvicted(final List<Node> evicted) {
+        watchPending();
+        if (evicted == null) {
+            return;
+        }
+        for (final Node node : evicted) {
+            // Only remove the result, if it wasn't replaced in the meanwhile.
+            if (Ipv4Utils.RESULT_POOL.remove(node.key, node.value)) {
+                evictionCount.incrementAndGet();
+                notifyListeners(node.key, node.value, EEvictionCause.SIZE);
+            }
+        }
+    }
+
+    /**
+     * Removes all tracked results. Must be called with the lock held.
+     */
+    private void clear() {
+        nodes.clear();
+        pending.clear();
+        unwatched.clear();
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+        readBuffer.clear();
+        readBufferSize.set(0);
+        weightedSize = 0;
+        sketch = null;
+    }
+
+    /**
+     * Notifies all listeners about a removed result.
+     *
+     * @param key The corrected query.
+     * @param value The removed result.
+     * @param cause The reason why the result was removed.
+     */
+    void notifyListeners(final String key, final IpInfo value, final EEvictionCause cause) {
+        for (final ResultEvictionListener listener : listeners) {
+            try {
+                listener.onEviction(key, value, cause);
+            } catch (RuntimeException re) {
+                re.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Adds a listener that is notified when a result is removed from the result pool.
+     *
+     * @param listener The listener.
+     */
+    public void addEvictionListener(final ResultEvictionListener listener) {
+        if (listener != null) {
+            listeners.add(listener);
+        }
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener The listener.
+     */
+    public void removeEvictionListener(final ResultEvictionListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the number of results evicted because of the bounds.
+     *
+     * @return Number of results evicted because of the bounds.
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Returns the number of new results that were not admitted to the main region (and therefore evicted).
+     *
+     * @return Number of rejected results.
+     */
+    public long getRejectionCount() {
+        return rejectionCount.get();
+    }
+
+    /**
+     * Returns the estimated size of all tracked results in bytes.
+     *
+     * @return Estimated size of all tracked results in bytes (0 if the pool is unbounded).
+     */
+    public long getWeightedSize() {
+        lock.lock();
+        try {
+            return weightedSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of tracked results.
+     *
+     * @return Number of tracked results (0 if the pool is unbounded).
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return nodes.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
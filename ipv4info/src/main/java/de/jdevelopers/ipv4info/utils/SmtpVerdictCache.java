@@ -0,0 +1,305 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package de.jdevelopers.ipv4info.utils;
+
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+
+import de.jdevelopers.ipv4info.enums.ESmtpVerdict;
+
+/**
+ * Cache for the results of SMTP connection checks.
+ *
+ * The results are cached by server (Domain/IP) and port. Each kind of result has its own TTL: a reachable server is
+ * rechecked after an hour, while refused, timed out and unreachable servers are rechecked after a few minutes.
+ * Concurrent checks of the same server wait for the running check instead of opening another connection.
+ * If the cache is full, the expired results are removed first and then the results that expire first are evicted.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public final class SmtpVerdictCache {
+
+    /**
+     * Default TTL of reachable servers in seconds.
+     */
+    public static final long DEFAULT_REACHABLE_TTL = Ipv4Utils.DNSJAVA_TTL_TIMEOUT;
+
+    /**
+     * Default TTL of servers that refused the connection in seconds.
+     */
+    public static final long DEFAULT_REFUSED_TTL = Ipv4Utils.CONST_10 * Ipv4Utils.CONST_60;
+
+    /**
+     * Default TTL of servers that didn't answer in time in seconds.
+     */
+    public static final long DEFAULT_TIMEOUT_TTL = Ipv4Utils.CONST_5 * Ipv4Utils.CONST_60;
+
+    /**
+     * Default TTL of unreachable servers in seconds.
+     */
+    public static final long DEFAULT_UNREACHABLE_TTL = Ipv4Utils.CONST_5 * Ipv4Utils.CONST_60;
+
+    /**
+     * Default maximum number of cached results.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = Ipv4Utils.CONST_100 * Ipv4Utils.CONST_100 * Ipv4Utils.CONST_10;
+
+    /**
+     * Pattern for refused connections.
+     */
+    private static final Pattern REFUSED_PATTERN = Pattern.compile("\\brefused\\b", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+
+    /**
+     * The cached results by server and port (completed as soon as the check is done). A running check never expires.
+     */
+    private final BoundedTtlMap<String, CompletableFuture<ESmtpVerdict>> entries =
+            new BoundedTtlMap<String, CompletableFuture<ESmtpVerdict>>(DEFAULT_MAX_ENTRIES);
+
+    /**
+     * Number of results returned from the cache.
+     */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /**
+     * Number of checks that had to be done.
+     */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * TTLs in msec by the ordinal of the ESmtpVerdict.
+     */
+    private final AtomicLongArray ttls = new AtomicLongArray(ESmtpVerdict.values().length);
+
+    /**
+     * Is the cache enabled?
+     */
+    private volatile boolean enabled = true;
+
+    /**
+     * Constructor.
+     */
+    public SmtpVerdictCache() {
+        super();
+        ttls.set(ESmtpVerdict.REACHABLE.ordinal(), TimeUnit.SECONDS.toMillis(DEFAULT_REACHABLE_TTL));
+        ttls.set(ESmtpVerdict.REFUSED.ordinal(), TimeUnit.SECONDS.toMillis(DEFAULT_REFUSED_TTL));
+        ttls.set(ESmtpVerdict.TIMEOUT.ordinal(), TimeUnit.SECONDS.toMillis(DEFAULT_TIMEOUT_TTL));
+        ttls.set(ESmtpVerdict.UNREACHABLE.ordinal(), TimeUnit.SECONDS.toMillis(DEFAULT_UNREACHABLE_TTL));
+    }
+
+    /**
+     * Returns the result of the SMTP connection check of the given server. The server is just checked, if there is
+     * no valid result in the cache.
+     *
+     * @param server Domain/IP.
+     * @param port Port.
+     * @return The result of the connection check.
+     */
+    public ESmtpVerdict getVerdict(final String server, final int port) {
+        if (!enabled || server == null) {
+            return connect(server, port);
+        }
+        final String key = server.toLowerCase(Locale.ENGLISH) + ':' + port;
+        final long now = System.currentTimeMillis();
+        final CompletableFuture<ESmtpVerdict> entry = entries.get(key, now);
+        if (entry != null) {
+            hitCount.incrementAndGet();
+            return entry.join();
+        }
+        missCount.incrementAndGet();
+        final CompletableFuture<ESmtpVerdict> created = new CompletableFuture<ESmtpVerdict>();
+        final CompletableFuture<ESmtpVerdict> existing = entries.putIfAbsent(key, created, Long.MAX_VALUE, now);
+        if (existing != null) {
+            // Another thread started the check in the meanwhile.
+            return existing.join();
+        }
+        final ESmtpVerdict verdict = connect(server, port);
+        entries.setExpires(key, created, System.currentTimeMillis() + ttls.get(verdict.ordinal()));
+        created.complete(verdict);
+        return verdict;
+    }
+
+    /**
+     * Checks if a connection to the given Domain/IP can be established.
+     *
+     * @param server Domain/IP.
+     * @param port Port.
+     * @return The result of the connection check.
+     */
+    private static ESmtpVerdict connect(final String server, final int port) {
+        if (server == null || server.length() < Ipv4Utils.CONST_4) {
+            return ESmtpVerdict.UNREACHABLE;
+        }
+        Socket so = null;
+        VirtualThreadExecutor slot = null;
+        try {
+            slot = Ipv4Utils.acquireQuerySlot(false);
+            so = new Socket();
+            so.setSoTimeout((int) TimeUnit.SECONDS.toMillis(Ipv4Utils.CONST_3));
+            so.connect(new InetSocketAddress(server, port), (int) TimeUnit.SECONDS.toMillis(Ipv4Utils.CONST_2));
+            return so.isConnected() ? ESmtpVerdict.REACHABLE : ESmtpVerdict.UNREACHABLE;
+        } catch (ConnectException ce) {
+            // If the exception message contains "refused", the server is alive, but won't talk to me right now.
+            if (ce.getMessage() != null && REFUSED_PATTERN.matcher(ce.getMessage()).find()) {
+                return ESmtpVerdict.REFUSED;
+            }
+        } catch (SocketTimeoutException ste) {
+            // Server not reachable in the given timeout of 2 sec. for connect and 3 sec. for a response,
+            // so we declare it as unusable..
+            return ESmtpVerdict.TIMEOUT;
+        } catch (InterruptedIOException iioe) {
+            // Interrupted while waiting for a query slot (the interrupt status is restored), so the check wasn't done at all.
+        } catch (UnknownHostException uhe) {
+            // Server doesn't exist, so it's unusable..
+        } catch (Throwable t) {
+            t.printStackTrace();
+        } finally {
+            Ipv4Utils.releaseQuerySlot(slot);
+            try {
+              if (so != null) {
+                  so.close();
+              }
+            } catch (Exception ignore) {
+            }
+        }
+        return ESmtpVerdict.UNREACHABLE;
+    }
+
+    /**
+     * Removes all expired entries.
+     *
+     * @return Number of removed entries.
+     */
+    public int removeExpired() {
+        return entries.removeExpired(System.currentTimeMillis());
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of cached results.
+     *
+     * @return Number of cached results.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of results returned from the cache.
+     *
+     * @return Number of hits.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of checks that had to be done.
+     *
+     * @return Number of misses.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the state of the cache.
+     *
+     * @return {@code TRUE}, if the cache is enabled, otherwise {@code FALSE}.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables/Disables the cache. Disabling the cache removes all entries.
+     *
+     * @param enabled {@code TRUE} to enable the cache, {@code FALSE} to disable it.
+     */
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            clear();
+        }
+    }
+
+    /**
+     * Returns the TTL of the given kind of result.
+     *
+     * @param verdict The kind of result.
+     * @param timeUnit The time unit of the result.
+     * @return The TTL.
+     */
+    public long getTtl(final ESmtpVerdict verdict, final TimeUnit timeUnit) {
+        return timeUnit.convert(ttls.get(verdict.ordinal()), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets the TTL of the given kind of result. A TTL of 0 disables the caching of this kind of result.
+     * Already cached entries are not affected.
+     *
+     * @param verdict The kind of result.
+     * @param ttl The TTL (min. 0).
+     * @param timeUnit The TimeUnit as how the TTL parameter shall be interpreted.
+     * @return {@code true}, if the TTL was set, otherwise {@code false}.
+     */
+    public boolean setTtl(final ESmtpVerdict verdict, final long ttl, final TimeUnit timeUnit) {
+        if (verdict == null || timeUnit == null || ttl < 0) {
+            System.err.println("Invalid TTL given.");
+            return false;
+        }
+        ttls.set(verdict.ordinal(), timeUnit.toMillis(ttl));
+        return true;
+    }
+
+    /**
+     * Returns the maximum number of cached results.
+     *
+     * @return Maximum number of cached results.
+     */
+    public int getMaxEntries() {
+        return entries.getMaxSize();
+    }
+
+    /**
+     * Sets the maximum number of cached results. If the cache is full, the expired results are removed and then
+     * the results that expire first are evicted.
+     *
+     * @param maxEntries Maximum number of cached results (min. 1).
+     */
+    public void setMaxEntries(final int maxEntries) {
+        entries.setMaxSize(maxEntries);
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package de.jdevelopers.ipv4info.utils;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import de.jdevelopers.ipv4info.objects.BasicInfo;
+
+/**
+ * Scheduler for resolver tasks that depend on the result of another stage.
+ *
+ * The MX, RDNS and TXT lookups need the result of the basic lookup. Instead of submitting them at once and letting
+ * each of them block a pool thread until the basic lookup is done, a task is only submitted to its executor when the
+ * stage it depends on is completed. So no worker thread ever waits for another stage.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public final class StageScheduler {
+
+    /**
+     * Executor that passes the tasks to the resolver executor that is current at the time of the submission
+     * (see Ipv4Utils.getExecutor()), so waiting tasks follow a switch of the virtual thread mode.
+     */
+    private static final Executor RESOLVER_EXECUTOR = new Executor() {
+        public void execute(final Runnable command) {
+            final Executor executor = Ipv4Utils.getExecutor();
+            try {
+                executor.execute(command);
+            } catch (RejectedExecutionException ree) {
+                // The executor may have been replaced and shut down in the meantime.
+                final Executor current = Ipv4Utils.getExecutor();
+                if (current == executor) {
+                    throw ree;
+                }
+                current.execute(command);
+            }
+        }
+    };
+
+    /**
+     * Constructor.
+     *
+     * As this class just contains static functions, the access level of the constructor is private to avoid any instantiation!
+     */
+    private StageScheduler() {
+    }
+
+    /**
+     * Submits a task to the resolver executor (see Ipv4Utils.getExecutor()) as soon as the basic lookup of the given object is done.
+     * The executor is determined when the basic lookup is done, not when this method is called.
+     *
+     * @param basicInfo Object whose basic lookup has to be done first.
+     * @param task Task to submit.
+     * @param onRejected Task to run, if the executor doesn't accept the task anymore (may be {@code NULL}).
+     */
+    public static void submitAfterBasic(final BasicInfo basicInfo, final Runnable task, final Runnable onRejected) {
+        submitAfter(basicInfo.getBasicFuture(), RESOLVER_EXECUTOR, task, onRejected);
+    }
+
+    /**
+     * Submits a task to the given executor as soon as the given stage is completed (no matter if normally or exceptionally).
+     *
+     * If the stage is already completed, the task is submitted immediately by the calling thread. Otherwise it's
+     * submitted by the thread that completes the stage.
+     *
+     * @param stage Stage the task depends on.
+     * @param executor Executor that runs the task.
+     * @param task Task to submit.
+     * @param onRejected Task to run, if the executor doesn't accept the task (e.g. after a shutdown). May be {@code NULL}.
+     */
+    public static void submitAfter(final CompletionStage<?> stage, final Executor executor, final Runnable task, final Runnable onRejected) {
+        stage.whenComplete((result, throwable) -> {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException ree) {
+                if (onRejected != null) {
+                    onRejected.run();
+                }
+            }
+        });
+    }
+
+}
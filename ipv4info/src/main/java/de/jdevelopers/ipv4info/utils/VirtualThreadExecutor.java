@@ -0,0 +1,179 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+package de.jdevelopers.ipv4info.utils;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ExecutorService that runs every task on its own virtual thread (needs a Java 21 runtime).
+ *
+ * As virtual threads are cheap, neither the number of threads nor the number of running tasks is limited at all.
+ * Instead, the number of queries in flight (DNS queries and SMTP connection checks) is limited by a semaphore:
+ * every query takes a permit before it is sent and returns it on its response or failure (see
+ * Ipv4Utils.acquireQuerySlot()). A task waiting for a permit just parks its virtual thread and doesn't block
+ * any platform thread.
+ *
+ * @author Carsten Jäger
+ *
+ */
+final class VirtualThreadExecutor extends AbstractExecutorService {
+
+    /**
+     * Executor that starts a new virtual thread for each task.
+     */
+    private final ExecutorService delegate;
+
+    /**
+     * Semaphore that limits the number of queries in flight.
+     */
+    private final AdjustableSemaphore permits;
+
+    /**
+     * Actual maximum number of queries in flight.
+     */
+    private int concurrencyLimit;
+
+    /**
+     * Semaphore whose number of permits can be reduced.
+     */
+    @SuppressWarnings("serial")
+    private static final class AdjustableSemaphore extends Semaphore {
+
+        /**
+         * Constructor.
+         *
+         * @param permits Initial number of permits.
+         */
+        AdjustableSemaphore(final int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(final int reduction) {
+            super.reducePermits(reduction);
+        }
+
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param delegate Executor that starts a new virtual thread for each task.
+     * @param concurrencyLimit Maximum number of queries in flight.
+     */
+    private VirtualThreadExecutor(final ExecutorService delegate, final int concurrencyLimit) {
+        this.delegate = delegate;
+        this.concurrencyLimit = concurrencyLimit;
+        this.permits = new AdjustableSemaphore(concurrencyLimit);
+    }
+
+    /**
+     * Creates a new VirtualThreadExecutor.
+     *
+     * @param concurrencyLimit Maximum number of queries in flight.
+     * @return VirtualThreadExecutor or {@code NULL}, if virtual threads are not supported by the actual runtime.
+     */
+    static VirtualThreadExecutor create(final int concurrencyLimit) {
+        try {
+            // Called by reflection to stay compatible with runtimes prior to Java 21.
+            final ExecutorService delegate = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            return new VirtualThreadExecutor(delegate, concurrencyLimit);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the actual maximum number of queries in flight.
+     *
+     * @return Maximum number of queries in flight.
+     */
+    synchronized int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    /**
+     * Sets the maximum number of queries in flight. Queries already in flight are not affected by a reduction.
+     *
+     * @param concurrencyLimit Maximum number of queries in flight (min. 1).
+     */
+    synchronized void setConcurrencyLimit(final int concurrencyLimit) {
+        final int limit = Math.max(1, concurrencyLimit);
+        if (limit > this.concurrencyLimit) {
+            permits.release(limit - this.concurrencyLimit);
+        } else if (limit < this.concurrencyLimit) {
+            permits.reducePermits(this.concurrencyLimit - limit);
+        }
+        this.concurrencyLimit = limit;
+    }
+
+    /**
+     * Returns the number of queries that can be sent right now without waiting for a permit.
+     *
+     * @return Number of free slots.
+     */
+    int getFreeSlots() {
+        return Math.max(0, permits.availablePermits());
+    }
+
+    /**
+     * Takes a permit for a query, waiting until one is available.
+     *
+     * @throws InterruptedException If the thread was interrupted while waiting.
+     */
+    void acquirePermit() throws InterruptedException {
+        permits.acquire();
+    }
+
+    /**
+     * Returns the permit of a query.
+     */
+    void releasePermit() {
+        permits.release();
+    }
+
+    public void execute(final Runnable command) {
+        delegate.execute(command);
+    }
+
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+}
@@ -0,0 +1,242 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.function.IntConsumer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.jdevelopers.ipv4info.utils.Ipv4Utils;
+
+/**
+ * Differential tests of the Ipv4AddressBitmap against a BitSet over a window of the address space.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public class Ipv4AddressBitmapTest {
+
+    /**
+     * Number of addresses of a chunk of the bitmap.
+     */
+    private static final int CHUNK_SIZE = 1 << (Ipv4Utils.CONST_8 + Ipv4Utils.CONST_8);
+
+    /**
+     * Number of random bitmaps per window.
+     */
+    private static final int BITMAP_COUNT = 8;
+
+    /**
+     * Maximum number of additions to a random bitmap.
+     */
+    private static final int MAX_ADDITIONS = 20;
+
+    /**
+     * Maximum number of single addresses of an addition (more than fit into an array chunk).
+     */
+    private static final int MAX_ADDRESSES = 6000;
+
+    /**
+     * Seed of the random bitmaps.
+     */
+    private static final long SEED = 20130101L;
+
+    /**
+     * File of the written bitmaps.
+     */
+    private File file;
+
+    /**
+     * Creates the file.
+     *
+     * @throws IOException IOException.
+     */
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("ipv4info", ".bitmap");
+    }
+
+    /**
+     * Deletes the file.
+     */
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Adds random addresses, ranges and prefixes inside a window to a bitmap and the reference.
+     *
+     * @param random Random.
+     * @param window First address of the window.
+     * @param bitmap The bitmap.
+     * @param reference The reference (bit i is the address window + i).
+     */
+    private static void addRandom(final Random random, final int window, final Ipv4AddressBitmap bitmap, final BitSet reference) {
+        for (int i = random.nextInt(MAX_ADDITIONS); i >= 0; --i) {
+            final int first = random.nextInt(Ipv4RangeSetTest.WINDOW_SIZE);
+            switch (random.nextInt(Ipv4Utils.CONST_4)) {
+                case 0:
+                    // Many single addresses in one chunk.
+                    final int chunk = first & -CHUNK_SIZE;
+                    for (int j = random.nextInt(MAX_ADDRESSES); j >= 0; --j) {
+                        final int address = chunk + random.nextInt(CHUNK_SIZE);
+                        assertEquals(!reference.get(address), bitmap.add(window + address));
+                        reference.set(address);
+                    }
+                    break;
+                case 1:
+                    final int prefix = Ipv4Utils.ADDRESS_BITS - random.nextInt(Ipv4Utils.CONST_10 + Ipv4Utils.CONST_8);
+                    final int netmask = Ipv4Utils.prefixToNetmask(prefix);
+                    bitmap.addPrefix(window + first, prefix);
+                    final int network = ((window + first) & netmask) - window;
+                    reference.set(network, network + (~netmask) + 1);
+                    break;
+                case 2:
+                    // A complete chunk.
+                    bitmap.addRange(window + (first & -CHUNK_SIZE), window + (first | (CHUNK_SIZE - 1)));
+                    reference.set(first & -CHUNK_SIZE, (first | (CHUNK_SIZE - 1)) + 1);
+                    break;
+                default:
+                    final int last = Math.min(Ipv4RangeSetTest.WINDOW_SIZE - 1, first + random.nextInt(CHUNK_SIZE * 2));
+                    bitmap.addRange(window + first, window + last);
+                    reference.set(first, last + 1);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Compares a bitmap with the reference.
+     *
+     * @param message Message.
+     * @param window First address of the window.
+     * @param reference The reference.
+     * @param bitmap The bitmap.
+     */
+    private static void assertBitmap(final String message, final int window, final BitSet reference, final Ipv4AddressBitmap bitmap) {
+        for (int i = 0; i < Ipv4RangeSetTest.WINDOW_SIZE; ++i) {
+            if (reference.get(i) != bitmap.contains(window + i)) {
+                assertEquals(message + ' ' + Ipv4Utils.intToIp(window + i), reference.get(i), bitmap.contains(window + i));
+            }
+        }
+        if (window != 0) {
+            assertFalse(message, bitmap.contains(window - 1));
+        }
+        assertFalse(message, bitmap.contains(window + Ipv4RangeSetTest.WINDOW_SIZE));
+        assertEquals(message, reference.cardinality(), bitmap.getCardinality());
+        assertEquals(message, reference.isEmpty(), bitmap.isEmpty());
+        // forEach() returns the addresses in unsigned order.
+        final int[] next = new int[] {reference.nextSetBit(0)};
+        bitmap.forEach(new IntConsumer() {
+
+            @Override
+            public void accept(final int address) {
+                assertEquals(message, Ipv4Utils.intToIp(window + next[0]), Ipv4Utils.intToIp(address));
+                next[0] = reference.nextSetBit(next[0] + 1);
+            }
+
+        });
+        assertEquals(message, -1, next[0]);
+    }
+
+    /**
+     * Random bitmaps and their set operations contain the same addresses as the BitSets.
+     */
+    @Test
+    public void testSetOperationsMatchBitSet() {
+        final Random random = new Random(SEED);
+        for (final int window : Ipv4RangeSetTest.WINDOWS) {
+            for (int b = 0; b < BITMAP_COUNT; ++b) {
+                final String message = Ipv4Utils.intToIp(window) + " #" + b;
+                final Ipv4AddressBitmap bitmap = new Ipv4AddressBitmap();
+                final BitSet reference = new BitSet(Ipv4RangeSetTest.WINDOW_SIZE);
+                addRandom(random, window, bitmap, reference);
+                final Ipv4AddressBitmap other = new Ipv4AddressBitmap();
+                final BitSet otherReference = new BitSet(Ipv4RangeSetTest.WINDOW_SIZE);
+                addRandom(random, window, other, otherReference);
+                assertBitmap(message, window, reference, bitmap);
+                assertBitmap(message, window, otherReference, other);
+                final BitSet and = (BitSet) reference.clone();
+                and.and(otherReference);
+                assertBitmap(message + " and", window, and, bitmap.and(other));
+                final BitSet or = (BitSet) reference.clone();
+                or.or(otherReference);
+                assertBitmap(message + " or", window, or, bitmap.or(other));
+                final BitSet andNot = (BitSet) reference.clone();
+                andNot.andNot(otherReference);
+                assertBitmap(message + " andNot", window, andNot, bitmap.andNot(other));
+                // The operands are not modified.
+                assertBitmap(message, window, reference, bitmap);
+                assertBitmap(message, window, otherReference, other);
+            }
+        }
+    }
+
+    /**
+     * A written bitmap is read and memory-mapped with the same addresses.
+     *
+     * @throws IOException IOException.
+     */
+    @Test
+    public void testWriteReadAndMap() throws IOException {
+        final Random random = new Random(SEED + 1);
+        for (final int window : Ipv4RangeSetTest.WINDOWS) {
+            final String message = Ipv4Utils.intToIp(window);
+            final Ipv4AddressBitmap bitmap = new Ipv4AddressBitmap();
+            final BitSet reference = new BitSet(Ipv4RangeSetTest.WINDOW_SIZE);
+            addRandom(random, window, bitmap, reference);
+            bitmap.write(file);
+            assertBitmap(message, window, reference, Ipv4AddressBitmap.read(file));
+            final ByteBuffer buffer = Ipv4AddressBitmap.map(file);
+            for (int i = 0; i < Ipv4RangeSetTest.WINDOW_SIZE; ++i) {
+                if (reference.get(i) != Ipv4AddressBitmap.contains(buffer, window + i)) {
+                    assertEquals(message + ' ' + Ipv4Utils.intToIp(window + i), reference.get(i),
+                            Ipv4AddressBitmap.contains(buffer, window + i));
+                }
+            }
+        }
+    }
+
+    /**
+     * A bitmap contains the same addresses as the range set it was built from.
+     */
+    @Test
+    public void testAddRangeSet() {
+        final Ipv4RangeSet set = Ipv4RangeSet.fromCidrs("10.0.0.0/15", "192.168.1.0/24", "192.168.2.7", "255.255.255.255");
+        final Ipv4AddressBitmap bitmap = new Ipv4AddressBitmap();
+        bitmap.addAll(set);
+        assertEquals(set.getAddressCount(), bitmap.getCardinality());
+        assertTrue(bitmap.contains("10.1.255.255"));
+        assertTrue(bitmap.contains("192.168.2.7"));
+        assertTrue(bitmap.contains("255.255.255.255"));
+        assertFalse(bitmap.contains("192.168.2.8"));
+        assertFalse(bitmap.contains("10.2.0.0"));
+    }
+
+}
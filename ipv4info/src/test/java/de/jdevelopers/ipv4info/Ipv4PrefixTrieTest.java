@@ -0,0 +1,244 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.jdevelopers.ipv4info.utils.Ipv4Utils;
+
+/**
+ * Differential tests of the Ipv4PrefixTrie and the ImmutableIpv4PrefixTrie against a linear scan over the prefixes.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public class Ipv4PrefixTrieTest {
+
+    /**
+     * Number of random tries.
+     */
+    private static final int TRIE_COUNT = 50;
+
+    /**
+     * Maximum number of prefixes of a random trie.
+     */
+    private static final int MAX_PREFIXES = 500;
+
+    /**
+     * Number of random lookups per trie.
+     */
+    private static final int LOOKUP_COUNT = 2000;
+
+    /**
+     * Seed of the random tries.
+     */
+    private static final long SEED = 20130101L;
+
+    /**
+     * Base addresses of the random prefixes (few, so the prefixes nest and overlap).
+     */
+    private static final int[] BASES = new int[] {0x00000000, 0x0A000000, 0x0A0A0000, 0xC0A80000, 0xC0A80100, 0x7FFFFFFF, 0xFFFFFF00};
+
+    /**
+     * Reference of the trie: a list of prefixes, that is scanned linearly.
+     */
+    private static final class LinearPrefixes {
+
+        /**
+         * Network addresses.
+         */
+        private final List<Integer> networks = new ArrayList<Integer>();
+
+        /**
+         * Prefixes.
+         */
+        private final List<Integer> prefixes = new ArrayList<Integer>();
+
+        /**
+         * Values.
+         */
+        private final List<String> values = new ArrayList<String>();
+
+        /**
+         * Adds a prefix or replaces the value of an existing one.
+         *
+         * @param address IP-Address.
+         * @param prefix Prefix.
+         * @param value Value.
+         * @return Previous value or {@code NULL}.
+         */
+        String put(final int address, final int prefix, final String value) {
+            final int network = address & Ipv4Utils.prefixToNetmask(prefix);
+            for (int i = 0; i < networks.size(); ++i) {
+                if (networks.get(i) == network && prefixes.get(i) == prefix) {
+                    return values.set(i, value);
+                }
+            }
+            networks.add(network);
+            prefixes.add(prefix);
+            values.add(value);
+            return null;
+        }
+
+        /**
+         * Returns the indexes of all prefixes, that contain an IP-Address, from the shortest to the longest one.
+         *
+         * @param address IP-Address.
+         * @return Indexes of the prefixes.
+         */
+        List<Integer> getCovering(final int address) {
+            final List<Integer> result = new ArrayList<Integer>();
+            for (int prefix = 0; prefix <= Ipv4Utils.ADDRESS_BITS; ++prefix) {
+                for (int i = 0; i < networks.size(); ++i) {
+                    if (prefixes.get(i) == prefix && (address & Ipv4Utils.prefixToNetmask(prefix)) == networks.get(i)) {
+                        result.add(i);
+                    }
+                }
+            }
+            return result;
+        }
+
+    }
+
+    /**
+     * Returns a random prefix length (the long prefixes are more frequent).
+     *
+     * @param random Random.
+     * @return Prefix (0 - 32).
+     */
+    private static int randomPrefix(final Random random) {
+        return random.nextInt(Ipv4Utils.CONST_10) == 0 ? random.nextInt(Ipv4Utils.ADDRESS_BITS + 1)
+                : Ipv4Utils.CONST_20 + random.nextInt(Ipv4Utils.CONST_10 + Ipv4Utils.CONST_3);
+    }
+
+    /**
+     * Returns a random IP-Address near one of the BASES.
+     *
+     * @param random Random.
+     * @return IP-Address.
+     */
+    private static int randomAddress(final Random random) {
+        return BASES[random.nextInt(BASES.length)] + random.nextInt(Ipv4Utils.CONST_255 * Ipv4Utils.CONST_4) - Ipv4Utils.CONST_255;
+    }
+
+    /**
+     * Compares all lookups of an IP-Address.
+     *
+     * @param reference The reference.
+     * @param trie The trie.
+     * @param immutable The immutable copy of the trie.
+     * @param address IP-Address.
+     */
+    private static void assertLookups(final LinearPrefixes reference, final Ipv4PrefixTrie<String> trie,
+            final ImmutableIpv4PrefixTrie<String> immutable, final int address) {
+        final List<Integer> covering = reference.getCovering(address);
+        final List<String> values = new ArrayList<String>();
+        final long[] prefixes = new long[covering.size()];
+        for (int i = 0; i < covering.size(); ++i) {
+            values.add(reference.values.get(covering.get(i)));
+            prefixes[i] = (long) reference.prefixes.get(covering.get(i)) << Ipv4Utils.ADDRESS_BITS
+                    | reference.networks.get(covering.get(i)) & 0xFFFFFFFFL;
+        }
+        final String longest = values.isEmpty() ? null : values.get(values.size() - 1);
+        final long longestPrefix = prefixes.length == 0 ? -1 : prefixes[prefixes.length - 1];
+        final String message = Ipv4Utils.intToIp(address);
+        assertEquals(message, longest, trie.getLongestMatch(address));
+        assertEquals(message, longest, immutable.getLongestMatch(address));
+        assertEquals(message, longestPrefix, trie.getLongestMatchPrefix(address));
+        assertEquals(message, longestPrefix, immutable.getLongestMatchPrefix(address));
+        assertEquals(message, longest != null, immutable.contains(address));
+        assertEquals(message, values, trie.getCoveringValues(address));
+        assertEquals(message, values, immutable.getCoveringValues(address));
+        assertArrayEquals(message, prefixes, trie.getCoveringPrefixes(address));
+        assertArrayEquals(message, prefixes, immutable.getCoveringPrefixes(address));
+    }
+
+    /**
+     * Random tries return the same results as a linear scan over their prefixes.
+     */
+    @Test
+    public void testLookupsMatchLinearScan() {
+        final Random random = new Random(SEED);
+        for (int t = 0; t < TRIE_COUNT; ++t) {
+            final LinearPrefixes reference = new LinearPrefixes();
+            final Ipv4PrefixTrie<String> trie = new Ipv4PrefixTrie<String>();
+            for (int i = random.nextInt(MAX_PREFIXES); i >= 0; --i) {
+                final int address = randomAddress(random);
+                final int prefix = randomPrefix(random);
+                final String value = t + ":" + i;
+                assertEquals(reference.put(address, prefix, value), trie.put(address, prefix, value));
+            }
+            assertEquals(reference.networks.size(), trie.size());
+            final ImmutableIpv4PrefixTrie<String> immutable = trie.toImmutable();
+            assertEquals(trie.size(), immutable.size());
+            for (int i = 0; i < reference.networks.size(); ++i) {
+                final int network = reference.networks.get(i);
+                final int prefix = reference.prefixes.get(i);
+                assertEquals(reference.values.get(i), trie.get(network, prefix));
+                // The bounds of each prefix and the addresses next to them.
+                final int last = network | ~Ipv4Utils.prefixToNetmask(prefix);
+                for (final int address : new int[] {network - 1, network, last, last + 1}) {
+                    assertLookups(reference, trie, immutable, address);
+                }
+            }
+            for (int i = 0; i < LOOKUP_COUNT; ++i) {
+                assertLookups(reference, trie, immutable, randomAddress(random));
+            }
+        }
+    }
+
+    /**
+     * An empty trie contains nothing.
+     */
+    @Test
+    public void testEmptyTrie() {
+        final Ipv4PrefixTrie<String> trie = new Ipv4PrefixTrie<String>();
+        final ImmutableIpv4PrefixTrie<String> immutable = trie.toImmutable();
+        for (final int address : new int[] {0, -1, 0x0A000001}) {
+            assertNull(trie.getLongestMatch(address));
+            assertNull(immutable.getLongestMatch(address));
+            assertEquals(-1, immutable.getLongestMatchPrefix(address));
+            assertEquals(0, immutable.getCoveringPrefixes(address).length);
+        }
+    }
+
+    /**
+     * CIDR-Notations and IP-Addresses are parsed and bits behind the prefix are ignored.
+     */
+    @Test
+    public void testStringLookups() {
+        final Ipv4PrefixTrie<String> trie = new Ipv4PrefixTrie<String>();
+        trie.putAll(Arrays.asList("10.0.0.0/8", "10.1.2.3/16"), "private");
+        trie.put("10.1.2.3", "host");
+        final ImmutableIpv4PrefixTrie<String> immutable = trie.toImmutable();
+        assertEquals("host", immutable.getLongestMatch("10.1.2.3"));
+        assertEquals("private", immutable.getLongestMatch("10.1.2.4"));
+        assertEquals("private", trie.get(Ipv4Utils.ipToInt("10.1.0.0"), Ipv4Utils.CONST_8 + Ipv4Utils.CONST_8));
+        assertNull(immutable.getLongestMatch("11.0.0.1"));
+        assertNull(immutable.getLongestMatch("no address"));
+    }
+
+}
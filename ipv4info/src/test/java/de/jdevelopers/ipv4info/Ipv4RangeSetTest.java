@@ -0,0 +1,217 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.jdevelopers.ipv4info.utils.Ipv4Utils;
+
+/**
+ * Differential tests of the Ipv4RangeSet against a BitSet over a window of the address space.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public class Ipv4RangeSetTest {
+
+    /**
+     * Number of addresses of a window.
+     */
+    static final int WINDOW_SIZE = 1 << (Ipv4Utils.CONST_10 + Ipv4Utils.CONST_8);
+
+    /**
+     * First addresses of the windows: the start, the change of the sign and the end of the address space.
+     */
+    static final int[] WINDOWS = new int[] {0, Integer.MAX_VALUE - WINDOW_SIZE / 2 + 1, -WINDOW_SIZE};
+
+    /**
+     * Number of random sets per window.
+     */
+    private static final int SET_COUNT = 10;
+
+    /**
+     * Maximum number of ranges of a random set.
+     */
+    private static final int MAX_RANGES = 200;
+
+    /**
+     * Seed of the random sets.
+     */
+    private static final long SEED = 20130101L;
+
+    /**
+     * Number of all IP-Addresses.
+     */
+    private static final long ADDRESS_SPACE = 1L << Ipv4Utils.ADDRESS_BITS;
+
+    /**
+     * Adds random ranges and prefixes inside a window to a builder and the reference.
+     *
+     * @param random Random.
+     * @param window First address of the window.
+     * @param builder The builder.
+     * @param reference The reference (bit i is the address window + i).
+     */
+    static void addRandomRanges(final Random random, final int window, final Ipv4RangeSet.Builder builder, final BitSet reference) {
+        for (int i = random.nextInt(MAX_RANGES); i >= 0; --i) {
+            final int first = random.nextInt(WINDOW_SIZE);
+            if (random.nextBoolean()) {
+                // A prefix inside the window (at most 14 host bits, the windows are aligned to 2^17 addresses).
+                final int prefix = Ipv4Utils.ADDRESS_BITS - random.nextInt(Ipv4Utils.CONST_10 + Ipv4Utils.CONST_5);
+                final int netmask = Ipv4Utils.prefixToNetmask(prefix);
+                builder.addPrefix(window + first, prefix);
+                final int network = ((window + first) & netmask) - window;
+                reference.set(network, network + (~netmask) + 1);
+            } else {
+                final int length = random.nextInt(random.nextBoolean() ? Ipv4Utils.CONST_10 : WINDOW_SIZE / Ipv4Utils.CONST_8);
+                final int last = Math.min(WINDOW_SIZE - 1, first + length);
+                builder.addRange(window + first, window + last);
+                reference.set(first, last + 1);
+            }
+        }
+    }
+
+    /**
+     * Compares a set with the reference inside a window (and the addresses around it).
+     *
+     * @param message Message.
+     * @param window First address of the window.
+     * @param reference The reference.
+     * @param outside Are the addresses outside of the window contained?
+     * @param set The set.
+     */
+    private static void assertSet(final String message, final int window, final BitSet reference, final boolean outside,
+            final Ipv4RangeSet set) {
+        for (int i = 0; i < WINDOW_SIZE; ++i) {
+            if (reference.get(i) != set.contains(window + i)) {
+                assertEquals(message + ' ' + Ipv4Utils.intToIp(window + i), reference.get(i), set.contains(window + i));
+            }
+        }
+        if (window != 0) {
+            assertEquals(message, outside, set.contains(window - 1));
+        }
+        if (window + WINDOW_SIZE != 0) {
+            assertEquals(message, outside, set.contains(window + WINDOW_SIZE));
+        }
+        final long count = reference.cardinality();
+        assertEquals(message, outside ? ADDRESS_SPACE - WINDOW_SIZE + count : count, set.getAddressCount());
+        // The intervals are sorted, disjoint and non-adjacent.
+        for (int i = 0; i < set.getRangeCount(); ++i) {
+            assertTrue(message, (set.getFirst(i) & 0xFFFFFFFFL) <= (set.getLast(i) & 0xFFFFFFFFL));
+            if (i > 0) {
+                assertTrue(message, (set.getLast(i - 1) & 0xFFFFFFFFL) + 1 < (set.getFirst(i) & 0xFFFFFFFFL));
+            }
+        }
+    }
+
+    /**
+     * Checks, that the prefixes of a set cover exactly the set and that no two of them could be merged.
+     *
+     * @param message Message.
+     * @param set The set.
+     */
+    private static void assertPrefixes(final String message, final Ipv4RangeSet set) {
+        final long[] prefixes = set.toPrefixes();
+        final Ipv4RangeSet.Builder builder = new Ipv4RangeSet.Builder();
+        for (int i = 0; i < prefixes.length; ++i) {
+            final int network = (int) prefixes[i];
+            final int prefix = (int) (prefixes[i] >>> Ipv4Utils.ADDRESS_BITS);
+            assertEquals(message, network, network & Ipv4Utils.prefixToNetmask(prefix));
+            builder.addPrefix(network, prefix);
+            if (i > 0 && prefix > 0 && prefix == (int) (prefixes[i - 1] >>> Ipv4Utils.ADDRESS_BITS)) {
+                // Two siblings would be merged to their parent.
+                final int parentMask = Ipv4Utils.prefixToNetmask(prefix - 1);
+                assertFalse(message, (network & parentMask) == ((int) prefixes[i - 1] & parentMask));
+            }
+        }
+        assertEquals(message, set, builder.build());
+        assertEquals(message, prefixes.length, set.toCidrs().size());
+        assertEquals(message, set, Ipv4RangeSet.fromCidrs(set.toCidrs().toArray(new String[0])));
+    }
+
+    /**
+     * Random sets and their set operations contain the same addresses as the BitSets.
+     */
+    @Test
+    public void testSetOperationsMatchBitSet() {
+        final Random random = new Random(SEED);
+        for (final int window : WINDOWS) {
+            for (int s = 0; s < SET_COUNT; ++s) {
+                final String message = Ipv4Utils.intToIp(window) + " #" + s;
+                final Ipv4RangeSet.Builder builder = new Ipv4RangeSet.Builder();
+                final BitSet reference = new BitSet(WINDOW_SIZE);
+                addRandomRanges(random, window, builder, reference);
+                final Ipv4RangeSet set = builder.build();
+                final Ipv4RangeSet.Builder otherBuilder = new Ipv4RangeSet.Builder();
+                final BitSet otherReference = new BitSet(WINDOW_SIZE);
+                addRandomRanges(random, window, otherBuilder, otherReference);
+                final Ipv4RangeSet other = otherBuilder.build();
+                assertSet(message, window, reference, false, set);
+                assertSet(message, window, otherReference, false, other);
+                final BitSet union = (BitSet) reference.clone();
+                union.or(otherReference);
+                assertSet(message + " union", window, union, false, set.union(other));
+                final BitSet intersection = (BitSet) reference.clone();
+                intersection.and(otherReference);
+                assertSet(message + " intersection", window, intersection, false, set.intersection(other));
+                final BitSet difference = (BitSet) reference.clone();
+                difference.andNot(otherReference);
+                assertSet(message + " difference", window, difference, false, set.difference(other));
+                final BitSet complement = (BitSet) reference.clone();
+                complement.flip(0, WINDOW_SIZE);
+                assertSet(message + " complement", window, complement, true, set.complement());
+                assertEquals(message, set, set.complement().complement());
+                assertPrefixes(message, set);
+                assertPrefixes(message + " complement", set.complement());
+            }
+        }
+    }
+
+    /**
+     * The empty and the full set.
+     */
+    @Test
+    public void testEmptyAndAll() {
+        assertEquals(0, Ipv4RangeSet.EMPTY.getAddressCount());
+        assertEquals(ADDRESS_SPACE, Ipv4RangeSet.ALL.getAddressCount());
+        assertEquals(Ipv4RangeSet.ALL, Ipv4RangeSet.EMPTY.complement());
+        assertEquals(Arrays.asList("0.0.0.0/0"), Ipv4RangeSet.ALL.toCidrs());
+        assertEquals(Ipv4RangeSet.ALL, Ipv4RangeSet.fromRange(0, -1));
+        assertTrue(Ipv4RangeSet.EMPTY.toCidrs().isEmpty());
+    }
+
+    /**
+     * Overlapping and adjacent CIDR-Notations are merged to the minimal cover.
+     */
+    @Test
+    public void testMergesCidrs() {
+        final Ipv4RangeSet set = Ipv4RangeSet.fromCidrs("10.0.0.0/25", "10.0.0.128/25", "10.0.1.0/24", "10.0.0.7");
+        assertEquals(1, set.getRangeCount());
+        assertEquals(Arrays.asList("10.0.0.0/23"), set.toCidrs());
+        assertTrue(set.contains("10.0.1.255"));
+        assertFalse(set.contains("10.0.2.0"));
+    }
+
+}
@@ -0,0 +1,384 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.jdevelopers.ipv4info.objects.IpInfo;
+import de.jdevelopers.ipv4info.utils.Ipv4Utils;
+
+/**
+ * Tests of the demand, the cancellation and the termination of the ResultPublisher.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public class ResultPublisherTest {
+
+    /**
+     * Number of queries.
+     */
+    private static final int QUERY_COUNT = 200;
+
+    /**
+     * Maximum number of queries in flight.
+     */
+    private static final int MAX_IN_FLIGHT = 4;
+
+    /**
+     * Maximum time to wait for a signal in seconds.
+     */
+    private static final long TIMEOUT = Ipv4Utils.CONST_10;
+
+    /**
+     * Time to wait for signals, that must not arrive, in msec.
+     */
+    private static final long QUIET_TIME = 2 * Ipv4Utils.CONST_100;
+
+    /**
+     * The Ipv4Info-Object, that resolves the queries (without any further lookups).
+     */
+    private final Ipv4Info ipv4Info = new Ipv4Info();
+
+    /**
+     * Queries, that count how many of them were read.
+     */
+    private static final class CountingQueries implements Iterable<String> {
+
+        /**
+         * The queries.
+         */
+        private final List<String> queries;
+
+        /**
+         * Number of read queries.
+         */
+        private final AtomicInteger readCount = new AtomicInteger();
+
+        /**
+         * Constructor.
+         *
+         * @param queries The queries.
+         */
+        CountingQueries(final List<String> queries) {
+            this.queries = queries;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            final Iterator<String> iterator = queries.iterator();
+            return new Iterator<String>() {
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public String next() {
+                    readCount.incrementAndGet();
+                    return iterator.next();
+                }
+
+            };
+        }
+
+    }
+
+    /**
+     * Subscriber, that records the signals.
+     */
+    private static final class RecordingSubscriber implements Flow.Subscriber<IpInfo> {
+
+        /**
+         * Number of results to request on subscription (0 = none).
+         */
+        private final long initialRequest;
+
+        /**
+         * Number of results after which the subscription is cancelled (0 = never).
+         */
+        private final int cancelAfter;
+
+        /**
+         * The received results.
+         */
+        private final List<IpInfo> results = new ArrayList<IpInfo>();
+
+        /**
+         * Counted down by onComplete() and onError().
+         */
+        private final CountDownLatch terminated = new CountDownLatch(1);
+
+        /**
+         * Number of calls of onComplete() and onError().
+         */
+        private final AtomicInteger terminations = new AtomicInteger();
+
+        /**
+         * The subscription.
+         */
+        private volatile Flow.Subscription subscription;
+
+        /**
+         * The received failure.
+         */
+        private volatile Throwable error;
+
+        /**
+         * Constructor.
+         *
+         * @param initialRequest Number of results to request on subscription (0 = none).
+         * @param cancelAfter Number of results after which the subscription is cancelled (0 = never).
+         */
+        RecordingSubscriber(final long initialRequest, final int cancelAfter) {
+            this.initialRequest = initialRequest;
+            this.cancelAfter = cancelAfter;
+        }
+
+        @Override
+        public void onSubscribe(final Flow.Subscription s) {
+            subscription = s;
+            if (initialRequest > 0) {
+                s.request(initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(final IpInfo item) {
+            synchronized (results) {
+                results.add(item);
+                if (results.size() == cancelAfter) {
+                    subscription.cancel();
+                }
+            }
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            error = throwable;
+            terminations.incrementAndGet();
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            terminations.incrementAndGet();
+            terminated.countDown();
+        }
+
+        /**
+         * Returns the number of received results.
+         *
+         * @return Number of received results.
+         */
+        int getResultCount() {
+            synchronized (results) {
+                return results.size();
+            }
+        }
+
+        /**
+         * Waits for the termination.
+         *
+         * @return {@code TRUE}, if the subscription was terminated in time.
+         * @throws InterruptedException InterruptedException.
+         */
+        boolean awaitTermination() throws InterruptedException {
+            return terminated.await(TIMEOUT, TimeUnit.SECONDS);
+        }
+
+        /**
+         * Waits until a number of results is received.
+         *
+         * @param count The number of results.
+         * @throws InterruptedException InterruptedException.
+         */
+        void awaitResults(final int count) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT);
+            while (getResultCount() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(Ipv4Utils.CONST_10);
+            }
+            assertEquals(count, getResultCount());
+        }
+
+    }
+
+    /**
+     * Clears the RESULT_POOL.
+     */
+    @Before
+    public void setUp() {
+        Ipv4Utils.RESULT_POOL.clear();
+    }
+
+    /**
+     * Clears the RESULT_POOL.
+     */
+    @After
+    public void tearDown() {
+        Ipv4Utils.RESULT_POOL.clear();
+    }
+
+    /**
+     * Creates the queries (IP-Addresses of TEST-NET-1 and TEST-NET-2).
+     *
+     * @return The queries.
+     */
+    private static List<String> createQueries() {
+        final List<String> result = new ArrayList<String>();
+        for (int i = 0; i < QUERY_COUNT; ++i) {
+            result.add((i % 2 == 0 ? "192.0.2." : "198.51.100.") + (i / 2));
+        }
+        return result;
+    }
+
+    /**
+     * Every subscriber gets all results once, the empty queries are skipped.
+     *
+     * @throws InterruptedException InterruptedException.
+     */
+    @Test
+    public void testEmitsAllResults() throws InterruptedException {
+        final List<String> queries = createQueries();
+        final List<String> withEmpty = new ArrayList<String>(queries);
+        withEmpty.addAll(Arrays.asList("", null, "..."));
+        final Flow.Publisher<IpInfo> publisher = ipv4Info.publishResults(withEmpty, MAX_IN_FLIGHT);
+        for (int pass = 0; pass < 2; ++pass) {
+            final RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE, 0);
+            publisher.subscribe(subscriber);
+            assertTrue(subscriber.awaitTermination());
+            assertNull(subscriber.error);
+            final Set<String> emitted = new HashSet<String>();
+            for (final IpInfo ipInfo : subscriber.results) {
+                assertTrue(ipInfo.isRequestDone());
+                assertTrue(ipInfo.getCorrectedQuery(), emitted.add(ipInfo.getCorrectedQuery()));
+            }
+            assertEquals(new HashSet<String>(queries), emitted);
+            Thread.sleep(QUIET_TIME);
+            assertEquals(1, subscriber.terminations.get());
+        }
+    }
+
+    /**
+     * No more results are emitted than requested and the queries are only read as far as demanded.
+     *
+     * @throws InterruptedException InterruptedException.
+     */
+    @Test
+    public void testRespectsDemand() throws InterruptedException {
+        final CountingQueries queries = new CountingQueries(createQueries());
+        final RecordingSubscriber subscriber = new RecordingSubscriber(0, 0);
+        ipv4Info.publishResults(queries, MAX_IN_FLIGHT).subscribe(subscriber);
+        Thread.sleep(QUIET_TIME);
+        assertEquals(0, queries.readCount.get());
+        int demand = 0;
+        for (int step = 1; demand + step <= QUERY_COUNT; ++step) {
+            demand += step;
+            subscriber.subscription.request(step);
+            subscriber.awaitResults(demand);
+            assertTrue(queries.readCount.get() <= demand + MAX_IN_FLIGHT);
+        }
+        Thread.sleep(QUIET_TIME);
+        assertEquals(demand, subscriber.getResultCount());
+        assertEquals(0, subscriber.terminations.get());
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertTrue(subscriber.awaitTermination());
+        assertNull(subscriber.error);
+        assertEquals(QUERY_COUNT, subscriber.getResultCount());
+    }
+
+    /**
+     * A cancelled subscription neither emits further results nor terminates and stops reading the queries.
+     *
+     * @throws InterruptedException InterruptedException.
+     */
+    @Test
+    public void testCancel() throws InterruptedException {
+        final CountingQueries queries = new CountingQueries(createQueries());
+        final RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE, Ipv4Utils.CONST_10);
+        ipv4Info.publishResults(queries, MAX_IN_FLIGHT).subscribe(subscriber);
+        subscriber.awaitResults(Ipv4Utils.CONST_10);
+        Thread.sleep(QUIET_TIME);
+        assertEquals(Ipv4Utils.CONST_10, subscriber.getResultCount());
+        assertEquals(0, subscriber.terminations.get());
+        assertTrue(queries.readCount.get() <= Ipv4Utils.CONST_10 + MAX_IN_FLIGHT);
+    }
+
+    /**
+     * A non-positive request terminates the subscription with an IllegalArgumentException.
+     *
+     * @throws InterruptedException InterruptedException.
+     */
+    @Test
+    public void testInvalidRequest() throws InterruptedException {
+        final RecordingSubscriber subscriber = new RecordingSubscriber(0, 0);
+        ipv4Info.publishResults(createQueries(), MAX_IN_FLIGHT).subscribe(subscriber);
+        subscriber.subscription.request(0);
+        assertTrue(subscriber.awaitTermination());
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertEquals(0, subscriber.getResultCount());
+    }
+
+    /**
+     * A failure while reading the queries terminates the subscription with that failure.
+     *
+     * @throws InterruptedException InterruptedException.
+     */
+    @Test
+    public void testFailingQueries() throws InterruptedException {
+        final IllegalStateException failure = new IllegalStateException("Broken queries.");
+        final Iterable<String> queries = new Iterable<String>() {
+
+            @Override
+            public Iterator<String> iterator() {
+                throw failure;
+            }
+
+        };
+        final RecordingSubscriber subscriber = new RecordingSubscriber(1, 0);
+        ipv4Info.publishResults(queries, MAX_IN_FLIGHT).subscribe(subscriber);
+        assertTrue(subscriber.awaitTermination());
+        assertEquals(failure, subscriber.error);
+    }
+
+    /**
+     * A non-positive maximum number of queries in flight is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxInFlight() {
+        ipv4Info.publishResults(createQueries(), 0);
+    }
+
+}
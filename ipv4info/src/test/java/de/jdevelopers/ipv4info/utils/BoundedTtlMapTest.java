@@ -0,0 +1,162 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests of the BoundedTtlMap.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public class BoundedTtlMapTest {
+
+    /**
+     * Actual time of the tests.
+     */
+    private static final long NOW = 1000000L;
+
+    /**
+     * An entry is returned until it expires, then it's removed.
+     */
+    @Test
+    public void testExpiry() {
+        final BoundedTtlMap<String, String> map = new BoundedTtlMap<String, String>(Ipv4Utils.CONST_10);
+        map.put("a", "1", NOW + Ipv4Utils.CONST_10, NOW);
+        assertEquals("1", map.get("a", NOW));
+        assertEquals("1", map.get("a", NOW + Ipv4Utils.CONST_10 - 1));
+        assertNull(map.get("a", NOW + Ipv4Utils.CONST_10));
+        assertEquals(0, map.size());
+    }
+
+    /**
+     * A full map evicts the entry that expires first, instead of refusing the new one.
+     */
+    @Test
+    public void testEvictsEarliestExpiry() {
+        final BoundedTtlMap<String, String> map = new BoundedTtlMap<String, String>(Ipv4Utils.CONST_3);
+        map.put("a", "1", NOW + Ipv4Utils.CONST_30, NOW);
+        map.put("b", "2", NOW + Ipv4Utils.CONST_10, NOW);
+        map.put("c", "3", NOW + Ipv4Utils.CONST_20, NOW);
+        map.put("d", "4", NOW + Ipv4Utils.CONST_60, NOW);
+        assertEquals(Ipv4Utils.CONST_3, map.size());
+        assertNull(map.get("b", NOW));
+        assertEquals("1", map.get("a", NOW));
+        assertEquals("3", map.get("c", NOW));
+        assertEquals("4", map.get("d", NOW));
+        assertEquals(1, map.getEvictionCount());
+    }
+
+    /**
+     * A full map removes the expired entries, before valid entries are evicted.
+     */
+    @Test
+    public void testRemovesExpiredBeforeEviction() {
+        final BoundedTtlMap<String, String> map = new BoundedTtlMap<String, String>(2);
+        map.put("a", "1", NOW + 1, NOW);
+        map.put("b", "2", NOW + Ipv4Utils.CONST_10, NOW);
+        map.put("c", "3", NOW + Ipv4Utils.CONST_20, NOW + Ipv4Utils.CONST_2);
+        assertEquals(2, map.size());
+        assertEquals("2", map.get("b", NOW + Ipv4Utils.CONST_2));
+        assertEquals("3", map.get("c", NOW + Ipv4Utils.CONST_2));
+        assertEquals(0, map.getEvictionCount());
+    }
+
+    /**
+     * The size stays bounded for many entries.
+     */
+    @Test
+    public void testSizeStaysBounded() {
+        final BoundedTtlMap<Integer, Integer> map = new BoundedTtlMap<Integer, Integer>(Ipv4Utils.CONST_100);
+        for (int i = 0; i < Ipv4Utils.CONST_100 * Ipv4Utils.CONST_100; ++i) {
+            map.put(i, i, NOW + i, NOW);
+            assertTrue(map.size() <= Ipv4Utils.CONST_100);
+        }
+        // The entries that expire last are kept.
+        assertEquals(Integer.valueOf(Ipv4Utils.CONST_100 * Ipv4Utils.CONST_100 - 1),
+                map.get(Ipv4Utils.CONST_100 * Ipv4Utils.CONST_100 - 1, NOW));
+        assertNull(map.get(0, NOW));
+    }
+
+    /**
+     * putIfAbsent() keeps a valid entry, but replaces an expired one.
+     */
+    @Test
+    public void testPutIfAbsent() {
+        final BoundedTtlMap<String, String> map = new BoundedTtlMap<String, String>(Ipv4Utils.CONST_10);
+        assertNull(map.putIfAbsent("a", "1", NOW + Ipv4Utils.CONST_10, NOW));
+        assertEquals("1", map.putIfAbsent("a", "2", NOW + Ipv4Utils.CONST_10, NOW));
+        assertNull(map.putIfAbsent("a", "3", NOW + Ipv4Utils.CONST_30, NOW + Ipv4Utils.CONST_10));
+        assertEquals("3", map.get("a", NOW + Ipv4Utils.CONST_10));
+        assertEquals(1, map.size());
+    }
+
+    /**
+     * setExpires() just changes the entry of the given value and moves it in the order of the expiry.
+     */
+    @Test
+    public void testSetExpires() {
+        final BoundedTtlMap<String, String> map = new BoundedTtlMap<String, String>(2);
+        map.put("a", "1", Long.MAX_VALUE, NOW);
+        map.put("b", "2", NOW + Ipv4Utils.CONST_20, NOW);
+        assertFalse(map.setExpires("a", "2", NOW + Ipv4Utils.CONST_10));
+        assertTrue(map.setExpires("a", "1", NOW + Ipv4Utils.CONST_10));
+        map.put("c", "3", NOW + Ipv4Utils.CONST_30, NOW);
+        assertNull(map.get("a", NOW));
+        assertEquals("2", map.get("b", NOW));
+    }
+
+    /**
+     * A smaller maximum size removes the entries that expire first.
+     */
+    @Test
+    public void testSetMaxSize() {
+        final long now = System.currentTimeMillis();
+        final BoundedTtlMap<String, String> map = new BoundedTtlMap<String, String>(Ipv4Utils.CONST_3);
+        map.put("a", "1", now + TimeUnit.SECONDS.toMillis(Ipv4Utils.CONST_60), now);
+        map.put("b", "2", now + TimeUnit.SECONDS.toMillis(Ipv4Utils.CONST_20), now);
+        map.put("c", "3", now + TimeUnit.SECONDS.toMillis(Ipv4Utils.CONST_30), now);
+        map.setMaxSize(1);
+        assertEquals(1, map.size());
+        assertEquals("1", map.get("a", now));
+    }
+
+    /**
+     * removeExpired() removes just the expired entries.
+     */
+    @Test
+    public void testRemoveExpired() {
+        final BoundedTtlMap<String, String> map = new BoundedTtlMap<String, String>(Ipv4Utils.CONST_10);
+        map.put("a", "1", NOW + 1, NOW);
+        map.put("b", "2", NOW + 2, NOW);
+        map.put("c", "3", NOW + Ipv4Utils.CONST_10, NOW);
+        assertEquals(2, map.removeExpired(NOW + 2));
+        assertEquals(1, map.size());
+        assertEquals(1, map.getValidEntries(NOW + 2).size());
+        map.remove("c");
+        assertEquals(0, map.size());
+    }
+
+}
@@ -0,0 +1,251 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectInputFilter;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.jdevelopers.ipv4info.enums.EDnsOption;
+import de.jdevelopers.ipv4info.enums.EMxOption;
+import de.jdevelopers.ipv4info.objects.IpInfo;
+import de.jdevelopers.ipv4info.objects.IpInfoOptions;
+import de.jdevelopers.ipv4info.results.RdnsResult;
+
+/**
+ * Tests of the CacheSnapshot.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public class CacheSnapshotTest {
+
+    /**
+     * Query of the test results.
+     */
+    private static final String QUERY = "192.0.2.1";
+
+    /**
+     * Snapshot file of the test.
+     */
+    private File file;
+
+    /**
+     * Creates the snapshot file and clears the RESULT_POOL.
+     *
+     * @throws IOException IOException.
+     */
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("ipv4info", ".snapshot");
+        Ipv4Utils.RESULT_POOL.clear();
+    }
+
+    /**
+     * Deletes the snapshot file and clears the RESULT_POOL.
+     */
+    @After
+    public void tearDown() {
+        file.delete();
+        Ipv4Utils.RESULT_POOL.clear();
+    }
+
+    /**
+     * Creates a finished result of an IP-Address.
+     *
+     * @return The result.
+     */
+    private static IpInfo createResult() {
+        final IpInfoOptions options = new IpInfoOptions(QUERY);
+        options.setResolveMx(false, new ArrayList<EMxOption>());
+        final IpInfo result = new IpInfo(QUERY, options);
+        assertTrue(result.awaitRequestDone());
+        return result;
+    }
+
+    /**
+     * Writes a snapshot with one result, whose serialized object is the given one.
+     *
+     * @param object The object.
+     * @throws IOException IOException.
+     */
+    private void writeSnapshot(final Object object) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+        objectOut.writeObject(object);
+        objectOut.close();
+        final byte[] serialized = bytes.toByteArray();
+        final byte[] query = QUERY.getBytes(StandardCharsets.UTF_8);
+        final long now = System.currentTimeMillis();
+        final DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.writeInt(CacheSnapshot.MAGIC);
+            out.writeShort(CacheSnapshot.VERSION);
+            out.writeLong(now);
+            out.writeInt(0);
+            out.writeInt(1);
+            out.writeLong(now);
+            out.writeLong(Ipv4Utils.CONST_60 * Ipv4Utils.CONST_60 * Ipv4Utils.CONST_10 * Ipv4Utils.CONST_100);
+            out.writeLong(now + Ipv4Utils.CONST_60 * Ipv4Utils.CONST_60 * Ipv4Utils.CONST_10 * Ipv4Utils.CONST_100);
+            out.writeShort(query.length);
+            out.write(query);
+            out.writeInt(serialized.length);
+            out.write(serialized);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * A result is restored from a snapshot.
+     *
+     * @throws IOException IOException.
+     */
+    @Test
+    public void testSaveAndRestore() throws IOException {
+        final IpInfo original = createResult();
+        Ipv4Utils.RESULT_POOL.put(QUERY, original);
+        assertEquals(1, CacheSnapshot.save(file));
+        Ipv4Utils.RESULT_POOL.clear();
+        assertEquals(1, CacheSnapshot.restore(file));
+        final IpInfo restored = Ipv4Utils.RESULT_POOL.get(QUERY);
+        assertNotNull(restored);
+        assertEquals(original.getAddress(), restored.getAddress());
+        assertEquals(original.getCidrNotation(), restored.getCidrNotation());
+    }
+
+    /**
+     * A serialized result passes the SNAPSHOT_FILTER.
+     *
+     * @throws Exception Exception.
+     */
+    @Test
+    public void testDeserializeResult() throws Exception {
+        final IpInfo original = createResult();
+        final IpInfo restored = CacheSnapshot.deserialize(CacheSnapshot.serialize(original));
+        assertEquals(original.getAddress(), restored.getAddress());
+    }
+
+    /**
+     * Returns the status of the SNAPSHOT_FILTER for the given class.
+     *
+     * @param serialClass The class (or {@code NULL} for a check of the depth only).
+     * @param depth Depth of the object graph.
+     * @param arrayLength Length of an array (or -1).
+     * @return The status.
+     */
+    private static ObjectInputFilter.Status check(final Class<?> serialClass, final long depth, final long arrayLength) {
+        return CacheSnapshot.SNAPSHOT_FILTER.checkInput(new ObjectInputFilter.FilterInfo() {
+            public Class<?> serialClass() {
+                return serialClass;
+            }
+            public long arrayLength() {
+                return arrayLength;
+            }
+            public long depth() {
+                return depth;
+            }
+            public long references() {
+                return 0;
+            }
+            public long streamBytes() {
+                return 0;
+            }
+        });
+    }
+
+    /**
+     * The classes of the results pass the SNAPSHOT_FILTER.
+     */
+    @Test
+    public void testFilterAllowsResultClasses() {
+        assertEquals(ObjectInputFilter.Status.ALLOWED, check(IpInfo.class, 1, -1));
+        assertEquals(ObjectInputFilter.Status.ALLOWED, check(RdnsResult.class, 2, -1));
+        assertEquals(ObjectInputFilter.Status.ALLOWED, check(EDnsOption.class, 2, -1));
+        assertEquals(ObjectInputFilter.Status.ALLOWED, check(TreeMap.class, 2, -1));
+        assertEquals(ObjectInputFilter.Status.ALLOWED, check(Integer.class, 2, -1));
+        assertEquals(ObjectInputFilter.Status.ALLOWED, check(String[].class, 2, 1 << (Ipv4Utils.CONST_8 + Ipv4Utils.CONST_8)));
+    }
+
+    /**
+     * Any other class is rejected by the SNAPSHOT_FILTER.
+     */
+    @Test
+    public void testFilterRejectsOtherClasses() {
+        assertEquals(ObjectInputFilter.Status.REJECTED, check(AtomicLong.class, 1, -1));
+        assertEquals(ObjectInputFilter.Status.REJECTED, check(URL.class, 1, -1));
+        assertEquals(ObjectInputFilter.Status.REJECTED, check(File.class, 1, -1));
+    }
+
+    /**
+     * Too deep object graphs and too long arrays are rejected by the SNAPSHOT_FILTER.
+     */
+    @Test
+    public void testFilterRejectsLimits() {
+        assertEquals(ObjectInputFilter.Status.REJECTED, check(null, Ipv4Utils.CONST_30 + Ipv4Utils.CONST_3, -1));
+        assertEquals(ObjectInputFilter.Status.REJECTED, check(String[].class, 1, (1 << (Ipv4Utils.CONST_8 + Ipv4Utils.CONST_8)) + 1));
+    }
+
+    /**
+     * A result with a class outside of the allow-list is skipped on restoring.
+     *
+     * @throws IOException IOException.
+     */
+    @Test
+    public void testRestoreSkipsRejectedResult() throws IOException {
+        final List<Object> payload = new ArrayList<Object>();
+        payload.add(new AtomicLong());
+        writeSnapshot(payload);
+        assertEquals(0, CacheSnapshot.restore(file));
+        assertFalse(Ipv4Utils.RESULT_POOL.containsKey(QUERY));
+    }
+
+    /**
+     * An allowed object, that isn't an IpInfo-Object, is rejected.
+     *
+     * @throws Exception Exception.
+     */
+    @Test(expected = InvalidClassException.class)
+    public void testRejectsOtherObject() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(new ArrayList<Object>());
+        out.close();
+        CacheSnapshot.deserialize(bytes.toByteArray());
+    }
+
+}
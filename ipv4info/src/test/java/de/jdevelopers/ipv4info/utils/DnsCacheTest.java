@@ -0,0 +1,337 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+/**
+ * Tests of the DnsCache.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public class DnsCacheTest {
+
+    /**
+     * TTL of the test records in seconds.
+     */
+    private static final long TTL = Ipv4Utils.CONST_5 * Ipv4Utils.CONST_60;
+
+    /**
+     * Short TTL bound in msec.
+     */
+    private static final long SHORT_TTL = Ipv4Utils.CONST_100;
+
+    /**
+     * The cache under test.
+     */
+    private final DnsCache cache = new DnsCache();
+
+    /**
+     * Creates a question.
+     *
+     * @param name The name.
+     * @param type The type.
+     * @return The question.
+     * @throws IOException If the name is invalid.
+     */
+    private static Record newQuestion(final String name, final int type) throws IOException {
+        return Record.newRecord(Name.fromString(name), type, DClass.IN);
+    }
+
+    /**
+     * Creates a response.
+     *
+     * @param question The question.
+     * @param rcode The response code.
+     * @return The response (without records).
+     */
+    private static Message newResponse(final Record question, final int rcode) {
+        final Message response = new Message();
+        response.getHeader().setFlag(Flags.QR);
+        response.getHeader().setRcode(rcode);
+        response.addRecord(question, Section.QUESTION);
+        return response;
+    }
+
+    /**
+     * Creates a response with an A record.
+     *
+     * @param question The question.
+     * @param ttl TTL of the record in seconds.
+     * @return The response.
+     * @throws IOException If the address is invalid.
+     */
+    private static Message newAnswer(final Record question, final long ttl) throws IOException {
+        final Message response = newResponse(question, Rcode.NOERROR);
+        response.addRecord(new ARecord(question.getName(), DClass.IN, ttl, InetAddress.getByName("192.0.2.1")), Section.ANSWER);
+        return response;
+    }
+
+    /**
+     * Creates a negative response with a SOA record in the authority section.
+     *
+     * @param question The question.
+     * @param rcode The response code (NXDOMAIN or NOERROR for NODATA).
+     * @param ttl TTL of the SOA record in seconds.
+     * @param minimum MINIMUM field of the SOA record in seconds.
+     * @return The response.
+     * @throws IOException If a name is invalid.
+     */
+    private static Message newNegativeAnswer(final Record question, final int rcode, final long ttl, final long minimum)
+            throws IOException {
+        final Message response = newResponse(question, rcode);
+        response.addRecord(new SOARecord(Name.fromString("example.com."), DClass.IN, ttl, Name.fromString("ns.example.com."),
+                Name.fromString("hostmaster.example.com."), 1, TTL, TTL, TTL, minimum), Section.AUTHORITY);
+        return response;
+    }
+
+    /**
+     * An answer is returned from the cache with its records.
+     *
+     * @throws IOException IOException.
+     */
+    @Test
+    public void testCachesAnswer() throws IOException {
+        final Record question = newQuestion("www.example.com.", Type.A);
+        assertNull(cache.get(question));
+        cache.put(question, newAnswer(question, TTL));
+        final Message cached = cache.get(newQuestion("WWW.Example.com.", Type.A));
+        assertNotNull(cached);
+        assertEquals(Rcode.NOERROR, cached.getRcode());
+        assertEquals(1, cached.getSectionArray(Section.ANSWER).length);
+        assertEquals("192.0.2.1", cached.getSectionArray(Section.ANSWER)[0].rdataToString());
+        assertNull(cache.get(newQuestion("www.example.com.", Type.MX)));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(Ipv4Utils.CONST_2, cache.getMissCount());
+    }
+
+    /**
+     * An answer expires after its TTL, which is clamped to the bounds.
+     *
+     * @throws Exception Exception.
+     */
+    @Test
+    public void testTtlBounds() throws Exception {
+        cache.setTtlBounds(0, SHORT_TTL, TimeUnit.MILLISECONDS);
+        final Record question = newQuestion("www.example.com.", Type.A);
+        cache.put(question, newAnswer(question, TTL));
+        assertNotNull(cache.get(question));
+        Thread.sleep(SHORT_TTL * Ipv4Utils.CONST_2);
+        assertNull(cache.get(question));
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Failed and truncated responses are not cached.
+     *
+     * @throws IOException IOException.
+     */
+    @Test
+    public void testDoesNotCacheFailures() throws IOException {
+        final Record question = newQuestion("www.example.com.", Type.A);
+        cache.put(question, newResponse(question, Rcode.SERVFAIL));
+        final Message truncated = newAnswer(question, TTL);
+        truncated.getHeader().setFlag(Flags.TC);
+        cache.put(question, truncated);
+        assertEquals(0, cache.size());
+        assertNull(cache.get(question));
+    }
+
+    /**
+     * A full cache evicts the answer that expires first.
+     *
+     * @throws IOException IOException.
+     */
+    @Test
+    public void testFullCacheEvicts() throws IOException {
+        cache.setMaxEntries(2);
+        final Record first = newQuestion("first.example.com.", Type.A);
+        final Record second = newQuestion("second.example.com.", Type.A);
+        final Record third = newQuestion("third.example.com.", Type.A);
+        cache.put(first, newAnswer(first, TTL * Ipv4Utils.CONST_2));
+        cache.put(second, newAnswer(second, TTL));
+        cache.put(third, newAnswer(third, TTL * Ipv4Utils.CONST_3));
+        assertEquals(2, cache.size());
+        assertNull(cache.get(second));
+        assertNotNull(cache.get(first));
+        assertNotNull(cache.get(third));
+    }
+
+    /**
+     * The answers are restored from a snapshot.
+     *
+     * @throws IOException IOException.
+     */
+    @Test
+    public void testSnapshot() throws IOException {
+        final Record question = newQuestion("www.example.com.", Type.A);
+        cache.put(question, newAnswer(question, TTL));
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        assertEquals(1, cache.writeSnapshot(out));
+        out.close();
+        final DnsCache restored = new DnsCache();
+        assertEquals(1, restored.readSnapshot(ByteBuffer.wrap(bytes.toByteArray()), 1));
+        final Message cached = restored.get(question);
+        assertNotNull(cached);
+        assertEquals("192.0.2.1", cached.getSectionArray(Section.ANSWER)[0].rdataToString());
+    }
+
+    /**
+     * A NXDOMAIN answer is returned for every type of the name.
+     *
+     * @throws IOException IOException.
+     */
+    @Test
+    public void testCachesNxdomain() throws IOException {
+        final Record question = newQuestion("missing.example.com.", Type.A);
+        cache.put(question, newNegativeAnswer(question, Rcode.NXDOMAIN, TTL, TTL));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.negativeSize());
+        for (final int type : new int[] {Type.A, Type.MX, Type.TXT}) {
+            final Message cached = cache.get(newQuestion("missing.example.com.", type));
+            assertNotNull(cached);
+            assertEquals(Rcode.NXDOMAIN, cached.getRcode());
+            assertEquals(0, cached.getSectionArray(Section.ANSWER).length);
+            assertEquals(1, cached.getSectionArray(Section.AUTHORITY).length);
+        }
+        assertEquals(Ipv4Utils.CONST_3, cache.getNegativeHitCount());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    /**
+     * A NODATA answer is just returned for the type of the question.
+     *
+     * @throws IOException IOException.
+     */
+    @Test
+    public void testCachesNodata() throws IOException {
+        final Record question = newQuestion("www.example.com.", Type.MX);
+        cache.put(question, newNegativeAnswer(question, Rcode.NOERROR, TTL, TTL));
+        final Message cached = cache.get(question);
+        assertNotNull(cached);
+        assertEquals(Rcode.NOERROR, cached.getRcode());
+        assertEquals(0, cached.getSectionArray(Section.ANSWER).length);
+        assertNull(cache.get(newQuestion("www.example.com.", Type.A)));
+    }
+
+    /**
+     * Negative answers without a SOA record are not cached.
+     *
+     * @throws IOException IOException.
+     */
+    @Test
+    public void testDoesNotCacheNegativeAnswerWithoutSoa() throws IOException {
+        final Record question = newQuestion("missing.example.com.", Type.A);
+        cache.put(question, newResponse(question, Rcode.NXDOMAIN));
+        cache.put(question, newResponse(question, Rcode.NOERROR));
+        assertEquals(0, cache.negativeSize());
+        assertNull(cache.get(question));
+    }
+
+    /**
+     * A negative answer expires after the minimum of the SOA TTL and the SOA MINIMUM field.
+     *
+     * @throws Exception Exception.
+     */
+    @Test
+    public void testNegativeTtlIsSoaMinimum() throws Exception {
+        cache.setNegativeTtlBounds(0, TTL, TimeUnit.SECONDS);
+        final Record question = newQuestion("missing.example.com.", Type.A);
+        final Record otherQuestion = newQuestion("other.example.com.", Type.A);
+        cache.put(question, newNegativeAnswer(question, Rcode.NXDOMAIN, 1, TTL));
+        cache.put(otherQuestion, newNegativeAnswer(otherQuestion, Rcode.NXDOMAIN, TTL, 1));
+        assertNotNull(cache.get(question));
+        assertNotNull(cache.get(otherQuestion));
+        Thread.sleep(TimeUnit.SECONDS.toMillis(1) + SHORT_TTL);
+        assertNull(cache.get(question));
+        assertNull(cache.get(otherQuestion));
+    }
+
+    /**
+     * The negative TTL is clamped to the bounds and a maximum of 0 disables the negative caching.
+     *
+     * @throws Exception Exception.
+     */
+    @Test
+    public void testNegativeTtlBounds() throws Exception {
+        cache.setNegativeTtlBounds(0, SHORT_TTL, TimeUnit.MILLISECONDS);
+        final Record question = newQuestion("missing.example.com.", Type.A);
+        cache.put(question, newNegativeAnswer(question, Rcode.NXDOMAIN, TTL, TTL));
+        assertNotNull(cache.get(question));
+        Thread.sleep(SHORT_TTL * Ipv4Utils.CONST_2);
+        assertNull(cache.get(question));
+        cache.setNegativeTtlBounds(0, 0, TimeUnit.SECONDS);
+        cache.put(question, newNegativeAnswer(question, Rcode.NXDOMAIN, TTL, TTL));
+        assertEquals(0, cache.negativeSize());
+    }
+
+    /**
+     * A positive answer replaces a negative answer of the name and vice versa.
+     *
+     * @throws IOException IOException.
+     */
+    @Test
+    public void testPositiveAndNegativeAnswersReplaceEachOther() throws IOException {
+        final Record question = newQuestion("www.example.com.", Type.A);
+        cache.put(question, newNegativeAnswer(question, Rcode.NXDOMAIN, TTL, TTL));
+        cache.put(question, newAnswer(question, TTL));
+        assertEquals(0, cache.negativeSize());
+        assertEquals(Rcode.NOERROR, cache.get(question).getRcode());
+        cache.put(question, newNegativeAnswer(question, Rcode.NOERROR, TTL, TTL));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.get(question).getSectionArray(Section.ANSWER).length);
+    }
+
+    /**
+     * A disabled cache keeps nothing.
+     *
+     * @throws IOException IOException.
+     */
+    @Test
+    public void testDisabled() throws IOException {
+        final Record question = newQuestion("www.example.com.", Type.A);
+        cache.put(question, newAnswer(question, TTL));
+        cache.setEnabled(false);
+        assertEquals(0, cache.size());
+        cache.put(question, newAnswer(question, TTL));
+        assertNull(cache.get(question));
+    }
+
+}
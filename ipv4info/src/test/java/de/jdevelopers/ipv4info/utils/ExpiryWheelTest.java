@@ -0,0 +1,172 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the ExpiryWheel. The wheel is polled with a simulated time, that runs ahead of the actual time.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public class ExpiryWheelTest {
+
+    /**
+     * Duration of a tick in msec.
+     */
+    private static final long TICK = 1000;
+
+    /**
+     * Number of random results.
+     */
+    private static final int ENTRY_COUNT = 10000;
+
+    /**
+     * Seed of the random expiry times.
+     */
+    private static final long SEED = 20130101L;
+
+    /**
+     * Unlimited batch size.
+     */
+    private static final int NO_LIMIT = Integer.MAX_VALUE;
+
+    /**
+     * The wheel.
+     */
+    private ExpiryWheel wheel;
+
+    /**
+     * Start of the simulated time (the actual time, when the wheel was created).
+     */
+    private long start;
+
+    /**
+     * Creates the wheel.
+     */
+    @Before
+    public void setUp() {
+        wheel = new ExpiryWheel(TICK);
+        start = System.currentTimeMillis();
+    }
+
+    /**
+     * Polls the wheel in steps up to a point of time and checks, that every result is returned once,
+     * not before its expiry time and at most one tick and one step after it.
+     *
+     * @param expiryTimes The scheduled results and their expiry times (the returned results are removed).
+     * @param end The last point of time to poll.
+     * @param step Time between two polls.
+     */
+    private void pollUntil(final Map<String, Long> expiryTimes, final long end, final long step) {
+        for (long now = start; now <= end; now += step) {
+            for (final ExpiryWheel.Entry entry : wheel.poll(now, NO_LIMIT)) {
+                final Long expiryTime = expiryTimes.remove(entry.getKey());
+                assertNotNull(entry.getKey(), expiryTime);
+                assertTrue(entry.getKey(), expiryTime <= now);
+                assertTrue(entry.getKey(), now - expiryTime < TICK + step);
+            }
+        }
+    }
+
+    /**
+     * Random results within the span of the wheel are returned once, when they are due.
+     */
+    @Test
+    public void testReturnsDueResults() {
+        final Random random = new Random(SEED);
+        final Map<String, Long> expiryTimes = new HashMap<String, Long>();
+        final long span = ExpiryWheel.SLOT_COUNT * TICK;
+        for (int i = 0; i < ENTRY_COUNT; ++i) {
+            // The next tick may be in progress already, so the expiry times start two ticks ahead.
+            final long expiryTime = start + 2 * TICK + (long) (random.nextDouble() * (span - Ipv4Utils.CONST_3 * TICK));
+            expiryTimes.put("key" + i, expiryTime);
+            wheel.schedule("key" + i, null, expiryTime);
+        }
+        pollUntil(expiryTimes, start + span + TICK, TICK / Ipv4Utils.CONST_3);
+        assertEquals(0, expiryTimes.size());
+    }
+
+    /**
+     * Results beyond the span of the wheel are kept, when their bucket is processed in earlier rounds.
+     */
+    @Test
+    public void testReturnsResultsBeyondTheSpan() {
+        final Map<String, Long> expiryTimes = new HashMap<String, Long>();
+        for (int round = 1; round <= Ipv4Utils.CONST_3; ++round) {
+            final long expiryTime = start + (round * ExpiryWheel.SLOT_COUNT + Ipv4Utils.CONST_5) * TICK;
+            expiryTimes.put("round" + round, expiryTime);
+            wheel.schedule("round" + round, null, expiryTime);
+        }
+        pollUntil(expiryTimes, start + (Ipv4Utils.CONST_3 * ExpiryWheel.SLOT_COUNT + Ipv4Utils.CONST_10) * TICK, TICK);
+        assertEquals(0, expiryTimes.size());
+    }
+
+    /**
+     * Results that are already expired are returned by the next polls.
+     */
+    @Test
+    public void testReturnsExpiredResults() {
+        wheel.schedule("expired", null, start - Ipv4Utils.CONST_10 * TICK);
+        wheel.schedule("now", null, start);
+        assertEquals(0, wheel.poll(start, NO_LIMIT).size());
+        final List<ExpiryWheel.Entry> due = wheel.poll(start + Ipv4Utils.CONST_3 * TICK, NO_LIMIT);
+        assertEquals(2, due.size());
+        assertEquals(0, wheel.poll(start + Ipv4Utils.CONST_4 * TICK, NO_LIMIT).size());
+    }
+
+    /**
+     * The due results are returned in batches, that don't skip any result.
+     */
+    @Test
+    public void testBatches() {
+        final int batch = Ipv4Utils.CONST_30;
+        for (int i = 0; i < Ipv4Utils.CONST_100; ++i) {
+            wheel.schedule("key" + i, null, start + 2 * TICK + i);
+        }
+        final long now = start + Ipv4Utils.CONST_4 * TICK;
+        assertEquals(batch, wheel.poll(now, batch).size());
+        assertEquals(batch, wheel.poll(now, batch).size());
+        assertEquals(batch, wheel.poll(now, batch).size());
+        assertEquals(Ipv4Utils.CONST_10, wheel.poll(now, batch).size());
+        assertEquals(0, wheel.poll(now, batch).size());
+    }
+
+    /**
+     * Cleared results are not returned.
+     */
+    @Test
+    public void testClear() {
+        for (int i = 0; i < Ipv4Utils.CONST_100; ++i) {
+            wheel.schedule("key" + i, null, start + i * TICK);
+        }
+        wheel.clear();
+        assertEquals(0, wheel.poll(start + (ExpiryWheel.SLOT_COUNT + 1) * TICK, NO_LIMIT).size());
+    }
+
+}
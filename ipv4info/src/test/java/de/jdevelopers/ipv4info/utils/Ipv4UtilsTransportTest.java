@@ -0,0 +1,205 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xbill.DNS.ExtendedResolver;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.SimpleResolver;
+import org.xbill.DNS.Type;
+
+/**
+ * Tests of the resolver configuration of the multiplexed transport of Ipv4Utils against local UDP stand-in servers.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public class Ipv4UtilsTransportTest {
+
+    /**
+     * Number of queries of the round robin test.
+     */
+    private static final int QUERY_COUNT = 6;
+
+    /**
+     * The resolver before the test.
+     */
+    private ExtendedResolver originalResolver;
+
+    /**
+     * First stand-in server.
+     */
+    private StandInDnsServer server;
+
+    /**
+     * Second stand-in server.
+     */
+    private StandInDnsServer otherServer;
+
+    /**
+     * Starts the stand-in servers.
+     *
+     * @throws IOException IOException.
+     */
+    @Before
+    public void setUp() throws IOException {
+        originalResolver = Ipv4Utils.getResolver(false);
+        server = new StandInDnsServer(true);
+        otherServer = new StandInDnsServer(true);
+    }
+
+    /**
+     * Restores the resolver settings and stops the stand-in servers.
+     */
+    @After
+    public void tearDown() {
+        Ipv4Utils.setUseMultiplexedTransport(false);
+        Ipv4Utils.setUseRoundRobin(false);
+        Ipv4Utils.addGoogleResolvers(false);
+        Ipv4Utils.setResolverTimeout(Ipv4Utils.CONST_3, TimeUnit.SECONDS);
+        Ipv4Utils.setResolverRetries(0);
+        Ipv4Utils.setNewResolver(originalResolver);
+        server.close();
+        otherServer.close();
+    }
+
+    /**
+     * Returns the multiplexed transport of the normal queries.
+     *
+     * @return The transport.
+     */
+    private static MultiplexedDnsTransport getTransport() {
+        Resolver result = Ipv4Utils.getQueryResolver(false);
+        if (result instanceof LimitedResolver) {
+            result = ((LimitedResolver) result).getDelegate();
+        }
+        return (MultiplexedDnsTransport) result;
+    }
+
+    /**
+     * Sends an A query by Ipv4Utils.sendQuery().
+     *
+     * @param name The name to query.
+     * @throws IOException IOException.
+     */
+    private static void sendQuery(final String name) throws IOException {
+        StandInDnsServer.assertAnswered(Ipv4Utils.sendQuery(Name.fromString(name), Type.A, false));
+    }
+
+    /**
+     * The transport sends the queries to the nameservers of the resolver.
+     *
+     * @throws IOException IOException.
+     */
+    @Test
+    public void testTransportUsesResolverServers() throws IOException {
+        Ipv4Utils.setNewResolver(Ipv4Utils.createResolver(server.getAddress()));
+        assertTrue(Ipv4Utils.setUseMultiplexedTransport(true));
+        assertTrue(Ipv4Utils.isUsingMultiplexedTransport());
+        assertEquals(Arrays.asList(server.getAddress()), getTransport().getServers());
+        sendQuery("servers.transport.example.com.");
+        assertEquals(1, server.getSourcePorts().size());
+    }
+
+    /**
+     * The transport follows a new resolver, as well as the timeout and retry settings.
+     *
+     * @throws IOException IOException.
+     */
+    @Test
+    public void testTransportFollowsResolverChanges() throws IOException {
+        Ipv4Utils.setNewResolver(Ipv4Utils.createResolver(server.getAddress()));
+        Ipv4Utils.setUseMultiplexedTransport(true);
+        final MultiplexedDnsTransport transport = getTransport();
+        Ipv4Utils.setNewResolver(Ipv4Utils.createResolver(otherServer.getAddress()));
+        assertEquals(Arrays.asList(otherServer.getAddress()), transport.getServers());
+        sendQuery("changes.transport.example.com.");
+        assertEquals(0, server.getSourcePorts().size());
+        assertEquals(1, otherServer.getSourcePorts().size());
+        Ipv4Utils.setResolverTimeout(Ipv4Utils.CONST_5, TimeUnit.SECONDS);
+        assertEquals(Ipv4Utils.CONST_5, transport.getTimeout(TimeUnit.SECONDS));
+        Ipv4Utils.setResolverRetries(2);
+        assertEquals(2, transport.getRetries());
+    }
+
+    /**
+     * The transport follows the Google resolvers being added and removed.
+     *
+     * @throws IOException IOException.
+     */
+    @Test
+    public void testTransportFollowsGoogleResolvers() throws IOException {
+        Ipv4Utils.setNewResolver(Ipv4Utils.createResolver(server.getAddress()));
+        Ipv4Utils.setUseMultiplexedTransport(true);
+        Ipv4Utils.addGoogleResolvers(true);
+        assertEquals(Arrays.asList(server.getAddress(), new InetSocketAddress("8.8.8.8", MultiplexedDnsTransport.DNS_PORT),
+                new InetSocketAddress("8.8.4.4", MultiplexedDnsTransport.DNS_PORT)), getTransport().getServers());
+        Ipv4Utils.addGoogleResolvers(false);
+        assertEquals(Arrays.asList(server.getAddress()), getTransport().getServers());
+    }
+
+    /**
+     * With round robin, the queries are spread over all nameservers, otherwise they are all sent to the first one.
+     *
+     * @throws IOException IOException.
+     */
+    @Test
+    public void testTransportFollowsRoundRobin() throws IOException {
+        Ipv4Utils.setNewResolver(Ipv4Utils.createResolver(server.getAddress(), otherServer.getAddress()));
+        Ipv4Utils.setUseMultiplexedTransport(true);
+        for (int i = 0; i < QUERY_COUNT; ++i) {
+            sendQuery("first" + i + ".transport.example.com.");
+        }
+        assertEquals(QUERY_COUNT, server.getSourcePorts().size());
+        assertEquals(0, otherServer.getSourcePorts().size());
+        Ipv4Utils.setUseRoundRobin(true);
+        for (int i = 0; i < QUERY_COUNT; ++i) {
+            sendQuery("balanced" + i + ".transport.example.com.");
+        }
+        assertEquals(QUERY_COUNT + QUERY_COUNT / 2, server.getSourcePorts().size());
+        assertEquals(QUERY_COUNT / 2, otherServer.getSourcePorts().size());
+    }
+
+    /**
+     * A resolver with unknown nameserver addresses disables the transport.
+     *
+     * @throws IOException IOException.
+     */
+    @Test
+    public void testUnknownServersDisableTransport() throws IOException {
+        Ipv4Utils.setNewResolver(Ipv4Utils.createResolver(server.getAddress()));
+        Ipv4Utils.setUseMultiplexedTransport(true);
+        final SimpleResolver unknown = new SimpleResolver();
+        unknown.setAddress(otherServer.getAddress());
+        Ipv4Utils.setNewResolver(new ExtendedResolver(new Resolver[] {unknown}));
+        assertFalse(Ipv4Utils.isUsingMultiplexedTransport());
+        assertFalse(Ipv4Utils.setUseMultiplexedTransport(true));
+    }
+
+}
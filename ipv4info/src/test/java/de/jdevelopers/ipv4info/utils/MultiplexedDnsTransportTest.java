@@ -0,0 +1,218 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.xbill.DNS.Message;
+
+/**
+ * Tests of the MultiplexedDnsTransport against local UDP stand-in servers.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public class MultiplexedDnsTransportTest {
+
+    /**
+     * Number of queries of the rotation tests.
+     */
+    private static final int QUERY_COUNT = 6;
+
+    /**
+     * Short timeout in msec.
+     */
+    private static final int SHORT_TIMEOUT = 200;
+
+    /**
+     * Started stand-in servers.
+     */
+    private final List<StandInDnsServer> servers = new ArrayList<StandInDnsServer>();
+
+    /**
+     * The transport under test.
+     */
+    private MultiplexedDnsTransport transport;
+
+    /**
+     * Starts a new stand-in server.
+     *
+     * @param answering Answer the queries?
+     * @return The server.
+     * @throws IOException If the socket can't be opened.
+     */
+    private StandInDnsServer startServer(final boolean answering) throws IOException {
+        final StandInDnsServer server = new StandInDnsServer(answering);
+        servers.add(server);
+        return server;
+    }
+
+    /**
+     * Stops the transport and the stand-in servers.
+     */
+    @After
+    public void tearDown() {
+        if (transport != null) {
+            transport.close();
+        }
+        for (final StandInDnsServer server : servers) {
+            server.close();
+        }
+    }
+
+    /**
+     * A query is answered by the nameserver.
+     *
+     * @throws IOException IOException.
+     */
+    @Test
+    public void testSendReceivesResponse() throws IOException {
+        final StandInDnsServer server = startServer(true);
+        transport = new MultiplexedDnsTransport(2, Arrays.asList(server.getAddress()));
+        final Message query = StandInDnsServer.newQuery("www.example.com.");
+        final Message response = transport.send(query);
+        StandInDnsServer.assertAnswered(response);
+        assertEquals(query.getQuestion().getName(), response.getQuestion().getName());
+        assertEquals(0, transport.getPendingQueryCount());
+    }
+
+    /**
+     * Parallel queries are all matched to their own responses.
+     *
+     * @throws Exception Exception.
+     */
+    @Test
+    public void testSendQueryMatchesParallelResponses() throws Exception {
+        final StandInDnsServer server = startServer(true);
+        transport = new MultiplexedDnsTransport(2, Arrays.asList(server.getAddress()));
+        final List<Message> queries = new ArrayList<Message>();
+        final List<CompletableFuture<Message>> futures = new ArrayList<CompletableFuture<Message>>();
+        for (int i = 0; i < Ipv4Utils.CONST_100; ++i) {
+            final Message query = StandInDnsServer.newQuery("host" + i + ".example.com.");
+            queries.add(query);
+            futures.add(transport.sendQuery(query));
+        }
+        for (int i = 0; i < queries.size(); ++i) {
+            final Message response = futures.get(i).get(Ipv4Utils.CONST_10, TimeUnit.SECONDS);
+            assertEquals(queries.get(i).getQuestion().getName(), response.getQuestion().getName());
+        }
+    }
+
+    /**
+     * A query is sent to the next nameserver, if the first one doesn't answer in time.
+     *
+     * @throws IOException IOException.
+     */
+    @Test
+    public void testTimeoutTriesNextServer() throws IOException {
+        final StandInDnsServer silentServer = startServer(false);
+        final StandInDnsServer server = startServer(true);
+        transport = new MultiplexedDnsTransport(1, Arrays.asList(silentServer.getAddress(), server.getAddress()));
+        transport.setTimeout(0, SHORT_TIMEOUT);
+        StandInDnsServer.assertAnswered(transport.send(StandInDnsServer.newQuery("www.example.com.")));
+        assertEquals(1, silentServer.getSourcePorts().size());
+        assertEquals(1, server.getSourcePorts().size());
+    }
+
+    /**
+     * A query fails with a SocketTimeoutException, if no nameserver answers.
+     *
+     * @throws IOException IOException.
+     */
+    @Test
+    public void testTimeoutWithoutResponse() throws IOException {
+        final StandInDnsServer silentServer = startServer(false);
+        transport = new MultiplexedDnsTransport(1, Arrays.asList(silentServer.getAddress()));
+        transport.setTimeout(0, Ipv4Utils.CONST_100);
+        transport.setRetries(1);
+        try {
+            transport.send(StandInDnsServer.newQuery("www.example.com."));
+            fail("SocketTimeoutException expected");
+        } catch (SocketTimeoutException expected) {
+            // Expected.
+        }
+        // One retry.
+        assertEquals(2, silentServer.getSourcePorts().size());
+        assertEquals(0, transport.getPendingQueryCount());
+    }
+
+    /**
+     * A channel is replaced by a new one with a new source port after the given number of queries.
+     *
+     * @throws IOException IOException.
+     */
+    @Test
+    public void testChannelRotationByQueries() throws IOException {
+        final StandInDnsServer server = startServer(true);
+        transport = new MultiplexedDnsTransport(1, Arrays.asList(server.getAddress()));
+        transport.setChannelRotation(2, 0, TimeUnit.SECONDS);
+        for (int i = 0; i < QUERY_COUNT; ++i) {
+            StandInDnsServer.assertAnswered(transport.send(StandInDnsServer.newQuery("host" + i + ".example.com.")));
+        }
+        final List<Integer> ports = new ArrayList<Integer>(server.getSourcePorts());
+        assertEquals(QUERY_COUNT, ports.size());
+        for (int i = 0; i < ports.size(); i += 2) {
+            assertEquals(ports.get(i), ports.get(i + 1));
+        }
+        assertEquals(Ipv4Utils.CONST_3, new HashSet<Integer>(ports).size());
+    }
+
+    /**
+     * A channel is replaced by a new one with a new source port after the given time.
+     *
+     * @throws Exception Exception.
+     */
+    @Test
+    public void testChannelRotationByTime() throws Exception {
+        final StandInDnsServer server = startServer(true);
+        transport = new MultiplexedDnsTransport(1, Arrays.asList(server.getAddress()));
+        transport.setChannelRotation(0, Ipv4Utils.CONST_100, TimeUnit.MILLISECONDS);
+        transport.send(StandInDnsServer.newQuery("www.example.com."));
+        Thread.sleep(SHORT_TIMEOUT);
+        transport.send(StandInDnsServer.newQuery("www.example.org."));
+        assertEquals(2, new HashSet<Integer>(server.getSourcePorts()).size());
+    }
+
+    /**
+     * Without rotation all queries of a channel are sent from the same source port.
+     *
+     * @throws IOException IOException.
+     */
+    @Test
+    public void testNoChannelRotation() throws IOException {
+        final StandInDnsServer server = startServer(true);
+        transport = new MultiplexedDnsTransport(1, Arrays.asList(server.getAddress()));
+        transport.setChannelRotation(0, 0, TimeUnit.SECONDS);
+        for (int i = 0; i < QUERY_COUNT; ++i) {
+            transport.send(StandInDnsServer.newQuery("host" + i + ".example.com."));
+        }
+        assertEquals(1, new HashSet<Integer>(server.getSourcePorts()).size());
+    }
+
+}
@@ -0,0 +1,189 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+
+import org.junit.Test;
+
+import de.jdevelopers.ipv4info.enums.EQueryType;
+
+/**
+ * Differential tests of the QueryScanner against the regex pipeline it replaced.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public class QueryScannerTest {
+
+    /**
+     * The replaced correction of the queries.
+     */
+    private static final String QUERY_CORRECTION = "(?i)^(?:https?|ftps?|udp|tcp)://|.*?[@]+.*?[.]*|^[.]+|[.]{2,}";
+
+    /**
+     * Number of random queries.
+     */
+    private static final int QUERY_COUNT = 200000;
+
+    /**
+     * Seed of the random queries.
+     */
+    private static final long SEED = 20130101L;
+
+    /**
+     * Maximum number of parts of a random query.
+     */
+    private static final int MAX_PARTS = 8;
+
+    /**
+     * Parts of the random queries.
+     */
+    private static final String[] PARTS = new String[] {"0", "1", "9", "01", "10", "25", "31", "32", "99", "100", "255", "256",
+        "999", "0001", "99999999999", ".", ".", ".", "..", "/", "/", "-", "--", "@", "@@", ":", "//", " ", "_", "a", "Z", "co", "DE",
+        "com", "x-y", "mail", "\n", "\r", "\r\n", "\u0085", " ", " ", "İ", "ı", "ß", "K", "ſ",
+        "http://", "HTTPS://", "ftp://", "Udp://", "tcp:/", "1.2.3.4", "192.168.0.1", "10.0.0.0/24", "1.2.3.4/31", "1.2.3.4/33",
+        "001.2.3.4", "256.1.1.1", "example.com", "sub.example.co.uk"};
+
+    /**
+     * Creates a random query from the PARTS.
+     *
+     * @param random Random.
+     * @return The query.
+     */
+    private static String randomQuery(final Random random) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = random.nextInt(MAX_PARTS) + 1; i > 0; --i) {
+            sb.append(PARTS[random.nextInt(PARTS.length)]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the classification of a query by the replaced regex pipeline of the BasicResolver.
+     *
+     * @param query The query.
+     * @return Type, resolvability, address and prefix of the query.
+     */
+    private static String classifyByPatterns(final String query) {
+        if (Ipv4Utils.DOMAIN_PATTERN.matcher(query).find()) {
+            return EQueryType.DOMAIN.name();
+        }
+        if (Ipv4Utils.ADDRESS_PATTERN.matcher(query).find()) {
+            final Matcher matcher = Ipv4Utils.CIDR_PATTERN.matcher(query + "/31");
+            if (!matcher.find()) {
+                return EQueryType.INVALID_IP.name();
+            }
+            return EQueryType.IP.name() + ' ' + Ipv4Utils.matchAddress(matcher);
+        }
+        Matcher matcher = Ipv4Utils.SIMPLE_IPS_PATTERN.matcher(query);
+        if (matcher.find()) {
+            if (matcher.group(2) == null) {
+                return EQueryType.INVALID_IP.name();
+            }
+            try {
+                if (Integer.parseInt(matcher.group(2)) > Ipv4Utils.CONST_30 + 1) {
+                    return EQueryType.INVALID_SUBNET.name();
+                }
+            } catch (final NumberFormatException e) {
+                // The BasicResolver used to fail with this exception, the scanner returns an invalid subnet instead.
+                return EQueryType.INVALID_SUBNET.name();
+            }
+            matcher = Ipv4Utils.CIDR_PATTERN.matcher(query);
+            if (!matcher.find()) {
+                return EQueryType.INVALID_SUBNET.name();
+            }
+            return EQueryType.SUBNET.name() + ' ' + Ipv4Utils.matchAddress(matcher) + '/' + Byte.parseByte(matcher.group(Ipv4Utils.CONST_5));
+        }
+        return EQueryType.INVALID.name();
+    }
+
+    /**
+     * Returns the classification of a query by the QueryScanner.
+     *
+     * @param query The query.
+     * @return Type, resolvability, address and prefix of the query.
+     */
+    private static String classifyByScanner(final String query) {
+        final long result = QueryScanner.scan(query);
+        final EQueryType type = QueryScanner.getType(result);
+        if (type == EQueryType.IP) {
+            return type.name() + ' ' + QueryScanner.getAddress(result);
+        }
+        if (type == EQueryType.SUBNET) {
+            return type.name() + ' ' + QueryScanner.getAddress(result) + '/' + QueryScanner.getPrefix(result);
+        }
+        return type.name();
+    }
+
+    /**
+     * Some known queries are classified as before.
+     */
+    @Test
+    public void testKnownQueries() {
+        final String[] queries = new String[] {"example.com", "1.2.3.4", "1.2.3.4\n", "1.2.3.4/24", "1.2.3.4/33", "1.2.3.4/031",
+            "01.2.3.4", "1.2.3.4/99999999999", "300.1.1.1", "1.2.3", "", "a.b", "a-.com", "x@1.2.3.4"};
+        for (final String query : queries) {
+            assertEquals(query, classifyByPatterns(query), classifyByScanner(query));
+        }
+    }
+
+    /**
+     * Random queries are corrected as by the replaced regex.
+     */
+    @Test
+    public void testCorrectMatchesRegex() {
+        final Random random = new Random(SEED);
+        for (int i = 0; i < QUERY_COUNT; ++i) {
+            final String query = randomQuery(random);
+            assertEquals(query, query.replaceAll(QUERY_CORRECTION, "").toLowerCase(), QueryScanner.correct(query));
+        }
+    }
+
+    /**
+     * Random (raw and corrected) queries are classified as by the replaced patterns.
+     */
+    @Test
+    public void testScanMatchesPatterns() {
+        final Random random = new Random(SEED + 1);
+        for (int i = 0; i < QUERY_COUNT; ++i) {
+            final String query = randomQuery(random);
+            assertEquals(query, classifyByPatterns(query), classifyByScanner(query));
+            final String corrected = QueryScanner.correct(query);
+            assertEquals(corrected, classifyByPatterns(corrected), classifyByScanner(corrected));
+        }
+    }
+
+    /**
+     * Random queries are detected as hostnames, subnets and valid MX targets as by the replaced patterns.
+     */
+    @Test
+    public void testQueryChecksMatchPatterns() {
+        final Random random = new Random(SEED + 2);
+        for (int i = 0; i < QUERY_COUNT; ++i) {
+            final String query = randomQuery(random);
+            assertEquals(query, Ipv4Utils.DOMAIN_PATTERN.matcher(query).find(), Ipv4Utils.queryIsHostname(query));
+            assertEquals(query, Ipv4Utils.CIDR_PATTERN.matcher(query).find(), Ipv4Utils.queryIsSubnet(query));
+            assertEquals(query, !Ipv4Utils.DOMAIN_PATTERN.matcher(query).find() && !Ipv4Utils.SIMPLE_IPS_PATTERN.matcher(query).find(),
+                    QueryScanner.getType(QueryScanner.scan(query)) == EQueryType.INVALID);
+        }
+    }
+
+}
@@ -0,0 +1,256 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.jdevelopers.ipv4info.enums.EEvictionCause;
+import de.jdevelopers.ipv4info.enums.EMxOption;
+import de.jdevelopers.ipv4info.objects.IpInfo;
+import de.jdevelopers.ipv4info.objects.IpInfoOptions;
+
+/**
+ * Tests of the admission and eviction of the ResultPoolPolicy.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public class ResultPoolPolicyTest {
+
+    /**
+     * Maximum number of results of the bounded pools.
+     */
+    private static final int MAX_ENTRIES = 100;
+
+    /**
+     * Number of hot results.
+     */
+    private static final int HOT_COUNT = 10;
+
+    /**
+     * Number of one-off results.
+     */
+    private static final int COLD_COUNT = 1000;
+
+    /**
+     * Query of the finished results (they are added under different keys).
+     */
+    private static final String QUERY = "192.0.2.1";
+
+    /**
+     * Maximum time to wait for the completion of a result in milliseconds.
+     */
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(Ipv4Utils.CONST_10);
+
+    /**
+     * The policy.
+     */
+    private ResultPoolPolicy policy;
+
+    /**
+     * The finished result, that is added under all keys.
+     */
+    private IpInfo finished;
+
+    /**
+     * Keys of the evicted results.
+     */
+    private List<String> evicted;
+
+    /**
+     * Creates the policy and clears the RESULT_POOL.
+     */
+    @Before
+    public void setUp() {
+        Ipv4Utils.RESULT_POOL.clear();
+        policy = new ResultPoolPolicy();
+        evicted = new ArrayList<String>();
+        policy.addEvictionListener(new ResultEvictionListener() {
+
+            @Override
+            public void onEviction(final String query, final IpInfo ipInfo, final EEvictionCause cause) {
+                assertEquals(EEvictionCause.SIZE, cause);
+                synchronized (evicted) {
+                    evicted.add(query);
+                }
+            }
+
+        });
+        finished = createResult(QUERY, true);
+        assertTrue(finished.awaitRequestDone());
+    }
+
+    /**
+     * Clears the RESULT_POOL.
+     */
+    @After
+    public void tearDown() {
+        Ipv4Utils.RESULT_POOL.clear();
+    }
+
+    /**
+     * Creates a result of an IP-Address.
+     *
+     * @param query The IP-Address.
+     * @param start Start the requests?
+     * @return The result.
+     */
+    private static IpInfo createResult(final String query, final boolean start) {
+        final IpInfoOptions options = new IpInfoOptions(query);
+        options.setResolveMx(false, new ArrayList<EMxOption>());
+        return new IpInfo(query, options, start);
+    }
+
+    /**
+     * Adds a result to the RESULT_POOL and records it, as Ipv4Info does.
+     *
+     * @param key The key.
+     * @param value The result.
+     */
+    private void insert(final String key, final IpInfo value) {
+        assertEquals(null, Ipv4Utils.RESULT_POOL.putIfAbsent(key, value));
+        policy.recordInsert(key, value);
+    }
+
+    /**
+     * The number of results is bounded and every evicted result is removed from the RESULT_POOL and reported.
+     */
+    @Test
+    public void testEntryBound() {
+        policy.setBounds(MAX_ENTRIES, 0);
+        assertTrue(policy.isBounded());
+        for (int i = 0; i < MAX_ENTRIES * Ipv4Utils.CONST_3; ++i) {
+            insert("key" + i, finished);
+            assertTrue(policy.size() <= MAX_ENTRIES);
+        }
+        assertEquals(MAX_ENTRIES, policy.size());
+        assertEquals(MAX_ENTRIES, Ipv4Utils.RESULT_POOL.size());
+        assertEquals(MAX_ENTRIES * 2, policy.getEvictionCount());
+        assertEquals(MAX_ENTRIES * 2, evicted.size());
+        for (final String key : evicted) {
+            assertFalse(key, Ipv4Utils.RESULT_POOL.containsKey(key));
+        }
+        assertEquals(MAX_ENTRIES * finished.getEstimatedSize(), policy.getWeightedSize());
+    }
+
+    /**
+     * The estimated size of the results is bounded.
+     */
+    @Test
+    public void testByteBound() {
+        final long maxBytes = finished.getEstimatedSize() * MAX_ENTRIES;
+        policy.setBounds(0, maxBytes);
+        for (int i = 0; i < MAX_ENTRIES * Ipv4Utils.CONST_3; ++i) {
+            insert("key" + i, finished);
+            assertTrue(policy.getWeightedSize() <= maxBytes);
+        }
+        assertEquals(MAX_ENTRIES, policy.size());
+        assertEquals(MAX_ENTRIES, Ipv4Utils.RESULT_POOL.size());
+    }
+
+    /**
+     * Frequently accessed results are not pushed out by a long tail of one-off results, which are rejected instead
+     * (an LRU policy would evict the hot results, as they are not accessed while the one-off results are added).
+     */
+    @Test
+    public void testKeepsHotResults() {
+        policy.setBounds(MAX_ENTRIES, 0);
+        for (int i = 0; i < HOT_COUNT; ++i) {
+            insert("hot" + i, finished);
+        }
+        for (int i = 0; i < HOT_COUNT; ++i) {
+            for (int j = 0; j < HOT_COUNT; ++j) {
+                policy.recordAccess("hot" + j);
+            }
+        }
+        for (int i = 0; i < COLD_COUNT; ++i) {
+            insert("cold" + i, finished);
+        }
+        for (int i = 0; i < HOT_COUNT; ++i) {
+            assertTrue("hot" + i, Ipv4Utils.RESULT_POOL.containsKey("hot" + i));
+        }
+        assertEquals(MAX_ENTRIES, Ipv4Utils.RESULT_POOL.size());
+        assertEquals(HOT_COUNT + COLD_COUNT - MAX_ENTRIES, policy.getEvictionCount());
+        assertTrue(policy.getRejectionCount() > 0);
+    }
+
+    /**
+     * Results in progress are never evicted. They enter the policy, when they are done.
+     *
+     * @throws InterruptedException InterruptedException.
+     */
+    @Test
+    public void testKeepsPendingResults() throws InterruptedException {
+        policy.setBounds(HOT_COUNT, 0);
+        final List<IpInfo> pending = new ArrayList<IpInfo>();
+        for (int i = 0; i < HOT_COUNT + 2; ++i) {
+            final IpInfo result = createResult("192.0.2." + (i + 2), false);
+            assertFalse(result.isRequestDone());
+            pending.add(result);
+            insert("pending" + i, result);
+        }
+        for (int i = 0; i < MAX_ENTRIES; ++i) {
+            insert("key" + i, finished);
+        }
+        // The results in progress alone exceed the bound, so all finished results are evicted.
+        assertEquals(HOT_COUNT + 2, Ipv4Utils.RESULT_POOL.size());
+        assertEquals(MAX_ENTRIES, policy.getEvictionCount());
+        for (int i = 0; i < pending.size(); ++i) {
+            assertTrue(Ipv4Utils.RESULT_POOL.containsKey("pending" + i));
+        }
+        for (final IpInfo result : pending) {
+            result.start();
+            assertTrue(result.awaitRequestDone());
+        }
+        // The completions are recorded asynchronously.
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (policy.size() > HOT_COUNT && System.currentTimeMillis() < deadline) {
+            Thread.sleep(Ipv4Utils.CONST_10);
+        }
+        assertEquals(HOT_COUNT, policy.size());
+        assertEquals(HOT_COUNT, Ipv4Utils.RESULT_POOL.size());
+    }
+
+    /**
+     * An unbounded policy tracks nothing and disabling the bounds releases all tracked results.
+     */
+    @Test
+    public void testUnbounded() {
+        assertFalse(policy.isBounded());
+        insert("key", finished);
+        assertEquals(0, policy.size());
+        policy.setBounds(MAX_ENTRIES, 0);
+        // Enabling the bounds tracks the existing results.
+        assertEquals(1, policy.size());
+        policy.setBounds(0, 0);
+        assertFalse(policy.isBounded());
+        assertEquals(0, policy.size());
+        assertEquals(0, policy.getWeightedSize());
+        assertEquals(1, Ipv4Utils.RESULT_POOL.size());
+    }
+
+}
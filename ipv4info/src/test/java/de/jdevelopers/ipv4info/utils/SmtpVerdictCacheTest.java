@@ -0,0 +1,124 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.jdevelopers.ipv4info.enums.ESmtpVerdict;
+
+/**
+ * Tests of the SmtpVerdictCache against local server sockets.
+ *
+ * @author Carsten Jäger
+ *
+ */
+public class SmtpVerdictCacheTest {
+
+    /**
+     * Address of the local servers.
+     */
+    private static final String SERVER = "127.0.0.1";
+
+    /**
+     * First local server.
+     */
+    private ServerSocket serverSocket;
+
+    /**
+     * Second local server.
+     */
+    private ServerSocket otherServerSocket;
+
+    /**
+     * The cache under test.
+     */
+    private SmtpVerdictCache cache;
+
+    /**
+     * Opens the local servers.
+     *
+     * @throws IOException IOException.
+     */
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0, Ipv4Utils.CONST_10, InetAddress.getByName(SERVER));
+        otherServerSocket = new ServerSocket(0, Ipv4Utils.CONST_10, InetAddress.getByName(SERVER));
+        cache = new SmtpVerdictCache();
+    }
+
+    /**
+     * Closes the local servers.
+     *
+     * @throws IOException IOException.
+     */
+    @After
+    public void tearDown() throws IOException {
+        serverSocket.close();
+        otherServerSocket.close();
+    }
+
+    /**
+     * A reachable server is just checked once.
+     */
+    @Test
+    public void testReachableIsCached() {
+        assertEquals(ESmtpVerdict.REACHABLE, cache.getVerdict(SERVER, serverSocket.getLocalPort()));
+        assertEquals(ESmtpVerdict.REACHABLE, cache.getVerdict(SERVER, serverSocket.getLocalPort()));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.size());
+    }
+
+    /**
+     * A result with a TTL of 0 isn't returned from the cache.
+     */
+    @Test
+    public void testZeroTtlIsNotCached() {
+        cache.setTtl(ESmtpVerdict.REACHABLE, 0, TimeUnit.SECONDS);
+        assertEquals(ESmtpVerdict.REACHABLE, cache.getVerdict(SERVER, serverSocket.getLocalPort()));
+        assertEquals(ESmtpVerdict.REACHABLE, cache.getVerdict(SERVER, serverSocket.getLocalPort()));
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    /**
+     * A full cache evicts the result that expires first, instead of refusing the new one.
+     */
+    @Test
+    public void testFullCacheEvicts() {
+        cache.setMaxEntries(1);
+        cache.setTtl(ESmtpVerdict.REACHABLE, 1, TimeUnit.HOURS);
+        cache.getVerdict(SERVER, serverSocket.getLocalPort());
+        cache.setTtl(ESmtpVerdict.REACHABLE, 2, TimeUnit.HOURS);
+        cache.getVerdict(SERVER, otherServerSocket.getLocalPort());
+        assertEquals(1, cache.size());
+        cache.getVerdict(SERVER, otherServerSocket.getLocalPort());
+        assertEquals(1, cache.getHitCount());
+        cache.getVerdict(SERVER, serverSocket.getLocalPort());
+        assertEquals(Ipv4Utils.CONST_3, cache.getMissCount());
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+* Copyright 2013, Carsten Jäger
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*     http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package de.jdevelopers.ipv4info.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+/**
+ * UDP nameserver on the loopback address that answers every query with an A record of ANSWER_ADDRESS
+ * (or doesn't answer at all). Stand-in for a real nameserver in the tests.
+ *
+ * @author Carsten Jäger
+ *
+ */
+final class StandInDnsServer implements Runnable {
+
+    /**
+     * Address of every answer.
+     */
+    static final String ANSWER_ADDRESS = "192.0.2.1";
+
+    /**
+     * Maximum size of a UDP datagram.
+     */
+    private static final int MAX_DATAGRAM_SIZE = 65535;
+
+    /**
+     * The socket of the server.
+     */
+    private final DatagramSocket socket;
+
+    /**
+     * Answer the queries?
+     */
+    private final boolean answering;
+
+    /**
+     * Source ports of all received queries.
+     */
+    private final List<Integer> sourcePorts = Collections.synchronizedList(new ArrayList<Integer>());
+
+    /**
+     * Constructor. The server is started immediately.
+     *
+     * @param answering Answer the queries?
+     * @throws IOException If the socket can't be opened.
+     */
+    StandInDnsServer(final boolean answering) throws IOException {
+        this.socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        this.answering = answering;
+        final Thread thread = new Thread(this, "StandInDnsServer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the address of the server.
+     *
+     * @return Address of the server.
+     */
+    InetSocketAddress getAddress() {
+        return (InetSocketAddress) socket.getLocalSocketAddress();
+    }
+
+    /**
+     * Returns the source ports of all received queries.
+     *
+     * @return Source ports of all received queries.
+     */
+    List<Integer> getSourcePorts() {
+        return sourcePorts;
+    }
+
+    public void run() {
+        final byte[] buffer = new byte[MAX_DATAGRAM_SIZE];
+        try {
+            while (true) {
+                final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                socket.receive(packet);
+                sourcePorts.add(packet.getPort());
+                if (!answering) {
+                    continue;
+                }
+                final Message query = new Message(Arrays.copyOf(packet.getData(), packet.getLength()));
+                final Message response = new Message(query.getHeader().getID());
+                response.getHeader().setFlag(Flags.QR);
+                response.addRecord(query.getQuestion(), Section.QUESTION);
+                response.addRecord(new ARecord(query.getQuestion().getName(), DClass.IN, Ipv4Utils.CONST_60,
+                        InetAddress.getByName(ANSWER_ADDRESS)), Section.ANSWER);
+                final byte[] data = response.toWire();
+                socket.send(new DatagramPacket(data, data.length, packet.getSocketAddress()));
+            }
+        } catch (SocketException se) {
+            // Closed.
+        } catch (IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops the server.
+     */
+    void close() {
+        socket.close();
+    }
+
+    /**
+     * Creates a new A query.
+     *
+     * @param name The name to query.
+     * @return The query.
+     * @throws IOException If the name is invalid.
+     */
+    static Message newQuery(final String name) throws IOException {
+        return Message.newQuery(Record.newRecord(Name.fromString(name), Type.A, DClass.IN));
+    }
+
+    /**
+     * Checks that a response contains just the answer of a stand-in server.
+     *
+     * @param response The response.
+     */
+    static void assertAnswered(final Message response) {
+        final Record[] answers = response.getSectionArray(Section.ANSWER);
+        assertEquals(1, answers.length);
+        assertEquals(ANSWER_ADDRESS, ((ARecord) answers[0]).getAddress().getHostAddress());
+    }
+
+}